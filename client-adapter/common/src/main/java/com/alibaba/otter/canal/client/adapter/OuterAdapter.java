@@ -33,6 +33,28 @@ public interface OuterAdapter {
      */
     void sync(List<Dml> dmls);
 
+    /**
+     * 是否允许同步前按主键合并同一批次内的dml, 只有按主键幂等写入的适配器才能开启
+     *
+     * @see com.alibaba.otter.canal.client.adapter.support.DmlCompactor
+     */
+    default boolean supportDmlCompaction() {
+        return false;
+    }
+
+    /**
+     * 是否允许多个线程同时调用sync, 按分区并行消费时不支持的适配器会被串行调用
+     *
+     * <pre>
+     * 只有每次调用的写入和提交互不影响时才能开启, 目前只有rdb(每个调用方独占一组同步服务).
+     * es(bulk)、hbase(BufferedMutator)、kudu(session)的缓冲在批次结束时统一提交, 并发调用会提交或报告其他批次的数据,
+     * 这些适配器在sync内部按主键分区并行(threads)
+     * </pre>
+     */
+    default boolean supportConcurrentSync() {
+        return false;
+    }
+
     /**
      * 外部适配器销毁接口
      */
@@ -58,6 +80,15 @@ public interface OuterAdapter {
         throw new UnsupportedOperationException("unsupported operation");
     }
 
+    /**
+     * 适配器写入指标, 如缓冲的数据量和flush耗时
+     *
+     * @return 指标名对应的值
+     */
+    default Map<String, Object> metrics() {
+        throw new UnsupportedOperationException("unsupported operation");
+    }
+
     /**
      * 通过task获取对应的destination
      *
@@ -1,26 +1,50 @@
 package com.alibaba.otter.canal.client.adapter.support;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.druid.DbType;
 import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.sql.SQLUtils;
+import com.alibaba.druid.sql.ast.statement.SQLExprTableSource;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQueryBlock;
+import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
 import com.google.common.base.Joiner;
 
 public abstract class AbstractEtlService {
 
-    protected Logger      logger       = LoggerFactory.getLogger(this.getClass());
+    private static final long MAX_KEY_RANGE_TASKS    = 1000000L; // 按主键范围导入时的最大分段数
+    private static final long PROGRESS_LOG_INTERVAL  = 10000L;   // 进度日志间隔
+    private static final long SNAPSHOT_CHUNK_TIMEOUT = 600000L;  // 全量增量衔接模式单个分块的最长等待时间
+    private static final long CNT_PER_TASK           = 10000L;   // 每个任务导入的行数/主键值个数
 
-    private String        type;
-    private AdapterConfig config;
-    private final long    CNT_PER_TASK = 10000L;
+    protected Logger        logger       = LoggerFactory.getLogger(this.getClass());
+
+    private String          type;
+    private AdapterConfig   config;
+    protected EtlMonitor    monitor;                 // 当前任务的运行状态, 用于取消和统计
+    private ExecutorService pipelineExecutor;        // 当前任务的流水线转换/写入线程, 所有分段共用
 
     public AbstractEtlService(String type, AdapterConfig config){
         this.type = type;
@@ -37,6 +61,9 @@ public abstract class AbstractEtlService {
             return etlResult;
         }
 
+        // 通过rest接口启动时由调用线程注册, 其他情况单独创建
+        monitor = EtlMonitor.current() != null ? EtlMonitor.current() : new EtlMonitor(type);
+        pipelineExecutor = Executors.newCachedThreadPool(DaemonThreadFactory.daemonThreadFactory);
         long start = System.currentTimeMillis();
         try {
             DruidDataSource dataSource = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
@@ -57,59 +84,88 @@ public abstract class AbstractEtlService {
                 logger.debug("etl sql : {}", sql);
             }
 
-            // 获取总数
-            String countSql = "SELECT COUNT(1) FROM ( " + sql + ") _CNT ";
-            long cnt = (Long) Util.sqlRS(dataSource, countSql, values, rs -> {
-                Long count = null;
-                try {
-                    if (rs.next()) {
-                        count = ((Number) rs.getObject(1)).longValue();
-                    }
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
+            long[] keyRange = null;
+            String splitKey = config.getMapping().getEtlSplitKey();
+            if (StringUtils.isNotBlank(splitKey) && !monitor.isSnapshot()) {
+                keyRange = getKeyRange(dataSource, sql, values, splitKey);
+            }
+
+            if (monitor.isSnapshot()) {
+                // 全量增量衔接模式, 由增量同步写入
+                if (params != null && !params.isEmpty()) {
+                    throw new IllegalArgumentException("snapshot mode does not support etl params");
                 }
-                return count == null ? 0L : count;
-            });
+                importSnapshot(dataSource, sql, impCount);
+            } else if (keyRange != null) {
+                // 按主键范围分段导入, 避免count全表以及LIMIT offset的深分页扫描
+                importByKeyRange(dataSource, sql, values, splitKey, keyRange, impCount, errMsg);
+            } else {
+                // 获取总数
+                String countSql = "SELECT COUNT(1) FROM ( " + sql + ") _CNT ";
+                long cnt = (Long) Util.sqlRS(dataSource, countSql, values, rs -> {
+                    Long count = null;
+                    try {
+                        if (rs.next()) {
+                            count = ((Number) rs.getObject(1)).longValue();
+                        }
+                    } catch (Exception e) {
+                        logger.error(e.getMessage(), e);
+                    }
+                    return count == null ? 0L : count;
+                });
 
-            // 当大于1万条记录时开启多线程
-            if (cnt >= 10000) {
-                int threadCount = Runtime.getRuntime().availableProcessors();
+                // 当大于1万条记录时开启多线程
+                if (cnt >= 10000) {
+                    int threadCount = Runtime.getRuntime().availableProcessors();
 
-                long offset;
-                long size = CNT_PER_TASK;
-                long workerCnt = cnt / size + (cnt % size == 0 ? 0 : 1);
+                    long offset;
+                    long size = CNT_PER_TASK;
+                    long workerCnt = cnt / size + (cnt % size == 0 ? 0 : 1);
 
-                if (logger.isDebugEnabled()) {
-                    logger.debug("workerCnt {} for cnt {} threadCount {}", workerCnt, cnt, threadCount);
-                }
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("workerCnt {} for cnt {} threadCount {}", workerCnt, cnt, threadCount);
+                    }
 
-                ExecutorService executor = Util.newFixedThreadPool(threadCount, 5000L);
-                List<Future<Boolean>> futures = new ArrayList<>();
-                for (long i = 0; i < workerCnt; i++) {
-                    offset = size * i;
-                    String sqlFinal = sql + " LIMIT " + offset + "," + size;
-                    Future<Boolean> future = executor.submit(() -> executeSqlImport(dataSource,
-                        sqlFinal,
-                        values,
-                        config.getMapping(),
-                        impCount,
-                        errMsg));
-                    futures.add(future);
-                }
+                    ExecutorService executor = Util.newFixedThreadPool(threadCount, 5000L);
+                    List<Future<Boolean>> futures = new ArrayList<>();
+                    for (long i = 0; i < workerCnt; i++) {
+                        offset = size * i;
+                        String sqlFinal = sql + " LIMIT " + offset + "," + size;
+                        Future<Boolean> future = executor.submit(() -> {
+                            if (monitor.isCancelled()) {
+                                return false;
+                            }
+                            return executeSqlImport(dataSource, sqlFinal, values, config.getMapping(), impCount, errMsg);
+                        });
+                        futures.add(future);
+                    }
 
-                for (Future<Boolean> future : futures) {
-                    future.get();
+                    for (Future<Boolean> future : futures) {
+                        future.get();
+                    }
+                    executor.shutdown();
+                } else {
+                    executeSqlImport(dataSource, sql, values, config.getMapping(), impCount, errMsg);
                 }
-                executor.shutdown();
-            } else {
-                executeSqlImport(dataSource, sql, values, config.getMapping(), impCount, errMsg);
             }
 
-            logger.info("数据全量导入完成, 一共导入 {} 条数据, 耗时: {}", impCount.get(), System.currentTimeMillis() - start);
+            long elapsed = System.currentTimeMillis() - start;
+            if (monitor.isCancelled()) {
+                logger.warn("数据全量导入已取消, 已导入 {} 条数据, 耗时: {}", impCount.get(), elapsed);
+                errMsg.add(type + " 数据导入已取消, 已导入 " + impCount.get() + " 条");
+            } else {
+                logger.info("数据全量导入完成, 一共导入 {} 条数据, 耗时: {}, 速度: {} 条/秒",
+                    impCount.get(),
+                    elapsed,
+                    impCount.get() * 1000L / Math.max(1L, elapsed));
+            }
             etlResult.setResultMessage("导入" + type + " 数据：" + impCount.get() + " 条");
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             errMsg.add(type + " 数据导入异常 =>" + e.getMessage());
+        } finally {
+            pipelineExecutor.shutdownNow();
+            pipelineExecutor = null;
         }
         if (errMsg.isEmpty()) {
             etlResult.setSucceeded(true);
@@ -119,6 +175,326 @@ public abstract class AbstractEtlService {
         return etlResult;
     }
 
+    /**
+     * 获取分段字段的最小/最大值, 不支持分段时返回null
+     */
+    long[] getKeyRange(DataSource dataSource, String sql, List<Object> values, String splitKey) {
+        String rangeSql;
+        try {
+            SQLSelectStatement statement = (SQLSelectStatement) SQLUtils.parseSingleStatement(sql, DbType.mysql);
+            SQLSelectQueryBlock queryBlock = statement.getSelect().getQueryBlock();
+            if (queryBlock == null || queryBlock.getGroupBy() != null || queryBlock.getLimit() != null
+                || queryBlock.isDistinct()) {
+                logger.warn("etl split key {} is ignored, unsupported sql: {}", splitKey, sql);
+                return null;
+            }
+            queryBlock.getSelectList().clear();
+            queryBlock.addSelectItem(SQLUtils.toSQLExpr("MIN(" + splitKey + ")", DbType.mysql));
+            queryBlock.addSelectItem(SQLUtils.toSQLExpr("MAX(" + splitKey + ")", DbType.mysql));
+            queryBlock.setOrderBy(null);
+            rangeSql = SQLUtils.toSQLString(statement, DbType.mysql);
+        } catch (Exception e) {
+            logger.warn("etl split key {} is ignored, parse sql error: {}", splitKey, e.getMessage());
+            return null;
+        }
+
+        return (long[]) Util.sqlRS(dataSource, rangeSql, values, rs -> {
+            try {
+                if (rs.next()) {
+                    Object min = rs.getObject(1);
+                    Object max = rs.getObject(2);
+                    if (min == null || max == null) {
+                        // 没有数据
+                        return new long[] { 0L, -1L };
+                    }
+                    if (min instanceof Number && max instanceof Number) {
+                        return new long[] { ((Number) min).longValue(), ((Number) max).longValue() };
+                    }
+                    logger.warn("etl split key {} is ignored, not a numeric column", splitKey);
+                }
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 按分段字段的范围导入, 每段一个任务, 最后一段不设上界.
+     * 未全部完成时返回续传条件: 之前的分段都已导入成功, 在etlCondition中加上该条件(如 where id >= {} 并传入提示的值)重新执行即可继续导入
+     */
+    private void importByKeyRange(DataSource dataSource, String sql, List<Object> values, String splitKey,
+                                  long[] keyRange, AtomicLong impCount, List<String> errMsg) throws Exception {
+        long min = keyRange[0];
+        long max = keyRange[1];
+        if (max < min) {
+            return;
+        }
+        long step = keyRangeStep(min, max);
+        int taskCnt = (int) ((max - min) / step + 1);
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        logger.info("etl split key {} range [{}, {}], step {}, taskCnt {}, threadCount {}",
+            splitKey,
+            min,
+            max,
+            step,
+            taskCnt,
+            threadCount);
+
+        KeyRangeProgress progress = new KeyRangeProgress(taskCnt);
+        ExecutorService executor = Util.newFixedThreadPool(threadCount, 5000L);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        boolean completed = false;
+        try {
+            for (int i = 0; i < taskCnt; i++) {
+                int index = i;
+                String sqlFinal = SQLUtils.addCondition(sql, keyRangeCondition(splitKey, min, step, i, taskCnt),
+                    DbType.mysql);
+                Future<Boolean> future = executor.submit(() -> {
+                    boolean succeeded = false;
+                    try {
+                        succeeded = !monitor.isCancelled() && executeSqlImport(dataSource,
+                            sqlFinal,
+                            values,
+                            config.getMapping(),
+                            impCount,
+                            errMsg);
+                    } finally {
+                        progress.finish(index, succeeded, impCount.get());
+                    }
+                    return succeeded;
+                });
+                futures.add(future);
+            }
+
+            for (Future<Boolean> future : futures) {
+                future.get();
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // 出现异常时未开始的分段不再执行
+                for (Future<Boolean> future : futures) {
+                    future.cancel(false);
+                }
+            }
+            executor.shutdown();
+            try {
+                // 等待执行中的分段结束, 续传位置才准确
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            int finished = progress.getFinished();
+            if (finished < taskCnt) {
+                long resumeKey = min + step * finished;
+                logger.warn("etl not completed, resume with condition {} >= {}", splitKey, resumeKey);
+                errMsg.add(type + " 数据导入未完成, 可以在etlCondition中加上条件 " + splitKey + " >= " + resumeKey
+                           + " 重新执行继续导入");
+            }
+        }
+    }
+
+    /**
+     * 每段按CNT_PER_TASK个主键值划分, 主键很稀疏时限制分段总数
+     */
+    static long keyRangeStep(long min, long max) {
+        return Math.max(CNT_PER_TASK, (max - min) / MAX_KEY_RANGE_TASKS + 1);
+    }
+
+    /**
+     * 第index段的条件, 最后一段不设上界, 导入过程中新增的数据也会导入
+     */
+    static String keyRangeCondition(String splitKey, long min, long step, int index, int taskCnt) {
+        long lower = min + step * index;
+        String condition = splitKey + " >= " + lower;
+        if (index < taskCnt - 1) {
+            condition += " AND " + splitKey + " < " + (lower + step);
+        }
+        return condition;
+    }
+
+    /**
+     * 分段导入进度, 记录连续完成的分段数用于断点续传
+     */
+    class KeyRangeProgress {
+
+        private final BitSet done = new BitSet();
+        private final int    taskCnt;
+        private int          finished;     // 连续成功的分段数
+        private int          completed;    // 已经结束的分段数
+        private long         lastLogTime = System.currentTimeMillis();
+
+        KeyRangeProgress(int taskCnt){
+            this.taskCnt = taskCnt;
+        }
+
+        synchronized void finish(int index, boolean succeeded, long count) {
+            completed++;
+            if (succeeded) {
+                done.set(index);
+                while (done.get(finished)) {
+                    finished++;
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastLogTime >= PROGRESS_LOG_INTERVAL || completed == taskCnt) {
+                lastLogTime = now;
+                logger.info("{} etl progress: {}/{} tasks, {} finished in order, {} rows imported",
+                    type,
+                    completed,
+                    taskCnt,
+                    finished,
+                    count);
+            }
+        }
+
+        synchronized int getFinished() {
+            return finished;
+        }
+    }
+
+    /**
+     * 全量增量衔接模式: 按主键分块读取源表, 每块在低/高水位之间查询, 由增量同步在高水位处写入目标端
+     */
+    private void importSnapshot(DataSource dataSource, String sql, AtomicLong impCount) throws Exception {
+        SQLSelectStatement statement = (SQLSelectStatement) SQLUtils.parseSingleStatement(sql, DbType.mysql);
+        SQLSelectQueryBlock queryBlock = statement.getSelect().getQueryBlock();
+        if (queryBlock == null || !(queryBlock.getFrom() instanceof SQLExprTableSource)) {
+            throw new IllegalArgumentException("snapshot mode only supports single table etl sql: " + sql);
+        }
+        SQLExprTableSource tableSource = (SQLExprTableSource) queryBlock.getFrom();
+
+        try (Connection conn = dataSource.getConnection()) {
+            String database = tableSource.getSchema() != null ? Util.cleanColumn(tableSource.getSchema()) : conn
+                .getCatalog();
+            String table = Util.cleanColumn(tableSource.getTableName());
+            List<String> pkNames = new ArrayList<>();
+            try (ResultSet rs = conn.getMetaData().getPrimaryKeys(database, null, table)) {
+                Map<Integer, String> pks = new TreeMap<>();
+                while (rs.next()) {
+                    pks.put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+                }
+                pkNames.addAll(pks.values());
+            }
+            if (pkNames.isEmpty()) {
+                throw new IllegalArgumentException("snapshot mode requires primary key, table: " + table);
+            }
+            logger.info("{} etl snapshot of {}.{} starting, pk: {}", type, database, table, pkNames);
+
+            String columns = "`" + Joiner.on("`,`").join(pkNames) + "`";
+            String placeholders = Joiner.on(",").join(Collections.nCopies(pkNames.size(), "?"));
+            String selectSql = "SELECT * FROM `" + database + "`.`" + table + "`";
+            String nextSql = selectSql + " WHERE (" + columns + ") > (" + placeholders + ")";
+            String orderBy = " ORDER BY " + columns + " LIMIT " + CNT_PER_TASK;
+
+            List<Object> lastPk = null;
+            long chunkCnt = 0;
+            while (!monitor.isCancelled()) {
+                EtlWatermarks.Chunk chunk = EtlWatermarks
+                    .register(monitor.getSnapshotAdapter(), monitor.getWatermarkTable(), database, table, pkNames);
+                List<Map<String, Object>> rows;
+                try {
+                    writeWatermark(conn, chunk, EtlWatermarks.LOW);
+                    rows = selectChunk(conn, lastPk == null ? selectSql + orderBy : nextSql + orderBy, lastPk);
+                    chunk.setRows(rows);
+                    monitor.addRead(rows.size());
+                    writeWatermark(conn, chunk, EtlWatermarks.HIGH);
+                    if (!awaitChunk(chunk)) {
+                        break;
+                    }
+                    try (PreparedStatement pstmt = conn
+                        .prepareStatement("DELETE FROM " + monitor.getWatermarkTable() + " WHERE id = ?")) {
+                        pstmt.setString(1, chunk.getId());
+                        pstmt.executeUpdate();
+                    }
+                } finally {
+                    EtlWatermarks.unregister(chunk);
+                }
+
+                impCount.addAndGet(rows.size());
+                monitor.addWrite(rows.size());
+                if (++chunkCnt % 10 == 0) {
+                    logger.info("{} etl snapshot progress: {} chunks, {} rows", type, chunkCnt, impCount.get());
+                }
+                if (rows.size() < CNT_PER_TASK) {
+                    break;
+                }
+                Map<String, Object> last = rows.get(rows.size() - 1);
+                lastPk = new ArrayList<>(pkNames.size());
+                for (String pkName : pkNames) {
+                    lastPk.add(last.get(pkName));
+                }
+            }
+        }
+    }
+
+    private void writeWatermark(Connection conn, EtlWatermarks.Chunk chunk, String value) throws SQLException {
+        try (PreparedStatement pstmt = conn
+            .prepareStatement("REPLACE INTO " + monitor.getWatermarkTable() + " (id, value) VALUES (?, ?)")) {
+            pstmt.setString(1, chunk.getId());
+            pstmt.setString(2, value);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private List<Map<String, Object>> selectChunk(Connection conn, String sql, List<Object> lastPk) throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            if (lastPk != null) {
+                for (int i = 0; i < lastPk.size(); i++) {
+                    pstmt.setObject(i + 1, lastPk.get(i));
+                }
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                while (rs.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= columnCount; i++) {
+                        String columnName = metaData.getColumnLabel(i);
+                        row.put(columnName, JdbcTypeUtil.getRSData(rs, columnName, metaData.getColumnType(i)));
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 等待增量同步消费到高水位并ack, 取消时返回false
+     */
+    private boolean awaitChunk(EtlWatermarks.Chunk chunk) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SNAPSHOT_CHUNK_TIMEOUT;
+        while (!chunk.await(1, TimeUnit.SECONDS)) {
+            if (monitor.isCancelled()) {
+                return false;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new RuntimeException("etl snapshot chunk not synced in " + SNAPSHOT_CHUNK_TIMEOUT
+                                           + " ms, check that the sync switch is on and the watermark table "
+                                           + monitor.getWatermarkTable() + " is subscribed");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 通过流水线导入: 流式读取、转换、批量写入分别在不同线程中执行, 转换/写入线程在整个导入任务中复用
+     *
+     * @param rs 流式结果集
+     * @param batchSize 写入批次大小
+     * @param converter 行转换
+     * @param writer 批量写入
+     * @return 写入的行数
+     */
+    protected <T> long pipeline(ResultSet rs, int batchSize, EtlPipeline.RowConverter<T> converter,
+                                EtlPipeline.BatchWriter<T> writer) throws Exception {
+        return new EtlPipeline<T>(type, batchSize, monitor, pipelineExecutor).run(rs, converter, writer);
+    }
+
     protected abstract boolean executeSqlImport(DataSource ds, String sql, List<Object> values,
                                                 AdapterConfig.AdapterMapping mapping, AtomicLong impCount,
                                                 List<String> errMsg);
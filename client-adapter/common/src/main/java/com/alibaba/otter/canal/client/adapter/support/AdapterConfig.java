@@ -7,5 +7,12 @@ public interface AdapterConfig {
 
     interface AdapterMapping {
         String getEtlCondition();
+
+        /**
+         * etl按主键范围分段导入的字段(源表的数值型主键), 为空时按LIMIT分页
+         */
+        default String getEtlSplitKey() {
+            return null;
+        }
     }
 }
@@ -55,6 +55,14 @@ public class CanalClientConfig {
     private List<CanalAdapter> canalAdapters;
 
     private Boolean terminateOnException = false;
+    // mq模式下每个topic的并行消费数, 每个worker持有独立的consumer, 由mq按分区/队列分配, 分区内保序
+    private Integer partitionParallelism = 1;
+    // 拉取与写入并行(双缓冲), 当前批次写入的同时拉取并转换下一批, 写入完成后按顺序ack
+    private Boolean asyncApply           = false;
+    // 同步前按主键合并同一批次内的dml, 只对按主键幂等写入的适配器生效(es/hbase/rdb), 设为false关闭
+    private Boolean compactDml           = true;
+    // 全量增量衔接模式(etl snapshot)使用的源库水位表
+    private String  etlWatermarkTable    = "canal_etl_watermark";
 
     public String getCanalServerHost() {
         return canalServerHost;
@@ -232,6 +240,38 @@ public class CanalClientConfig {
         this.terminateOnException = terminateOnException;
     }
 
+    public Integer getPartitionParallelism() {
+        return partitionParallelism;
+    }
+
+    public void setPartitionParallelism(Integer partitionParallelism) {
+        this.partitionParallelism = partitionParallelism;
+    }
+
+    public Boolean getAsyncApply() {
+        return asyncApply;
+    }
+
+    public void setAsyncApply(Boolean asyncApply) {
+        this.asyncApply = asyncApply;
+    }
+
+    public Boolean getCompactDml() {
+        return compactDml;
+    }
+
+    public void setCompactDml(Boolean compactDml) {
+        this.compactDml = compactDml;
+    }
+
+    public String getEtlWatermarkTable() {
+        return etlWatermarkTable;
+    }
+
+    public void setEtlWatermarkTable(String etlWatermarkTable) {
+        this.etlWatermarkTable = etlWatermarkTable;
+    }
+
     public static class CanalAdapter {
 
         private String      instance; // 实例名
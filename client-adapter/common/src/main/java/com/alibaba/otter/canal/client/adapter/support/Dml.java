@@ -4,6 +4,8 @@ import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 
+import com.alibaba.otter.canal.connector.core.consumer.ColumnarRows;
+
 /**
  * DML操作转换对象
  *
@@ -28,6 +30,7 @@ public class Dml implements Serializable {
     private String                    sql;                                    // 执行的sql, dml sql为空
     private List<Map<String, Object>> data;                                   // 数据列表
     private List<Map<String, Object>> old;                                    // 旧数据列表, 用于update, size和data的size一一对应
+    private ColumnarRows              columnar;                               // 列式存储的数据, 存在时data由其按需生成
 
     public String getDestination() {
         return destination;
@@ -102,11 +105,57 @@ public class Dml implements Serializable {
     }
 
     public List<Map<String, Object>> getData() {
+        if (data == null && columnar != null) {
+            data = columnar.toMaps();
+        }
         return data;
     }
 
     public void setData(List<Map<String, Object>> data) {
         this.data = data;
+        this.columnar = null;
+    }
+
+    /**
+     * 列式存储的数据, 值已经按sqlType转换, 没有时返回null, 此时只能通过getData访问
+     */
+    public ColumnarRows columnar() {
+        return columnar;
+    }
+
+    public void setColumnar(ColumnarRows columnar) {
+        this.columnar = columnar;
+        this.data = null;
+    }
+
+    /**
+     * 行数, 列式存储时不需要生成Map
+     */
+    public int rowCount() {
+        if (data == null && columnar != null) {
+            return columnar.size();
+        }
+        return data == null ? 0 : data.size();
+    }
+
+    /**
+     * 获取第row行的字段值, 列式存储时不需要生成Map
+     */
+    public Object getValue(int row, String columnName) {
+        if (data == null && columnar != null) {
+            return columnar.getValue(row, columnName);
+        }
+        return data.get(row).get(columnName);
+    }
+
+    /**
+     * 第row行数据, 列式存储时返回只读的行视图, 不需要生成Map列表
+     */
+    public Map<String, Object> getRow(int row) {
+        if (data == null && columnar != null) {
+            return columnar.row(row);
+        }
+        return data.get(row);
     }
 
     public List<Map<String, Object>> getOld() {
@@ -133,6 +182,7 @@ public class Dml implements Serializable {
         es = null;
         data = null;
         old = null;
+        columnar = null;
         sql = null;
     }
 
@@ -140,6 +190,6 @@ public class Dml implements Serializable {
     public String toString() {
         return "Dml{" + "destination='" + destination + '\'' + ", database='" + database + '\'' + ", table='" + table
                + '\'' + ", type='" + type + '\'' + ", es=" + es + ", ts=" + ts + ", sql='" + sql + '\'' + ", data="
-               + data + ", old=" + old + '}';
+               + getData() + ", old=" + old + '}';
     }
 }
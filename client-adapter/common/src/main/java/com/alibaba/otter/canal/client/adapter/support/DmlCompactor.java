@@ -0,0 +1,244 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 同一批次内按主键合并dml, 多次变更合并为一次净操作
+ *
+ * <pre>
+ * 1. INSERT + UPDATE -> INSERT(最终数据)
+ * 2. INSERT + DELETE -> 丢弃
+ * 3. UPDATE + UPDATE -> UPDATE(最终数据, old取各字段最早的旧值)
+ * 4. UPDATE + DELETE -> DELETE
+ * 5. DELETE之后的变更、主键被修改的UPDATE不参与合并, 按原始顺序输出
+ * 6. 合并后的操作保留在该主键第一次出现的位置, DDL和无主键的表作为分界不参与合并
+ * </pre>
+ *
+ * 注意: 合并只保证每个主键的最终状态, 适用于按主键幂等写入的目标端
+ *
+ * @version 1.1.6
+ */
+public class DmlCompactor {
+
+    private static final String INSERT = "INSERT";
+    private static final String UPDATE = "UPDATE";
+    private static final String DELETE = "DELETE";
+
+    /**
+     * 合并dml列表, 返回新的列表, 不修改入参
+     *
+     * @param dmls dml列表
+     * @return 合并后的dml列表
+     */
+    public static List<Dml> compact(List<Dml> dmls) {
+        if (dmls == null || dmls.isEmpty()) {
+            return dmls;
+        }
+
+        List<Row> rows = new ArrayList<>();
+        // 主键 -> 当前可继续合并的行
+        Map<RowKey, Row> pending = new HashMap<>();
+        for (Dml dml : dmls) {
+            String type = dml.getType();
+            boolean compactable = !Boolean.TRUE.equals(dml.getIsDdl()) && dml.getData() != null
+                                  && dml.getPkNames() != null && !dml.getPkNames().isEmpty()
+                                  && (INSERT.equalsIgnoreCase(type) || UPDATE.equalsIgnoreCase(type)
+                                      || DELETE.equalsIgnoreCase(type));
+            if (!compactable) {
+                if (Boolean.TRUE.equals(dml.getIsDdl())) {
+                    // ddl作为分界, 之前的行不再与之后的行合并
+                    pending.clear();
+                }
+                rows.add(new Row(dml, null, null, null));
+                continue;
+            }
+
+            for (int i = 0; i < dml.getData().size(); i++) {
+                Map<String, Object> data = dml.getData().get(i);
+                Map<String, Object> old = dml.getOld() != null && i < dml.getOld().size() ? dml.getOld().get(i) : null;
+                RowKey key = new RowKey(dml, data);
+                Row row = new Row(dml, type.toUpperCase(), data, old);
+
+                if (UPDATE.equals(row.type) && pkChanged(dml.getPkNames(), old)) {
+                    // 主键变更, 旧主键和新主键都不再继续合并
+                    Map<String, Object> oldKeyData = new HashMap<>(data);
+                    oldKeyData.putAll(old);
+                    pending.remove(new RowKey(dml, oldKeyData));
+                    pending.remove(key);
+                    rows.add(row);
+                    continue;
+                }
+
+                Row prev = pending.get(key);
+                if (prev == null || !merge(prev, row)) {
+                    rows.add(row);
+                    if (DELETE.equals(row.type)) {
+                        pending.remove(key);
+                    } else {
+                        pending.put(key, row);
+                    }
+                } else if (prev.type == null || DELETE.equals(prev.type)) {
+                    // 已经合并为丢弃或删除, 后续变更重新开始
+                    pending.remove(key);
+                }
+            }
+        }
+
+        return toDmls(rows);
+    }
+
+    /**
+     * 将next合并到prev中, 返回false代表无法合并
+     */
+    private static boolean merge(Row prev, Row next) {
+        if (INSERT.equals(prev.type)) {
+            if (UPDATE.equals(next.type)) {
+                prev.data = next.data;
+                return true;
+            } else if (DELETE.equals(next.type)) {
+                prev.type = null; // 批次内插入又删除, 直接丢弃
+                return true;
+            }
+        } else if (UPDATE.equals(prev.type)) {
+            if (UPDATE.equals(next.type)) {
+                Map<String, Object> old = new LinkedHashMap<>();
+                if (next.old != null) {
+                    old.putAll(next.old);
+                }
+                if (prev.old != null) {
+                    old.putAll(prev.old); // 保留最早的旧值
+                }
+                prev.data = next.data;
+                prev.old = old;
+                return true;
+            } else if (DELETE.equals(next.type)) {
+                prev.type = DELETE;
+                prev.data = next.data;
+                prev.old = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean pkChanged(List<String> pkNames, Map<String, Object> old) {
+        if (old == null) {
+            return false;
+        }
+        for (String pkName : pkNames) {
+            if (old.containsKey(pkName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 相邻且来自同一个dml、类型相同的行重新组装为一个dml
+     */
+    private static List<Dml> toDmls(List<Row> rows) {
+        List<Dml> result = new ArrayList<>();
+        Dml current = null;
+        Dml currentSource = null;
+        for (Row row : rows) {
+            if (row.passThrough) {
+                result.add(row.source);
+                current = null;
+                currentSource = null;
+                continue;
+            }
+            if (row.type == null) {
+                continue; // 已丢弃
+            }
+
+            if (current == null || currentSource != row.source || !current.getType().equals(row.type)) {
+                current = copyOf(row.source, row.type);
+                currentSource = row.source;
+                result.add(current);
+            }
+            current.getData().add(row.data);
+            if (UPDATE.equals(row.type)) {
+                current.getOld().add(row.old != null ? row.old : new LinkedHashMap<>());
+            }
+        }
+        for (Dml dml : result) {
+            if (dml.getOld() != null && dml.getOld().isEmpty()) {
+                dml.setOld(null);
+            }
+        }
+        return result;
+    }
+
+    private static Dml copyOf(Dml source, String type) {
+        Dml dml = new Dml();
+        dml.setDestination(source.getDestination());
+        dml.setGroupId(source.getGroupId());
+        dml.setDatabase(source.getDatabase());
+        dml.setTable(source.getTable());
+        dml.setPkNames(source.getPkNames());
+        dml.setIsDdl(source.getIsDdl());
+        dml.setType(type);
+        dml.setEs(source.getEs());
+        dml.setTs(source.getTs());
+        dml.setSql(source.getSql());
+        dml.setData(new ArrayList<>());
+        dml.setOld(new ArrayList<>());
+        return dml;
+    }
+
+    private static class Row {
+
+        private final Dml           source;
+        private final boolean       passThrough;
+        private String              type;
+        private Map<String, Object> data;
+        private Map<String, Object> old;
+
+        Row(Dml source, String type, Map<String, Object> data, Map<String, Object> old){
+            this.source = source;
+            this.passThrough = data == null;
+            this.type = type;
+            this.data = data;
+            this.old = old;
+        }
+    }
+
+    private static class RowKey {
+
+        private final String       database;
+        private final String       table;
+        private final List<Object> values;
+
+        RowKey(Dml dml, Map<String, Object> data){
+            this.database = dml.getDatabase();
+            this.table = dml.getTable();
+            this.values = new ArrayList<>(dml.getPkNames().size());
+            for (String pkName : dml.getPkNames()) {
+                values.add(data.get(pkName));
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RowKey)) {
+                return false;
+            }
+            RowKey that = (RowKey) o;
+            return Objects.equals(database, that.database) && Objects.equals(table, that.table)
+                   && values.equals(that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(database, table, values);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.otter.canal.client.adapter.OuterAdapter;
+
+/**
+ * ETL任务运行状态, 记录读取/写入行数并支持取消
+ *
+ * <pre>
+ * 通过{@link #start(String)}注册到当前线程, 同一个任务名同时只有一个运行实例,
+ * 可以通过{@link #get(String)}查询进度或者取消
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class EtlMonitor {
+
+    private static final Map<String, EtlMonitor> RUNNING = new ConcurrentHashMap<>();
+    private static final ThreadLocal<EtlMonitor> CURRENT = new ThreadLocal<>();
+
+    private final String                         name;
+    private final long                           startTime;
+    private final AtomicLong                     readCount  = new AtomicLong();
+    private final AtomicLong                     writeCount = new AtomicLong();
+    private volatile boolean                     cancelled;
+    private OuterAdapter                         snapshotAdapter;                    // 全量增量衔接模式的适配器
+    private String                               watermarkTable;                     // 源库水位表
+
+    public EtlMonitor(String name){
+        this.name = name;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 注册任务并绑定到当前线程
+     */
+    public static EtlMonitor start(String name) {
+        EtlMonitor monitor = new EtlMonitor(name);
+        RUNNING.put(name, monitor);
+        CURRENT.set(monitor);
+        return monitor;
+    }
+
+    /**
+     * 任务结束, 解除注册
+     */
+    public static void finish(String name) {
+        EtlMonitor monitor = CURRENT.get();
+        if (monitor != null) {
+            RUNNING.remove(name, monitor);
+        }
+        CURRENT.remove();
+    }
+
+    /**
+     * 当前线程绑定的任务, 没有则返回null
+     */
+    public static EtlMonitor current() {
+        return CURRENT.get();
+    }
+
+    public static EtlMonitor get(String name) {
+        return RUNNING.get(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 开启全量增量衔接模式, 全量期间增量同步不停止
+     *
+     * @param adapter 执行etl的适配器, 与增量同步使用同一个实例
+     * @param watermarkTable 源库水位表
+     */
+    public void setSnapshot(OuterAdapter adapter, String watermarkTable) {
+        this.snapshotAdapter = adapter;
+        this.watermarkTable = watermarkTable;
+    }
+
+    public boolean isSnapshot() {
+        return snapshotAdapter != null;
+    }
+
+    public OuterAdapter getSnapshotAdapter() {
+        return snapshotAdapter;
+    }
+
+    public String getWatermarkTable() {
+        return watermarkTable;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void addRead(long count) {
+        readCount.addAndGet(count);
+    }
+
+    public void addWrite(long count) {
+        writeCount.addAndGet(count);
+    }
+
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * 平均写入速度(行/秒)
+     */
+    public long getWriteRate() {
+        long elapsed = Math.max(1L, System.currentTimeMillis() - startTime);
+        return writeCount.get() * 1000L / elapsed;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("task", name);
+        res.put("snapshot", isSnapshot());
+        res.put("cancelled", cancelled);
+        res.put("read", getReadCount());
+        res.put("written", getWriteCount());
+        res.put("rowsPerSecond", getWriteRate());
+        res.put("elapsed", System.currentTimeMillis() - startTime);
+        return res;
+    }
+}
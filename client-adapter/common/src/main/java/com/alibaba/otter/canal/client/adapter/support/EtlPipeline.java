@@ -0,0 +1,387 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ETL流水线: 流式读取 -> 转换 -> 目标端批量写入, 各阶段之间通过有界队列连接
+ *
+ * <pre>
+ * 1. 读取在调用线程中逐行读取流式ResultSet, 按批次放入队列
+ * 2. 转换线程将源端行数据转换为目标端的数据结构
+ * 3. 写入线程按批次调用目标端的批量写入
+ * 4. 队列满时上游阻塞(背压), 任一阶段失败或任务取消时所有阶段退出
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class EtlPipeline<T> {
+
+    private static final Logger   logger             = LoggerFactory.getLogger(EtlPipeline.class);
+
+    private static final int      DEFAULT_QUEUE_SIZE = 4;
+    private static final long     POLL_TIMEOUT       = 100L;                                     // 队列等待时间, 毫秒
+
+    private final String          name;
+    private final int             batchSize;
+    private final int             queueSize;
+    private final EtlMonitor      monitor;
+    private final ExecutorService executor;                                                      // 转换/写入线程池, 为null时每次执行单独创建
+
+    private volatile Throwable    error;
+
+    public EtlPipeline(String name, int batchSize, EtlMonitor monitor){
+        this(name, batchSize, DEFAULT_QUEUE_SIZE, monitor);
+    }
+
+    public EtlPipeline(String name, int batchSize, int queueSize, EtlMonitor monitor){
+        this(name, batchSize, queueSize, monitor, null);
+    }
+
+    /**
+     * @param executor 转换/写入线程池, 由调用方在整个导入任务中复用并负责关闭, 每次执行占用两个线程
+     */
+    public EtlPipeline(String name, int batchSize, EtlMonitor monitor, ExecutorService executor){
+        this(name, batchSize, DEFAULT_QUEUE_SIZE, monitor, executor);
+    }
+
+    public EtlPipeline(String name, int batchSize, int queueSize, EtlMonitor monitor, ExecutorService executor){
+        this.name = name;
+        this.batchSize = Math.max(1, batchSize);
+        this.queueSize = Math.max(1, queueSize);
+        this.monitor = monitor != null ? monitor : new EtlMonitor(name);
+        this.executor = executor;
+    }
+
+    /**
+     * 执行流水线, 返回写入的行数
+     *
+     * @param rs 流式结果集, 在调用线程中读取
+     * @param converter 行转换, 返回null代表跳过该行
+     * @param writer 批量写入, 在单独的线程中按顺序调用
+     */
+    public long run(ResultSet rs, RowConverter<T> converter, BatchWriter<T> writer) throws Exception {
+        BlockingQueue<List<Row>> rowQueue = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<List<T>> batchQueue = new ArrayBlockingQueue<>(queueSize);
+        AtomicLong written = new AtomicLong();
+
+        long start = System.currentTimeMillis();
+        ExecutorService executor = this.executor != null ? this.executor : Executors.newFixedThreadPool(2,
+            DaemonThreadFactory.daemonThreadFactory);
+        Future<?> convertFuture = null;
+        Future<?> writeFuture = null;
+        try {
+            convertFuture = executor.submit(() -> convert(rowQueue, batchQueue, converter));
+            writeFuture = executor.submit(() -> write(batchQueue, writer, written));
+            read(rs, rowQueue);
+            await(convertFuture);
+            await(writeFuture);
+        } finally {
+            if (this.executor == null) {
+                executor.shutdownNow();
+            } else {
+                // 共用的线程池不能关闭, 只中断本次执行的任务
+                cancel(convertFuture);
+                cancel(writeFuture);
+            }
+        }
+
+        if (error != null) {
+            throw error instanceof Exception ? (Exception) error : new RuntimeException(error);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("{} etl pipeline written {} rows, elapsed time: {}",
+                name,
+                written.get(),
+                System.currentTimeMillis() - start);
+        }
+        return written.get();
+    }
+
+    private void read(ResultSet rs, BlockingQueue<List<Row>> rowQueue) {
+        try {
+            Columns columns = new Columns(rs.getMetaData());
+            List<Row> batch = new ArrayList<>(batchSize);
+            while (rs.next()) {
+                if (stopped()) {
+                    // 流式结果集关闭时会读完剩余数据, 取消查询直接结束
+                    cancelQuery(rs);
+                    return;
+                }
+                batch.add(columns.read(rs));
+                if (batch.size() >= batchSize) {
+                    monitor.addRead(batch.size());
+                    if (!offer(rowQueue, batch)) {
+                        cancelQuery(rs);
+                        return;
+                    }
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                monitor.addRead(batch.size());
+                if (!offer(rowQueue, batch)) {
+                    return;
+                }
+            }
+            offer(rowQueue, new ArrayList<>()); // 空批次代表结束
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void convert(BlockingQueue<List<Row>> rowQueue, BlockingQueue<List<T>> batchQueue,
+                         RowConverter<T> converter) {
+        try {
+            List<Row> rows;
+            while ((rows = poll(rowQueue)) != null) {
+                if (rows.isEmpty()) {
+                    offer(batchQueue, new ArrayList<>());
+                    return;
+                }
+                List<T> batch = new ArrayList<>(rows.size());
+                for (Row row : rows) {
+                    T item = converter.convert(row);
+                    if (item != null) {
+                        batch.add(item);
+                    }
+                }
+                if (!batch.isEmpty() && !offer(batchQueue, batch)) {
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void write(BlockingQueue<List<T>> batchQueue, BatchWriter<T> writer, AtomicLong written) {
+        try {
+            List<T> batch;
+            while ((batch = poll(batchQueue)) != null && !batch.isEmpty()) {
+                writer.write(batch);
+                written.addAndGet(batch.size());
+                monitor.addWrite(batch.size());
+            }
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private boolean stopped() {
+        return error != null || monitor.isCancelled();
+    }
+
+    private void fail(Throwable e) {
+        if (error == null) {
+            error = e;
+        }
+    }
+
+    private <E> boolean offer(BlockingQueue<E> queue, E element) throws InterruptedException {
+        while (!stopped()) {
+            if (queue.offer(element, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private <E> E poll(BlockingQueue<E> queue) throws InterruptedException {
+        while (!stopped()) {
+            E element = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } catch (ExecutionException e) {
+            fail(e.getCause());
+        }
+    }
+
+    private static void cancel(Future<?> future) {
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+    private void cancelQuery(ResultSet rs) {
+        try {
+            rs.getStatement().cancel();
+        } catch (Exception e) {
+            logger.warn("{} etl cancel query error: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 结果集的列信息, 所有行共用
+     */
+    private static class Columns {
+
+        private final String[]             names;
+        private final int[]                types;
+        private final Map<String, Integer> ordinals = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        Columns(ResultSetMetaData metaData) throws SQLException{
+            int columnCount = metaData.getColumnCount();
+            names = new String[columnCount];
+            types = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                names[i] = metaData.getColumnLabel(i + 1);
+                types[i] = metaData.getColumnType(i + 1);
+                // 与ResultSet按列名取值一致, 同名列取第一个
+                ordinals.putIfAbsent(names[i], i);
+            }
+        }
+
+        Row read(ResultSet rs) throws SQLException {
+            Object[] values = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                Object value = rs.getObject(i + 1);
+                if (value != null && (types[i] == Types.BIT || types[i] == Types.BOOLEAN)) {
+                    // 与JdbcTypeUtil.getRSData一致
+                    value = rs.getByte(i + 1);
+                }
+                values[i] = value;
+            }
+            return new Row(this, values);
+        }
+    }
+
+    /**
+     * 源端一行数据, 可以按Map方式访问, 列名不区分大小写
+     */
+    public static class Row extends AbstractMap<String, Object> {
+
+        private final Columns  columns;
+        private final Object[] values;
+
+        Row(Columns columns, Object[] values){
+            this.columns = columns;
+            this.values = values;
+        }
+
+        public int getColumnCount() {
+            return values.length;
+        }
+
+        public String getColumnName(int index) {
+            return columns.names[index];
+        }
+
+        public int getColumnType(int index) {
+            return columns.types[index];
+        }
+
+        public Object getValue(int index) {
+            return values[index];
+        }
+
+        /**
+         * 按列名取值, 列不存在时抛出异常, 与ResultSet.getObject(columnLabel)一致
+         */
+        public Object getValue(String columnName) throws SQLException {
+            Integer ordinal = columns.ordinals.get(columnName);
+            if (ordinal == null) {
+                throw new SQLException("Column '" + columnName + "' not found.");
+            }
+            return values[ordinal];
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer ordinal = key instanceof String ? columns.ordinals.get(key) : null;
+            return ordinal == null ? null : values[ordinal];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && columns.ordinals.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < values.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (index >= values.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = index++;
+                            return new SimpleImmutableEntry<>(columns.names[i], values[i]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return values.length;
+                }
+            };
+        }
+    }
+
+    /**
+     * 行转换, 在转换线程中执行
+     */
+    public interface RowConverter<T> {
+
+        T convert(Row row) throws Exception;
+    }
+
+    /**
+     * 批量写入, 在写入线程中按顺序执行
+     */
+    public interface BatchWriter<T> {
+
+        void write(List<T> batch) throws Exception;
+    }
+}
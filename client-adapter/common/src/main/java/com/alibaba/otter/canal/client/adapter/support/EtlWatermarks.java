@@ -0,0 +1,254 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.otter.canal.client.adapter.OuterAdapter;
+
+/**
+ * 全量与增量衔接的水位线处理(参考DBLog)
+ *
+ * <pre>
+ * 1. 全量按主键分块, 每块查询前在源库水位表写入低水位, 查询后写入高水位
+ * 2. 增量消费到低水位后, 记录该表在低/高水位之间变更过的主键
+ * 3. 消费到高水位时, 块内未变更过的行在该位置作为DELETE + INSERT插入到增量数据中, 变更过的行以增量为准
+ * 4. 插入的数据所在批次ack之后该块才算完成, 批次回滚重新消费时会再次插入
+ * </pre>
+ *
+ * 注意: 水位表需要在canal的订阅范围内, 并且与同步表在同一个有序的消费通道中(tcp或者单分区),
+ * 按分区并行消费(partitionParallelism > 1)时不支持, 由/etl接口拒绝
+ *
+ * @version 1.1.6
+ */
+public class EtlWatermarks {
+
+    public static final String            LOW    = "L";
+    public static final String            HIGH   = "H";
+
+    private static final Map<String, Chunk> CHUNKS = new ConcurrentHashMap<>();
+
+    /**
+     * 注册新的分块
+     */
+    public static Chunk register(OuterAdapter adapter, String watermarkTable, String database, String table,
+                                 List<String> pkNames) {
+        Chunk chunk = new Chunk(adapter, watermarkTable, database, table, pkNames);
+        CHUNKS.put(chunk.id, chunk);
+        return chunk;
+    }
+
+    public static void unregister(Chunk chunk) {
+        CHUNKS.remove(chunk.id);
+    }
+
+    /**
+     * 处理适配器的增量数据, 在消费线程中调用
+     *
+     * @param adapter 适配器
+     * @param dmls 增量数据
+     * @param emitted 本批次插入了全量数据的分块, ack后需要调用{@link #ack(Collection)}
+     * @return 插入全量数据后的列表
+     */
+    public static List<Dml> apply(OuterAdapter adapter, List<Dml> dmls, Collection<Chunk> emitted) {
+        if (CHUNKS.isEmpty() || dmls == null || dmls.isEmpty()) {
+            return dmls;
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        for (Chunk chunk : CHUNKS.values()) {
+            if (chunk.adapter == adapter) {
+                chunks.add(chunk);
+            }
+        }
+        if (chunks.isEmpty()) {
+            return dmls;
+        }
+
+        List<Dml> result = new ArrayList<>(dmls.size());
+        for (Dml dml : dmls) {
+            for (Chunk chunk : chunks) {
+                if (chunk.isWatermark(dml)) {
+                    List<Dml> rows = chunk.onWatermark(dml);
+                    if (rows != null) {
+                        result.addAll(rows);
+                        emitted.add(chunk);
+                    }
+                } else {
+                    chunk.onChange(dml);
+                }
+            }
+            result.add(dml);
+        }
+        return result;
+    }
+
+    /**
+     * 批次ack后完成对应的分块
+     */
+    public static void ack(Collection<Chunk> emitted) {
+        for (Chunk chunk : emitted) {
+            chunk.done.countDown();
+        }
+    }
+
+    /**
+     * 全量分块
+     */
+    public static class Chunk {
+
+        private final String                                 id       = UUID.randomUUID().toString();
+        private final OuterAdapter                           adapter;
+        private final String                                 watermarkDatabase;
+        private final String                                 watermarkTable;
+        private final String                                 database;
+        private final String                                 table;
+        private final List<String>                           pkNames;
+        private final CountDownLatch                         done     = new CountDownLatch(1);
+
+        // rows在写入高水位之前设置, 其余字段在消费线程中更新
+        private volatile Map<List<String>, Map<String, Object>> rows;
+        private final Set<List<String>>                      changed  = ConcurrentHashMap.newKeySet(); // 低/高水位之间变更过的主键
+        private volatile boolean                             lowSeen;                                  // 已经消费到低水位
+        private volatile boolean                             open;                                     // 处于低/高水位之间
+
+        Chunk(OuterAdapter adapter, String watermarkTable, String database, String table, List<String> pkNames){
+            this.adapter = adapter;
+            int idx = watermarkTable.indexOf('.');
+            this.watermarkDatabase = idx > 0 ? watermarkTable.substring(0, idx) : null;
+            this.watermarkTable = idx > 0 ? watermarkTable.substring(idx + 1) : watermarkTable;
+            this.database = database;
+            this.table = table;
+            this.pkNames = pkNames;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * 设置块内数据, 需要在写入高水位之前调用
+         */
+        public void setRows(List<Map<String, Object>> data) {
+            Map<List<String>, Map<String, Object>> map = new LinkedHashMap<>();
+            for (Map<String, Object> row : data) {
+                map.put(key(row), row);
+            }
+            this.rows = map;
+        }
+
+        /**
+         * 等待块内数据写入目标端并ack
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return done.await(timeout, unit);
+        }
+
+        private boolean isWatermark(Dml dml) {
+            return !Boolean.TRUE.equals(dml.getIsDdl()) && watermarkTable.equalsIgnoreCase(dml.getTable())
+                   && (watermarkDatabase == null || watermarkDatabase.equalsIgnoreCase(dml.getDatabase()));
+        }
+
+        private List<Dml> onWatermark(Dml dml) {
+            if (!"INSERT".equalsIgnoreCase(dml.getType()) && !"UPDATE".equalsIgnoreCase(dml.getType())) {
+                return null;
+            }
+            List<Dml> emitted = null;
+            for (int i = 0; i < dml.rowCount(); i++) {
+                if (!id.equals(String.valueOf(dml.getValue(i, "id")))) {
+                    continue;
+                }
+                Object value = dml.getValue(i, "value");
+                if (LOW.equals(value)) {
+                    // 重新消费时从低水位重新记录
+                    changed.clear();
+                    lowSeen = true;
+                    open = true;
+                } else if (HIGH.equals(value) && lowSeen) {
+                    // 回滚后从低/高水位之间重新消费时, 沿用之前记录的变更主键
+                    open = false;
+                    emitted = toDmls(dml);
+                }
+            }
+            return emitted;
+        }
+
+        private void onChange(Dml dml) {
+            if (!open || Boolean.TRUE.equals(dml.getIsDdl()) || !table.equalsIgnoreCase(dml.getTable())
+                || !database.equalsIgnoreCase(dml.getDatabase())) {
+                return;
+            }
+            for (int i = 0; i < dml.rowCount(); i++) {
+                Map<String, Object> data = dml.getRow(i);
+                changed.add(key(data));
+                if (dml.getOld() != null && i < dml.getOld().size() && dml.getOld().get(i) != null) {
+                    // 主键变更时旧主键也算变更
+                    Map<String, Object> old = new LinkedHashMap<>(data);
+                    old.putAll(dml.getOld().get(i));
+                    changed.add(key(old));
+                }
+            }
+        }
+
+        private List<Dml> toDmls(Dml watermark) {
+            List<Map<String, Object>> data = new ArrayList<>();
+            if (rows != null) {
+                rows.forEach((key, row) -> {
+                    if (!changed.contains(key)) {
+                        data.add(row);
+                    }
+                });
+            }
+            List<Dml> dmls = new ArrayList<>(2);
+            if (!data.isEmpty()) {
+                // 目标端可能已经存在该行, 先删除再插入
+                dmls.add(newDml(watermark, "DELETE", data));
+                dmls.add(newDml(watermark, "INSERT", data));
+            }
+            return dmls;
+        }
+
+        private Dml newDml(Dml watermark, String type, List<Map<String, Object>> data) {
+            Dml dml = new Dml();
+            dml.setDestination(watermark.getDestination());
+            dml.setGroupId(watermark.getGroupId());
+            dml.setDatabase(database);
+            dml.setTable(table);
+            dml.setPkNames(pkNames);
+            dml.setIsDdl(false);
+            dml.setType(type);
+            dml.setEs(watermark.getEs());
+            dml.setTs(watermark.getTs());
+            dml.setData(new ArrayList<>(data));
+            return dml;
+        }
+
+        private List<String> key(Map<String, Object> row) {
+            List<String> key = new ArrayList<>(pkNames.size());
+            for (String pkName : pkNames) {
+                Object value = value(row, pkName);
+                key.add(value == null ? null : value.toString());
+            }
+            return key;
+        }
+
+        private static Object value(Map<String, Object> row, String columnName) {
+            Object value = row.get(columnName);
+            if (value == null && !row.containsKey(columnName)) {
+                // 列名不区分大小写, 元数据与结果集/binlog中的列名大小写可能不一致
+                for (Map.Entry<String, Object> entry : row.entrySet()) {
+                    if (columnName.equalsIgnoreCase(entry.getKey())) {
+                        return entry.getValue();
+                    }
+                }
+            }
+            return value;
+        }
+    }
+}
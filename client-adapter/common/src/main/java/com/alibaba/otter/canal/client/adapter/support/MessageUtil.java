@@ -164,9 +164,14 @@ public class MessageUtil {
         // if (flatMessage.getSqlType() == null || flatMessage.getMysqlType() == null) {
         // throw new RuntimeException("SqlType or mysqlType is null");
         // }
-        List<Map<String, Object>> data = commonMessage.getData();
-        if (data != null) {
-            dml.setData(data);
+        if (commonMessage.columnar() != null) {
+            // 列式数据直接共用, 不生成Map
+            dml.setColumnar(commonMessage.columnar());
+        } else {
+            List<Map<String, Object>> data = commonMessage.getData();
+            if (data != null) {
+                dml.setData(data);
+            }
         }
         List<Map<String, Object>> old = commonMessage.getOld();
         if (old != null) {
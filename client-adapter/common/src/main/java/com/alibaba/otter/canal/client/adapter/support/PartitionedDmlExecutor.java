@@ -0,0 +1,227 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.alibaba.otter.canal.connector.core.consumer.ColumnarRows;
+
+/**
+ * 按表名 + 主键hash分区的并行同步执行器
+ *
+ * <pre>
+ * 1. 同一个dml中的行按主键hash拆分到各个分区, 同一个主键的变更始终落在同一个分区并按原始顺序执行
+ * 2. 没有主键的表整表落在同一个分区
+ * 3. 每个分区一个单线程executor, 所有分区执行完成(包括分区内的提交)后才返回, 作为批次ack的屏障
+ * 4. DDL作为分界, 前面的数据全部完成后单独执行, 再继续后面的数据
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class PartitionedDmlExecutor {
+
+    private final int               threads;
+    private final ExecutorService[] executors;
+
+    public PartitionedDmlExecutor(int threads){
+        this.threads = Math.max(1, threads);
+        this.executors = new ExecutorService[this.threads];
+        for (int i = 0; i < this.threads; i++) {
+            executors[i] = Executors.newSingleThreadExecutor(DaemonThreadFactory.daemonThreadFactory);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * 分区并行执行
+     *
+     * @param dmls 批量 DML
+     * @param applier 分区执行回调, 同一个分区的调用在同一个线程内串行执行
+     */
+    public void execute(List<Dml> dmls, PartitionApplier applier) {
+        if (dmls == null || dmls.isEmpty()) {
+            return;
+        }
+        if (threads == 1) {
+            apply(applier, 0, dmls);
+            return;
+        }
+
+        List<Dml> segment = new ArrayList<>();
+        for (Dml dml : dmls) {
+            if (Boolean.TRUE.equals(dml.getIsDdl())) {
+                executeSegment(segment, applier);
+                segment.clear();
+                apply(applier, 0, Arrays.asList(dml));
+            } else {
+                segment.add(dml);
+            }
+        }
+        executeSegment(segment, applier);
+    }
+
+    public void close() {
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+    }
+
+    private void executeSegment(List<Dml> dmls, PartitionApplier applier) {
+        if (dmls.isEmpty()) {
+            return;
+        }
+        List<Dml>[] partitions = partition(dmls);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            if (partitions[i].isEmpty()) {
+                continue;
+            }
+            int partition = i;
+            futures.add(executors[i].submit(() -> apply(applier, partition, partitions[partition])));
+        }
+
+        RuntimeException error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    Throwable cause = e.getCause();
+                    error = cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 按主键拆分dml, 每个分区内保持原始顺序
+     */
+    @SuppressWarnings("unchecked")
+    private List<Dml>[] partition(List<Dml> dmls) {
+        List<Dml>[] partitions = new List[threads];
+        for (int i = 0; i < threads; i++) {
+            partitions[i] = new ArrayList<>();
+        }
+        for (Dml dml : dmls) {
+            if (dml.rowCount() == 0 || dml.getPkNames() == null || dml.getPkNames().isEmpty()) {
+                partitions[hash(dml, null, 0)].add(dml);
+                continue;
+            }
+            if (dml.columnar() != null) {
+                partitionColumnar(dml, partitions);
+                continue;
+            }
+
+            List<Map<String, Object>> data = dml.getData();
+
+            Dml[] parts = new Dml[threads];
+            for (int i = 0; i < data.size(); i++) {
+                int hash = hash(dml, dml, i);
+                Dml part = parts[hash];
+                if (part == null) {
+                    part = copyOf(dml);
+                    parts[hash] = part;
+                    partitions[hash].add(part);
+                }
+                part.getData().add(data.get(i));
+                if (part.getOld() != null) {
+                    part.getOld().add(i < dml.getOld().size() ? dml.getOld().get(i) : null);
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * 列式数据按行拆分, 不生成Map
+     */
+    @SuppressWarnings("unchecked")
+    private void partitionColumnar(Dml dml, List<Dml>[] partitions) {
+        ColumnarRows columnar = dml.columnar();
+        List<Object[]>[] rows = new List[threads];
+        Dml[] parts = new Dml[threads];
+        for (int i = 0; i < columnar.size(); i++) {
+            int hash = hash(dml, dml, i);
+            if (parts[hash] == null) {
+                parts[hash] = copyOf(dml);
+                rows[hash] = new ArrayList<>();
+                partitions[hash].add(parts[hash]);
+            }
+            rows[hash].add(columnar.getRows().get(i));
+            if (parts[hash].getOld() != null) {
+                parts[hash].getOld().add(i < dml.getOld().size() ? dml.getOld().get(i) : null);
+            }
+        }
+        for (int i = 0; i < threads; i++) {
+            if (parts[i] != null) {
+                parts[i].setColumnar(new ColumnarRows(columnar.getSchema(), rows[i]));
+            }
+        }
+    }
+
+    private int hash(Dml dml, Dml rows, int row) {
+        int hash = (dml.getDatabase() + "." + dml.getTable()).hashCode();
+        if (rows != null) {
+            for (String pkName : dml.getPkNames()) {
+                Object value = rows.getValue(row, pkName);
+                hash = 31 * hash + (value == null ? 0 : value.toString().hashCode());
+            }
+        }
+        return Math.abs(hash % threads);
+    }
+
+    private static void apply(PartitionApplier applier, int partition, List<Dml> dmls) {
+        try {
+            applier.apply(partition, dmls);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Dml copyOf(Dml source) {
+        Dml dml = new Dml();
+        dml.setDestination(source.getDestination());
+        dml.setGroupId(source.getGroupId());
+        dml.setDatabase(source.getDatabase());
+        dml.setTable(source.getTable());
+        dml.setPkNames(source.getPkNames());
+        dml.setIsDdl(source.getIsDdl());
+        dml.setType(source.getType());
+        dml.setEs(source.getEs());
+        dml.setTs(source.getTs());
+        dml.setSql(source.getSql());
+        dml.setData(new ArrayList<>());
+        dml.setOld(source.getOld() != null ? new ArrayList<>() : null);
+        return dml;
+    }
+
+    /**
+     * 分区执行回调
+     */
+    public interface PartitionApplier {
+
+        /**
+         * 在分区线程中按顺序执行dml, 返回前需要完成该分区的提交
+         *
+         * @param partition 分区号
+         * @param dmls 该分区的dml
+         */
+        void apply(int partition, List<Dml> dmls) throws Exception;
+    }
+}
@@ -0,0 +1,237 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.druid.pool.DruidDataSource;
+
+/**
+ * sql执行器
+ *
+ * <pre>
+ * 1. sql使用占位符, 参数通过PreparedStatement绑定, 相同sql的语句可以复用
+ * 2. PreparedStatement由连接池按连接缓存(LRU), 见{@link #enableStatementCache(DruidDataSource)}
+ * 3. 按sql记录源库查询以及目标库更新的耗时分布, 通过{@link #stats()}查看
+ * 4. IN列表的参数个数按{@link #inListSize(int)}补齐到固定的几档, 避免每种长度各占一个缓存的语句
+ * 5. 统计按归一化的sql(字面量、IN列表、OR条件折叠)记录, 超过上限时淘汰执行次数最少的sql
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class SqlExecutor {
+
+    private static final Logger                 logger                   = LoggerFactory
+        .getLogger(SqlExecutor.class);
+
+    public static final int                     STATEMENT_CACHE_SIZE     = 100;                                // 每个连接缓存的PreparedStatement数
+
+    private static final long[]                 BUCKETS                  = { 1, 5, 10, 50, 100, 500, 1000, 5000 }; // 耗时分布的上界, 毫秒
+    private static final int                    MAX_STATS                = 1000;                               // 最多记录的sql数
+    private static final int[]                  IN_LIST_SIZES            = { 1, 10, 50, 100, 500 };            // IN列表补齐的参数个数
+
+    private static final Pattern                STRING_LITERAL           = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern                NUMBER_LITERAL           = Pattern
+        .compile("(?<![\\w.`])-?\\d+(?:\\.\\d+)?(?![\\w.`])");
+    private static final Pattern                IN_LIST                  = Pattern
+        .compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern                OR_LIST                  = Pattern
+        .compile("(?i)(\\([^()]*\\))(?:\\s+OR\\s+\\1)+");
+
+    private static final Map<String, SqlStats>  STATS                    = new ConcurrentHashMap<>();
+    private static final AtomicBoolean          STATS_FULL_LOGGED        = new AtomicBoolean();
+
+    /**
+     * 开启连接池的PreparedStatement缓存, 需要在连接池init之前调用
+     */
+    public static void enableStatementCache(DruidDataSource ds) {
+        ds.setPoolPreparedStatements(true);
+        ds.setMaxPoolPreparedStatementPerConnectionSize(STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * 流式查询
+     *
+     * @param ds 数据源
+     * @param sql 带占位符的sql
+     * @param values 参数值, 可以为空
+     * @param fun 结果集处理
+     * @return fun的返回值
+     */
+    public static Object query(DataSource ds, String sql, List<Object> values, Function<ResultSet, Object> fun) {
+        try (Connection conn = ds.getConnection();
+                PreparedStatement pstmt = conn
+                    .prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+            if (values != null) {
+                for (int i = 0; i < values.size(); i++) {
+                    pstmt.setObject(i + 1, values.get(i));
+                }
+            }
+            long start = System.nanoTime();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                record(sql, (System.nanoTime() - start) / 1000000L);
+                return fun.apply(rs);
+            }
+        } catch (Exception e) {
+            logger.error("sqlRs has error, sql: {} ", sql);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 执行更新并记录耗时, 参数已经绑定, 由调用方关闭语句
+     *
+     * @param sql 带占位符的sql, 作为统计的key
+     * @param pstmt 由sql创建的语句
+     * @return {@link PreparedStatement#execute()}的返回值
+     */
+    public static boolean execute(String sql, PreparedStatement pstmt) throws SQLException {
+        long start = System.nanoTime();
+        boolean result = pstmt.execute();
+        record(sql, (System.nanoTime() - start) / 1000000L);
+        return result;
+    }
+
+    /**
+     * 执行批量更新并记录耗时, 一个批次记录一次
+     *
+     * @param sql 带占位符的sql, 作为统计的key
+     * @param pstmt 由sql创建并已经addBatch的语句
+     * @return {@link PreparedStatement#executeBatch()}的返回值
+     */
+    public static int[] executeBatch(String sql, PreparedStatement pstmt) throws SQLException {
+        long start = System.nanoTime();
+        int[] result = pstmt.executeBatch();
+        record(sql, (System.nanoTime() - start) / 1000000L);
+        return result;
+    }
+
+    /**
+     * IN列表补齐后的参数个数: 1/10/50/100/500, 超过500时补齐到500的整数倍, 多出的位置重复最后一个值
+     *
+     * @param size 实际的参数个数
+     * @return 补齐后的参数个数
+     */
+    public static int inListSize(int size) {
+        for (int inListSize : IN_LIST_SIZES) {
+            if (size <= inListSize) {
+                return inListSize;
+            }
+        }
+        int max = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        return (size + max - 1) / max * max;
+    }
+
+    /**
+     * 统计使用的sql: 字面量替换为?, IN列表和结构相同的OR条件折叠为一项
+     *
+     * @param sql 原始sql
+     * @return 归一化的sql
+     */
+    public static String normalize(String sql) {
+        String res = STRING_LITERAL.matcher(sql).replaceAll("?");
+        res = NUMBER_LITERAL.matcher(res).replaceAll("?");
+        res = IN_LIST.matcher(res).replaceAll("IN (?...)");
+        // 参数替换为?之后各行的条件相同
+        return OR_LIST.matcher(res).replaceAll("$1 OR ...");
+    }
+
+    /**
+     * 各sql的执行耗时统计, 按平均耗时倒序
+     */
+    public static Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> res = new LinkedHashMap<>();
+        STATS.entrySet()
+            .stream()
+            .sorted((e1, e2) -> Long.compare(e2.getValue().avg(), e1.getValue().avg()))
+            .forEach(e -> res.put(e.getKey(), e.getValue().toMap()));
+        return res;
+    }
+
+    public static void resetStats() {
+        STATS.clear();
+        STATS_FULL_LOGGED.set(false);
+    }
+
+    private static void record(String sql, long elapsed) {
+        String key = normalize(sql);
+        SqlStats stats = STATS.get(key);
+        if (stats == null) {
+            if (STATS.size() >= MAX_STATS) {
+                evict();
+            }
+            stats = STATS.computeIfAbsent(key, k -> new SqlStats());
+        }
+        stats.record(elapsed);
+    }
+
+    /**
+     * 统计数达到上限时淘汰执行次数最少的sql
+     */
+    private static void evict() {
+        if (STATS_FULL_LOGGED.compareAndSet(false, true)) {
+            logger.warn("sql stats reach the limit of {} statements, the least executed ones are evicted", MAX_STATS);
+        }
+        STATS.entrySet()
+            .stream()
+            .min((e1, e2) -> Long.compare(e1.getValue().count.get(), e2.getValue().count.get()))
+            .ifPresent(e -> STATS.remove(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * 单条sql的耗时统计
+     */
+    private static class SqlStats {
+
+        private final AtomicLong      count     = new AtomicLong();
+        private final AtomicLong      totalTime = new AtomicLong();
+        private final AtomicLong      maxTime   = new AtomicLong();
+        private final AtomicLongArray buckets   = new AtomicLongArray(BUCKETS.length + 1);
+
+        void record(long elapsed) {
+            count.incrementAndGet();
+            totalTime.addAndGet(elapsed);
+            maxTime.accumulateAndGet(elapsed, Math::max);
+            int i = 0;
+            while (i < BUCKETS.length && elapsed > BUCKETS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+        }
+
+        long avg() {
+            long cnt = count.get();
+            return cnt == 0 ? 0 : totalTime.get() / cnt;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> res = new LinkedHashMap<>();
+            res.put("count", count.get());
+            res.put("avg", avg());
+            res.put("max", maxTime.get());
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < BUCKETS.length; i++) {
+                histogram.put("<=" + BUCKETS[i] + "ms", buckets.get(i));
+            }
+            histogram.put(">" + BUCKETS[BUCKETS.length - 1] + "ms", buckets.get(BUCKETS.length));
+            res.put("histogram", histogram);
+            return res;
+        }
+    }
+}
@@ -34,36 +34,16 @@ public class Util {
      * 通过DS执行sql
      */
     public static Object sqlRS(DataSource ds, String sql, Function<ResultSet, Object> fun) {
-        try (Connection conn = ds.getConnection();
-                Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-            stmt.setFetchSize(Integer.MIN_VALUE);
-            try (ResultSet rs = stmt.executeQuery(sql)) {
-                return fun.apply(rs);
-            }
-        } catch (Exception e) {
-            logger.error("sqlRs has error, sql: {} ", sql);
-            throw new RuntimeException(e);
-        }
+        return SqlExecutor.query(ds, sql, null, fun);
     }
 
+    /**
+     * 通过DS执行带占位符的sql
+     *
+     * @see SqlExecutor#query(DataSource, String, List, Function)
+     */
     public static Object sqlRS(DataSource ds, String sql, List<Object> values, Function<ResultSet, Object> fun) {
-        try (Connection conn = ds.getConnection()) {
-            try (PreparedStatement pstmt = conn
-                .prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-                pstmt.setFetchSize(Integer.MIN_VALUE);
-                if (values != null) {
-                    for (int i = 0; i < values.size(); i++) {
-                        pstmt.setObject(i + 1, values.get(i));
-                    }
-                }
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    return fun.apply(rs);
-                }
-            }
-        } catch (Exception e) {
-            logger.error("sqlRs has error, sql: {} ", sql);
-            throw new RuntimeException(e);
-        }
+        return SqlExecutor.query(ds, sql, values, fun);
     }
 
     /**
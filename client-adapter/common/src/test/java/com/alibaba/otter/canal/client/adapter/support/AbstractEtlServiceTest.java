@@ -0,0 +1,405 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.h2.api.Trigger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.druid.filter.FilterAdapter;
+import com.alibaba.druid.filter.FilterChain;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.proxy.jdbc.StatementProxy;
+import com.alibaba.otter.canal.client.adapter.OuterAdapter;
+
+/**
+ * 全量导入, 使用h2内存库
+ *
+ * <pre>
+ * 1. 按主键范围分段导入: 范围查询、分段、断点续传的位置
+ * 2. 全量增量衔接模式: 由触发器按提交顺序生成模拟的增量数据
+ * </pre>
+ */
+public class AbstractEtlServiceTest {
+
+    private static final String               URL     = "jdbc:h2:mem:PUBLIC;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final String               KEY     = "etl_snapshot_test";
+    private static final BlockingQueue<Dml>   BINLOG  = new LinkedBlockingQueue<>();
+    private static volatile String            lowSql;                                // 写入低水位之后执行的变更
+
+    private final OuterAdapter                adapter = (OuterAdapter) Proxy.newProxyInstance(getClass()
+        .getClassLoader(), new Class[] { OuterAdapter.class }, (proxy, method, args) -> {
+            throw new UnsupportedOperationException(method.getName());
+        });
+    private final Map<Long, String>           target  = new TreeMap<>();
+    private final List<Object>                loaded  = new ArrayList<>();            // 由全量写入的主键
+    private Connection                        keepAlive;
+    private DruidDataSource                   dataSource;
+    private Thread                            consumer;
+
+    @Before
+    public void setUp() throws Exception {
+        BINLOG.clear();
+        keepAlive = DriverManager.getConnection(URL, "sa", "");
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS canal_watermark");
+            stmt.execute("CREATE TABLE canal_watermark (id VARCHAR(64) PRIMARY KEY, value VARCHAR(8))");
+            // 主键元数据中的列名为小写, 结果集和增量数据中的列名为大写
+            stmt.execute("DROP TABLE IF EXISTS etl_user");
+            stmt.execute("CREATE TABLE etl_user (id BIGINT PRIMARY KEY, name VARCHAR(64))");
+            stmt.execute("INSERT INTO etl_user VALUES (1, 'a'), (2, 'b'), (3, 'c')");
+            stmt.execute("CREATE TRIGGER canal_watermark_binlog AFTER INSERT, UPDATE ON canal_watermark FOR EACH ROW CALL \""
+                         + BinlogTrigger.class.getName() + "\"");
+            stmt.execute("CREATE TRIGGER etl_user_binlog AFTER INSERT, UPDATE, DELETE ON etl_user FOR EACH ROW CALL \""
+                         + BinlogTrigger.class.getName() + "\"");
+        }
+
+        dataSource = new DruidDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl(URL);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        // 流式查询的fetchSize为Integer.MIN_VALUE, h2不支持
+        dataSource.setProxyFilters(Collections.singletonList(new FilterAdapter() {
+
+            @Override
+            public void statement_setFetchSize(FilterChain chain, StatementProxy statement, int rows) {
+            }
+        }));
+        DatasourceConfig.DATA_SOURCES.put(KEY, dataSource);
+
+        consumer = new Thread(this::consume);
+        consumer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        lowSql = null;
+        consumer.interrupt();
+        consumer.join(5000);
+        DatasourceConfig.DATA_SOURCES.remove(KEY);
+        dataSource.close();
+        keepAlive.close();
+    }
+
+    @Test
+    public void testKeyRange() throws Exception {
+        KeyRangeEtlService service = new KeyRangeEtlService("id", -1);
+        Assert.assertArrayEquals(new long[] { 1L, 3L },
+            service.getKeyRange(dataSource, "SELECT * FROM etl_user", new ArrayList<>(), "id"));
+        Assert.assertArrayEquals(new long[] { 2L, 3L },
+            service.getKeyRange(dataSource,
+                "SELECT * FROM etl_user WHERE id > ? ORDER BY id",
+                new ArrayList<>(Collections.singletonList(1L)),
+                "id"));
+        // 没有数据
+        Assert.assertArrayEquals(new long[] { 0L, -1L },
+            service.getKeyRange(dataSource, "SELECT * FROM etl_user WHERE id > 10", new ArrayList<>(), "id"));
+        // 不支持的sql以及非数值字段按LIMIT分页
+        Assert.assertNull(service
+            .getKeyRange(dataSource, "SELECT DISTINCT name FROM etl_user", new ArrayList<>(), "id"));
+        Assert.assertNull(service.getKeyRange(dataSource, "SELECT * FROM etl_user", new ArrayList<>(), "name"));
+    }
+
+    @Test
+    public void testKeyRangeSplit() {
+        Assert.assertEquals(10000L, AbstractEtlService.keyRangeStep(1L, 25000L));
+        // 主键稀疏时限制分段总数
+        long step = AbstractEtlService.keyRangeStep(0L, 100000000000L);
+        Assert.assertEquals(100001L, step);
+        Assert.assertTrue(100000000000L / step + 1 <= 1000000L);
+
+        Assert.assertEquals("id >= 1 AND id < 10001", AbstractEtlService.keyRangeCondition("id", 1L, 10000L, 0, 3));
+        Assert.assertEquals("id >= 10001 AND id < 20001",
+            AbstractEtlService.keyRangeCondition("id", 1L, 10000L, 1, 3));
+        // 最后一段不设上界
+        Assert.assertEquals("id >= 20001", AbstractEtlService.keyRangeCondition("id", 1L, 10000L, 2, 3));
+    }
+
+    @Test
+    public void testImportByKeyRange() throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("INSERT INTO etl_user VALUES (15000, 'd'), (25000, 'e')");
+        }
+        KeyRangeEtlService service = new KeyRangeEtlService("id", -1);
+        EtlResult result = service.importData("SELECT * FROM etl_user", null);
+
+        Assert.assertTrue(result.getErrorMessage(), result.getSucceeded());
+        Assert.assertEquals(3, service.sqls.size());
+        Assert.assertTrue(service.sqls.get(0), service.sqls.get(0).contains("id >= 1"));
+        Assert.assertTrue(service.sqls.get(0), service.sqls.get(0).contains("id < 10001"));
+        Assert.assertTrue(service.sqls.get(2), service.sqls.get(2).contains("id >= 20001"));
+        Assert.assertFalse(service.sqls.get(2), service.sqls.get(2).contains("id < "));
+        Assert.assertEquals(new TreeMap<>(service.rows), service.rows);
+        Assert.assertEquals(5, service.rows.size());
+    }
+
+    @Test
+    public void testImportByKeyRangeResume() throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("INSERT INTO etl_user VALUES (15000, 'd'), (25000, 'e'), (35000, 'f')");
+        }
+        // 第2段失败, 之前的分段都成功, 从第2段的下界继续
+        KeyRangeEtlService service = new KeyRangeEtlService("id", 1);
+        EtlResult result = service.importData("SELECT * FROM etl_user", null);
+
+        Assert.assertFalse(result.getSucceeded());
+        Assert.assertTrue(result.getErrorMessage(), result.getErrorMessage().contains("id >= 10001"));
+    }
+
+    @Test
+    public void testKeyRangeProgress() {
+        AbstractEtlService.KeyRangeProgress progress = new KeyRangeEtlService("id", -1).new KeyRangeProgress(4);
+        progress.finish(1, true, 0L);
+        Assert.assertEquals(0, progress.getFinished());
+        progress.finish(0, true, 0L);
+        Assert.assertEquals(2, progress.getFinished());
+        // 失败的分段之后即使成功也不能作为续传位置
+        progress.finish(2, false, 0L);
+        progress.finish(3, true, 0L);
+        Assert.assertEquals(2, progress.getFinished());
+    }
+
+    @Test(timeout = 30000)
+    public void testSnapshot() throws Exception {
+        // 低水位之后、查询分块之前更新id=2, 该行以增量为准
+        lowSql = "UPDATE etl_user SET name = 'b2' WHERE id = 2";
+
+        EtlResult result = snapshot("SELECT * FROM ETL_USER");
+
+        Assert.assertTrue(result.getErrorMessage(), result.getSucceeded());
+        Map<Long, String> expected = new TreeMap<>();
+        expected.put(1L, "a");
+        expected.put(2L, "b2");
+        expected.put(3L, "c");
+        synchronized (target) {
+            Assert.assertEquals(expected, target);
+            Assert.assertEquals(2, loaded.size());
+            Assert.assertEquals("1", String.valueOf(loaded.get(0)));
+            Assert.assertEquals("3", String.valueOf(loaded.get(1)));
+        }
+        // 分块完成后删除水位
+        try (Statement stmt = keepAlive.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(1) FROM canal_watermark")) {
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testNoPrimaryKey() throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS etl_nopk");
+            stmt.execute("CREATE TABLE etl_nopk (id BIGINT, name VARCHAR(64))");
+        }
+
+        EtlResult result = snapshot("SELECT * FROM ETL_NOPK");
+
+        Assert.assertFalse(result.getSucceeded());
+        Assert.assertTrue(result.getErrorMessage(), result.getErrorMessage().contains("primary key"));
+    }
+
+    private EtlResult snapshot(String sql) {
+        EtlMonitor monitor = EtlMonitor.start(KEY);
+        try {
+            monitor.setSnapshot(adapter, "canal_watermark");
+            return new SnapshotEtlService().importData(sql, null);
+        } finally {
+            EtlMonitor.finish(KEY);
+        }
+    }
+
+    /**
+     * 模拟增量同步: 逐条消费并写入目标端, 写入后ack
+     */
+    private void consume() {
+        List<EtlWatermarks.Chunk> emitted = new ArrayList<>();
+        try {
+            while (true) {
+                Dml dml = BINLOG.poll(100, TimeUnit.MILLISECONDS);
+                if (dml == null) {
+                    continue;
+                }
+                List<Dml> dmls = EtlWatermarks.apply(adapter, Collections.singletonList(dml), emitted);
+                synchronized (target) {
+                    for (Dml item : dmls) {
+                        if (!"etl_user".equalsIgnoreCase(item.getTable())) {
+                            continue;
+                        }
+                        for (int i = 0; i < item.rowCount(); i++) {
+                            Map<String, Object> row = item.getRow(i);
+                            Long id = Long.valueOf(String.valueOf(row.get("ID")));
+                            if ("DELETE".equals(item.getType())) {
+                                target.remove(id);
+                            } else {
+                                target.put(id, (String) row.get("NAME"));
+                                if (item != dml) {
+                                    loaded.add(row.get("ID"));
+                                }
+                            }
+                        }
+                    }
+                }
+                EtlWatermarks.ack(emitted);
+                emitted.clear();
+            }
+        } catch (InterruptedException e) {
+            // 测试结束
+        }
+    }
+
+    /**
+     * 行级触发器, 在事务内按执行顺序生成增量数据
+     */
+    public static class BinlogTrigger implements Trigger {
+
+        private String table;
+
+        @Override
+        public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before,
+                         int type) {
+            this.table = tableName.toLowerCase();
+        }
+
+        @Override
+        public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+            Object[] row = newRow != null ? newRow : oldRow;
+            Map<String, Object> data = new LinkedHashMap<>();
+            if ("canal_watermark".equals(table)) {
+                data.put("id", row[0]);
+                data.put("value", row[1]);
+            } else {
+                data.put("ID", row[0]);
+                data.put("NAME", row[1]);
+            }
+            Dml dml = new Dml();
+            dml.setDestination("example");
+            dml.setDatabase(conn.getCatalog());
+            dml.setTable(table);
+            dml.setPkNames(Collections.singletonList("id"));
+            dml.setIsDdl(false);
+            dml.setType(newRow == null ? "DELETE" : oldRow == null ? "INSERT" : "UPDATE");
+            dml.setData(new ArrayList<>(Collections.singletonList(data)));
+            BINLOG.add(dml);
+
+            String sql = lowSql;
+            if (sql != null && "canal_watermark".equals(table) && EtlWatermarks.LOW.equals(row[1])) {
+                lowSql = null;
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(sql);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void remove() {
+        }
+    }
+
+    /**
+     * 记录每个分段的sql并读取数据, 第failTask段(不能是最后一段)抛出异常
+     */
+    private static class KeyRangeEtlService extends AbstractEtlService {
+
+        private final List<String>      sqls = Collections.synchronizedList(new ArrayList<>());
+        private final Map<Long, String> rows = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final int               failTask;
+
+        KeyRangeEtlService(String splitKey, int failTask){
+            super("test", new AdapterConfig() {
+
+                @Override
+                public String getDataSourceKey() {
+                    return KEY;
+                }
+
+                @Override
+                public AdapterMapping getMapping() {
+                    return new AdapterMapping() {
+
+                        @Override
+                        public String getEtlCondition() {
+                            return null;
+                        }
+
+                        @Override
+                        public String getEtlSplitKey() {
+                            return splitKey;
+                        }
+                    };
+                }
+            });
+            this.failTask = failTask;
+        }
+
+        @Override
+        protected boolean executeSqlImport(DataSource ds, String sql, List<Object> values,
+                                           AdapterConfig.AdapterMapping mapping, AtomicLong impCount,
+                                           List<String> errMsg) {
+            sqls.add(sql);
+            if (failTask >= 0 && sql.contains("id < " + (1 + 10000L * (failTask + 1)))) {
+                throw new RuntimeException("task " + failTask + " failed");
+            }
+            Util.sqlRS(ds, sql, values, rs -> {
+                try {
+                    while (rs.next()) {
+                        rows.put(rs.getLong("ID"), rs.getString("NAME"));
+                        impCount.incrementAndGet();
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                return null;
+            });
+            return true;
+        }
+    }
+
+    private static class SnapshotEtlService extends AbstractEtlService {
+
+        SnapshotEtlService(){
+            super("test", new AdapterConfig() {
+
+                @Override
+                public String getDataSourceKey() {
+                    return KEY;
+                }
+
+                @Override
+                public AdapterMapping getMapping() {
+                    return () -> null;
+                }
+            });
+        }
+
+        @Override
+        protected boolean executeSqlImport(DataSource ds, String sql, List<Object> values,
+                                           AdapterConfig.AdapterMapping mapping, AtomicLong impCount,
+                                           List<String> errMsg) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
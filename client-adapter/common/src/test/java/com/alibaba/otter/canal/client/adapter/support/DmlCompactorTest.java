@@ -0,0 +1,183 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 同一批次内按主键合并dml
+ */
+public class DmlCompactorTest {
+
+    @Test
+    public void testInsertUpdateDelete() {
+        List<Dml> dmls = Arrays.asList(insert(1, "a"), update(1, "b", "a"), delete(1, "b"));
+        Assert.assertTrue(DmlCompactor.compact(dmls).isEmpty());
+    }
+
+    @Test
+    public void testInsertUpdate() {
+        List<Dml> result = DmlCompactor
+            .compact(Arrays.asList(insert(1, "a"), update(1, "b", "a"), update(1, "c", "b")));
+        Assert.assertEquals(1, result.size());
+        assertRow(result.get(0), "INSERT", 1, "c");
+        Assert.assertNull(result.get(0).getOld());
+    }
+
+    @Test
+    public void testUpdateUpdateDelete() {
+        List<Dml> result = DmlCompactor.compact(Arrays.asList(update(1, "b", "a"), update(1, "c", "b")));
+        Assert.assertEquals(1, result.size());
+        assertRow(result.get(0), "UPDATE", 1, "c");
+        // old保留最早的旧值
+        Assert.assertEquals("a", result.get(0).getOld().get(0).get("name"));
+
+        result = DmlCompactor.compact(Arrays.asList(update(1, "b", "a"), update(1, "c", "b"), delete(1, "c")));
+        Assert.assertEquals(1, result.size());
+        assertRow(result.get(0), "DELETE", 1, "c");
+        Assert.assertNull(result.get(0).getOld());
+    }
+
+    @Test
+    public void testDeleteInsert() {
+        // 删除之后的变更不与删除合并
+        List<Dml> result = DmlCompactor.compact(Arrays.asList(delete(1, "a"), insert(1, "b"), update(1, "c", "b")));
+        Assert.assertEquals(2, result.size());
+        assertRow(result.get(0), "DELETE", 1, "a");
+        assertRow(result.get(1), "INSERT", 1, "c");
+
+        // 插入删除后再次插入
+        result = DmlCompactor.compact(Arrays.asList(insert(1, "a"), delete(1, "a"), insert(1, "b")));
+        Assert.assertEquals(1, result.size());
+        assertRow(result.get(0), "INSERT", 1, "b");
+    }
+
+    @Test
+    public void testPkChanged() {
+        Dml pkUpdate = update(2, "b", null);
+        pkUpdate.getOld().get(0).put("id", 1L);
+        List<Dml> result = DmlCompactor.compact(Arrays.asList(insert(1, "a"),
+            update(1, "b", "a"),
+            pkUpdate,
+            update(2, "c", "b"),
+            update(1, "x", "y")));
+
+        // 主键变更的update原样保留, 之后的变更不会合并到变更之前的行
+        Assert.assertEquals(4, result.size());
+        assertRow(result.get(0), "INSERT", 1, "b");
+        assertRow(result.get(1), "UPDATE", 2, "b");
+        Assert.assertEquals(1L, result.get(1).getOld().get(0).get("id"));
+        assertRow(result.get(2), "UPDATE", 2, "c");
+        assertRow(result.get(3), "UPDATE", 1, "x");
+    }
+
+    @Test
+    public void testKeepsFirstPosition() {
+        // 合并后的行保留在该主键第一次出现的位置
+        List<Dml> result = DmlCompactor.compact(Arrays.asList(insert(1, "a"), insert(2, "b"), update(1, "c", "a")));
+        Assert.assertEquals(2, result.size());
+        assertRow(result.get(0), "INSERT", 1, "c");
+        assertRow(result.get(1), "INSERT", 2, "b");
+    }
+
+    @Test
+    public void testDdlBoundary() {
+        Dml ddl = new Dml();
+        ddl.setDatabase("test");
+        ddl.setTable("user");
+        ddl.setIsDdl(true);
+        ddl.setType("ALTER");
+        ddl.setSql("ALTER TABLE user ADD COLUMN age INT");
+
+        List<Dml> result = DmlCompactor.compact(Arrays.asList(insert(1, "a"), ddl, update(1, "b", "a")));
+        Assert.assertEquals(3, result.size());
+        assertRow(result.get(0), "INSERT", 1, "a");
+        Assert.assertSame(ddl, result.get(1));
+        assertRow(result.get(2), "UPDATE", 1, "b");
+    }
+
+    @Test
+    public void testNoPk() {
+        Dml first = insert(1, "a");
+        first.setPkNames(null);
+        Dml second = update(1, "b", "a");
+        second.setPkNames(Collections.emptyList());
+
+        List<Dml> dmls = Arrays.asList(first, second);
+        List<Dml> result = DmlCompactor.compact(dmls);
+        Assert.assertEquals(2, result.size());
+        Assert.assertSame(first, result.get(0));
+        Assert.assertSame(second, result.get(1));
+    }
+
+    @Test
+    public void testMultiRows() {
+        Dml batch = insert(1, "a");
+        batch.getData().add(row(2, "b"));
+        batch.getData().add(row(3, "c"));
+
+        List<Dml> dmls = Arrays.asList(batch, delete(2, "b"));
+        List<Dml> result = DmlCompactor.compact(dmls);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(2, result.get(0).getData().size());
+        Assert.assertEquals(1L, result.get(0).getData().get(0).get("id"));
+        Assert.assertEquals(3L, result.get(0).getData().get(1).get("id"));
+        // 不修改入参
+        Assert.assertEquals(3, batch.getData().size());
+    }
+
+    private static void assertRow(Dml dml, String type, long id, String name) {
+        Assert.assertEquals(type, dml.getType());
+        Assert.assertEquals(1, dml.getData().size());
+        Assert.assertEquals(id, dml.getData().get(0).get("id"));
+        Assert.assertEquals(name, dml.getData().get(0).get("name"));
+    }
+
+    private static Dml insert(long id, String name) {
+        return dml("INSERT", row(id, name), null);
+    }
+
+    private static Dml update(long id, String name, String oldName) {
+        Map<String, Object> old = new LinkedHashMap<>();
+        if (oldName != null) {
+            old.put("name", oldName);
+        }
+        return dml("UPDATE", row(id, name), old);
+    }
+
+    private static Dml delete(long id, String name) {
+        return dml("DELETE", row(id, name), null);
+    }
+
+    private static Map<String, Object> row(long id, String name) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", id);
+        data.put("name", name);
+        return data;
+    }
+
+    private static Dml dml(String type, Map<String, Object> data, Map<String, Object> old) {
+        Dml dml = new Dml();
+        dml.setDestination("example");
+        dml.setDatabase("test");
+        dml.setTable("user");
+        dml.setPkNames(Collections.singletonList("id"));
+        dml.setIsDdl(false);
+        dml.setType(type);
+        List<Map<String, Object>> dataList = new ArrayList<>();
+        dataList.add(data);
+        dml.setData(dataList);
+        if (old != null) {
+            List<Map<String, Object>> oldList = new ArrayList<>();
+            oldList.add(old);
+            dml.setOld(oldList);
+        }
+        return dml;
+    }
+}
@@ -0,0 +1,64 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.connector.core.consumer.ColumnarRows;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchema;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+
+/**
+ * 列式存储的Dml按行读取时不生成Map列表
+ */
+public class DmlTest {
+
+    @Test
+    public void testColumnarRow() {
+        TableSchema schema = new TableSchema("test", "user", Arrays.asList(column("id", true, java.sql.Types.BIGINT),
+            column("name", false, java.sql.Types.VARCHAR)));
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[] { 1L, "a" });
+        rows.add(new Object[] { 2L, null });
+        Dml dml = new Dml();
+        dml.setColumnar(new ColumnarRows(schema, rows));
+
+        Assert.assertEquals(2, dml.rowCount());
+        Map<String, Object> row = dml.getRow(1);
+        Assert.assertEquals(2, row.size());
+        Assert.assertEquals(2L, row.get("id"));
+        Assert.assertTrue(row.containsKey("name"));
+        Assert.assertNull(row.get("name"));
+        Assert.assertFalse(row.containsKey("age"));
+        Assert.assertEquals(Arrays.asList("id", "name"), new ArrayList<>(row.keySet()));
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("id", 1L);
+        expected.put("name", "a");
+        Assert.assertEquals(expected, dml.getRow(0));
+        // 行视图与兼容的Map列表内容一致
+        Assert.assertEquals(dml.getData().get(0), dml.getRow(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testColumnarRowReadOnly() {
+        TableSchema schema = new TableSchema("test", "user", Arrays.asList(column("id", true, java.sql.Types.BIGINT)));
+        Dml dml = new Dml();
+        dml.setColumnar(new ColumnarRows(schema, Arrays.<Object[]> asList(new Object[] { 1L })));
+        dml.getRow(0).put("id", 2L);
+    }
+
+    private static CanalEntry.Column column(String name, boolean key, int sqlType) {
+        return CanalEntry.Column.newBuilder()
+            .setName(name)
+            .setIsKey(key)
+            .setSqlType(sqlType)
+            .setMysqlType(sqlType == java.sql.Types.BIGINT ? "bigint(20)" : "varchar(32)")
+            .build();
+    }
+}
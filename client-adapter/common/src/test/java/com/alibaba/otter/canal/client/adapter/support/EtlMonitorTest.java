@@ -0,0 +1,102 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * ETL任务的注册、查询和取消, 对应/etl接口的进度查询和取消
+ */
+public class EtlMonitorTest {
+
+    @After
+    public void tearDown() {
+        EtlMonitor.finish("rdb-test");
+    }
+
+    @Test
+    public void testStartAndFinish() {
+        Assert.assertNull(EtlMonitor.current());
+        EtlMonitor monitor = EtlMonitor.start("rdb-test");
+        Assert.assertSame(monitor, EtlMonitor.current());
+        Assert.assertSame(monitor, EtlMonitor.get("rdb-test"));
+
+        // 其他线程可以查询到任务, 但没有绑定
+        EtlMonitor[] other = new EtlMonitor[2];
+        Thread thread = new Thread(() -> {
+            other[0] = EtlMonitor.get("rdb-test");
+            other[1] = EtlMonitor.current();
+        });
+        thread.start();
+        joinQuietly(thread);
+        Assert.assertSame(monitor, other[0]);
+        Assert.assertNull(other[1]);
+
+        EtlMonitor.finish("rdb-test");
+        Assert.assertNull(EtlMonitor.current());
+        Assert.assertNull(EtlMonitor.get("rdb-test"));
+    }
+
+    @Test
+    public void testFinishKeepsNewerTask() throws Exception {
+        EtlMonitor.start("rdb-test");
+        // 同名任务在其他线程重新注册后, 旧任务结束时不能把新任务移除
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        EtlMonitor[] newer = new EtlMonitor[1];
+        Thread thread = new Thread(() -> {
+            newer[0] = EtlMonitor.start("rdb-test");
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            EtlMonitor.finish("rdb-test");
+        });
+        thread.start();
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        EtlMonitor.finish("rdb-test");
+        Assert.assertSame(newer[0], EtlMonitor.get("rdb-test"));
+
+        finish.countDown();
+        joinQuietly(thread);
+        Assert.assertNull(EtlMonitor.get("rdb-test"));
+    }
+
+    @Test
+    public void testProgressAndCancel() {
+        EtlMonitor monitor = EtlMonitor.start("rdb-test");
+        monitor.addRead(100);
+        monitor.addWrite(60);
+        monitor.addWrite(40);
+        Assert.assertEquals(100, monitor.getReadCount());
+        Assert.assertEquals(100, monitor.getWriteCount());
+        Assert.assertFalse(monitor.isSnapshot());
+
+        EtlMonitor.get("rdb-test").cancel();
+        Assert.assertTrue(monitor.isCancelled());
+
+        Map<String, Object> status = monitor.toMap();
+        Assert.assertEquals("rdb-test", status.get("task"));
+        Assert.assertEquals(false, status.get("snapshot"));
+        Assert.assertEquals(true, status.get("cancelled"));
+        Assert.assertEquals(100L, status.get("read"));
+        Assert.assertEquals(100L, status.get("written"));
+        Assert.assertTrue(status.containsKey("rowsPerSecond"));
+        Assert.assertTrue(status.containsKey("elapsed"));
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
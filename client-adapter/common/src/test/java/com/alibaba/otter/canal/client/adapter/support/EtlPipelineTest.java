@@ -0,0 +1,229 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * ETL流水线的写入顺序、异常传递和取消, 使用内存结果集
+ */
+public class EtlPipelineTest {
+
+    @Test(timeout = 10000)
+    public void testOrder() throws Exception {
+        EtlMonitor monitor = new EtlMonitor("test");
+        List<Long> written = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        long count = new EtlPipeline<Long>("test", 7, 2, monitor).run(new FakeResultSet(1000).resultSet(),
+            row -> (Long) row.getValue("ID"),
+            batch -> {
+                batchSizes.add(batch.size());
+                written.addAll(batch);
+            });
+
+        Assert.assertEquals(1000, count);
+        Assert.assertEquals(1000, written.size());
+        for (int i = 0; i < written.size(); i++) {
+            Assert.assertEquals(Long.valueOf(i), written.get(i));
+        }
+        for (int size : batchSizes) {
+            Assert.assertTrue(size <= 7);
+        }
+        Assert.assertEquals(1000, monitor.getReadCount());
+        Assert.assertEquals(1000, monitor.getWriteCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testSkipRow() throws Exception {
+        List<Long> written = new ArrayList<>();
+        long count = new EtlPipeline<Long>("test", 10, null).run(new FakeResultSet(100).resultSet(), row -> {
+            long id = (Long) row.getValue(0);
+            return id % 2 == 0 ? id : null;
+        }, written::addAll);
+
+        Assert.assertEquals(50, count);
+        Assert.assertEquals(Long.valueOf(98), written.get(written.size() - 1));
+    }
+
+    @Test(timeout = 10000)
+    public void testRow() throws Exception {
+        new EtlPipeline<Object>("test", 10, null).run(new FakeResultSet(1).resultSet(), row -> {
+            Assert.assertEquals(2, row.getColumnCount());
+            Assert.assertEquals("ID", row.getColumnName(0));
+            Assert.assertEquals(Types.BIGINT, row.getColumnType(0));
+            // 列名不区分大小写
+            Assert.assertEquals(0L, row.get("id"));
+            Assert.assertEquals("name0", row.getValue("Name"));
+            Assert.assertTrue(row.containsKey("name"));
+            Assert.assertNull(row.get("age"));
+            try {
+                row.getValue("age");
+                Assert.fail();
+            } catch (SQLException e) {
+                // expected
+            }
+            return row;
+        }, batch -> {
+        });
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterError() throws Exception {
+        FakeResultSet rs = new FakeResultSet(1000000);
+        RuntimeException error = new RuntimeException("write failed");
+        AtomicInteger batches = new AtomicInteger();
+        EtlMonitor monitor = new EtlMonitor("test");
+        try {
+            new EtlPipeline<Long>("test", 10, 1, monitor).run(rs.resultSet(),
+                row -> (Long) row.getValue(0),
+                batch -> {
+                    if (batches.incrementAndGet() == 3) {
+                        throw error;
+                    }
+                });
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertSame(error, e);
+        }
+        // 写入失败后读取停止, 并取消源库查询
+        Assert.assertTrue(rs.cancelled.get());
+        Assert.assertTrue(monitor.getReadCount() < 1000000);
+        Assert.assertEquals(20, monitor.getWriteCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testConverterError() throws Exception {
+        SQLException error = new SQLException("convert failed");
+        List<Long> written = new ArrayList<>();
+        try {
+            new EtlPipeline<Long>("test", 10, null).run(new FakeResultSet(1000).resultSet(), row -> {
+                long id = (Long) row.getValue(0);
+                if (id == 55) {
+                    throw error;
+                }
+                return id;
+            }, written::addAll);
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertSame(error, e);
+        }
+        // 出错批次之后的数据不会写入
+        Assert.assertTrue(written.size() <= 50);
+    }
+
+    @Test(timeout = 10000)
+    public void testCancel() throws Exception {
+        FakeResultSet rs = new FakeResultSet(1000000);
+        EtlMonitor monitor = new EtlMonitor("test");
+        long count = new EtlPipeline<Long>("test", 10, 1, monitor).run(rs.resultSet(),
+            row -> (Long) row.getValue(0),
+            batch -> monitor.cancel());
+
+        Assert.assertTrue(count < 1000000);
+        Assert.assertTrue(rs.cancelled.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testSharedExecutor() throws Exception {
+        // 两个线程只够一次执行使用, 上一次执行的任务未退出时下一次会阻塞
+        ExecutorService executor = Executors.newFixedThreadPool(2, DaemonThreadFactory.daemonThreadFactory);
+        try {
+            for (int i = 0; i < 3; i++) {
+                long count = new EtlPipeline<Long>("test", 10, null, executor).run(new FakeResultSet(100).resultSet(),
+                    row -> (Long) row.getValue(0),
+                    batch -> {
+                    });
+                Assert.assertEquals(100, count);
+            }
+
+            try {
+                new EtlPipeline<Long>("test", 10, null, executor).run(new FakeResultSet(1000000).resultSet(),
+                    row -> (Long) row.getValue(0),
+                    batch -> {
+                        throw new SQLException("write failed");
+                    });
+                Assert.fail();
+            } catch (SQLException e) {
+                // expected
+            }
+
+            // 失败后线程池仍可用
+            Assert.assertFalse(executor.isShutdown());
+            long count = new EtlPipeline<Long>("test", 10, null, executor).run(new FakeResultSet(100).resultSet(),
+                row -> (Long) row.getValue(0),
+                batch -> {
+                });
+            Assert.assertEquals(100, count);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 两列(ID BIGINT, NAME VARCHAR)的内存结果集
+     */
+    private static class FakeResultSet {
+
+        private final int           rows;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private int                 cursor    = -1;
+
+        FakeResultSet(int rows){
+            this.rows = rows;
+        }
+
+        ResultSet resultSet() {
+            Statement statement = (Statement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { Statement.class },
+                (proxy, method, args) -> {
+                    if ("cancel".equals(method.getName())) {
+                        cancelled.set(true);
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+            ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { ResultSetMetaData.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return 2;
+                        case "getColumnLabel":
+                            return (Integer) args[0] == 1 ? "ID" : "NAME";
+                        case "getColumnType":
+                            return (Integer) args[0] == 1 ? Types.BIGINT : Types.VARCHAR;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+            return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { ResultSet.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return ++cursor < rows;
+                        case "getMetaData":
+                            return metaData;
+                        case "getStatement":
+                            return statement;
+                        case "getObject":
+                            return (Integer) args[0] == 1 ? (Object) (long) cursor : "name" + cursor;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        }
+    }
+}
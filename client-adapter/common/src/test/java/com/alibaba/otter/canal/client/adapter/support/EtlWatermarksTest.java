@@ -0,0 +1,243 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.adapter.OuterAdapter;
+
+/**
+ * 全量分块在低/高水位之间与增量数据的合并
+ */
+public class EtlWatermarksTest {
+
+    private static final String             WATERMARK_TABLE = "canal.canal_watermark";
+
+    private final OuterAdapter              adapter         = adapter();
+    private final List<EtlWatermarks.Chunk> chunks          = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        chunks.forEach(EtlWatermarks::unregister);
+    }
+
+    @Test
+    public void testInterleavedChange() throws Exception {
+        EtlWatermarks.Chunk chunk = register();
+        chunk.setRows(Arrays.asList(row(1, "a"), row(2, "b"), row(3, "c")));
+
+        // 低水位之前的变更不影响分块
+        Dml before = update(1, "a0", "a");
+        Dml change = update(2, "b2", "b");
+        Dml high = watermark(chunk, EtlWatermarks.HIGH);
+        List<EtlWatermarks.Chunk> emitted = new ArrayList<>();
+        List<Dml> result = apply(emitted,
+            before,
+            watermark(chunk, EtlWatermarks.LOW),
+            change,
+            insert(4, "d"),
+            high);
+
+        // 高水位之前插入块内未变更过的行, 变更过的行以增量为准
+        Assert.assertEquals(7, result.size());
+        Assert.assertSame(change, result.get(2));
+        assertRows(result.get(4), "DELETE", 1L, 3L);
+        assertRows(result.get(5), "INSERT", 1L, 3L);
+        Assert.assertSame(high, result.get(6));
+        Assert.assertEquals("a", result.get(5).getData().get(0).get("name"));
+        Assert.assertEquals(Collections.singletonList(chunk), emitted);
+
+        Assert.assertFalse(chunk.await(0, TimeUnit.MILLISECONDS));
+        EtlWatermarks.ack(Collections.singletonList(chunk));
+        Assert.assertTrue(chunk.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testChangeAfterHigh() {
+        EtlWatermarks.Chunk chunk = register();
+        chunk.setRows(Arrays.asList(row(1, "a"), row(2, "b")));
+
+        List<EtlWatermarks.Chunk> emitted = new ArrayList<>();
+        List<Dml> result = apply(emitted,
+            watermark(chunk, EtlWatermarks.LOW),
+            watermark(chunk, EtlWatermarks.HIGH),
+            update(2, "b2", "b"));
+
+        // 高水位之后的变更在全量数据之后应用
+        Assert.assertEquals(5, result.size());
+        assertRows(result.get(1), "DELETE", 1L, 2L);
+        assertRows(result.get(2), "INSERT", 1L, 2L);
+        Assert.assertEquals("UPDATE", result.get(4).getType());
+    }
+
+    @Test
+    public void testPkChanged() {
+        EtlWatermarks.Chunk chunk = register();
+        chunk.setRows(Arrays.asList(row(1, "a"), row(2, "b"), row(3, "c")));
+
+        // 主键从1变为5, 旧主键也算变更
+        Dml pkUpdate = update(5, "a", null);
+        pkUpdate.getOld().get(0).put("id", 1L);
+        List<Dml> result = apply(new ArrayList<>(),
+            watermark(chunk, EtlWatermarks.LOW),
+            pkUpdate,
+            watermark(chunk, EtlWatermarks.HIGH));
+
+        assertRows(result.get(2), "DELETE", 2L, 3L);
+        assertRows(result.get(3), "INSERT", 2L, 3L);
+    }
+
+    @Test
+    public void testAllChanged() {
+        EtlWatermarks.Chunk chunk = register();
+        chunk.setRows(Collections.singletonList(row(1, "a")));
+
+        List<EtlWatermarks.Chunk> emitted = new ArrayList<>();
+        List<Dml> result = apply(emitted,
+            watermark(chunk, EtlWatermarks.LOW),
+            delete(1, "a"),
+            watermark(chunk, EtlWatermarks.HIGH));
+
+        // 块内的行都变更过时不插入数据, 但分块仍需等待ack
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(Collections.singletonList(chunk), emitted);
+    }
+
+    @Test
+    public void testReplay() {
+        EtlWatermarks.Chunk chunk = register();
+        chunk.setRows(Arrays.asList(row(1, "a"), row(2, "b")));
+
+        List<Dml> first = apply(new ArrayList<>(), watermark(chunk, EtlWatermarks.LOW), update(1, "a1", "a"));
+        Assert.assertEquals(2, first.size());
+
+        // 批次回滚后从低水位重新消费, 重新记录变更
+        List<EtlWatermarks.Chunk> emitted = new ArrayList<>();
+        List<Dml> result = apply(emitted,
+            watermark(chunk, EtlWatermarks.LOW),
+            update(2, "b1", "b"),
+            watermark(chunk, EtlWatermarks.HIGH));
+        assertRows(result.get(2), "DELETE", 1L);
+        assertRows(result.get(3), "INSERT", 1L);
+
+        // 高水位所在批次回滚后重新消费, 沿用之前记录的变更
+        result = apply(emitted, update(2, "b1", "b"), watermark(chunk, EtlWatermarks.HIGH));
+        assertRows(result.get(1), "DELETE", 1L);
+        Assert.assertEquals(2, emitted.size());
+    }
+
+    @Test
+    public void testIgnored() {
+        EtlWatermarks.Chunk chunk = register();
+        chunk.setRows(Collections.singletonList(row(1, "a")));
+
+        // 没有低水位时不处理高水位, 其他分块、其他适配器和水位表的删除都忽略
+        Dml other = watermark(chunk, EtlWatermarks.HIGH);
+        other.getData().get(0).put("id", "other");
+        Dml delete = watermark(chunk, EtlWatermarks.LOW);
+        delete.setType("DELETE");
+        List<EtlWatermarks.Chunk> emitted = new ArrayList<>();
+        List<Dml> dmls = Arrays.asList(delete, other, watermark(chunk, EtlWatermarks.HIGH));
+        Assert.assertEquals(dmls, EtlWatermarks.apply(adapter, dmls, emitted));
+
+        dmls = Arrays.asList(watermark(chunk, EtlWatermarks.LOW), watermark(chunk, EtlWatermarks.HIGH));
+        Assert.assertSame(dmls, EtlWatermarks.apply(adapter(), dmls, emitted));
+        Assert.assertTrue(emitted.isEmpty());
+    }
+
+    private EtlWatermarks.Chunk register() {
+        EtlWatermarks.Chunk chunk = EtlWatermarks
+            .register(adapter, WATERMARK_TABLE, "test", "user", Collections.singletonList("id"));
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    private List<Dml> apply(List<EtlWatermarks.Chunk> emitted, Dml... dmls) {
+        return EtlWatermarks.apply(adapter, Arrays.asList(dmls), emitted);
+    }
+
+    private static void assertRows(Dml dml, String type, Long... ids) {
+        Assert.assertEquals(type, dml.getType());
+        Assert.assertEquals("test", dml.getDatabase());
+        Assert.assertEquals("user", dml.getTable());
+        Assert.assertEquals(Collections.singletonList("id"), dml.getPkNames());
+        List<Object> actual = new ArrayList<>();
+        for (Map<String, Object> row : dml.getData()) {
+            actual.add(row.get("id"));
+        }
+        Assert.assertEquals(Arrays.asList((Object[]) ids), actual);
+    }
+
+    private static OuterAdapter adapter() {
+        return (OuterAdapter) Proxy.newProxyInstance(EtlWatermarksTest.class.getClassLoader(),
+            new Class[] { OuterAdapter.class },
+            (proxy, method, args) -> {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    private static Dml watermark(EtlWatermarks.Chunk chunk, String value) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", chunk.getId());
+        data.put("value", value);
+        return dml("canal", "canal_watermark", "UPDATE", data, null);
+    }
+
+    private static Dml insert(long id, String name) {
+        return dml("test", "user", "INSERT", row(id, name), null);
+    }
+
+    private static Dml update(long id, String name, String oldName) {
+        Map<String, Object> old = new LinkedHashMap<>();
+        if (oldName != null) {
+            old.put("name", oldName);
+        }
+        return dml("test", "user", "UPDATE", row(id, name), old);
+    }
+
+    private static Dml delete(long id, String name) {
+        return dml("test", "user", "DELETE", row(id, name), null);
+    }
+
+    private static Map<String, Object> row(long id, String name) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", id);
+        data.put("name", name);
+        return data;
+    }
+
+    private static Dml dml(String database, String table, String type, Map<String, Object> data,
+                           Map<String, Object> old) {
+        Dml dml = new Dml();
+        dml.setDestination("example");
+        dml.setDatabase(database);
+        dml.setTable(table);
+        dml.setPkNames(Collections.singletonList("id"));
+        dml.setIsDdl(false);
+        dml.setType(type);
+        List<Map<String, Object>> dataList = new ArrayList<>();
+        dataList.add(data);
+        dml.setData(dataList);
+        if (old != null) {
+            List<Map<String, Object>> oldList = new ArrayList<>();
+            oldList.add(old);
+            dml.setOld(oldList);
+        }
+        return dml;
+    }
+}
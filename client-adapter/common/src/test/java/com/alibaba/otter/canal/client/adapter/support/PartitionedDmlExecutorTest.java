@@ -0,0 +1,267 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.connector.core.consumer.ColumnarRows;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchema;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+
+/**
+ * 按主键分区并行执行: 同一主键的顺序、多行dml的拆分、DDL屏障以及异常传递
+ */
+public class PartitionedDmlExecutorTest {
+
+    private final PartitionedDmlExecutor executor = new PartitionedDmlExecutor(4);
+
+    @After
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    public void testSamePkInOrder() {
+        List<Dml> dmls = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            dmls.add(dml("UPDATE", row(i % 20, "v" + i)));
+        }
+        Map<Object, List<String>> values = new ConcurrentHashMap<>();
+        Map<Object, Set<Integer>> partitions = new ConcurrentHashMap<>();
+        Map<Integer, Set<Thread>> threads = new ConcurrentHashMap<>();
+        executor.execute(dmls, (partition, part) -> {
+            threads.computeIfAbsent(partition, k -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread());
+            for (Dml dml : part) {
+                Object id = dml.getData().get(0).get("id");
+                values.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>())
+                    .add((String) dml.getData().get(0).get("name"));
+                partitions.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(partition);
+            }
+        });
+
+        Assert.assertEquals(20, values.size());
+        for (int id = 0; id < 20; id++) {
+            // 同一主键落在同一分区, 并保持原始顺序
+            Assert.assertEquals(1, partitions.get((long) id).size());
+            List<String> expected = new ArrayList<>();
+            for (int i = id; i < 200; i += 20) {
+                expected.add("v" + i);
+            }
+            Assert.assertEquals(expected, values.get((long) id));
+        }
+        // 20个主键分布在多个分区, 每个分区只在一个线程中执行
+        Assert.assertTrue(threads.size() > 1);
+        threads.values().forEach(set -> Assert.assertEquals(1, set.size()));
+    }
+
+    @Test
+    public void testSplitRows() {
+        Dml dml = dml("UPDATE", row(0, "v0"));
+        for (int i = 1; i < 100; i++) {
+            dml.getData().add(row(i, "v" + i));
+            dml.getOld().add(Collections.singletonMap("name", "o" + i));
+        }
+
+        List<Dml> parts = new CopyOnWriteArrayList<>();
+        executor.execute(Collections.singletonList(dml), (partition, part) -> parts.addAll(part));
+
+        Assert.assertTrue(parts.size() > 1);
+        Set<Object> ids = new HashSet<>();
+        for (Dml part : parts) {
+            Assert.assertEquals("test", part.getDatabase());
+            Assert.assertEquals("user", part.getTable());
+            Assert.assertEquals("UPDATE", part.getType());
+            Assert.assertEquals(part.getData().size(), part.getOld().size());
+            for (int i = 0; i < part.getData().size(); i++) {
+                Object id = part.getData().get(i).get("id");
+                Assert.assertTrue(ids.add(id));
+                // old与data按行对齐
+                Map<String, Object> old = part.getOld().get(i);
+                Assert.assertEquals((Long) id == 0L ? null : "o" + id, old.get("name"));
+            }
+        }
+        Assert.assertEquals(100, ids.size());
+        // 不修改入参
+        Assert.assertEquals(100, dml.getData().size());
+    }
+
+    @Test
+    public void testSplitColumnar() {
+        TableSchema schema = new TableSchema("test",
+            "user",
+            Arrays.asList(column("id", true, Types.BIGINT), column("name", false, Types.VARCHAR)));
+        List<Object[]> rows = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            rows.add(new Object[] { i, "v" + i });
+        }
+        Dml dml = dml("INSERT", null);
+        dml.setColumnar(new ColumnarRows(schema, rows));
+
+        List<Dml> parts = new CopyOnWriteArrayList<>();
+        executor.execute(Collections.singletonList(dml), (partition, part) -> parts.addAll(part));
+
+        Assert.assertTrue(parts.size() > 1);
+        Set<Object> ids = new HashSet<>();
+        for (Dml part : parts) {
+            // 拆分后仍为列式数据
+            Assert.assertNotNull(part.columnar());
+            Assert.assertSame(schema, part.columnar().getSchema());
+            for (int i = 0; i < part.rowCount(); i++) {
+                Assert.assertEquals("v" + part.getValue(i, "id"), part.getValue(i, "name"));
+                Assert.assertTrue(ids.add(part.getValue(i, "id")));
+            }
+        }
+        Assert.assertEquals(100, ids.size());
+    }
+
+    @Test
+    public void testNoPk() {
+        Dml dml = dml("INSERT", row(0, "v0"));
+        for (int i = 1; i < 100; i++) {
+            dml.getData().add(row(i, "v" + i));
+        }
+        dml.setPkNames(null);
+
+        List<Dml> parts = new CopyOnWriteArrayList<>();
+        executor.execute(Arrays.asList(dml, dml("DELETE", row(1, "v1"))), (partition, part) -> {
+            if (part.contains(dml)) {
+                parts.addAll(part);
+            }
+        });
+        // 没有主键时整个dml落在同一分区
+        Assert.assertEquals(Collections.singletonList(dml), parts);
+    }
+
+    @Test
+    public void testDdlBarrier() {
+        Dml ddl = new Dml();
+        ddl.setDatabase("test");
+        ddl.setTable("user");
+        ddl.setIsDdl(true);
+        ddl.setType("ALTER");
+        ddl.setSql("ALTER TABLE user ADD COLUMN age INT");
+
+        List<Dml> dmls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            dmls.add(dml("INSERT", row(i, "a")));
+        }
+        dmls.add(ddl);
+        for (int i = 0; i < 20; i++) {
+            dmls.add(dml("UPDATE", row(i, "b")));
+        }
+
+        List<String> events = new CopyOnWriteArrayList<>();
+        executor.execute(dmls, (partition, part) -> {
+            for (Dml dml : part) {
+                events.add(Boolean.TRUE.equals(dml.getIsDdl()) ? "DDL:" + partition : dml.getType());
+            }
+        });
+
+        // DDL之前的数据全部完成后单独执行, 之后的数据在DDL完成后执行
+        Assert.assertEquals(41, events.size());
+        Assert.assertEquals("DDL:0", events.get(20));
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("INSERT", events.get(i));
+            Assert.assertEquals("UPDATE", events.get(21 + i));
+        }
+    }
+
+    @Test
+    public void testError() {
+        List<Dml> dmls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            dmls.add(dml("INSERT", row(i, "a")));
+        }
+        Exception error = new Exception("apply failed");
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger applied = new AtomicInteger();
+        try {
+            executor.execute(dmls, (partition, part) -> {
+                // id=0所在的分区失败
+                for (Dml dml : part) {
+                    if (Long.valueOf(0L).equals(dml.getData().get(0).get("id"))) {
+                        failed.set(part.size());
+                        throw error;
+                    }
+                }
+                Thread.sleep(100);
+                applied.addAndGet(part.size());
+            });
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertSame(error, e.getCause());
+        }
+        // 其他分区执行完成后才返回
+        Assert.assertEquals(20, failed.get() + applied.get());
+    }
+
+    @Test
+    public void testSingleThread() {
+        PartitionedDmlExecutor single = new PartitionedDmlExecutor(0);
+        try {
+            Assert.assertEquals(1, single.getThreads());
+            List<Dml> dmls = Arrays.asList(dml("INSERT", row(1, "a")), dml("INSERT", row(2, "b")));
+            Thread[] thread = new Thread[1];
+            List<Dml> applied = new ArrayList<>();
+            single.execute(dmls, (partition, part) -> {
+                thread[0] = Thread.currentThread();
+                applied.addAll(part);
+            });
+            // 单线程时在调用线程中直接执行, 不拆分
+            Assert.assertSame(Thread.currentThread(), thread[0]);
+            Assert.assertEquals(dmls, applied);
+        } finally {
+            single.close();
+        }
+    }
+
+    private static Map<String, Object> row(long id, String name) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", id);
+        data.put("name", name);
+        return data;
+    }
+
+    private static Dml dml(String type, Map<String, Object> data) {
+        Dml dml = new Dml();
+        dml.setDestination("example");
+        dml.setDatabase("test");
+        dml.setTable("user");
+        dml.setPkNames(Collections.singletonList("id"));
+        dml.setIsDdl(false);
+        dml.setType(type);
+        if (data != null) {
+            List<Map<String, Object>> dataList = new ArrayList<>();
+            dataList.add(data);
+            dml.setData(dataList);
+            if ("UPDATE".equals(type)) {
+                List<Map<String, Object>> oldList = new ArrayList<>();
+                oldList.add(Collections.singletonMap("name", null));
+                dml.setOld(oldList);
+            }
+        }
+        return dml;
+    }
+
+    private static CanalEntry.Column column(String name, boolean key, int sqlType) {
+        return CanalEntry.Column.newBuilder()
+            .setName(name)
+            .setIsKey(key)
+            .setSqlType(sqlType)
+            .setMysqlType(sqlType == Types.BIGINT ? "bigint(20)" : "varchar(32)")
+            .build();
+    }
+}
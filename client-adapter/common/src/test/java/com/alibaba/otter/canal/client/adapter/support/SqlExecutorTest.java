@@ -0,0 +1,188 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.druid.filter.FilterAdapter;
+import com.alibaba.druid.filter.FilterChain;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.proxy.jdbc.StatementProxy;
+
+/**
+ * 语句缓存以及/sqlStats接口的查询、更新耗时统计, 使用h2内存库
+ */
+public class SqlExecutorTest {
+
+    private static final String SELECT_SQL = "SELECT name FROM sql_executor_user WHERE id = ?";
+    private static final String UPDATE_SQL = "UPDATE sql_executor_user SET name = ? WHERE id = ?";
+
+    private DruidDataSource     dataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new DruidDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:mem:sql_executor;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaxActive(1);
+        // 流式查询的fetchSize为Integer.MIN_VALUE, h2不支持
+        dataSource.setProxyFilters(Collections.singletonList(new FilterAdapter() {
+
+            @Override
+            public void statement_setFetchSize(FilterChain chain, StatementProxy statement, int rows) {
+            }
+        }));
+        SqlExecutor.enableStatementCache(dataSource);
+        dataSource.init();
+
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS sql_executor_user");
+            stmt.execute("CREATE TABLE sql_executor_user (id BIGINT PRIMARY KEY, name VARCHAR(32))");
+            stmt.execute("INSERT INTO sql_executor_user VALUES (1, 'a'), (2, 'b')");
+        }
+        SqlExecutor.resetStats();
+    }
+
+    @After
+    public void tearDown() {
+        SqlExecutor.resetStats();
+        dataSource.close();
+    }
+
+    @Test
+    public void testStatementCache() {
+        Assert.assertEquals("a", query(1L));
+        Assert.assertEquals("b", query(2L));
+        Assert.assertEquals("a", query(1L));
+
+        // 同一连接上相同sql的语句只prepare一次
+        Assert.assertEquals(1, dataSource.getCachedPreparedStatementCount());
+        Assert.assertEquals(1, dataSource.getCachedPreparedStatementMissCount());
+        Assert.assertEquals(2, dataSource.getCachedPreparedStatementHitCount());
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        query(1L);
+        query(2L);
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(UPDATE_SQL)) {
+                pstmt.setString(1, "c");
+                pstmt.setLong(2, 1L);
+                SqlExecutor.execute(UPDATE_SQL, pstmt);
+                for (long id = 1; id <= 2; id++) {
+                    pstmt.setString(1, "d");
+                    pstmt.setLong(2, id);
+                    pstmt.addBatch();
+                }
+                Assert.assertArrayEquals(new int[] { 1, 1 }, SqlExecutor.executeBatch(UPDATE_SQL, pstmt));
+            }
+            conn.commit();
+        }
+        Assert.assertEquals("d", query(2L));
+
+        Map<String, Map<String, Object>> stats = SqlExecutor.stats();
+        Assert.assertEquals(3L, stats.get(SELECT_SQL).get("count"));
+        // 更新一次, 批量更新按批次记录一次
+        Assert.assertEquals(2L, stats.get(UPDATE_SQL).get("count"));
+        for (Map<String, Object> stat : stats.values()) {
+            long total = 0;
+            for (Object count : ((Map<?, ?>) stat.get("histogram")).values()) {
+                total += (Long) count;
+            }
+            Assert.assertEquals(stat.get("count"), total);
+            Assert.assertTrue((Long) stat.get("max") >= (Long) stat.get("avg"));
+        }
+
+        SqlExecutor.resetStats();
+        Assert.assertTrue(SqlExecutor.stats().isEmpty());
+    }
+
+    @Test
+    public void testInListSize() {
+        Assert.assertEquals(1, SqlExecutor.inListSize(1));
+        Assert.assertEquals(10, SqlExecutor.inListSize(2));
+        Assert.assertEquals(10, SqlExecutor.inListSize(10));
+        Assert.assertEquals(50, SqlExecutor.inListSize(11));
+        Assert.assertEquals(100, SqlExecutor.inListSize(51));
+        Assert.assertEquals(500, SqlExecutor.inListSize(101));
+        Assert.assertEquals(500, SqlExecutor.inListSize(500));
+        Assert.assertEquals(1000, SqlExecutor.inListSize(501));
+    }
+
+    @Test
+    public void testNormalize() {
+        Assert.assertEquals("SELECT * FROM t WHERE t.id IN (?...)",
+            SqlExecutor.normalize("SELECT * FROM t WHERE t.id IN (?,?, ?)"));
+        Assert.assertEquals("SELECT * FROM t WHERE t.id IN (?...)",
+            SqlExecutor.normalize("SELECT * FROM t WHERE t.id IN (1, 2)"));
+        Assert.assertEquals("SELECT * FROM t1 WHERE name = ? AND age > ?",
+            SqlExecutor.normalize("SELECT * FROM t1 WHERE name = 'it''s' AND age > 18"));
+        Assert.assertEquals("SELECT * FROM t WHERE ((a=? AND b=?) OR ...)",
+            SqlExecutor.normalize("SELECT * FROM t WHERE ((a=? AND b=?) OR (a=? AND b=?) OR (a=? AND b=?))"));
+        // 不同的条件不折叠
+        Assert.assertEquals("SELECT * FROM t WHERE (a=?) OR (b=?)",
+            SqlExecutor.normalize("SELECT * FROM t WHERE (a=1) OR (b=2)"));
+    }
+
+    @Test
+    public void testStatsNormalized() {
+        String inSql = "SELECT name FROM sql_executor_user WHERE id IN (?,?)";
+        SqlExecutor.query(dataSource, inSql, Arrays.asList(1L, 2L), rs -> null);
+        SqlExecutor.query(dataSource,
+            "SELECT name FROM sql_executor_user WHERE id IN (?,?,?)",
+            Arrays.asList(1L, 2L, 2L),
+            rs -> null);
+        SqlExecutor.query(dataSource, "SELECT name FROM sql_executor_user WHERE id IN (1,2)", null, rs -> null);
+
+        Map<String, Map<String, Object>> stats = SqlExecutor.stats();
+        Assert.assertEquals(1, stats.size());
+        Assert.assertEquals(3L, stats.get(SqlExecutor.normalize(inSql)).get("count"));
+    }
+
+    @Test
+    public void testStatsEviction() {
+        for (int i = 0; i < 1000; i++) {
+            SqlExecutor.query(dataSource, "SELECT name AS n" + i + " FROM sql_executor_user", null, rs -> null);
+        }
+        query(1L);
+        query(2L);
+        Map<String, Map<String, Object>> stats = SqlExecutor.stats();
+        // 超过上限时淘汰执行次数最少的sql, 新的sql仍然被记录
+        Assert.assertEquals(1000, stats.size());
+        Assert.assertEquals(2L, stats.get(SELECT_SQL).get("count"));
+    }
+
+    @Test
+    public void testQueryError() {
+        try {
+            SqlExecutor.query(dataSource, "SELECT * FROM sql_executor_none", null, rs -> null);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof SQLException);
+        }
+        Assert.assertFalse(SqlExecutor.stats().containsKey("SELECT * FROM sql_executor_none"));
+    }
+
+    private String query(long id) {
+        return (String) SqlExecutor.query(dataSource, SELECT_SQL, Collections.singletonList(id), rs -> {
+            try {
+                return rs.next() ? rs.getString(1) : null;
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+}
@@ -46,7 +46,7 @@ public class ES6xAdapter extends ESAdapter {
             } else {
                 esConnection = new ESConnection(hostArray, properties, ESConnection.ESClientMode.TRANSPORT);
             }
-            this.esTemplate = new ES6xTemplate(esConnection);
+            this.esTemplate = new ES6xTemplate(esConnection, properties);
 
             envProperties.put("es.version", "es6");
             super.init(configuration, envProperties);
@@ -117,6 +117,9 @@ public class ES6xAdapter extends ESAdapter {
     @Override
     public void destroy() {
         super.destroy();
+        if (esTemplate != null) {
+            esTemplate.close();
+        }
         if (esConnection != null) {
             esConnection.close();
         }
@@ -1,6 +1,6 @@
 package com.alibaba.otter.canal.client.adapter.es6x.etl;
 
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -17,8 +17,7 @@ import org.elasticsearch.search.SearchHit;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig.ESMapping;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.FieldItem;
-import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest;
-import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESBulkResponse;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkProcessor;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESIndexRequest;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESUpdateRequest;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESTemplate;
@@ -27,6 +26,7 @@ import com.alibaba.otter.canal.client.adapter.es6x.support.ESConnection;
 import com.alibaba.otter.canal.client.adapter.es6x.support.ESConnection.ESSearchRequest;
 import com.alibaba.otter.canal.client.adapter.support.AbstractEtlService;
 import com.alibaba.otter.canal.client.adapter.support.AdapterConfig;
+import com.alibaba.otter.canal.client.adapter.support.EtlPipeline;
 import com.alibaba.otter.canal.client.adapter.support.EtlResult;
 import com.alibaba.otter.canal.client.adapter.support.Util;
 
@@ -61,140 +61,147 @@ public class ESEtlService extends AbstractEtlService {
                                        List<String> errMsg) {
         try {
             ESMapping mapping = (ESMapping) adapterMapping;
-            Util.sqlRS(ds, sql, values, rs -> {
-                int count = 0;
-                try {
-                    ESBulkRequest esBulkRequest = this.esConnection.new ES6xBulkRequest();
-
-                    long batchBegin = System.currentTimeMillis();
-                    while (rs.next()) {
-                        Map<String, Object> esFieldData = new LinkedHashMap<>();
-                        Object idVal = null;
-                        for (FieldItem fieldItem : mapping.getSchemaItem().getSelectFields().values()) {
-
-                            String fieldName = fieldItem.getFieldName();
-                            if (mapping.getSkips().contains(fieldName)) {
-                                continue;
+            Map<String, String> properties = new HashMap<>();
+            properties.put(ESBulkProcessor.BULK_ACTIONS, String.valueOf(mapping.getCommitBatch()));
+            ESBulkProcessor bulkProcessor = new ESBulkProcessor(() -> this.esConnection.new ES6xBulkRequest(),
+                properties);
+            try {
+                Util.sqlRS(ds, sql, values, rs -> {
+                    try {
+                        long count = pipeline(rs, mapping.getCommitBatch(), row -> convert(mapping, row), rows -> {
+                            for (List<ESAction> actions : rows) {
+                                for (ESAction action : actions) {
+                                    if (action.indexRequest != null) {
+                                        bulkProcessor.add(mapping.get_index(), action.id, action.indexRequest);
+                                    } else {
+                                        bulkProcessor.add(mapping.get_index(), action.id, action.updateRequest);
+                                    }
+                                }
                             }
-
-                            // 如果是主键字段则不插入
-                if (fieldItem.getFieldName().equals(mapping.get_id())) {
-                    idVal = esTemplate.getValFromRS(mapping, rs, fieldName, fieldName);
-                } else {
-                    Object val = esTemplate.getValFromRS(mapping, rs, fieldName, fieldName);
-                    esFieldData.put(Util.cleanColumn(fieldName), val);
-                }
-
-            }
-
-            if (!mapping.getRelations().isEmpty()) {
-                mapping.getRelations().forEach((relationField, relationMapping) -> {
-                    Map<String, Object> relations = new HashMap<>();
-                    relations.put("name", relationMapping.getName());
-                    if (StringUtils.isNotEmpty(relationMapping.getParent())) {
-                        FieldItem parentFieldItem = mapping.getSchemaItem()
-                            .getSelectFields()
-                            .get(relationMapping.getParent());
-                        Object parentVal;
-                        try {
-                            parentVal = esTemplate.getValFromRS(mapping,
-                                rs,
-                                parentFieldItem.getFieldName(),
-                                parentFieldItem.getFieldName());
-                        } catch (SQLException e) {
-                            throw new RuntimeException(e);
-                        }
-                        if (parentVal != null) {
-                            relations.put("parent", parentVal.toString());
-                            esFieldData.put("$parent_routing", parentVal.toString());
-
+                            impCount.addAndGet(rows.size());
+                        });
+                        long esBatchBegin = System.currentTimeMillis();
+                        bulkProcessor.flush();
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("全量数据批量导入最后批次es执行时间: {}, index; {}",
+                                (System.currentTimeMillis() - esBatchBegin),
+                                mapping.get_index());
                         }
+                        return count;
+                    } catch (Exception e) {
+                        logger.error(e.getMessage(), e);
+                        errMsg.add(mapping.get_index() + " etl failed! ==>" + e.getMessage());
+                        throw new RuntimeException(e);
                     }
-                    esFieldData.put(Util.cleanColumn(relationField), relations);
                 });
+            } finally {
+                bulkProcessor.close();
             }
 
-            if (idVal != null) {
-                String parentVal = (String) esFieldData.remove("$parent_routing");
-                if (mapping.isUpsert()) {
-                    ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
-                        mapping.get_type(),
-                        idVal.toString()).setDoc(esFieldData).setDocAsUpsert(true);
+            return true;
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return false;
+        }
+    }
 
-                    if (StringUtils.isNotEmpty(parentVal)) {
-                        esUpdateRequest.setRouting(parentVal);
-                    }
+    /**
+     * 源端一行数据转换为ES请求, 在转换线程中执行
+     */
+    private List<ESAction> convert(ESMapping mapping, EtlPipeline.Row row) {
+        Map<String, Object> esFieldData = new LinkedHashMap<>();
+        Object idVal = null;
+        for (FieldItem fieldItem : mapping.getSchemaItem().getSelectFields().values()) {
+
+            String fieldName = fieldItem.getFieldName();
+            if (mapping.getSkips().contains(fieldName)) {
+                continue;
+            }
 
-                    esBulkRequest.add(esUpdateRequest);
-                } else {
-                    ESIndexRequest esIndexRequest = this.esConnection.new ES6xIndexRequest(mapping.get_index(),
-                        mapping.get_type(),
-                        idVal.toString()).setSource(esFieldData);
-                    if (StringUtils.isNotEmpty(parentVal)) {
-                        esIndexRequest.setRouting(parentVal);
-                    }
-                    esBulkRequest.add(esIndexRequest);
-                }
+            // 如果是主键字段则不插入
+            if (fieldItem.getFieldName().equals(mapping.get_id())) {
+                idVal = getVal(mapping, row, fieldName);
             } else {
-                idVal = esFieldData.get(mapping.getPk());
-                ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index(),
-                    mapping.get_type()).setQuery(QueryBuilders.termQuery(mapping.getPk(), idVal)).size(10000);
-                SearchResponse response = esSearchRequest.getResponse();
-                for (SearchHit hit : response.getHits()) {
-                    ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
-                        mapping.get_type(),
-                        hit.getId()).setDoc(esFieldData);
-                    esBulkRequest.add(esUpdateRequest);
-                }
+                Object val = getVal(mapping, row, fieldName);
+                esFieldData.put(Util.cleanColumn(fieldName), val);
             }
 
-            if (esBulkRequest.numberOfActions() % mapping.getCommitBatch() == 0 && esBulkRequest.numberOfActions() > 0) {
-                long esBatchBegin = System.currentTimeMillis();
-                ESBulkResponse rp = esBulkRequest.bulk();
-                if (rp.hasFailures()) {
-                    rp.processFailBulkResponse("全量数据 etl 异常 ");
-                }
+        }
+
+        if (!mapping.getRelations().isEmpty()) {
+            mapping.getRelations().forEach((relationField, relationMapping) -> {
+                Map<String, Object> relations = new HashMap<>();
+                relations.put("name", relationMapping.getName());
+                if (StringUtils.isNotEmpty(relationMapping.getParent())) {
+                    FieldItem parentFieldItem = mapping.getSchemaItem()
+                        .getSelectFields()
+                        .get(relationMapping.getParent());
+                    Object parentVal = getVal(mapping, row, parentFieldItem.getFieldName());
+                    if (parentVal != null) {
+                        relations.put("parent", parentVal.toString());
+                        esFieldData.put("$parent_routing", parentVal.toString());
 
-                if (logger.isTraceEnabled()) {
-                    logger.trace("全量数据批量导入批次耗时: {}, es执行时间: {}, 批次大小: {}, index; {}",
-                        (System.currentTimeMillis() - batchBegin),
-                        (System.currentTimeMillis() - esBatchBegin),
-                        esBulkRequest.numberOfActions(),
-                        mapping.get_index());
+                    }
                 }
-                batchBegin = System.currentTimeMillis();
-                esBulkRequest.resetBulk();
-            }
-            count++;
-            impCount.incrementAndGet();
+                esFieldData.put(Util.cleanColumn(relationField), relations);
+            });
         }
 
-        if (esBulkRequest.numberOfActions() > 0) {
-            long esBatchBegin = System.currentTimeMillis();
-            ESBulkResponse rp = esBulkRequest.bulk();
-            if (rp.hasFailures()) {
-                rp.processFailBulkResponse("全量数据 etl 异常 ");
+        List<ESAction> actions = new ArrayList<>(1);
+        if (idVal != null) {
+            String parentVal = (String) esFieldData.remove("$parent_routing");
+            if (mapping.isUpsert()) {
+                ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
+                    mapping.get_type(),
+                    idVal.toString()).setDoc(esFieldData).setDocAsUpsert(true);
+
+                if (StringUtils.isNotEmpty(parentVal)) {
+                    esUpdateRequest.setRouting(parentVal);
+                }
+
+                actions.add(new ESAction(idVal.toString(), null, esUpdateRequest));
+            } else {
+                ESIndexRequest esIndexRequest = this.esConnection.new ES6xIndexRequest(mapping.get_index(),
+                    mapping.get_type(),
+                    idVal.toString()).setSource(esFieldData);
+                if (StringUtils.isNotEmpty(parentVal)) {
+                    esIndexRequest.setRouting(parentVal);
+                }
+                actions.add(new ESAction(idVal.toString(), esIndexRequest, null));
             }
-            if (logger.isTraceEnabled()) {
-                logger.trace("全量数据批量导入最后批次耗时: {}, es执行时间: {}, 批次大小: {}, index; {}",
-                    (System.currentTimeMillis() - batchBegin),
-                    (System.currentTimeMillis() - esBatchBegin),
-                    esBulkRequest.numberOfActions(),
-                    mapping.get_index());
+        } else {
+            idVal = esFieldData.get(mapping.getPk());
+            ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index(),
+                mapping.get_type()).setQuery(QueryBuilders.termQuery(mapping.getPk(), idVal)).size(10000);
+            SearchResponse response = esSearchRequest.getResponse();
+            for (SearchHit hit : response.getHits()) {
+                ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
+                    mapping.get_type(),
+                    hit.getId()).setDoc(esFieldData);
+                actions.add(new ESAction(hit.getId(), null, esUpdateRequest));
             }
         }
-    } catch (Exception e) {
-        logger.error(e.getMessage(), e);
-        errMsg.add(mapping.get_index() + " etl failed! ==>" + e.getMessage());
-        throw new RuntimeException(e);
+        return actions;
     }
-    return count;
-}           );
 
-            return true;
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
-            return false;
+    private Object getVal(ESMapping mapping, EtlPipeline.Row row, String fieldName) {
+        fieldName = Util.cleanColumn(fieldName);
+        return esTemplate.getValFromData(mapping, row, fieldName, fieldName);
+    }
+
+    /**
+     * 一行数据对应的ES请求
+     */
+    private static class ESAction {
+
+        private final String          id;
+        private final ESIndexRequest  indexRequest;
+        private final ESUpdateRequest updateRequest;
+
+        ESAction(String id, ESIndexRequest indexRequest, ESUpdateRequest updateRequest){
+            this.id = id;
+            this.indexRequest = indexRequest;
+            this.updateRequest = updateRequest;
         }
     }
 }
@@ -26,8 +26,7 @@ import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig.ESMapp
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.ColumnItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.FieldItem;
-import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest;
-import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESBulkResponse;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkProcessor;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESDeleteRequest;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESIndexRequest;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESUpdateRequest;
@@ -42,26 +41,23 @@ public class ES6xTemplate implements ESTemplate {
     private static final Logger                               logger         = LoggerFactory
         .getLogger(ESTemplate.class);
 
-    private static final int                                  MAX_BATCH_SIZE = 1000;
-
     private ESConnection                                      esConnection;
 
-    private ESBulkRequest                                     esBulkRequest;
+    private ESBulkProcessor                                   bulkProcessor;
 
     // es 字段类型本地缓存
     private static ConcurrentMap<String, Map<String, String>> esFieldTypes   = new ConcurrentHashMap<>();
 
     public ES6xTemplate(ESConnection esConnection){
-        this.esConnection = esConnection;
-        this.esBulkRequest = this.esConnection.new ES6xBulkRequest();
+        this(esConnection, null);
     }
 
-    public ESBulkRequest getBulk() {
-        return esBulkRequest;
-    }
-
-    public void resetBulkRequestBuilder() {
-        this.esBulkRequest.resetBulk();
+    /**
+     * @param properties es适配器配置, bulk.concurrency/bulk.actions/bulk.size/bulk.retries/bulk.backoff
+     */
+    public ES6xTemplate(ESConnection esConnection, Map<String, String> properties){
+        this.esConnection = esConnection;
+        this.bulkProcessor = new ESBulkProcessor(() -> this.esConnection.new ES6xBulkRequest(), properties);
     }
 
     @Override
@@ -75,7 +71,7 @@ public class ES6xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     updateRequest.setRouting(parentVal);
                 }
-                getBulk().add(updateRequest);
+                bulkProcessor.add(mapping.get_index(), pkVal, updateRequest);
             } else {
                 ESIndexRequest indexRequest = esConnection.new ES6xIndexRequest(mapping.get_index(),
                     mapping.get_type(),
@@ -83,9 +79,8 @@ public class ES6xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     indexRequest.setRouting(parentVal);
                 }
-                getBulk().add(indexRequest);
+                bulkProcessor.add(mapping.get_index(), pkVal, indexRequest);
             }
-            commitBulk();
         } else {
             ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index(),
                 mapping.get_type()).setQuery(QueryBuilders.termQuery(mapping.getPk(), pkVal)).size(10000);
@@ -95,8 +90,7 @@ public class ES6xTemplate implements ESTemplate {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
                     mapping.get_type(),
                     hit.getId()).setDoc(esFieldData);
-                getBulk().add(esUpdateRequest);
-                commitBulk();
+                bulkProcessor.add(mapping.get_index(), hit.getId(), esUpdateRequest);
             }
         }
     }
@@ -106,7 +100,6 @@ public class ES6xTemplate implements ESTemplate {
         Map<String, Object> esFieldDataTmp = new LinkedHashMap<>(esFieldData.size());
         esFieldData.forEach((k, v) -> esFieldDataTmp.put(Util.cleanColumn(k), v));
         append4Update(mapping, pkVal, esFieldDataTmp);
-        commitBulk();
     }
 
     @Override
@@ -135,7 +128,6 @@ public class ES6xTemplate implements ESTemplate {
                 while (rs.next()) {
                     Object idVal = getIdValFromRS(mapping, rs);
                     append4Update(mapping, idVal, esFieldData);
-                    commitBulk();
                     count++;
                 }
             } catch (Exception e) {
@@ -154,8 +146,7 @@ public class ES6xTemplate implements ESTemplate {
             ESDeleteRequest esDeleteRequest = this.esConnection.new ES6xDeleteRequest(mapping.get_index(),
                 mapping.get_type(),
                 pkVal.toString());
-            getBulk().add(esDeleteRequest);
-            commitBulk();
+            bulkProcessor.add(mapping.get_index(), pkVal, esDeleteRequest);
         } else {
             ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index(),
                 mapping.get_type()).setQuery(QueryBuilders.termQuery(mapping.getPk(), pkVal)).size(10000);
@@ -164,21 +155,19 @@ public class ES6xTemplate implements ESTemplate {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
                     mapping.get_type(),
                     hit.getId()).setDoc(esFieldData);
-                getBulk().add(esUpdateRequest);
-                commitBulk();
+                bulkProcessor.add(mapping.get_index(), hit.getId(), esUpdateRequest);
             }
         }
     }
 
     @Override
     public void commit() {
-        if (getBulk().numberOfActions() > 0) {
-            ESBulkResponse response = getBulk().bulk();
-            if (response.hasFailures()) {
-                response.processFailBulkResponse("ES sync commit error ");
-            }
-            resetBulkRequestBuilder();
-        }
+        bulkProcessor.flush();
+    }
+
+    @Override
+    public void close() {
+        bulkProcessor.close();
     }
 
     @Override
@@ -339,15 +328,6 @@ public class ES6xTemplate implements ESTemplate {
         return resultIdVal;
     }
 
-    /**
-     * 如果大于批量数则提交批次
-     */
-    private void commitBulk() {
-        if (getBulk().numberOfActions() >= MAX_BATCH_SIZE) {
-            commit();
-        }
-    }
-
     private void append4Update(ESMapping mapping, Object pkVal, Map<String, Object> esFieldData) {
         if (mapping.get_id() != null) {
             String parentVal = (String) esFieldData.remove("$parent_routing");
@@ -358,7 +338,7 @@ public class ES6xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     esUpdateRequest.setRouting(parentVal);
                 }
-                getBulk().add(esUpdateRequest);
+                bulkProcessor.add(mapping.get_index(), pkVal, esUpdateRequest);
             } else {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
                     mapping.get_type(),
@@ -366,7 +346,7 @@ public class ES6xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     esUpdateRequest.setRouting(parentVal);
                 }
-                getBulk().add(esUpdateRequest);
+                bulkProcessor.add(mapping.get_index(), pkVal, esUpdateRequest);
             }
         } else {
             ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index(),
@@ -376,7 +356,7 @@ public class ES6xTemplate implements ESTemplate {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
                     mapping.get_type(),
                     hit.getId()).setDoc(esFieldData);
-                getBulk().add(esUpdateRequest);
+                bulkProcessor.add(mapping.get_index(), hit.getId(), esUpdateRequest);
             }
         }
     }
@@ -46,7 +46,7 @@ public class ES7xAdapter extends ESAdapter {
             } else {
                 esConnection = new ESConnection(hostArray, properties, ESConnection.ESClientMode.TRANSPORT);
             }
-            this.esTemplate = new ES7xTemplate(esConnection);
+            this.esTemplate = new ES7xTemplate(esConnection, properties);
 
             envProperties.put("es.version", "es7");
             super.init(configuration, envProperties);
@@ -116,6 +116,9 @@ public class ES7xAdapter extends ESAdapter {
     @Override
     public void destroy() {
         super.destroy();
+        if (esTemplate != null) {
+            esTemplate.close();
+        }
         if (esConnection != null) {
             esConnection.close();
         }
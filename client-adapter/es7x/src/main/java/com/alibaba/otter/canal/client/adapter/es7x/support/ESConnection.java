@@ -6,6 +6,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -14,6 +15,7 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
@@ -427,6 +429,31 @@ public class ESConnection {
             }
         }
 
+        @Override
+        public long estimatedSizeInBytes() {
+            if (mode == ESClientMode.TRANSPORT) {
+                return bulkRequestBuilder.request().estimatedSizeInBytes();
+            } else {
+                return bulkRequest.estimatedSizeInBytes();
+            }
+        }
+
+        @Override
+        public ESBulkRequest retryRequest(ESBulkResponse response) {
+            BulkItemResponse[] items = ((ES7xBulkResponse) response).bulkResponse.getItems();
+            List<DocWriteRequest<?>> requests = mode == ESClientMode.TRANSPORT ? bulkRequestBuilder.request()
+                .requests() : bulkRequest.requests();
+            ES7xBulkRequest retry = new ES7xBulkRequest();
+            BulkRequest retryBulkRequest = mode == ESClientMode.TRANSPORT ? retry.bulkRequestBuilder
+                .request() : retry.bulkRequest;
+            for (int i = 0; i < items.length; i++) {
+                if (items[i].isFailed() && items[i].getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                    retryBulkRequest.add(requests.get(i));
+                }
+            }
+            return retryBulkRequest.numberOfActions() > 0 ? retry : null;
+        }
+
         public BulkRequestBuilder getBulkRequestBuilder() {
             return bulkRequestBuilder;
         }
@@ -466,6 +493,9 @@ public class ESConnection {
 
                 if (itemResponse.getFailure().getStatus() == RestStatus.NOT_FOUND) {
                     logger.error(itemResponse.getFailureMessage());
+                } else if (itemResponse.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                    // 被拒绝的请求由ESBulkProcessor重试
+                    continue;
                 } else {
                     throw new RuntimeException(errorMsg + itemResponse.getFailureMessage());
                 }
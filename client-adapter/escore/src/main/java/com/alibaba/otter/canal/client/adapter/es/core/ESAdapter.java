@@ -122,6 +122,11 @@ public abstract class ESAdapter implements OuterAdapter {
     @Override
     public abstract Map<String, Object> count(String task);
 
+    @Override
+    public boolean supportDmlCompaction() {
+        return true;
+    }
+
     @Override
     public void destroy() {
         if (esConfigMonitor != null) {
@@ -109,6 +109,7 @@ public class ESSyncConfig implements AdapterConfig {
         private List<String>                 skips           = new ArrayList<>();
         private int                          commitBatch     = 1000;
         private String                       etlCondition;
+        private String                       etlSplitKey;
         private boolean                      syncByTimestamp = false;                // 是否按时间戳定时同步
         private Long                         syncInterval;                           // 同步时间间隔
 
@@ -202,6 +203,14 @@ public class ESSyncConfig implements AdapterConfig {
             this.etlCondition = etlCondition;
         }
 
+        public String getEtlSplitKey() {
+            return etlSplitKey;
+        }
+
+        public void setEtlSplitKey(String etlSplitKey) {
+            this.etlSplitKey = etlSplitKey;
+        }
+
         public Long getSyncInterval() {
             return syncInterval;
         }
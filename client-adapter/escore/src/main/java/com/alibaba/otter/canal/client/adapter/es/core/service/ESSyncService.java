@@ -2,9 +2,12 @@ package com.alibaba.otter.canal.client.adapter.es.core.service;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
@@ -13,6 +16,7 @@ import org.slf4j.LoggerFactory;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.google.common.collect.Lists;
 import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig.ESMapping;
@@ -35,9 +39,10 @@ import com.alibaba.otter.canal.client.adapter.support.Util;
  */
 public class ESSyncService {
 
-    private static Logger logger = LoggerFactory.getLogger(ESSyncService.class);
+    private static Logger    logger           = LoggerFactory.getLogger(ESSyncService.class);
+    private static final int BACK_QUERY_BATCH = 500;                                    // 反查源库时每批的行数
 
-    private ESTemplate    esTemplate;
+    private ESTemplate       esTemplate;
 
     public ESSyncService(ESTemplate esTemplate){
         this.esTemplate = esTemplate;
@@ -124,12 +129,18 @@ public class ESSyncService {
      * @param dml dml数据
      */
     private void insert(ESSyncConfig config, Dml dml) {
-        List<Map<String, Object>> dataList = dml.getData();
-        if (dataList == null || dataList.isEmpty()) {
+        // 按行读取, 列式存储时不生成整批的Map列表
+        int rowCount = dml.rowCount();
+        if (rowCount == 0) {
             return;
         }
         SchemaItem schemaItem = config.getEsMapping().getSchemaItem();
-        for (Map<String, Object> data : dataList) {
+        // 需要反查源库的行, 遍历完成后按批次合并反查
+        PendingRows mainTableRows = new PendingRows();
+        Map<TableItem, PendingRows> subTableRows = new LinkedHashMap<>();
+        Map<TableItem, PendingRows> wholeSqlRows = new LinkedHashMap<>();
+        for (int i = 0; i < rowCount; i++) {
+            Map<String, Object> data = dml.getRow(i);
             if (data == null || data.isEmpty()) {
                 continue;
             }
@@ -140,7 +151,7 @@ public class ESSyncService {
             } else {
                 // ------是主表 查询sql来插入------
                 if (schemaItem.getMainTable().getTableName().equalsIgnoreCase(dml.getTable())) {
-                    mainTableInsert(config, dml, data);
+                    mainTableRows.add(data, null);
                 }
 
                 // 从表的操作
@@ -176,15 +187,19 @@ public class ESSyncService {
                             joinTableSimpleFieldOperation(config, dml, data, tableItem, esFieldData);
                         } else {
                             // ------关联子表简单字段插入------
-                            subTableSimpleFieldOperation(config, dml, data, null, tableItem);
+                            subTableRows.computeIfAbsent(tableItem, k -> new PendingRows()).add(data, null);
                         }
                     } else {
                         // ------关联子表复杂字段插入 执行全sql更新es------
-                        wholeSqlOperation(config, dml, data, null, tableItem);
+                        wholeSqlRows.computeIfAbsent(tableItem, k -> new PendingRows()).add(data, null);
                     }
                 }
             }
         }
+
+        mainTableInsert(config, dml, mainTableRows);
+        subTableRows.forEach((tableItem, rows) -> subTableSimpleFieldOperation(config, dml, rows, tableItem));
+        wholeSqlRows.forEach((tableItem, rows) -> wholeSqlOperation(config, dml, rows, tableItem));
     }
 
     /**
@@ -194,14 +209,18 @@ public class ESSyncService {
      * @param dml dml数据
      */
     private void update(ESSyncConfig config, Dml dml) {
-        List<Map<String, Object>> dataList = dml.getData();
+        int rowCount = dml.rowCount();
         List<Map<String, Object>> oldList = dml.getOld();
-        if (dataList == null || dataList.isEmpty() || oldList == null || oldList.isEmpty()) {
+        if (rowCount == 0 || oldList == null || oldList.isEmpty()) {
             return;
         }
         SchemaItem schemaItem = config.getEsMapping().getSchemaItem();
-        int i = 0;
-        for (Map<String, Object> data : dataList) {
+        // 需要反查源库的行, 遍历完成后按批次合并反查
+        PendingRows mainTableRows = new PendingRows();
+        Map<TableItem, PendingRows> subTableRows = new LinkedHashMap<>();
+        Map<TableItem, PendingRows> wholeSqlRows = new LinkedHashMap<>();
+        for (int i = 0; i < rowCount; i++) {
+            Map<String, Object> data = dml.getRow(i);
             Map<String, Object> old = oldList.get(i);
             if (data == null || data.isEmpty() || old == null || old.isEmpty()) {
                 continue;
@@ -265,7 +284,7 @@ public class ESSyncService {
                     if (idFieldSimple && allUpdateFieldSimple && !fkChanged) {
                         singleTableSimpleFiledUpdate(config, dml, data, old);
                     } else {
-                        mainTableUpdate(config, dml, data, old);
+                        mainTableRows.add(data, old);
                     }
                 }
 
@@ -305,17 +324,19 @@ public class ESSyncService {
                             joinTableSimpleFieldOperation(config, dml, data, tableItem, esFieldData);
                         } else {
                             // ------关联子表简单字段更新------
-                            subTableSimpleFieldOperation(config, dml, data, old, tableItem);
+                            subTableRows.computeIfAbsent(tableItem, k -> new PendingRows()).add(data, old);
                         }
                     } else {
                         // ------关联子表复杂字段更新 执行全sql更新es------
-                        wholeSqlOperation(config, dml, data, old, tableItem);
+                        wholeSqlRows.computeIfAbsent(tableItem, k -> new PendingRows()).add(data, old);
                     }
                 }
             }
-
-            i++;
         }
+
+        mainTableUpdate(config, dml, mainTableRows);
+        subTableRows.forEach((tableItem, rows) -> subTableSimpleFieldOperation(config, dml, rows, tableItem));
+        wholeSqlRows.forEach((tableItem, rows) -> wholeSqlOperation(config, dml, rows, tableItem));
     }
 
     /**
@@ -325,13 +346,17 @@ public class ESSyncService {
      * @param dml dml数据
      */
     private void delete(ESSyncConfig config, Dml dml) {
-        List<Map<String, Object>> dataList = dml.getData();
-        if (dataList == null || dataList.isEmpty()) {
+        int rowCount = dml.rowCount();
+        if (rowCount == 0) {
             return;
         }
         SchemaItem schemaItem = config.getEsMapping().getSchemaItem();
+        // 需要反查源库的行, 遍历完成后按批次合并反查
+        Map<TableItem, PendingRows> subTableRows = new LinkedHashMap<>();
+        Map<TableItem, PendingRows> wholeSqlRows = new LinkedHashMap<>();
 
-        for (Map<String, Object> data : dataList) {
+        for (int i = 0; i < rowCount; i++) {
+            Map<String, Object> data = dml.getRow(i);
             if (data == null || data.isEmpty()) {
                 continue;
             }
@@ -416,14 +441,17 @@ public class ESSyncService {
                         joinTableSimpleFieldOperation(config, dml, data, tableItem, esFieldData);
                     } else {
                         // ------关联子表简单字段更新------
-                        subTableSimpleFieldOperation(config, dml, data, null, tableItem);
+                        subTableRows.computeIfAbsent(tableItem, k -> new PendingRows()).add(data, null);
                     }
                 } else {
                     // ------关联子表复杂字段更新 执行全sql更新es------
-                    wholeSqlOperation(config, dml, data, null, tableItem);
+                    wholeSqlRows.computeIfAbsent(tableItem, k -> new PendingRows()).add(data, null);
                 }
             }
         }
+
+        subTableRows.forEach((tableItem, rows) -> subTableSimpleFieldOperation(config, dml, rows, tableItem));
+        wholeSqlRows.forEach((tableItem, rows) -> wholeSqlOperation(config, dml, rows, tableItem));
     }
 
     /**
@@ -449,17 +477,23 @@ public class ESSyncService {
     }
 
     /**
-     * 主表(单表)复杂字段insert
+     * 主表(单表)复杂字段insert, 多行按主键批量反查
      *
      * @param config es配置
      * @param dml dml信息
-     * @param data 单行dml数据
+     * @param rows 需要反查的dml数据
      */
-    private void mainTableInsert(ESSyncConfig config, Dml dml, Map<String, Object> data) {
+    private void mainTableInsert(ESSyncConfig config, Dml dml, PendingRows rows) {
+        ESMapping mapping = config.getEsMapping();
+        for (List<Map<String, Object>> dataList : Lists.partition(rows.dataList, BACK_QUERY_BATCH)) {
+            List<Object> values = new ArrayList<>();
+            String condition = ESSyncUtil.pkConditionSql(mapping, dataList, values);
+            mainTableInsert(config, dml, ESSyncUtil.appendCondition(mapping.getSql(), condition), values);
+        }
+    }
+
+    private void mainTableInsert(ESSyncConfig config, Dml dml, String sql, List<Object> values) {
         ESMapping mapping = config.getEsMapping();
-        String sql = mapping.getSql();
-        String condition = ESSyncUtil.pkConditionSql(mapping, data);
-        sql = ESSyncUtil.appendCondition(sql, condition);
         DataSource ds = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
         if (logger.isTraceEnabled()) {
             logger.trace("Main table insert to es index by query sql, destination:{}, table: {}, index: {}, sql: {}",
@@ -468,7 +502,7 @@ public class ESSyncService {
                 mapping.get_index(),
                 sql.replace("\n", " "));
         }
-        Util.sqlRS(ds, sql, rs -> {
+        Util.sqlRS(ds, sql, values, rs -> {
             try {
                 while (rs.next()) {
                     Map<String, Object> esFieldData = new LinkedHashMap<>();
@@ -494,7 +528,8 @@ public class ESSyncService {
     private void mainTableDelete(ESSyncConfig config, Dml dml, Map<String, Object> data) {
         ESMapping mapping = config.getEsMapping();
         String sql = mapping.getSql();
-        String condition = ESSyncUtil.pkConditionSql(mapping, data);
+        List<Object> values = new ArrayList<>();
+        String condition = ESSyncUtil.pkConditionSql(mapping, Collections.singletonList(data), values);
         sql = ESSyncUtil.appendCondition(sql, condition);
         DataSource ds = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
         if (logger.isTraceEnabled()) {
@@ -504,7 +539,7 @@ public class ESSyncService {
                 mapping.get_index(),
                 sql.replace("\n", " "));
         }
-        Util.sqlRS(ds, sql, rs -> {
+        Util.sqlRS(ds, sql, values, rs -> {
             try {
                 Map<String, Object> esFieldData = null;
                 if (mapping.getPk() != null) {
@@ -576,55 +611,71 @@ public class ESSyncService {
     }
 
     /**
-     * 关联子查询, 主表简单字段operation
+     * 关联子查询, 主表简单字段operation, 多行按关联字段批量反查
      *
      * @param config es配置
      * @param dml dml信息
-     * @param data 单行dml数据
-     * @param old 单行old数据
+     * @param rows 需要反查的dml数据
      * @param tableItem 当前表配置
      */
-    private void subTableSimpleFieldOperation(ESSyncConfig config, Dml dml, Map<String, Object> data,
-                                              Map<String, Object> old, TableItem tableItem) {
+    private void subTableSimpleFieldOperation(ESSyncConfig config, Dml dml, PendingRows rows, TableItem tableItem) {
         ESMapping mapping = config.getEsMapping();
 
         MySqlSelectQueryBlock queryBlock = SqlParser.parseSQLSelectQueryBlock(tableItem.getSubQuerySql());
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT ")
+        StringBuilder sqlPrefix = new StringBuilder();
+        sqlPrefix.append("SELECT ")
             .append(SqlParser.parse4SQLSelectItem(queryBlock))
             .append(" FROM ")
             .append(SqlParser.parse4FromTableSource(queryBlock));
 
         String whereSql = SqlParser.parse4WhereItem(queryBlock);
         if (whereSql != null) {
-            sql.append(" WHERE ").append(whereSql);
+            sqlPrefix.append(" WHERE ").append(whereSql);
         } else {
-            sql.append(" WHERE 1=1 ");
+            sqlPrefix.append(" WHERE 1=1 ");
         }
+        String groupSql = SqlParser.parse4GroupBy(queryBlock);
 
-        List<Object> values = new ArrayList<>();
-
+        List<String> columns = new ArrayList<>();
         for (FieldItem fkFieldItem : tableItem.getRelationTableFields().keySet()) {
-            String columnName = fkFieldItem.getColumn().getColumnName();
-            Object value = esTemplate.getValFromData(mapping, data, fkFieldItem.getFieldName(), columnName);
-            sql.append(" AND ").append(columnName).append("=? ");
-            values.add(value);
+            columns.add(fkFieldItem.getColumn().getColumnName());
         }
 
-        String groupSql = SqlParser.parse4GroupBy(queryBlock);
-        if (groupSql != null) {
-            sql.append(groupSql);
+        for (List<Map<String, Object>> dataList : Lists.partition(rows.dataList, BACK_QUERY_BATCH)) {
+            Set<List<Object>> valuesSet = new LinkedHashSet<>();
+            for (Map<String, Object> data : dataList) {
+                List<Object> fkValues = new ArrayList<>();
+                for (FieldItem fkFieldItem : tableItem.getRelationTableFields().keySet()) {
+                    fkValues.add(esTemplate.getValFromData(mapping,
+                        data,
+                        fkFieldItem.getFieldName(),
+                        fkFieldItem.getColumn().getColumnName()));
+                }
+                valuesSet.add(fkValues);
+            }
+
+            List<Object> values = new ArrayList<>();
+            StringBuilder sql = new StringBuilder(sqlPrefix);
+            sql.append(" AND ").append(ESSyncUtil.conditionSql(columns, valuesSet, values)).append(" ");
+            if (groupSql != null) {
+                sql.append(groupSql);
+            }
+            subTableSimpleFieldOperation(config, dml, sql.toString(), values, rows.old, tableItem);
         }
+    }
 
+    private void subTableSimpleFieldOperation(ESSyncConfig config, Dml dml, String sql, List<Object> values,
+                                              Map<String, Object> old, TableItem tableItem) {
+        ESMapping mapping = config.getEsMapping();
         DataSource ds = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
         if (logger.isTraceEnabled()) {
             logger.trace("Join table update es index by query sql, destination:{}, table: {}, index: {}, sql: {}",
                 config.getDestination(),
                 dml.getTable(),
                 mapping.get_index(),
-                sql.toString().replace("\n", " "));
+                sql.replace("\n", " "));
         }
-        Util.sqlRS(ds, sql.toString(), values, rs -> {
+        Util.sqlRS(ds, sql, values, rs -> {
             try {
                 while (rs.next()) {
                     Map<String, Object> esFieldData = new LinkedHashMap<>();
@@ -689,15 +740,14 @@ public class ESSyncService {
     }
 
     /**
-     * 关联(子查询), 主表复杂字段operation, 全sql执行
+     * 关联(子查询), 主表复杂字段operation, 全sql执行, 多行按关联字段批量反查
      *
      * @param config es配置
      * @param dml dml信息
-     * @param data 单行dml数据
+     * @param rows 需要反查的dml数据
      * @param tableItem 当前表配置
      */
-    private void wholeSqlOperation(ESSyncConfig config, Dml dml, Map<String, Object> data, Map<String, Object> old,
-                                   TableItem tableItem) {
+    private void wholeSqlOperation(ESSyncConfig config, Dml dml, PendingRows rows, TableItem tableItem) {
         ESMapping mapping = config.getEsMapping();
         // 防止最后出现groupby 导致sql解析异常
         String[] sqlSplit = mapping.getSql().split("GROUP\\ BY(?!(.*)ON)");
@@ -709,26 +759,43 @@ public class ESSyncService {
             sqlGroupBy = "GROUP BY " + sqlSplit[1];
         }
 
-        StringBuilder sql = new StringBuilder(sqlNoWhere + " WHERE ");
-
+        List<String> columns = new ArrayList<>();
         for (FieldItem fkFieldItem : tableItem.getRelationTableFields().keySet()) {
-            String columnName = fkFieldItem.getColumn().getColumnName();
-            Object value = esTemplate.getValFromData(mapping, data, fkFieldItem.getFieldName(), columnName);
-            ESSyncUtil.appendCondition(sql, value, tableItem.getAlias(), columnName);
+            columns.add(tableItem.getAlias() + "." + fkFieldItem.getColumn().getColumnName());
+        }
+
+        for (List<Map<String, Object>> dataList : Lists.partition(rows.dataList, BACK_QUERY_BATCH)) {
+            Set<List<Object>> valuesSet = new LinkedHashSet<>();
+            for (Map<String, Object> data : dataList) {
+                List<Object> fkValues = new ArrayList<>();
+                for (FieldItem fkFieldItem : tableItem.getRelationTableFields().keySet()) {
+                    fkValues.add(esTemplate.getValFromData(mapping,
+                        data,
+                        fkFieldItem.getFieldName(),
+                        fkFieldItem.getColumn().getColumnName()));
+                }
+                valuesSet.add(fkValues);
+            }
+
+            List<Object> values = new ArrayList<>();
+            String sql = sqlNoWhere + " WHERE " + ESSyncUtil.conditionSql(columns, valuesSet, values) + "  "
+                         + sqlGroupBy;
+            wholeSqlOperation(config, dml, sql, values, rows.old, tableItem);
         }
-        int len = sql.length();
-        sql.delete(len - 5, len);
-        sql.append(sqlGroupBy);
+    }
 
+    private void wholeSqlOperation(ESSyncConfig config, Dml dml, String sql, List<Object> values,
+                                   Map<String, Object> old, TableItem tableItem) {
+        ESMapping mapping = config.getEsMapping();
         DataSource ds = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
         if (logger.isTraceEnabled()) {
             logger.trace("Join table update es index by query whole sql, destination:{}, table: {}, index: {}, sql: {}",
                 config.getDestination(),
                 dml.getTable(),
                 mapping.get_index(),
-                sql.toString().replace("\n", " "));
+                sql.replace("\n", " "));
         }
-        Util.sqlRS(ds, sql.toString(), rs -> {
+        Util.sqlRS(ds, sql, values, rs -> {
             try {
                 while (rs.next()) {
                     Map<String, Object> esFieldData = new LinkedHashMap<>();
@@ -828,17 +895,24 @@ public class ESSyncService {
     }
 
     /**
-     * 主表(单表)复杂字段update
+     * 主表(单表)复杂字段update, 多行按主键批量反查, 更新所有行变更字段的并集
      *
      * @param config es配置
      * @param dml dml信息
-     * @param data 单行dml数据
+     * @param rows 需要反查的dml数据
      */
-    private void mainTableUpdate(ESSyncConfig config, Dml dml, Map<String, Object> data, Map<String, Object> old) {
+    private void mainTableUpdate(ESSyncConfig config, Dml dml, PendingRows rows) {
+        ESMapping mapping = config.getEsMapping();
+        for (List<Map<String, Object>> dataList : Lists.partition(rows.dataList, BACK_QUERY_BATCH)) {
+            List<Object> values = new ArrayList<>();
+            String condition = ESSyncUtil.pkConditionSql(mapping, dataList, values);
+            mainTableUpdate(config, dml, ESSyncUtil.appendCondition(mapping.getSql(), condition), values, rows.old);
+        }
+    }
+
+    private void mainTableUpdate(ESSyncConfig config, Dml dml, String sql, List<Object> values,
+                                 Map<String, Object> old) {
         ESMapping mapping = config.getEsMapping();
-        String sql = mapping.getSql();
-        String condition = ESSyncUtil.pkConditionSql(mapping, data);
-        sql = ESSyncUtil.appendCondition(sql, condition);
         DataSource ds = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
         if (logger.isTraceEnabled()) {
             logger.trace("Main table update to es index by query sql, destination:{}, table: {}, index: {}, sql: {}",
@@ -847,7 +921,7 @@ public class ESSyncService {
                 mapping.get_index(),
                 sql.replace("\n", " "));
         }
-        Util.sqlRS(ds, sql, rs -> {
+        Util.sqlRS(ds, sql, values, rs -> {
             try {
                 while (rs.next()) {
                     Map<String, Object> esFieldData = new LinkedHashMap<>();
@@ -876,4 +950,23 @@ public class ESSyncService {
     public void commit() {
         esTemplate.commit();
     }
+
+    /**
+     * 同一个dml中需要反查源库的行
+     */
+    private static class PendingRows {
+
+        private final List<Map<String, Object>> dataList = new ArrayList<>();
+        private Map<String, Object>             old;                         // 所有行old的并集, 为空时更新全部字段
+
+        private void add(Map<String, Object> data, Map<String, Object> rowOld) {
+            dataList.add(data);
+            if (rowOld != null) {
+                if (old == null) {
+                    old = new LinkedHashMap<>();
+                }
+                old.putAll(rowOld);
+            }
+        }
+    }
 }
@@ -0,0 +1,232 @@
+package com.alibaba.otter.canal.client.adapter.es.core.support;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESBulkResponse;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESDeleteRequest;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESIndexRequest;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESUpdateRequest;
+import com.alibaba.otter.canal.client.adapter.support.DaemonThreadFactory;
+
+/**
+ * ES并发bulk提交
+ *
+ * <pre>
+ * 1. 按index + _id的hash分为多个通道, 每个通道独立累积bulk, 同一个文档的操作始终在同一个通道内按顺序提交
+ * 2. 通道的bulk达到条数或者字节数阈值后异步提交, 每个通道同时只有一个bulk在执行, 上一个未完成时阻塞(背压)
+ * 3. 被拒绝(429)的请求按指数退避重试
+ * 4. flush等待所有通道提交完成, 作为批次ack的屏障
+ * 5. 提交失败时等待其他通道在途的bulk结束后再丢弃未提交的数据, 避免和重新同步的批次交错执行
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class ESBulkProcessor {
+
+    private static final Logger          logger              = LoggerFactory.getLogger(ESBulkProcessor.class);
+
+    public static final String           BULK_CONCURRENCY    = "bulk.concurrency";
+    public static final String           BULK_ACTIONS        = "bulk.actions";
+    public static final String           BULK_SIZE           = "bulk.size";
+    public static final String           BULK_RETRIES        = "bulk.retries";
+    public static final String           BULK_BACKOFF        = "bulk.backoff";
+
+    private static final int             DEFAULT_CONCURRENCY = 1;
+    private static final int             DEFAULT_ACTIONS     = 1000;
+    private static final long            DEFAULT_SIZE        = 5 * 1024 * 1024L;
+    private static final int             DEFAULT_RETRIES     = 3;
+    private static final long            DEFAULT_BACKOFF     = 100L;
+
+    private final Supplier<ESBulkRequest> bulkSupplier;
+    private final int                    maxActions;                                                  // 单个bulk最大条数
+    private final long                   maxBytes;                                                    // 单个bulk最大字节数
+    private final int                    maxRetries;                                                  // 429最大重试次数
+    private final long                   backoffMillis;                                               // 重试初始等待时间
+    private final Lane[]                 lanes;
+    private final ThreadPoolExecutor     executor;
+
+    public ESBulkProcessor(Supplier<ESBulkRequest> bulkSupplier, Map<String, String> properties){
+        this.bulkSupplier = bulkSupplier;
+        int concurrency = Math.max(1, getInt(properties, BULK_CONCURRENCY, DEFAULT_CONCURRENCY));
+        this.maxActions = getInt(properties, BULK_ACTIONS, DEFAULT_ACTIONS);
+        this.maxBytes = getLong(properties, BULK_SIZE, DEFAULT_SIZE);
+        this.maxRetries = getInt(properties, BULK_RETRIES, DEFAULT_RETRIES);
+        this.backoffMillis = getLong(properties, BULK_BACKOFF, DEFAULT_BACKOFF);
+
+        this.lanes = new Lane[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            lanes[i] = new Lane();
+        }
+        this.executor = new ThreadPoolExecutor(concurrency,
+            concurrency,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            DaemonThreadFactory.daemonThreadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void add(String index, Object id, ESIndexRequest request) {
+        Lane lane = lane(index, id);
+        lane.bulk.add(request);
+        submitIfFull(lane);
+    }
+
+    public synchronized void add(String index, Object id, ESUpdateRequest request) {
+        Lane lane = lane(index, id);
+        lane.bulk.add(request);
+        submitIfFull(lane);
+    }
+
+    public synchronized void add(String index, Object id, ESDeleteRequest request) {
+        Lane lane = lane(index, id);
+        lane.bulk.add(request);
+        submitIfFull(lane);
+    }
+
+    /**
+     * 提交所有通道的bulk并等待完成, 任一bulk失败则抛出异常
+     */
+    public synchronized void flush() {
+        try {
+            for (Lane lane : lanes) {
+                if (lane.bulk.numberOfActions() > 0) {
+                    submit(lane);
+                }
+            }
+            for (Lane lane : lanes) {
+                lane.await();
+            }
+        } catch (RuntimeException e) {
+            reset();
+            throw e;
+        }
+    }
+
+    private Lane lane(String index, Object id) {
+        int hash = (index + "#" + id).hashCode();
+        return lanes[Math.abs(hash % lanes.length)];
+    }
+
+    private void submitIfFull(Lane lane) {
+        if (lane.bulk.numberOfActions() >= maxActions || lane.bulk.estimatedSizeInBytes() >= maxBytes) {
+            try {
+                submit(lane);
+            } catch (RuntimeException e) {
+                reset();
+                throw e;
+            }
+        }
+    }
+
+    private void submit(Lane lane) {
+        // 每个通道只有一个在途的bulk, 保证同一文档的操作顺序
+        lane.await();
+        ESBulkRequest bulk = lane.bulk;
+        lane.bulk = bulkSupplier.get();
+        lane.inFlight = executor.submit(() -> execute(bulk));
+    }
+
+    private void execute(ESBulkRequest bulk) {
+        long begin = System.currentTimeMillis();
+        int actions = bulk.numberOfActions();
+        for (int attempt = 0;; attempt++) {
+            ESBulkResponse response = bulk.bulk();
+            if (!response.hasFailures()) {
+                break;
+            }
+            // 处理429以外的失败
+            response.processFailBulkResponse("ES sync commit error ");
+            ESBulkRequest retry = bulk.retryRequest(response);
+            if (retry == null) {
+                break;
+            }
+            if (attempt >= maxRetries) {
+                throw new RuntimeException("ES sync commit error, " + retry.numberOfActions()
+                                           + " actions still rejected after " + maxRetries + " retries");
+            }
+            long backoff = backoffMillis << Math.min(attempt, 16);
+            logger.warn("ES bulk rejected {} actions, retry after {} ms", retry.numberOfActions(), backoff);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            bulk = retry;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("ES bulk {} actions elapsed time: {}", actions, System.currentTimeMillis() - begin);
+        }
+    }
+
+    /**
+     * 丢弃未提交的数据并关闭提交线程
+     */
+    public synchronized void close() {
+        reset();
+        executor.shutdown();
+    }
+
+    private void reset() {
+        for (Lane lane : lanes) {
+            // 已经开始执行的bulk无法取消, 等待结束后再复用通道
+            lane.awaitQuietly();
+            lane.bulk = bulkSupplier.get();
+        }
+    }
+
+    private static int getInt(Map<String, String> properties, String key, int defaultValue) {
+        String value = properties == null ? null : properties.get(key);
+        return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static long getLong(Map<String, String> properties, String key, long defaultValue) {
+        String value = properties == null ? null : properties.get(key);
+        return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    private class Lane {
+
+        private ESBulkRequest bulk     = bulkSupplier.get();
+        private Future<?>     inFlight;
+
+        void await() {
+            if (inFlight == null) {
+                return;
+            }
+            try {
+                inFlight.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            } finally {
+                inFlight = null;
+            }
+        }
+
+        void awaitQuietly() {
+            try {
+                await();
+            } catch (RuntimeException e) {
+                // 只等待结束, 失败已经在flush中抛出
+                if (logger.isDebugEnabled()) {
+                    logger.debug("ES bulk discarded with error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,16 @@ public interface ESBulkRequest {
 
     ESBulkResponse bulk();
 
+    /**
+     * 估算的请求字节数
+     */
+    long estimatedSizeInBytes();
+
+    /**
+     * 从响应中取出被拒绝(429)的请求组成新的bulk, 没有需要重试的请求返回null
+     */
+    ESBulkRequest retryRequest(ESBulkResponse response);
+
     interface ESIndexRequest {
 
         ESIndexRequest setSource(Map<String, ?> source);
@@ -38,6 +48,9 @@ public interface ESBulkRequest {
     interface ESBulkResponse {
         boolean hasFailures();
 
+        /**
+         * 处理失败的请求, 忽略404和被拒绝(429)的请求, 其他失败抛出异常
+         */
         void processFailBulkResponse(String errorMsg);
     }
 }
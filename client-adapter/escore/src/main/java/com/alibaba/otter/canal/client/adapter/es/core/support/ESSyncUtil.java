@@ -7,9 +7,12 @@ import java.sql.Blob;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -23,6 +26,7 @@ import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig.ESMapp
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.ColumnItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.TableItem;
+import com.alibaba.otter.canal.client.adapter.support.SqlExecutor;
 import com.alibaba.otter.canal.client.adapter.support.Util;
 
 /**
@@ -274,6 +278,23 @@ public class ESSyncUtil {
      * @return
      */
     public static String pkConditionSql(ESMapping mapping, Map<String, Object> data) {
+        return pkConditionSql(mapping, Collections.singletonList(data), null);
+    }
+
+    public static String pkConditionSql(ESMapping mapping, List<Map<String, Object>> dataList) {
+        return pkConditionSql(mapping, dataList, null);
+    }
+
+    /**
+     * 拼接多行数据的主键条件, 单主键时为IN条件, 联合主键时为OR条件
+     *
+     * @param mapping
+     * @param dataList
+     * @param params 不为空时使用占位符, 主键值按顺序放入params
+     * @return
+     */
+    public static String pkConditionSql(ESMapping mapping, List<Map<String, Object>> dataList,
+                                        List<Object> params) {
         Set<ColumnItem> idColumns = new LinkedHashSet<>();
         SchemaItem schemaItem = mapping.getSchemaItem();
 
@@ -290,26 +311,95 @@ public class ESSyncUtil {
             throw new RuntimeException("Not found primary key field in main table");
         }
 
-        // 拼接condition
-        StringBuilder condition = new StringBuilder(" ");
+        List<String> columns = new ArrayList<>();
         for (ColumnItem idColumn : idColumns) {
-            Object idVal = data.get(idColumn.getColumnName());
-            if (mainTable.getAlias() != null) condition.append(mainTable.getAlias()).append(".");
-            condition.append(idColumn.getColumnName()).append("=");
-            if (idVal instanceof String) {
-                condition.append("'").append(idVal).append("' AND ");
-            } else {
-                condition.append(idVal).append(" AND ");
+            columns.add(mainTable.getAlias() != null ? mainTable.getAlias() + "." + idColumn.getColumnName() : idColumn
+                .getColumnName());
+        }
+        Set<List<Object>> valuesSet = new LinkedHashSet<>();
+        for (Map<String, Object> data : dataList) {
+            List<Object> values = new ArrayList<>();
+            for (ColumnItem idColumn : idColumns) {
+                values.add(data.get(idColumn.getColumnName()));
             }
+            valuesSet.add(values);
         }
 
-        if (condition.toString().endsWith("AND ")) {
-            int len2 = condition.length();
-            condition.delete(len2 - 4, len2);
+        return " " + conditionSql(columns, valuesSet, params) + " ";
+    }
+
+    /**
+     * 拼接多组字段值的条件
+     *
+     * <pre>
+     * 单行: a=1 AND b='x'
+     * 单字段多行: a IN (1,2,3)
+     * 多字段多行: (a=1 AND b='x') OR (a=2 AND b='y')
+     * </pre>
+     *
+     * 使用占位符时多行的个数按{@link SqlExecutor#inListSize(int)}补齐, 重复最后一行, 使语句可以复用
+     *
+     * @param columns 字段名(带表别名)
+     * @param valuesSet 每行的字段值, 顺序与columns一致
+     * @param params 不为空时使用占位符, 字段值按顺序放入params
+     * @return 条件sql
+     */
+    public static String conditionSql(List<String> columns, Collection<List<Object>> valuesSet,
+                                      List<Object> params) {
+        StringBuilder condition = new StringBuilder();
+        if (valuesSet.size() == 1) {
+            appendEquals(condition, columns, valuesSet.iterator().next(), params);
+            return condition.toString();
+        }
+        List<List<Object>> rows = new ArrayList<>(valuesSet);
+        if (params != null) {
+            List<Object> last = rows.get(rows.size() - 1);
+            for (int i = rows.size(), size = SqlExecutor.inListSize(rows.size()); i < size; i++) {
+                rows.add(last);
+            }
+        }
+        if (columns.size() == 1) {
+            condition.append(columns.get(0)).append(" IN (");
+            for (List<Object> values : rows) {
+                appendValue(condition, values.get(0), params);
+                condition.append(",");
+            }
+            condition.setCharAt(condition.length() - 1, ')');
+        } else {
+            condition.append("(");
+            for (List<Object> values : rows) {
+                condition.append("(");
+                appendEquals(condition, columns, values, params);
+                condition.append(") OR ");
+            }
+            condition.delete(condition.length() - 4, condition.length());
+            condition.append(")");
         }
         return condition.toString();
     }
 
+    private static void appendEquals(StringBuilder condition, List<String> columns, List<Object> values,
+                                     List<Object> params) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                condition.append(" AND ");
+            }
+            condition.append(columns.get(i)).append("=");
+            appendValue(condition, values.get(i), params);
+        }
+    }
+
+    private static void appendValue(StringBuilder condition, Object value, List<Object> params) {
+        if (params != null) {
+            condition.append("?");
+            params.add(value);
+        } else if (value instanceof String) {
+            condition.append("'").append(value).append("'");
+        } else {
+            condition.append(value);
+        }
+    }
+
     public static String appendCondition(String sql, String condition) {
         return sql + " WHERE " + condition + " ";
     }
@@ -50,6 +50,11 @@ public interface ESTemplate {
      */
     void commit();
 
+    /**
+     * 释放批量提交的线程
+     */
+    void close();
+
     Object getValFromRS(ESMapping mapping, ResultSet resultSet, String fieldName,
                         String columnName) throws SQLException;
 
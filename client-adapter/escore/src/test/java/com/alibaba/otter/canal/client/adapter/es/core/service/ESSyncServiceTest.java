@@ -0,0 +1,318 @@
+package com.alibaba.otter.canal.client.adapter.es.core.service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.druid.filter.FilterAdapter;
+import com.alibaba.druid.filter.FilterChain;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.proxy.jdbc.PreparedStatementProxy;
+import com.alibaba.druid.proxy.jdbc.ResultSetProxy;
+import com.alibaba.druid.proxy.jdbc.StatementProxy;
+import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig;
+import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig.ESMapping;
+import com.alibaba.otter.canal.client.adapter.es.core.config.SqlParser;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESTemplate;
+import com.alibaba.otter.canal.client.adapter.support.DatasourceConfig;
+import com.alibaba.otter.canal.client.adapter.support.Dml;
+
+/**
+ * 多行dml按批次合并反查源库, 使用h2内存库
+ */
+public class ESSyncServiceTest {
+
+    private static final String URL       = "jdbc:h2:mem:es_sync;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final String KEY       = "es_sync_test";
+    private static final int    USER_ROWS = 1201;
+    private static final String SQL       = "select a.id as _id, a.name, a.rid, a.rtype, concat(b.title, '') as title "
+                                            + "from t_user a left join t_role b on a.rid = b.id and a.rtype = b.type";
+
+    private Connection          keepAlive;
+    private DruidDataSource     dataSource;
+    private final List<Integer> queries   = new ArrayList<>();        // 每次反查的参数个数
+    private FakeESTemplate      esTemplate;
+    private ESSyncService       esSyncService;
+
+    @Before
+    public void setUp() throws Exception {
+        keepAlive = DriverManager.getConnection(URL, "sa", "");
+        execute("CREATE TABLE t_user (id BIGINT PRIMARY KEY, name VARCHAR(16), rid BIGINT, rtype VARCHAR(8))");
+        execute("CREATE TABLE t_role (id BIGINT, type VARCHAR(8), title VARCHAR(16), PRIMARY KEY (id, type))");
+        try (PreparedStatement pstmt = keepAlive.prepareStatement("INSERT INTO t_user VALUES (?, ?, ?, ?)")) {
+            for (long i = 0; i < USER_ROWS; i++) {
+                pstmt.setLong(1, i);
+                pstmt.setString(2, "n" + i);
+                pstmt.setLong(3, i % 7);
+                pstmt.setString(4, type(i));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        try (PreparedStatement pstmt = keepAlive.prepareStatement("INSERT INTO t_role VALUES (?, ?, ?)")) {
+            for (long i = 0; i < 7; i++) {
+                for (String type : new String[] { "x", "y" }) {
+                    pstmt.setLong(1, i);
+                    pstmt.setString(2, type);
+                    pstmt.setString(3, title(i, type));
+                    pstmt.addBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+
+        dataSource = new DruidDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl(URL);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setProxyFilters(Collections.singletonList(new FilterAdapter() {
+
+            @Override
+            public void statement_setFetchSize(FilterChain chain, StatementProxy statement, int rows) {
+                // 流式查询的fetchSize为Integer.MIN_VALUE, h2不支持
+            }
+
+            @Override
+            public ResultSetProxy preparedStatement_executeQuery(FilterChain chain,
+                                                                 PreparedStatementProxy statement) throws SQLException {
+                queries.add(statement.getParametersSize());
+                return super.preparedStatement_executeQuery(chain, statement);
+            }
+        }));
+        DatasourceConfig.DATA_SOURCES.put(KEY, dataSource);
+
+        esTemplate = new FakeESTemplate();
+        esSyncService = new ESSyncService(esTemplate);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DatasourceConfig.DATA_SOURCES.remove(KEY);
+        dataSource.close();
+        execute("DROP ALL OBJECTS");
+        keepAlive.close();
+    }
+
+    @Test
+    public void testMainTableBatches() {
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (long i = 0; i < USER_ROWS; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i);
+            row.put("name", "n" + i);
+            data.add(row);
+        }
+
+        esSyncService.sync(config(), dml("t_user", data));
+
+        // 按500行一批反查, 最后一批201行补齐到500个参数
+        Assert.assertEquals(3, queries.size());
+        for (int params : queries) {
+            Assert.assertEquals(500, params);
+        }
+        // 每行结果写回对应主键的文档
+        Assert.assertEquals(USER_ROWS, esTemplate.inserts.size());
+        for (long i = 0; i < USER_ROWS; i++) {
+            Assert.assertEquals("n" + i, esTemplate.inserts.get(i).get("name"));
+            Assert.assertEquals(title(i % 7, type(i)), esTemplate.inserts.get(i).get("title"));
+        }
+    }
+
+    @Test
+    public void testJoinCompositeKeys() {
+        List<Map<String, Object>> data = new ArrayList<>();
+        data.add(role(1L, "x"));
+        data.add(role(1L, "y"));
+        data.add(role(2L, "y"));
+        // 关联字段为空的行不匹配任何主表数据
+        data.add(role(3L, null));
+
+        esSyncService.sync(config(), dml("t_role", data));
+
+        // 联合关联字段按OR合并为一次反查, 4组补齐到10组
+        Assert.assertEquals(Collections.singletonList(20), queries);
+        // 只更新关联到这三个角色的主表行, 并且标题与各自的关联字段对应
+        int expected = 0;
+        for (long i = 0; i < USER_ROWS; i++) {
+            long rid = i % 7;
+            String rtype = type(i);
+            if (rid == 1L || (rid == 2L && "y".equals(rtype))) {
+                expected++;
+            }
+        }
+        Assert.assertEquals(expected, esTemplate.updates.size());
+        for (Map<String, Object>[] update : esTemplate.updates) {
+            Map<String, Object> params = update[0];
+            long rid = ((Number) params.get("rid")).longValue();
+            String rtype = (String) params.get("rtype");
+            Assert.assertTrue(rid == 1L || (rid == 2L && "y".equals(rtype)));
+            Assert.assertEquals(title(rid, rtype), update[1].get("title"));
+        }
+    }
+
+    @Test
+    public void testJoinBatchBoundary() {
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (long i = 0; i < 501; i++) {
+            data.add(role(i, "x"));
+        }
+
+        esSyncService.sync(config(), dml("t_role", data));
+
+        // 500行一批, 第二批只有1行时为等值条件
+        Assert.assertEquals(2, queries.size());
+        Assert.assertEquals(Integer.valueOf(1000), queries.get(0));
+        Assert.assertEquals(Integer.valueOf(2), queries.get(1));
+        // 只有id 0~6存在关联的主表行
+        int expected = 0;
+        for (long i = 0; i < USER_ROWS; i++) {
+            if ("x".equals(type(i))) {
+                expected++;
+            }
+        }
+        Assert.assertEquals(expected, esTemplate.updates.size());
+    }
+
+    private ESSyncConfig config() {
+        ESMapping mapping = new ESMapping();
+        mapping.set_index("test");
+        mapping.set_id("_id");
+        mapping.setSql(SQL);
+        mapping.setSchemaItem(SqlParser.parse(SQL));
+
+        ESSyncConfig config = new ESSyncConfig();
+        config.setDataSourceKey(KEY);
+        config.setDestination("example");
+        config.setEsMapping(mapping);
+        return config;
+    }
+
+    private static Dml dml(String table, List<Map<String, Object>> data) {
+        Dml dml = new Dml();
+        dml.setDestination("example");
+        dml.setDatabase("test");
+        dml.setTable(table);
+        dml.setType("INSERT");
+        dml.setData(data);
+        return dml;
+    }
+
+    private static Map<String, Object> role(long id, String type) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("type", type);
+        row.put("title", title(id, type));
+        return row;
+    }
+
+    private static String type(long userId) {
+        return userId % 2 == 0 ? "x" : "y";
+    }
+
+    private static String title(long roleId, String type) {
+        return "t" + roleId + type;
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * 记录写入的数据, 字段值直接从结果集/dml中按列名读取
+     */
+    private static class FakeESTemplate implements ESTemplate {
+
+        private final Map<Long, Map<String, Object>> inserts = new HashMap<>();
+        private final List<Map<String, Object>[]>    updates = new ArrayList<>();
+
+        @Override
+        public void insert(ESMapping mapping, Object pkVal, Map<String, Object> esFieldData) {
+            inserts.put(((Number) pkVal).longValue(), esFieldData);
+        }
+
+        @Override
+        public void update(ESMapping mapping, Object pkVal, Map<String, Object> esFieldData) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void updateByQuery(ESSyncConfig config, Map<String, Object> paramsTmp,
+                                  Map<String, Object> esFieldData) {
+            updates.add(new Map[] { paramsTmp, esFieldData });
+        }
+
+        @Override
+        public void delete(ESMapping mapping, Object pkVal, Map<String, Object> esFieldData) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Object getValFromRS(ESMapping mapping, ResultSet resultSet, String fieldName,
+                                   String columnName) throws SQLException {
+            return resultSet.getObject(columnName);
+        }
+
+        @Override
+        public Object getESDataFromRS(ESMapping mapping, ResultSet resultSet,
+                                      Map<String, Object> esFieldData) throws SQLException {
+            esFieldData.put("name", resultSet.getObject("name"));
+            esFieldData.put("title", resultSet.getObject("title"));
+            return resultSet.getObject("_id");
+        }
+
+        @Override
+        public Object getIdValFromRS(ESMapping mapping, ResultSet resultSet) throws SQLException {
+            return resultSet.getObject("_id");
+        }
+
+        @Override
+        public Object getESDataFromRS(ESMapping mapping, ResultSet resultSet, Map<String, Object> dmlOld,
+                                      Map<String, Object> esFieldData) throws SQLException {
+            return getESDataFromRS(mapping, resultSet, esFieldData);
+        }
+
+        @Override
+        public Object getValFromData(ESMapping mapping, Map<String, Object> dmlData, String fieldName,
+                                     String columnName) {
+            return dmlData.get(columnName);
+        }
+
+        @Override
+        public Object getESDataFromDmlData(ESMapping mapping, Map<String, Object> dmlData,
+                                           Map<String, Object> esFieldData) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getESDataFromDmlData(ESMapping mapping, Map<String, Object> dmlData, Map<String, Object> dmlOld,
+                                           Map<String, Object> esFieldData) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
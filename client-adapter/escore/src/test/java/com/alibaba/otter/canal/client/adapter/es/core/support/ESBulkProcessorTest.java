@@ -0,0 +1,170 @@
+package com.alibaba.otter.canal.client.adapter.es.core.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESBulkResponse;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESDeleteRequest;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESIndexRequest;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESUpdateRequest;
+
+public class ESBulkProcessorTest {
+
+    private static final String INDEX = "test";
+
+    @Test
+    public void testFlushWaitsInFlightOnFailure() throws Exception {
+        ESBulkProcessor processor = new ESBulkProcessor(FakeBulk::new, properties());
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicBoolean finished = new AtomicBoolean(false);
+            // 第一个通道的bulk失败, 第二个通道的bulk还在执行
+            processor.add(INDEX, idOfLane(0), new FakeDelete(() -> {
+                throw new RuntimeException("bulk failed");
+            }));
+            processor.add(INDEX, idOfLane(1), new FakeDelete(() -> {
+                await(release);
+                finished.set(true);
+            }));
+
+            Thread releaser = new Thread(() -> {
+                sleep(200);
+                release.countDown();
+            });
+            releaser.start();
+            try {
+                processor.flush();
+                Assert.fail();
+            } catch (RuntimeException e) {
+                Assert.assertEquals("bulk failed", e.getMessage());
+            }
+            // flush失败返回前已经等待在途的bulk结束
+            Assert.assertTrue(finished.get());
+            releaser.join();
+        } finally {
+            processor.close();
+        }
+    }
+
+    @Test
+    public void testClose() {
+        List<String> executed = new ArrayList<>();
+        ESBulkProcessor processor = new ESBulkProcessor(FakeBulk::new, properties());
+        processor.add(INDEX, idOfLane(0), new FakeDelete(() -> executed.add("a")));
+        processor.close();
+        Assert.assertEquals(1, executed.size());
+
+        try {
+            processor.add(INDEX, idOfLane(0), new FakeDelete(() -> executed.add("b")));
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // 关闭后不再提交
+        }
+    }
+
+    private static Map<String, String> properties() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(ESBulkProcessor.BULK_CONCURRENCY, "2");
+        properties.put(ESBulkProcessor.BULK_ACTIONS, "1");
+        return properties;
+    }
+
+    private static int idOfLane(int lane) {
+        for (int id = 0;; id++) {
+            if (Math.abs((INDEX + "#" + id).hashCode() % 2) == lane) {
+                return id;
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class FakeDelete implements ESDeleteRequest {
+
+        private final Runnable action;
+
+        FakeDelete(Runnable action){
+            this.action = action;
+        }
+    }
+
+    private static class FakeBulk implements ESBulkRequest {
+
+        private final List<FakeDelete> requests = new ArrayList<>();
+
+        @Override
+        public void resetBulk() {
+            requests.clear();
+        }
+
+        @Override
+        public ESBulkRequest add(ESIndexRequest esIndexRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ESBulkRequest add(ESUpdateRequest esUpdateRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ESBulkRequest add(ESDeleteRequest esDeleteRequest) {
+            requests.add((FakeDelete) esDeleteRequest);
+            return this;
+        }
+
+        @Override
+        public int numberOfActions() {
+            return requests.size();
+        }
+
+        @Override
+        public ESBulkResponse bulk() {
+            requests.forEach(request -> request.action.run());
+            return new ESBulkResponse() {
+
+                @Override
+                public boolean hasFailures() {
+                    return false;
+                }
+
+                @Override
+                public void processFailBulkResponse(String errorMsg) {
+                }
+            };
+        }
+
+        @Override
+        public long estimatedSizeInBytes() {
+            return 0;
+        }
+
+        @Override
+        public ESBulkRequest retryRequest(ESBulkResponse response) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.alibaba.otter.canal.client.adapter.es.core.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 反查条件的拼接, 使用占位符时按批次大小补齐
+ */
+public class ESSyncUtilTest {
+
+    @Test
+    public void testSingleRow() {
+        List<Object> params = new ArrayList<>();
+        String sql = ESSyncUtil.conditionSql(Arrays.asList("a.id", "a.type"),
+            Collections.singletonList(Arrays.asList(1L, "x")),
+            params);
+
+        Assert.assertEquals("a.id=? AND a.type=?", sql);
+        Assert.assertEquals(Arrays.asList(1L, "x"), params);
+    }
+
+    @Test
+    public void testInListPadding() {
+        List<Object> params = new ArrayList<>();
+        String sql = ESSyncUtil.conditionSql(Collections.singletonList("a.id"), keys(3), params);
+
+        // 3行补齐到10个占位符, 重复最后一行
+        Assert.assertEquals("a.id IN (" + placeholders(10) + ")", sql);
+        Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 2L, 2L, 2L, 2L, 2L, 2L, 2L), params);
+    }
+
+    @Test
+    public void testBatchBoundary() {
+        // 反查批次上限500行, 正好500行时不补齐
+        List<Object> params = new ArrayList<>();
+        String sql = ESSyncUtil.conditionSql(Collections.singletonList("a.id"), keys(500), params);
+        Assert.assertEquals("a.id IN (" + placeholders(500) + ")", sql);
+        Assert.assertEquals(500, params.size());
+        Assert.assertEquals(499L, params.get(499));
+
+        // 101行补齐到500
+        params = new ArrayList<>();
+        sql = ESSyncUtil.conditionSql(Collections.singletonList("a.id"), keys(101), params);
+        Assert.assertEquals("a.id IN (" + placeholders(500) + ")", sql);
+        Assert.assertEquals(500, params.size());
+        Assert.assertEquals(100L, params.get(499));
+
+        // 补齐后的语句只与行数所在的区间有关
+        List<Object> params11 = new ArrayList<>();
+        List<Object> params50 = new ArrayList<>();
+        Assert.assertEquals(ESSyncUtil.conditionSql(Collections.singletonList("a.id"), keys(11), params11),
+            ESSyncUtil.conditionSql(Collections.singletonList("a.id"), keys(50), params50));
+        Assert.assertEquals(50, params11.size());
+    }
+
+    @Test
+    public void testCompositeKeys() {
+        Set<List<Object>> valuesSet = new LinkedHashSet<>();
+        valuesSet.add(Arrays.asList(1L, "x"));
+        valuesSet.add(Arrays.asList(2L, "y"));
+        List<Object> params = new ArrayList<>();
+        String sql = ESSyncUtil.conditionSql(Arrays.asList("b.id", "b.type"), valuesSet, params);
+
+        StringBuilder expected = new StringBuilder("(");
+        for (int i = 0; i < 10; i++) {
+            if (i > 0) {
+                expected.append(" OR ");
+            }
+            expected.append("(b.id=? AND b.type=?)");
+        }
+        expected.append(")");
+        Assert.assertEquals(expected.toString(), sql);
+        Assert.assertEquals(20, params.size());
+        Assert.assertEquals(Arrays.asList(1L, "x", 2L, "y", 2L, "y"), params.subList(0, 6));
+        Assert.assertEquals(Arrays.asList(2L, "y"), params.subList(18, 20));
+    }
+
+    @Test
+    public void testLiteral() {
+        // 不使用占位符时不补齐
+        Set<List<Object>> valuesSet = new LinkedHashSet<>();
+        valuesSet.add(Arrays.asList(1L, "x"));
+        valuesSet.add(Arrays.asList(2L, "y"));
+        Assert.assertEquals("((b.id=1 AND b.type='x') OR (b.id=2 AND b.type='y'))",
+            ESSyncUtil.conditionSql(Arrays.asList("b.id", "b.type"), valuesSet, null));
+        Assert.assertEquals("a.id IN (0,1,2)", ESSyncUtil.conditionSql(Collections.singletonList("a.id"), keys(3), null));
+    }
+
+    @Test
+    public void testNullKey() {
+        // 空值作为参数传入, 与关联查询一致不会匹配任何行, 也不影响其他行
+        Set<List<Object>> valuesSet = new LinkedHashSet<>();
+        valuesSet.add(Arrays.asList(1L, null));
+        valuesSet.add(Arrays.asList(2L, "y"));
+        List<Object> params = new ArrayList<>();
+        ESSyncUtil.conditionSql(Arrays.asList("b.id", "b.type"), valuesSet, params);
+        Assert.assertEquals(Arrays.asList(1L, null, 2L, "y"), params.subList(0, 4));
+
+        params = new ArrayList<>();
+        String sql = ESSyncUtil.conditionSql(Collections.singletonList("a.id"),
+            Collections.singletonList(Collections.singletonList(null)),
+            params);
+        Assert.assertEquals("a.id=?", sql);
+        Assert.assertEquals(Collections.singletonList(null), params);
+    }
+
+    private static Set<List<Object>> keys(int count) {
+        Set<List<Object>> valuesSet = new LinkedHashSet<>();
+        for (long i = 0; i < count; i++) {
+            valuesSet.add(Collections.singletonList(i));
+        }
+        return valuesSet;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? ",?" : "?");
+        }
+        return sb.toString();
+    }
+}
@@ -26,6 +26,7 @@ import com.alibaba.otter.canal.client.adapter.hbase.support.HbaseTemplate;
 import com.alibaba.otter.canal.client.adapter.support.Dml;
 import com.alibaba.otter.canal.client.adapter.support.EtlResult;
 import com.alibaba.otter.canal.client.adapter.support.OuterAdapterConfig;
+import com.alibaba.otter.canal.client.adapter.support.PartitionedDmlExecutor;
 import com.alibaba.otter.canal.client.adapter.support.SPI;
 
 /**
@@ -47,6 +48,8 @@ public class HbaseAdapter implements OuterAdapter {
 
     private HbaseConfigMonitor                      configMonitor;
 
+    private PartitionedDmlExecutor                  partitionedDmlExecutor;                                      // 按主键分区并行同步
+
     private Properties                              envProperties;
 
     public Map<String, MappingConfig> getHbaseMapping() {
@@ -90,6 +93,8 @@ public class HbaseAdapter implements OuterAdapter {
             }
 
             Map<String, String> properties = configuration.getProperties();
+            String threads = properties.get("threads");
+            partitionedDmlExecutor = new PartitionedDmlExecutor(threads != null ? Integer.parseInt(threads) : 1);
 
             Configuration hbaseConfig = HBaseConfiguration.create();
             properties.forEach(hbaseConfig::set);
@@ -108,9 +113,9 @@ public class HbaseAdapter implements OuterAdapter {
         if (dmls == null || dmls.isEmpty()) {
             return;
         }
-        for (Dml dml : dmls) {
-            sync(dml);
-        }
+        partitionedDmlExecutor.execute(dmls, (partition, partitionDmls) -> partitionDmls.forEach(this::sync));
+        // 批次结束时flush, 保证返回(ack)前数据已经写入hbase
+        hbaseTemplate.flush();
     }
 
     private void sync(Dml dml) {
@@ -203,11 +208,19 @@ public class HbaseAdapter implements OuterAdapter {
         return res;
     }
 
+    @Override
+    public boolean supportDmlCompaction() {
+        return true;
+    }
+
     @Override
     public void destroy() {
         if (configMonitor != null) {
             configMonitor.destroy();
         }
+        if (partitionedDmlExecutor != null) {
+            partitionedDmlExecutor.close();
+        }
         try {
             hbaseTemplate.close();
         } catch (IOException e) {
@@ -215,6 +228,14 @@ public class HbaseAdapter implements OuterAdapter {
         }
     }
 
+    /**
+     * BufferedMutator写入指标
+     */
+    @Override
+    public Map<String, Object> metrics() {
+        return hbaseTemplate.getMutatorMetrics();
+    }
+
     @Override
     public String getDestination(String task) {
         MappingConfig config = hbaseMapping.get(task);
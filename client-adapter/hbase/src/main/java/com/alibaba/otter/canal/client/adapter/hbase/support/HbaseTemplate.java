@@ -2,18 +2,28 @@ package com.alibaba.otter.canal.client.adapter.hbase.support;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
 import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
@@ -27,14 +37,51 @@ import org.slf4j.LoggerFactory;
  */
 public class HbaseTemplate {
 
-    private Logger        logger = LoggerFactory.getLogger(this.getClass());
+    public static final String           MUTATOR_ENABLE         = "canal.hbase.mutator.enable";
+    public static final String           MUTATOR_FLUSH_INTERVAL = "canal.hbase.mutator.flush.interval";
+    public static final String           MUTATOR_WRITE_BUFFER   = "hbase.client.write.buffer";
 
-    private Configuration hbaseConfig;                                      // hbase配置对象
-    private Connection    conn;                                             // hbase连接
+    private Logger                       logger                 = LoggerFactory.getLogger(this.getClass());
+
+    private Configuration                hbaseConfig;                                                         // hbase配置对象
+    private Connection                   conn;                                                                // hbase连接
+
+    private boolean                      mutatorEnable;                                                       // 是否使用BufferedMutator写入
+    private long                         writeBufferSize;                                                     // 每个表的写缓冲大小
+    private Map<String, TableMutator>    mutators               = new ConcurrentHashMap<>();                  // 表名对应的BufferedMutator
+    private ScheduledExecutorService     flushScheduler;                                                      // 定时flush
+
+    private AtomicLong                   bufferedBytes          = new AtomicLong(0);                          // 未flush的数据量
+    private AtomicLong                   flushCount             = new AtomicLong(0);
+    private AtomicLong                   flushTimeMillis        = new AtomicLong(0);                          // flush累计耗时
+    private AtomicLong                   maxFlushTimeMillis     = new AtomicLong(0);
 
     public HbaseTemplate(Configuration hbaseConfig){
+        this(hbaseConfig, null);
+    }
+
+    HbaseTemplate(Configuration hbaseConfig, Connection conn){
         this.hbaseConfig = hbaseConfig;
-        initConn();
+        if (conn == null) {
+            initConn();
+        } else {
+            this.conn = conn;
+        }
+
+        this.mutatorEnable = hbaseConfig.getBoolean(MUTATOR_ENABLE, true);
+        this.writeBufferSize = hbaseConfig.getLong(MUTATOR_WRITE_BUFFER, 2 * 1024 * 1024L);
+        long flushInterval = hbaseConfig.getLong(MUTATOR_FLUSH_INTERVAL, 0L);
+        if (mutatorEnable && flushInterval > 0) {
+            flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "hbase-mutator-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushScheduler.scheduleWithFixedDelay(this::scheduledFlush,
+                flushInterval,
+                flushInterval,
+                TimeUnit.MILLISECONDS);
+        }
     }
 
     private void initConn() {
@@ -134,7 +181,7 @@ public class HbaseTemplate {
     public Boolean puts(String tableName, List<HRow> rows) {
         boolean flag = false;
         try {
-            HTable table = (HTable) getConnection().getTable(TableName.valueOf(tableName));
+            HTable table = mutatorEnable ? null : (HTable) getConnection().getTable(TableName.valueOf(tableName));
             List<Put> puts = new ArrayList<>();
             for (HRow hRow : rows) {
                 Put put = new Put(hRow.getRowKey());
@@ -146,7 +193,11 @@ public class HbaseTemplate {
                 puts.add(put);
             }
             if (!puts.isEmpty()) {
-                table.put(puts);
+                if (mutatorEnable) {
+                    getMutator(tableName).mutate(puts);
+                } else {
+                    table.put(puts);
+                }
             }
             flag = true;
         } catch (Exception e) {
@@ -166,14 +217,18 @@ public class HbaseTemplate {
     public Boolean deletes(String tableName, Set<byte[]> rowKeys) {
         boolean flag = false;
         try {
-            HTable table = (HTable) getConnection().getTable(TableName.valueOf(tableName));
+            HTable table = mutatorEnable ? null : (HTable) getConnection().getTable(TableName.valueOf(tableName));
             List<Delete> deletes = new ArrayList<>();
             for (byte[] rowKey : rowKeys) {
                 Delete delete = new Delete(rowKey);
                 deletes.add(delete);
             }
             if (!deletes.isEmpty()) {
-                table.delete(deletes);
+                if (mutatorEnable) {
+                    getMutator(tableName).mutate(deletes);
+                } else {
+                    table.delete(deletes);
+                }
             }
             flag = true;
         } catch (Exception e) {
@@ -183,9 +238,165 @@ public class HbaseTemplate {
         return flag;
     }
 
+    /**
+     * flush所有表的BufferedMutator, 返回后之前写入的数据已经提交到hbase
+     */
+    public void flush() {
+        if (!mutatorEnable || mutators.isEmpty()) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        try {
+            for (TableMutator mutator : mutators.values()) {
+                mutator.flush();
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+        recordFlush(System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 定时flush, 失败的异常记录在对应表的mutator上, 在下一次写入或批次结束的flush时抛出, 使该批次重新同步
+     */
+    void scheduledFlush() {
+        if (mutators.isEmpty()) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        for (TableMutator mutator : mutators.values()) {
+            mutator.backgroundFlush();
+        }
+        recordFlush(System.currentTimeMillis() - begin);
+    }
+
+    private void recordFlush(long elapsed) {
+        flushCount.incrementAndGet();
+        flushTimeMillis.addAndGet(elapsed);
+        maxFlushTimeMillis.accumulateAndGet(elapsed, Math::max);
+        if (logger.isDebugEnabled()) {
+            logger.debug("hbase mutator flush elapsed time: {}, buffered bytes: {}", elapsed, bufferedBytes.get());
+        }
+    }
+
+    /**
+     * BufferedMutator写入指标: 未flush的数据量、flush次数及耗时
+     */
+    public Map<String, Object> getMutatorMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long count = flushCount.get();
+        metrics.put("bufferedBytes", bufferedBytes.get());
+        metrics.put("flushCount", count);
+        metrics.put("flushTimeMillis", flushTimeMillis.get());
+        metrics.put("avgFlushTimeMillis", count == 0 ? 0 : flushTimeMillis.get() / count);
+        metrics.put("maxFlushTimeMillis", maxFlushTimeMillis.get());
+        return metrics;
+    }
+
+    private TableMutator getMutator(String tableName) {
+        return mutators.computeIfAbsent(tableName, k -> {
+            try {
+                BufferedMutatorParams params = new BufferedMutatorParams(TableName.valueOf(tableName))
+                    .writeBufferSize(writeBufferSize);
+                return new TableMutator(getConnection().getBufferedMutator(params));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
     public void close() throws IOException {
+        if (flushScheduler != null) {
+            flushScheduler.shutdownNow();
+        }
+        for (TableMutator mutator : mutators.values()) {
+            try {
+                mutator.close();
+            } catch (IOException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+        mutators.clear();
         if (conn != null) {
             conn.close();
         }
     }
+
+    /**
+     * 单个表的BufferedMutator
+     *
+     * <pre>
+     * 1. put和delete切换时先flush已缓冲的数据, 保证同一行的put/delete按写入顺序生效
+     * 2. 定时flush失败时已缓冲的数据可能丢失, 记录异常并在下一次mutate/flush时抛出
+     * </pre>
+     */
+    private class TableMutator {
+
+        private final BufferedMutator mutator;
+        private Class<?>              lastType;    // 上一次写入的操作类型
+        private long                  buffered;    // 本表未flush的数据量
+        private Exception             failure;     // 定时flush失败的异常
+
+        TableMutator(BufferedMutator mutator){
+            this.mutator = mutator;
+        }
+
+        synchronized void mutate(List<? extends Mutation> mutations) throws IOException {
+            checkFailure();
+            Class<?> type = mutations.get(0).getClass();
+            if (lastType != null && lastType != type) {
+                doFlush();
+            }
+            lastType = type;
+            long size = 0;
+            for (Mutation mutation : mutations) {
+                size += mutation.heapSize();
+            }
+            mutator.mutate(mutations);
+            buffered += size;
+            bufferedBytes.addAndGet(size);
+            if (buffered >= writeBufferSize) {
+                // 超过写缓冲后mutator已经自动提交, 重新计数
+                bufferedBytes.addAndGet(-buffered);
+                buffered = 0;
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            checkFailure();
+            doFlush();
+        }
+
+        synchronized void backgroundFlush() {
+            try {
+                doFlush();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                logger.warn("hbase mutator scheduled flush failed: {}", e.getMessage());
+            }
+        }
+
+        private void doFlush() throws IOException {
+            mutator.flush();
+            bufferedBytes.addAndGet(-buffered);
+            buffered = 0;
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                Exception e = failure;
+                failure = null;
+                throw new IOException("hbase mutator scheduled flush failed", e);
+            }
+        }
+
+        synchronized void close() throws IOException {
+            mutator.close();
+            bufferedBytes.addAndGet(-buffered);
+            buffered = 0;
+        }
+    }
 }
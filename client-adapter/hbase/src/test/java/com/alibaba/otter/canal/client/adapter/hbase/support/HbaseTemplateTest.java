@@ -0,0 +1,108 @@
+package com.alibaba.otter.canal.client.adapter.hbase.support;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+/**
+ * BufferedMutator写入: 批次结束flush成功之后数据才算写入, flush失败需要抛出使批次重新同步
+ */
+public class HbaseTemplateTest {
+
+    private BufferedMutator mutator;
+    private HbaseTemplate   hbaseTemplate;
+
+    @Before
+    public void setUp() throws IOException {
+        mutator = mock(BufferedMutator.class);
+        Connection conn = mock(Connection.class);
+        when(conn.getBufferedMutator(any(BufferedMutatorParams.class))).thenReturn(mutator);
+        Configuration hbaseConfig = new Configuration(false);
+        hbaseTemplate = new HbaseTemplate(hbaseConfig, conn);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlushAfterBatch() throws IOException {
+        hbaseTemplate.puts("t1", Collections.singletonList(row("1")));
+        verify(mutator).mutate(any(List.class));
+        // 写入只进入缓冲, 批次结束前不提交
+        verify(mutator, never()).flush();
+        Assert.assertTrue((Long) hbaseTemplate.getMutatorMetrics().get("bufferedBytes") > 0);
+
+        hbaseTemplate.flush();
+        verify(mutator).flush();
+        Map<String, Object> metrics = hbaseTemplate.getMutatorMetrics();
+        Assert.assertEquals(0L, metrics.get("bufferedBytes"));
+        Assert.assertEquals(1L, metrics.get("flushCount"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFlushFailure() throws IOException {
+        hbaseTemplate.puts("t1", Collections.singletonList(row("1")));
+        doThrow(new IOException("region server down")).when(mutator).flush();
+        hbaseTemplate.flush();
+    }
+
+    @Test
+    public void testScheduledFlushFailure() throws IOException {
+        hbaseTemplate.puts("t1", Collections.singletonList(row("1")));
+        doThrow(new IOException("region server down")).doNothing().when(mutator).flush();
+        // 定时flush失败不抛出, 记录下来在批次结束的flush时报告
+        hbaseTemplate.scheduledFlush();
+        try {
+            hbaseTemplate.flush();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause().getMessage().contains("scheduled flush failed"));
+        }
+        // 异常只报告一次, 重新同步后可以正常flush
+        hbaseTemplate.flush();
+        verify(mutator, times(2)).flush();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlushBetweenPutAndDelete() throws IOException {
+        hbaseTemplate.puts("t1", Collections.singletonList(row("1")));
+        hbaseTemplate.deletes("t1", Collections.singleton(Bytes.toBytes("1")));
+        // put和delete切换时先提交缓冲的put
+        InOrder inOrder = inOrder(mutator);
+        inOrder.verify(mutator).mutate(any(List.class));
+        inOrder.verify(mutator).flush();
+        inOrder.verify(mutator).mutate(any(List.class));
+    }
+
+    @Test
+    public void testFlushWithoutWrite() throws IOException {
+        hbaseTemplate.flush();
+        verify(mutator, never()).flush();
+        Assert.assertEquals(0L, hbaseTemplate.getMutatorMetrics().get("flushCount"));
+    }
+
+    private static HRow row(String rowKey) {
+        HRow hRow = new HRow(Bytes.toBytes(rowKey));
+        hRow.addCell("cf", "name", Bytes.toBytes("n" + rowKey));
+        return hRow;
+    }
+}
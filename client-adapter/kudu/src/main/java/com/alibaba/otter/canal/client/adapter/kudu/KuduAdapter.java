@@ -21,6 +21,7 @@ import com.alibaba.otter.canal.client.adapter.kudu.support.KuduTemplate;
 import com.alibaba.otter.canal.client.adapter.support.Dml;
 import com.alibaba.otter.canal.client.adapter.support.EtlResult;
 import com.alibaba.otter.canal.client.adapter.support.OuterAdapterConfig;
+import com.alibaba.otter.canal.client.adapter.support.PartitionedDmlExecutor;
 import com.alibaba.otter.canal.client.adapter.support.SPI;
 
 /**
@@ -43,6 +44,8 @@ public class KuduAdapter implements OuterAdapter {
 
     private KuduConfigMonitor                           kuduConfigMonitor;
 
+    private PartitionedDmlExecutor                      partitionedDmlExecutor;                                      // 按主键分区并行同步
+
     private Properties                                  envProperties;
 
     public Map<String, KuduMappingConfig> getKuduMapping() {
@@ -89,8 +92,14 @@ public class KuduAdapter implements OuterAdapter {
         Map<String, String> properties = configuration.getProperties();
 
         String kudu_master = properties.get("kudu.master.address");
-        kuduTemplate = new KuduTemplate(kudu_master);
+        String mutationBufferSpace = properties.get("kudu.mutation.buffer.space");
+        String flushInterval = properties.get("kudu.flush.interval");
+        kuduTemplate = new KuduTemplate(kudu_master,
+            mutationBufferSpace != null ? Integer.parseInt(mutationBufferSpace) : KuduTemplate.DEFAULT_MUTATION_BUFFER_SPACE,
+            flushInterval != null ? Integer.parseInt(flushInterval) : KuduTemplate.DEFAULT_FLUSH_INTERVAL);
         kuduSyncService = new KuduSyncService(kuduTemplate);
+        String threads = properties.get("threads");
+        partitionedDmlExecutor = new PartitionedDmlExecutor(threads != null ? Integer.parseInt(threads) : 1);
 
         kuduConfigMonitor = new KuduConfigMonitor();
         kuduConfigMonitor.init(this, envProperties);
@@ -101,40 +110,49 @@ public class KuduAdapter implements OuterAdapter {
         if (dmls == null || dmls.isEmpty()) {
             return;
         }
-        for (Dml dml : dmls) {
-            if (dml == null) {
-                return;
-            }
-            String destination = StringUtils.trimToEmpty(dml.getDestination());
-            String groupId = StringUtils.trimToEmpty(dml.getGroupId());
-            String database = dml.getDatabase();
-            String table = dml.getTable();
-            Map<String, KuduMappingConfig> configMap;
-            if (envProperties != null && !"tcp".equalsIgnoreCase(envProperties.getProperty("canal.conf.mode"))) {
-                configMap = mappingConfigCache.get(destination + "-" + groupId + "_" + database + "-" + table);
-            } else {
-                configMap = mappingConfigCache.get(destination + "_" + database + "-" + table);
-            }
-            if (configMap != null) {
-                List<KuduMappingConfig> configs = new ArrayList<>();
-                configMap.values().forEach(config -> {
-                    if (StringUtils.isNotEmpty(config.getGroupId())) {
-                        if (config.getGroupId().equals(dml.getGroupId())) {
-                            configs.add(config);
-                        }
-                    } else {
+        try {
+            partitionedDmlExecutor.execute(dmls, (partition, partitionDmls) -> partitionDmls.forEach(this::sync));
+        } catch (RuntimeException e) {
+            kuduTemplate.discard();
+            throw e;
+        }
+        // 整个批次写完后统一flush并检查写入结果, 失败时整批重新同步
+        kuduTemplate.flush();
+    }
+
+    private void sync(Dml dml) {
+        if (dml == null) {
+            return;
+        }
+        String destination = StringUtils.trimToEmpty(dml.getDestination());
+        String groupId = StringUtils.trimToEmpty(dml.getGroupId());
+        String database = dml.getDatabase();
+        String table = dml.getTable();
+        Map<String, KuduMappingConfig> configMap;
+        if (envProperties != null && !"tcp".equalsIgnoreCase(envProperties.getProperty("canal.conf.mode"))) {
+            configMap = mappingConfigCache.get(destination + "-" + groupId + "_" + database + "-" + table);
+        } else {
+            configMap = mappingConfigCache.get(destination + "_" + database + "-" + table);
+        }
+        if (configMap != null) {
+            List<KuduMappingConfig> configs = new ArrayList<>();
+            configMap.values().forEach(config -> {
+                if (StringUtils.isNotEmpty(config.getGroupId())) {
+                    if (config.getGroupId().equals(dml.getGroupId())) {
                         configs.add(config);
                     }
-                });
-                if (!configs.isEmpty()) {
-                    configs.forEach(config -> kuduSyncService.sync(config, dml));
                 } else {
-                    logger.error("groupID didn't mach,please check your gruopId ");
+                    configs.add(config);
                 }
+            });
+            if (!configs.isEmpty()) {
+                configs.forEach(config -> kuduSyncService.sync(config, dml));
             } else {
-                logger.error("{} config didn't get,please check your map key ", destination + "_" + database + "-"
-                                                                                + table);
+                logger.error("groupID didn't mach,please check your gruopId ");
             }
+        } else {
+            logger.error("{} config didn't get,please check your map key ", destination + "_" + database + "-"
+                                                                            + table);
         }
     }
 
@@ -143,6 +161,9 @@ public class KuduAdapter implements OuterAdapter {
         if (kuduConfigMonitor != null) {
             kuduConfigMonitor.destroy();
         }
+        if (partitionedDmlExecutor != null) {
+            partitionedDmlExecutor.close();
+        }
         // 加入kudu client 关闭钩子
         kuduTemplate.closeKuduClient();
     }
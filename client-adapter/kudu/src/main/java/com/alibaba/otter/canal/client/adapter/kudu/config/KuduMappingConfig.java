@@ -96,6 +96,7 @@ public class KuduMappingConfig implements AdapterConfig {
         private Map<String, String> targetColumns;                      // 目标表字段映射
 
         private String              etlCondition;                       // etl条件sql
+        private String              etlSplitKey;                         // etl按主键分段的字段, 数值类型
 
         private int                 readBatch   = 5000;
         private int                 commitBatch = 5000;                 // etl等批量提交大小
@@ -173,6 +174,14 @@ public class KuduMappingConfig implements AdapterConfig {
             this.etlCondition = etlCondition;
         }
 
+        public String getEtlSplitKey() {
+            return etlSplitKey;
+        }
+
+        public void setEtlSplitKey(String etlSplitKey) {
+            this.etlSplitKey = etlSplitKey;
+        }
+
         public int getReadBatch() {
             return readBatch;
         }
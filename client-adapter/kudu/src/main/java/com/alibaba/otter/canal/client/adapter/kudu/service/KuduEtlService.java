@@ -1,7 +1,6 @@
 package com.alibaba.otter.canal.client.adapter.kudu.service;
 
 import java.sql.ResultSetMetaData;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -11,8 +10,6 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
-import org.apache.kudu.client.KuduException;
-
 import com.alibaba.otter.canal.client.adapter.kudu.config.KuduMappingConfig;
 import com.alibaba.otter.canal.client.adapter.kudu.support.KuduTemplate;
 import com.alibaba.otter.canal.client.adapter.kudu.support.SyncUtil;
@@ -106,17 +103,16 @@ public class KuduEtlService extends AbstractEtlService {
                             logger.debug("successful import count:" + impCount.get());
                         }
                         if (idx % kuduMapping.getCommitBatch() == 0) {
-                            kuduTemplate.upsert(kuduMapping.getTargetTable(), dataList);
+                            kuduTemplate.upsertAndFlush(kuduMapping.getTargetTable(), dataList);
                             dataList.clear();
                         }
                     }
                     if (!dataList.isEmpty()) {
-                        kuduTemplate.upsert(kuduMapping.getTargetTable(), dataList);
+                        kuduTemplate.upsertAndFlush(kuduMapping.getTargetTable(), dataList);
                     }
                     return true;
 
-                } catch (SQLException | KuduException e) {
-                    e.printStackTrace();
+                } catch (Exception e) {
                     logger.error(kuduMapping.getTargetTable() + " etl failed! ==>" + e.getMessage(), e);
                     errMsg.add(kuduMapping.getTargetTable() + " etl failed! ==>" + e.getMessage());
                     return false;
@@ -15,6 +15,7 @@ import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.alibaba.otter.canal.client.adapter.kudu.config.KuduMappingConfig;
 import com.alibaba.otter.canal.client.adapter.kudu.support.KuduTemplate;
 import com.alibaba.otter.canal.client.adapter.support.Dml;
+import com.google.common.collect.Lists;
 
 /**
  * @author liuyadong
@@ -92,10 +93,7 @@ public class KuduSyncService {
             // 切割联合主键
             List<String> pkIds = Arrays.asList(pkId.split(","));
             try {
-                int idx = 1;
-                boolean completed = false;
-                List<Map<String, Object>> dataList = new ArrayList<>();
-
+                List<Map<String, Object>> dataList = new ArrayList<>(data.size());
                 for (Map<String, Object> item : data) {
                     Map<String, Object> primaryKeyMap = new HashMap<>();
                     for (Map.Entry<String, Object> entry : item.entrySet()) {
@@ -106,19 +104,14 @@ public class KuduSyncService {
                         }
                     }
                     dataList.add(primaryKeyMap);
-                    idx++;
-                    if (idx % kuduMapping.getCommitBatch() == 0) {
-                        kuduTemplate.delete(kuduMapping.getTargetTable(), dataList);
-                        dataList.clear();
-                        completed = true;
-                    }
                 }
-                if (!completed) {
-                    kuduTemplate.delete(kuduMapping.getTargetTable(), dataList);
+                for (List<Map<String, Object>> batch : Lists.partition(dataList, kuduMapping.getCommitBatch())) {
+                    kuduTemplate.delete(kuduMapping.getTargetTable(), batch);
                 }
             } catch (KuduException e) {
                 logger.error(e.getMessage());
                 logger.error("DML: {}", JSON.toJSONString(dml, SerializerFeature.WriteMapNullValue));
+                throw new RuntimeException(e);
             }
         }
     }
@@ -141,25 +134,13 @@ public class KuduSyncService {
                 return;
             }
             try {
-                int idx = 1;
-                boolean completed = false;
-                List<Map<String, Object>> dataList = new ArrayList<>();
-
-                for (Map<String, Object> entry : data) {
-                    dataList.add(entry);
-                    idx++;
-                    if (idx % kuduMapping.getCommitBatch() == 0) {
-                        kuduTemplate.upsert(kuduMapping.getTargetTable(), dataList);
-                        dataList.clear();
-                        completed = true;
-                    }
-                }
-                if (!completed) {
-                    kuduTemplate.upsert(kuduMapping.getTargetTable(), dataList);
+                for (List<Map<String, Object>> batch : Lists.partition(data, kuduMapping.getCommitBatch())) {
+                    kuduTemplate.upsert(kuduMapping.getTargetTable(), batch);
                 }
             } catch (KuduException e) {
                 logger.error(e.getMessage());
                 logger.error("DML: {}", JSON.toJSONString(dml, SerializerFeature.WriteMapNullValue));
+                throw new RuntimeException(e);
             }
         }
 
@@ -183,25 +164,13 @@ public class KuduSyncService {
                 return;
             }
             try {
-                int idx = 1;
-                boolean completed = false;
-                List<Map<String, Object>> dataList = new ArrayList<>();
-
-                for (Map<String, Object> entry : data) {
-                    dataList.add(entry);
-                    idx++;
-                    if (idx % kuduMapping.getCommitBatch() == 0) {
-                        kuduTemplate.insert(kuduMapping.getTargetTable(), dataList);
-                        dataList.clear();
-                        completed = true;
-                    }
-                }
-                if (!completed) {
-                    kuduTemplate.insert(kuduMapping.getTargetTable(), dataList);
+                for (List<Map<String, Object>> batch : Lists.partition(data, kuduMapping.getCommitBatch())) {
+                    kuduTemplate.insert(kuduMapping.getTargetTable(), batch);
                 }
             } catch (KuduException e) {
                 logger.error(e.getMessage());
                 logger.error("DML: {}", JSON.toJSONString(dml, SerializerFeature.WriteMapNullValue));
+                throw new RuntimeException(e);
             }
         }
     }
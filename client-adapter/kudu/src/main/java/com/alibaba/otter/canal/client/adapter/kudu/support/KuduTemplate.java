@@ -1,16 +1,22 @@
 package com.alibaba.otter.canal.client.adapter.kudu.support;
 
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.kudu.ColumnSchema;
-import org.apache.kudu.Schema;
 import org.apache.kudu.Type;
 import org.apache.kudu.client.Delete;
 import org.apache.kudu.client.Insert;
@@ -19,10 +25,12 @@ import org.apache.kudu.client.KuduException;
 import org.apache.kudu.client.KuduScanner;
 import org.apache.kudu.client.KuduSession;
 import org.apache.kudu.client.KuduTable;
-import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.Operation;
 import org.apache.kudu.client.PartialRow;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.RowErrorsAndOverflowStatus;
 import org.apache.kudu.client.SessionConfiguration;
-import org.apache.kudu.client.Upsert;
+import org.apache.kudu.client.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,17 +40,43 @@ import org.slf4j.LoggerFactory;
  */
 public class KuduTemplate {
 
-    private Logger           logger          = LoggerFactory.getLogger(this.getClass());
+    private Logger                                     logger                        = LoggerFactory
+        .getLogger(this.getClass());
 
-    private KuduClient       kuduClient;
-    private String           masters;
+    private KuduClient                                 kuduClient;
+    private String                                     masters;
 
-    private final static int OPERATION_BATCH = 500;
+    public final static int                            DEFAULT_MUTATION_BUFFER_SPACE = 1000;   // session缓存的操作数
+    public final static int                            DEFAULT_FLUSH_INTERVAL        = 1000;   // 后台flush间隔, 毫秒
+    private final static int                           MAX_ERROR_ROWS                = 10;     // 异常信息中最多列出的失败行数
 
-    private SimpleDateFormat sdf             = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter             DATE_TIME_FORMATTER           = DateTimeFormatter
+        .ofPattern("yyyy-MM-dd HH:mm:ss");
+    // 日期为空或者格式错误时的默认值
+    private static final long                          DEFAULT_TIME                  = LocalDateTime
+        .of(2099, 11, 11, 11, 11, 11)
+        .atZone(ZoneId.systemDefault())
+        .toInstant()
+        .toEpochMilli();
+
+    private final int                                  mutationBufferSpace;
+    private final int                                  flushInterval;
+    // 表名 -> 表元数据和session池, 分区并行同步时多线程共用
+    private final ConcurrentMap<String, TableSessions> tableSessionsMap              = new ConcurrentHashMap<>();
+    // 当前批次中写入过的session, 批次结束时统一flush
+    private final Queue<BatchSession>                  batchSessions                 = new ConcurrentLinkedQueue<>();
+    // 当前线程持有的session: 表名 -> session
+    private final ThreadLocal<Map<String, BatchSession>> threadSessions           = ThreadLocal
+        .withInitial(HashMap::new);
 
     public KuduTemplate(String master_str){
+        this(master_str, DEFAULT_MUTATION_BUFFER_SPACE, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public KuduTemplate(String master_str, int mutationBufferSpace, int flushInterval){
         this.masters = master_str;
+        this.mutationBufferSpace = mutationBufferSpace;
+        this.flushInterval = flushInterval;
         checkClient();
     }
 
@@ -77,202 +111,210 @@ public class KuduTemplate {
     }
 
     /**
-     * 删除行
+     * 删除行, 在{@link #flush()}时提交
      *
      * @param tableName
      * @param dataList
      * @throws KuduException
      */
     public void delete(String tableName, List<Map<String, Object>> dataList) throws KuduException {
-        this.checkClient();
-        KuduTable kuduTable = kuduClient.openTable(tableName);
-        KuduSession session = kuduClient.newSession();
-        try {
-            session.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH);
-            session.setMutationBufferSpace(OPERATION_BATCH);
-            // 获取元数据结构
-            Map<String, Type> metaMap = new HashMap<>();
-            Schema schema = kuduTable.getSchema();
-            for (ColumnSchema columnSchema : schema.getColumns()) {
-                String colName = columnSchema.getName().toLowerCase();
-                Type type = columnSchema.getType();
-                metaMap.put(colName, type);
-            }
-            int uncommit = 0;
-            for (Map<String, Object> data : dataList) {
-                Delete delete = kuduTable.newDelete();
-                PartialRow row = delete.getRow();
-                for (Map.Entry<String, Object> entry : data.entrySet()) {
-                    String name = entry.getKey().toLowerCase();
-                    Type type = metaMap.get(name);
-                    Object value = entry.getValue();
-                    fillRow(row, name, value, type); // 填充行数据
-                }
-                session.apply(delete);
-                // 对于手工提交, 需要buffer在未满的时候flush,这里采用了buffer一半时即提交
-                uncommit = uncommit + 1;
-                if (uncommit > OPERATION_BATCH / 3 * 2) {
-                    List<OperationResponse> delete_option = session.flush();
-                    if (delete_option.size() > 0) {
-                        OperationResponse response = delete_option.get(0);
-                        if (response.hasRowError()) {
-                            logger.error("delete row fail table name is :{} ", tableName);
-                            logger.error("error list is :{}", response.getRowError().getMessage());
-                        }
-                    }
-                    uncommit = 0;
-                }
-            }
-            List<OperationResponse> delete_option = session.flush();
-            if (delete_option.size() > 0) {
-                OperationResponse response = delete_option.get(0);
-                if (response.hasRowError()) {
-                    logger.error("delete row fail table name is :{} ", tableName);
-                    logger.error("error list is :{}", response.getRowError().getMessage());
-                }
-            }
-
-        } catch (KuduException e) {
-            logger.error("error message is :{}", dataList.toString());
-            throw e;
-        } finally {
-            if (!session.isClosed()) {
-                session.close();
-            }
-        }
+        write(tableName, dataList, OperationType.DELETE);
     }
 
     /**
-     * 更新/插入字段
+     * 更新/插入字段, 在{@link #flush()}时提交
      *
      * @param tableName
      * @param dataList
      * @throws KuduException
      */
     public void upsert(String tableName, List<Map<String, Object>> dataList) throws KuduException {
+        write(tableName, dataList, OperationType.UPSERT);
+    }
+
+    /**
+     * 插入数据, 在{@link #flush()}时提交
+     *
+     * @param tableName
+     * @param dataList
+     * @throws KuduException
+     */
+    public void insert(String tableName, List<Map<String, Object>> dataList) throws KuduException {
+        write(tableName, dataList, OperationType.INSERT);
+    }
+
+    /**
+     * 更新/插入并立即flush, 使用独立的session, 不参与同步批次, 用于全量导入
+     *
+     * @param tableName
+     * @param dataList
+     * @throws KuduException
+     */
+    public void upsertAndFlush(String tableName, List<Map<String, Object>> dataList) throws KuduException {
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
         this.checkClient();
-        KuduTable kuduTable = kuduClient.openTable(tableName);
-        KuduSession session = kuduClient.newSession();
+        TableSessions tableSessions = getTableSessions(tableName);
+        KuduSession session = tableSessions.borrow();
+        boolean succeeded = false;
         try {
-            session.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH);
-            session.setMutationBufferSpace(OPERATION_BATCH);
-            // 获取元数据结构
-            Map<String, Type> metaMap = new HashMap<>();
-            Schema schema = kuduTable.getSchema();
-            for (ColumnSchema columnSchema : schema.getColumns()) {
-                String colName = columnSchema.getName().toLowerCase();
-                Type type = columnSchema.getType();
-                metaMap.put(colName, type);
-            }
-            int uncommit = 0;
-            for (Map<String, Object> data : dataList) {
-                Upsert upsert = kuduTable.newUpsert();
-                PartialRow row = upsert.getRow();
-                for (Map.Entry<String, Object> entry : data.entrySet()) {
-                    String name = entry.getKey().toLowerCase();
-                    Type type = metaMap.get(name);
-                    Object value = entry.getValue();
-                    fillRow(row, name, value, type); // 填充行数据
-                }
-                session.apply(upsert);
-                // 对于手工提交, 需要buffer在未满的时候flush,这里采用了buffer一半时即提交
-                uncommit = uncommit + 1;
-                if (uncommit > OPERATION_BATCH / 3 * 2) {
-                    List<OperationResponse> update_option = session.flush();
-                    if (update_option.size() > 0) {
-                        OperationResponse response = update_option.get(0);
-                        if (response.hasRowError()) {
-                            logger.error("update row fail table name is :{} ", tableName);
-                            logger.error("update list is :{}", response.getRowError().getMessage());
-                        }
-                    }
-                    uncommit = 0;
-                }
-            }
-            List<OperationResponse> update_option = session.flush();
-            if (update_option.size() > 0) {
-                OperationResponse response = update_option.get(0);
-                if (response.hasRowError()) {
-                    logger.error("update row fail table name is :{} ", tableName);
-                    logger.error("update list is :{}", response.getRowError().getMessage());
-                }
-            }
+            apply(tableSessions, session, dataList, OperationType.UPSERT);
+            session.flush();
+            RowErrorCollector collector = new RowErrorCollector();
+            collector.collect(tableName, session.getPendingErrors());
+            collector.check();
+            succeeded = true;
         } catch (KuduException e) {
-            logger.error("error message is :{}", dataList.toString());
+            logger.error("kudu {} fail, table name is :{}, error message is :{}",
+                OperationType.UPSERT,
+                tableName,
+                e.getMessage());
+            invalidate(tableName, tableSessions);
             throw e;
         } finally {
-            if (!session.isClosed()) {
-                session.close();
+            if (succeeded) {
+                release(tableName, tableSessions, session);
+            } else {
+                closeSession(session);
             }
         }
-
     }
 
     /**
-     * 插入数据
+     * 写入当前线程持有的session, session使用AUTO_FLUSH_BACKGROUND在后台提交, 整个适配器批次结束时由{@link #flush()}统一flush并检查结果
      *
-     * @param tableName
-     * @param dataList
-     * @throws KuduException
+     * @param tableName 表名
+     * @param dataList 行数据
+     * @param type 操作类型
      */
-    public void insert(String tableName, List<Map<String, Object>> dataList) throws KuduException {
+    private void write(String tableName, List<Map<String, Object>> dataList,
+                       OperationType type) throws KuduException {
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
         this.checkClient();
-        KuduTable kuduTable = kuduClient.openTable(tableName);// 打开表
-        KuduSession session = kuduClient.newSession(); // 创建写session,kudu必须通过session写入
+        BatchSession batchSession = batchSession(tableName);
         try {
-            session.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH); // 采取Flush方式
-                                                                               // 手动刷新
-            session.setMutationBufferSpace(OPERATION_BATCH);
-            // 获取元数据结构
-            Map<String, Type> metaMap = new HashMap<>();
-            Schema schema = kuduTable.getSchema();
-            for (ColumnSchema columnSchema : schema.getColumns()) {
-                String colName = columnSchema.getName().toLowerCase();
-                Type type = columnSchema.getType();
-                metaMap.put(colName, type);
+            apply(batchSession.tableSessions, batchSession.session, dataList, type);
+        } catch (KuduException e) {
+            logger.error("kudu {} fail, table name is :{}, error message is :{}", type, tableName, e.getMessage());
+            invalidate(tableName, batchSession.tableSessions);
+            throw e;
+        }
+    }
+
+    private void apply(TableSessions tableSessions, KuduSession session, List<Map<String, Object>> dataList,
+                       OperationType type) throws KuduException {
+        for (Map<String, Object> data : dataList) {
+            Operation operation = type.newOperation(tableSessions.table);
+            PartialRow row = operation.getRow();
+            for (Map.Entry<String, Object> entry : data.entrySet()) {
+                String name = entry.getKey().toLowerCase();
+                Type colType = tableSessions.metaMap.get(name);
+                fillRow(row, name, entry.getValue(), colType); // 填充行数据
             }
-            int uncommit = 0;
-            for (Map<String, Object> data : dataList) {
-                Insert insert = kuduTable.newInsert();
-                PartialRow row = insert.getRow();
-                for (Map.Entry<String, Object> entry : data.entrySet()) {
-                    String name = entry.getKey().toLowerCase();
-                    Type type = metaMap.get(name);
-                    Object value = entry.getValue();
-                    fillRow(row, name, value, type); // 填充行数据
-                }
-                session.apply(insert);
-                // 对于手工提交, 需要buffer在未满的时候flush,这里采用了buffer一半时即提交
-                uncommit = uncommit + 1;
-                if (uncommit > OPERATION_BATCH / 3 * 2) {
-                    List<OperationResponse> insert_option = session.flush();
-                    if (insert_option.size() > 0) {
-                        OperationResponse response = insert_option.get(0);
-                        if (response.hasRowError()) {
-                            logger.error("insert row fail table name is :{} ", tableName);
-                            logger.error("insert list is :{}", response.getRowError().getMessage());
-                        }
-                    }
-                    uncommit = 0;
+            // 后台自动flush, buffer满时阻塞等待
+            session.apply(operation);
+        }
+    }
+
+    /**
+     * 当前线程在本批次中持有的session, 同一线程写同一个表复用一个session
+     */
+    private BatchSession batchSession(String tableName) throws KuduException {
+        Map<String, BatchSession> sessions = threadSessions.get();
+        BatchSession batchSession = sessions.get(tableName);
+        if (batchSession == null || !batchSession.active) {
+            TableSessions tableSessions = getTableSessions(tableName);
+            batchSession = new BatchSession(tableName, tableSessions, tableSessions.borrow());
+            sessions.put(tableName, batchSession);
+            batchSessions.add(batchSession);
+        }
+        return batchSession;
+    }
+
+    /**
+     * flush本批次所有写入过的session, 检查每一行的写入结果, 有失败的行时抛出异常, 由适配器重新同步整个批次.
+     * 重试时可能出现的重复插入/删除不存在的行忽略
+     */
+    public void flush() {
+        RowErrorCollector collector = new RowErrorCollector();
+        KuduException failure = null;
+        BatchSession batchSession;
+        while ((batchSession = batchSessions.poll()) != null) {
+            batchSession.active = false;
+            String tableName = batchSession.tableName;
+            try {
+                batchSession.session.flush();
+                collector.collect(tableName, batchSession.session.getPendingErrors());
+                release(tableName, batchSession.tableSessions, batchSession.session);
+            } catch (KuduException e) {
+                logger.error("kudu flush fail, table name is :{}, error message is :{}", tableName, e.getMessage());
+                invalidate(tableName, batchSession.tableSessions);
+                closeSession(batchSession.session);
+                if (failure == null) {
+                    failure = e;
                 }
             }
-            List<OperationResponse> insert_option = session.flush();
-            if (insert_option.size() > 0) {
-                OperationResponse response = insert_option.get(0);
-                if (response.hasRowError()) {
-                    logger.error("insert row fail table name is :{} ", tableName);
-                    logger.error("insert list is :{}", response.getRowError().getMessage());
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+        collector.check();
+    }
+
+    /**
+     * 批次失败时丢弃本批次的session, 不再放回池中, 数据由适配器重新同步
+     */
+    public void discard() {
+        BatchSession batchSession;
+        while ((batchSession = batchSessions.poll()) != null) {
+            batchSession.active = false;
+            closeSession(batchSession.session);
+        }
+    }
+
+    private TableSessions getTableSessions(String tableName) throws KuduException {
+        TableSessions tableSessions = tableSessionsMap.get(tableName);
+        if (tableSessions == null) {
+            synchronized (tableSessionsMap) {
+                tableSessions = tableSessionsMap.get(tableName);
+                if (tableSessions == null) {
+                    tableSessions = new TableSessions(kuduClient.openTable(tableName));
+                    tableSessionsMap.put(tableName, tableSessions);
                 }
             }
-        } catch (KuduException e) {
-            logger.error("error message is :{}", dataList.toString());
-            throw e;
-        } finally {
+        }
+        return tableSessions;
+    }
+
+    /**
+     * 表结构可能已经变更, 关闭空闲的session, 下次重新打开表
+     */
+    private void invalidate(String tableName, TableSessions tableSessions) {
+        if (tableSessionsMap.remove(tableName, tableSessions)) {
+            tableSessions.closeIdle();
+        }
+    }
+
+    private void release(String tableName, TableSessions tableSessions, KuduSession session) {
+        if (tableSessionsMap.get(tableName) == tableSessions) {
+            tableSessions.release(session);
+        } else {
+            // 表已经失效, session不再复用
+            closeSession(session);
+        }
+    }
+
+    private void closeSession(KuduSession session) {
+        try {
             if (!session.isClosed()) {
                 session.close();
             }
+        } catch (Exception e) {
+            logger.warn("close kudu session error, message :{}", e.getMessage());
         }
-
     }
 
     /**
@@ -306,6 +348,11 @@ public class KuduTemplate {
      * @throws IOException
      */
     public void closeKuduClient() {
+        discard();
+        for (TableSessions tableSessions : tableSessionsMap.values()) {
+            tableSessions.closeIdle();
+        }
+        tableSessionsMap.clear();
         if (kuduClient != null) {
             try {
                 kuduClient.close();
@@ -322,7 +369,7 @@ public class KuduTemplate {
      * @param rawVal
      * @param type
      */
-    private void fillRow(PartialRow row, String colName, Object rawVal, Type type) {
+    void fillRow(PartialRow row, String colName, Object rawVal, Type type) {
         String rowValue = "0";
         if (!(rawVal == null || "".equals(rawVal))) {
             rowValue = rawVal + "";
@@ -366,27 +413,7 @@ public class KuduTemplate {
                     row.addDouble(colName, Double.parseDouble(rowValue));
                     break;
                 case UNIXTIME_MICROS:
-                    if ("0".equals(rowValue)) {
-                        try {
-                            Date parse = sdf.parse("2099-11-11 11:11:11");
-                            row.addLong(colName, parse.getTime());
-                        } catch (ParseException e) {
-                            logger.warn("date column is null");
-                        }
-                    } else {
-                        try {
-                            Date parse = rowValue.length() > 19 ? sdf.parse(rowValue.substring(0, 19)) : sdf.parse(rowValue);
-                            row.addLong(colName, parse.getTime());
-                        } catch (ParseException e) {
-                            logger.warn("date format error, error data is :{}", rowValue);
-                            try {
-                                Date parse = sdf.parse("2099-11-11 11:11:11");
-                                row.addLong(colName, parse.getTime());
-                            } catch (ParseException ie) {
-                                logger.warn("date column is null");
-                            }
-                        }
-                    }
+                    row.addLong(colName, toTime(rawVal, rowValue));
                     break;
                 default:
                     logger.warn("got unknown type {} for column '{}'-- ignoring this column", type, colName);
@@ -397,6 +424,164 @@ public class KuduTemplate {
         }
     }
 
+    /**
+     * 日期转换为毫秒数, 格式错误时使用默认日期
+     */
+    long toTime(Object rawVal, String rowValue) {
+        if (rawVal instanceof Date) {
+            return ((Date) rawVal).getTime() / 1000 * 1000;
+        }
+        if (rawVal instanceof LocalDateTime) {
+            return ((LocalDateTime) rawVal).withNano(0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        if (rawVal instanceof LocalDate) {
+            return ((LocalDate) rawVal).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        if ("0".equals(rowValue)) {
+            return DEFAULT_TIME;
+        }
+        try {
+            String value = rowValue.length() > 19 ? rowValue.substring(0, 19) : rowValue;
+            return LocalDateTime.parse(value, DATE_TIME_FORMATTER)
+                .atZone(ZoneId.systemDefault())
+                .toInstant()
+                .toEpochMilli();
+        } catch (DateTimeParseException e) {
+            logger.warn("date format error, error data is :{}", rowValue);
+            return DEFAULT_TIME;
+        }
+    }
+
+    /**
+     * 表的元数据和可复用的session, session非线程安全, 每次写入独占一个
+     */
+    private class TableSessions {
+
+        private final KuduTable                        table;
+        private final Map<String, Type>                metaMap = new HashMap<>();
+        private final ConcurrentLinkedQueue<KuduSession> idle  = new ConcurrentLinkedQueue<>();
+
+        TableSessions(KuduTable table){
+            this.table = table;
+            // 获取元数据结构
+            for (ColumnSchema columnSchema : table.getSchema().getColumns()) {
+                metaMap.put(columnSchema.getName().toLowerCase(), columnSchema.getType());
+            }
+        }
+
+        KuduSession borrow() {
+            KuduSession session = idle.poll();
+            if (session == null || session.isClosed()) {
+                session = kuduClient.newSession();
+                session.setFlushMode(SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND);
+                session.setMutationBufferSpace(mutationBufferSpace);
+                session.setFlushInterval(flushInterval);
+            }
+            return session;
+        }
+
+        void release(KuduSession session) {
+            idle.offer(session);
+        }
+
+        void closeIdle() {
+            KuduSession session;
+            while ((session = idle.poll()) != null) {
+                closeSession(session);
+            }
+        }
+    }
+
+    /**
+     * 一个线程在当前批次中持有的session, flush之后失效
+     */
+    private static class BatchSession {
+
+        private final String        tableName;
+        private final TableSessions tableSessions;
+        private final KuduSession   session;
+        private volatile boolean    active = true;
+
+        BatchSession(String tableName, TableSessions tableSessions, KuduSession session){
+            this.tableName = tableName;
+            this.tableSessions = tableSessions;
+            this.session = session;
+        }
+    }
+
+    /**
+     * 汇总一个批次中各个session的行错误, 按表、操作类型和主键列出失败的行
+     */
+    static class RowErrorCollector {
+
+        private int                 failed;
+        private boolean             overflowed;
+        private final StringBuilder message = new StringBuilder();
+
+        void collect(String tableName, RowErrorsAndOverflowStatus pendingErrors) {
+            overflowed |= pendingErrors.isOverflowed();
+            for (RowError rowError : pendingErrors.getRowErrors()) {
+                Operation operation = rowError.getOperation();
+                Status status = rowError.getErrorStatus();
+                if ((operation instanceof Insert && status.isAlreadyPresent())
+                    || (operation instanceof Delete && status.isNotFound())) {
+                    continue;
+                }
+                if (failed++ < MAX_ERROR_ROWS) {
+                    message.append("\n")
+                        .append(tableName)
+                        .append(" ")
+                        .append(operation.getClass().getSimpleName().toUpperCase())
+                        .append(" ")
+                        .append(operation.getRow().stringifyRowKey())
+                        .append(": ")
+                        .append(status);
+                }
+            }
+        }
+
+        int getFailed() {
+            return failed;
+        }
+
+        void check() {
+            if (overflowed) {
+                throw new RuntimeException("kudu write fail, too many row errors to collect, " + failed
+                                           + " rows failed" + message);
+            }
+            if (failed > 0) {
+                throw new RuntimeException("kudu write fail, " + failed + " rows failed" + message);
+            }
+        }
+    }
+
+    private enum OperationType {
+
+        INSERT {
+
+            @Override
+            Operation newOperation(KuduTable table) {
+                return table.newInsert();
+            }
+        },
+        UPSERT {
+
+            @Override
+            Operation newOperation(KuduTable table) {
+                return table.newUpsert();
+            }
+        },
+        DELETE {
+
+            @Override
+            Operation newOperation(KuduTable table) {
+                return table.newDelete();
+            }
+        };
+
+        abstract Operation newOperation(KuduTable table);
+    }
+
     /**
      * kudu数据类型映射
      *
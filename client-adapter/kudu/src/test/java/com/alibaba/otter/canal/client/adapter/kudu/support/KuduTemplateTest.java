@@ -0,0 +1,156 @@
+package com.alibaba.otter.canal.client.adapter.kudu.support;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.KuduRowErrors;
+import org.apache.kudu.client.PartialRow;
+import org.apache.kudu.client.Status;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 行错误汇总和日期转换, 不需要kudu集群
+ */
+public class KuduTemplateTest {
+
+    private static KuduTemplate kuduTemplate;
+
+    @BeforeClass
+    public static void setUp() {
+        // 创建客户端不会连接master
+        kuduTemplate = new KuduTemplate("127.0.0.1:7051");
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        kuduTemplate.closeKuduClient();
+    }
+
+    @Test
+    public void testIgnoredRowErrors() {
+        KuduTemplate.RowErrorCollector collector = new KuduTemplate.RowErrorCollector();
+        // 重试时重复插入和删除不存在的行忽略
+        collector.collect("t1",
+            new KuduRowErrors("t1").insert(1L, Status.AlreadyPresent("exists"))
+                .delete(2L, Status.NotFound("missing"))
+                .build(false));
+        Assert.assertEquals(0, collector.getFailed());
+        collector.check();
+    }
+
+    @Test
+    public void testRowErrors() {
+        KuduTemplate.RowErrorCollector collector = new KuduTemplate.RowErrorCollector();
+        collector.collect("t1",
+            new KuduRowErrors("t1").insert(1L, Status.AlreadyPresent("exists"))
+                .upsert(3L, Status.IOError("disk"))
+                .build(false));
+        collector.collect("t2", new KuduRowErrors("t2").delete(4L, Status.IOError("timeout")).build(false));
+        Assert.assertEquals(2, collector.getFailed());
+        try {
+            collector.check();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("2 rows failed"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("t1 UPSERT (int64 id=3)"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("t2 DELETE (int64 id=4)"));
+            Assert.assertFalse(e.getMessage(), e.getMessage().contains("id=1"));
+        }
+    }
+
+    @Test
+    public void testRowErrorsLimit() {
+        KuduRowErrors rowErrors = new KuduRowErrors("t1");
+        for (long i = 0; i < 15; i++) {
+            rowErrors.upsert(i, Status.IOError("disk"));
+        }
+        KuduTemplate.RowErrorCollector collector = new KuduTemplate.RowErrorCollector();
+        collector.collect("t1", rowErrors.build(false));
+        Assert.assertEquals(15, collector.getFailed());
+        try {
+            collector.check();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("id=9)"));
+            Assert.assertFalse(e.getMessage().contains("id=10)"));
+        }
+    }
+
+    @Test
+    public void testRowErrorsOverflow() {
+        KuduTemplate.RowErrorCollector collector = new KuduTemplate.RowErrorCollector();
+        // 溢出时即使收集到的行都可以忽略也要失败
+        collector.collect("t1", new KuduRowErrors("t1").insert(1L, Status.AlreadyPresent("exists")).build(true));
+        try {
+            collector.check();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("too many row errors"));
+        }
+    }
+
+    @Test
+    public void testFlushWithoutWrite() {
+        kuduTemplate.flush();
+        kuduTemplate.discard();
+    }
+
+    @Test
+    public void testToTime() {
+        long expected = LocalDateTime.of(2020, 1, 2, 3, 4, 5)
+            .atZone(ZoneId.systemDefault())
+            .toInstant()
+            .toEpochMilli();
+        Assert.assertEquals(expected, kuduTemplate.toTime("2020-01-02 03:04:05", "2020-01-02 03:04:05"));
+        // 毫秒部分截掉
+        Assert.assertEquals(expected, kuduTemplate.toTime("2020-01-02 03:04:05.123", "2020-01-02 03:04:05.123"));
+        Assert.assertEquals(expected, kuduTemplate.toTime(new Date(expected + 123), null));
+        Timestamp timestamp = new Timestamp(expected + 456);
+        Assert.assertEquals(expected, kuduTemplate.toTime(timestamp, timestamp.toString()));
+        LocalDateTime localDateTime = LocalDateTime.of(2020, 1, 2, 3, 4, 5, 789_000_000);
+        Assert.assertEquals(expected, kuduTemplate.toTime(localDateTime, localDateTime.toString()));
+        LocalDate localDate = LocalDate.of(2020, 1, 2);
+        Assert.assertEquals(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+            kuduTemplate.toTime(localDate, localDate.toString()));
+    }
+
+    @Test
+    public void testToTimeDefault() {
+        long defaultTime = LocalDateTime.of(2099, 11, 11, 11, 11, 11)
+            .atZone(ZoneId.systemDefault())
+            .toInstant()
+            .toEpochMilli();
+        Assert.assertEquals(defaultTime, kuduTemplate.toTime("0", "0"));
+        Assert.assertEquals(defaultTime, kuduTemplate.toTime("2020/01/02", "2020/01/02"));
+    }
+
+    @Test
+    public void testFillRow() {
+        Schema schema = new Schema(Arrays.asList(
+            new ColumnSchema.ColumnSchemaBuilder("id", Type.INT64).key(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("name", Type.STRING).nullable(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("flag", Type.BOOL).nullable(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("ts", Type.UNIXTIME_MICROS).nullable(true).build()));
+        PartialRow row = schema.newPartialRow();
+        LocalDateTime ts = LocalDateTime.of(2020, 1, 2, 3, 4, 5);
+        kuduTemplate.fillRow(row, "id", 10L, Type.INT64);
+        kuduTemplate.fillRow(row, "name", "", Type.STRING);
+        kuduTemplate.fillRow(row, "flag", "yes", Type.BOOL);
+        kuduTemplate.fillRow(row, "ts", ts, Type.UNIXTIME_MICROS);
+        Assert.assertEquals(10L, row.getLong("id"));
+        // 空串和非法的布尔值不设置
+        Assert.assertFalse(row.isSet("name"));
+        Assert.assertFalse(row.isSet("flag"));
+        Assert.assertEquals(ts.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), row.getLong("ts"));
+    }
+}
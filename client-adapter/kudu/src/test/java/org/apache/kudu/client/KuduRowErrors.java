@@ -0,0 +1,52 @@
+package org.apache.kudu.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+
+/**
+ * 不连接集群构造行错误, RowError等构造方法只在包内可见
+ */
+public class KuduRowErrors {
+
+    private final KuduTable      table;
+    private final List<RowError> rowErrors = new ArrayList<>();
+
+    public KuduRowErrors(String tableName){
+        // 表的schema需要列id
+        Schema schema = new Schema(
+            Collections.singletonList(new ColumnSchema.ColumnSchemaBuilder("id", Type.INT64).key(true).build()),
+            Collections.singletonList(0));
+        PartitionSchema partitionSchema = new PartitionSchema(
+            new PartitionSchema.RangeSchema(Collections.singletonList(0)),
+            Collections.<PartitionSchema.HashBucketSchema> emptyList(),
+            schema);
+        table = new KuduTable(null, tableName, tableName, schema, partitionSchema);
+    }
+
+    public KuduRowErrors insert(long id, Status status) {
+        return add(new Insert(table), id, status);
+    }
+
+    public KuduRowErrors upsert(long id, Status status) {
+        return add(new Upsert(table), id, status);
+    }
+
+    public KuduRowErrors delete(long id, Status status) {
+        return add(new Delete(table), id, status);
+    }
+
+    private KuduRowErrors add(Operation operation, long id, Status status) {
+        operation.getRow().addLong("id", id);
+        rowErrors.add(new RowError(status, operation));
+        return this;
+    }
+
+    public RowErrorsAndOverflowStatus build(boolean overflowed) {
+        return new RowErrorsAndOverflowStatus(rowErrors.toArray(new RowError[0]), overflowed);
+    }
+}
@@ -12,6 +12,7 @@ import org.springframework.stereotype.Component;
 import com.alibaba.druid.pool.DruidDataSource;
 import com.alibaba.otter.canal.client.adapter.support.CanalClientConfig;
 import com.alibaba.otter.canal.client.adapter.support.DatasourceConfig;
+import com.alibaba.otter.canal.client.adapter.support.SqlExecutor;
 
 /**
  * canal 的相关配置类
@@ -67,6 +68,7 @@ public class AdapterCanalConfig extends CanalClientConfig {
                 ds.setTimeBetweenEvictionRunsMillis(60000);
                 ds.setMinEvictableIdleTimeMillis(300000);
                 ds.setValidationQuery("select 1");
+                SqlExecutor.enableStatementCache(ds);
                 try {
                     ds.init();
                 } catch (SQLException e) {
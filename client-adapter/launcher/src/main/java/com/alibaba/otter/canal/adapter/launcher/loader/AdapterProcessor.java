@@ -17,6 +17,8 @@ import com.alibaba.otter.canal.adapter.launcher.config.SpringContext;
 import com.alibaba.otter.canal.client.adapter.OuterAdapter;
 import com.alibaba.otter.canal.client.adapter.support.CanalClientConfig;
 import com.alibaba.otter.canal.client.adapter.support.Dml;
+import com.alibaba.otter.canal.client.adapter.support.DmlCompactor;
+import com.alibaba.otter.canal.client.adapter.support.EtlWatermarks;
 import com.alibaba.otter.canal.client.adapter.support.MessageUtil;
 import com.alibaba.otter.canal.client.adapter.support.Util;
 import com.alibaba.otter.canal.connector.core.config.CanalConstants;
@@ -37,7 +39,7 @@ public class AdapterProcessor {
     private static final String             CONNECTOR_SPI_DIR         = "/plugin";
     private static final String             CONNECTOR_STANDBY_SPI_DIR = "/canal-adapter/plugin";
 
-    private CanalMsgConsumer                canalMsgConsumer;
+    private List<CanalMsgConsumer>          canalMsgConsumers         = new ArrayList<>();                              // 每个worker独立的consumer
 
     private String                          canalDestination;                                                           // canal实例
     private String                          groupId                   = null;                                           // groupId
@@ -45,7 +47,7 @@ public class AdapterProcessor {
     private CanalClientConfig               canalClientConfig;                                                          // 配置
     private ExecutorService                 groupInnerExecutorService;                                                  // 组内工作线程池
     private volatile boolean                running                   = false;                                          // 是否运行中
-    private Thread                          thread                    = null;
+    private List<Thread>                    threads                   = new ArrayList<>();
     private Thread.UncaughtExceptionHandler handler                   = (t, e) -> logger
         .error("parse events has an error", e);
 
@@ -58,74 +60,129 @@ public class AdapterProcessor {
         this.groupId = groupId;
         this.canalOuterAdapters = canalOuterAdapters;
 
-        this.groupInnerExecutorService = Util.newFixedThreadPool(canalOuterAdapters.size(), 5000L);
-        syncSwitch = (SyncSwitch) SpringContext.getBean(SyncSwitch.class);
+        // 只有kafka/rocketMQ支持按分区并行消费, 其余模式仍为单线程
+        int parallelism = 1;
+        String mode = canalClientConfig.getMode().toLowerCase();
+        if (("kafka".equals(mode) || "rocketmq".equals(mode)) && canalClientConfig.getPartitionParallelism() != null
+            && canalClientConfig.getPartitionParallelism() > 1) {
+            parallelism = canalClientConfig.getPartitionParallelism();
+        }
 
-        // load connector consumer
-        ExtensionLoader<CanalMsgConsumer> loader = new ExtensionLoader<>(CanalMsgConsumer.class);
-        canalMsgConsumer = loader
-            .getExtension(canalClientConfig.getMode().toLowerCase(),destination ,CONNECTOR_SPI_DIR, CONNECTOR_STANDBY_SPI_DIR);
+        this.groupInnerExecutorService = Util.newFixedThreadPool(canalOuterAdapters.size() * parallelism, 5000L);
+        syncSwitch = (SyncSwitch) SpringContext.getBean(SyncSwitch.class);
 
         Properties properties = canalClientConfig.getConsumerProperties();
         properties.put(CanalConstants.CANAL_MQ_FLAT_MESSAGE, canalClientConfig.getFlatMessage());
         properties.put(CanalConstants.CANAL_ALIYUN_ACCESS_KEY, canalClientConfig.getAccessKey());
         properties.put(CanalConstants.CANAL_ALIYUN_SECRET_KEY, canalClientConfig.getSecretKey());
-        ClassLoader cl = Thread.currentThread().getContextClassLoader();
-        Thread.currentThread().setContextClassLoader(canalMsgConsumer.getClass().getClassLoader());
-        canalMsgConsumer.init(properties, canalDestination, groupId);
-        Thread.currentThread().setContextClassLoader(cl);
+
+        // load connector consumer
+        ExtensionLoader<CanalMsgConsumer> loader = new ExtensionLoader<>(CanalMsgConsumer.class);
+        for (int i = 0; i < parallelism; i++) {
+            // 同一个topic的多个consumer加入同一个消费组, 由mq按分区/队列分配, 各自提交自己分区的位点
+            String key = i == 0 ? destination : destination + "#" + i;
+            CanalMsgConsumer canalMsgConsumer = loader
+                .getExtension(mode, key, CONNECTOR_SPI_DIR, CONNECTOR_STANDBY_SPI_DIR);
+
+            Properties consumerProperties = properties;
+            if (parallelism > 1) {
+                consumerProperties = new Properties();
+                consumerProperties.putAll(properties);
+                consumerProperties.put(CanalConstants.CANAL_MQ_CONSUMER_INDEX, String.valueOf(i));
+            }
+            ClassLoader cl = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(canalMsgConsumer.getClass().getClassLoader());
+            canalMsgConsumer.init(consumerProperties, canalDestination, groupId);
+            Thread.currentThread().setContextClassLoader(cl);
+            canalMsgConsumers.add(canalMsgConsumer);
+        }
     }
 
     public void start() {
         if (!running) {
-            thread = new Thread(this::process);
-            thread.setUncaughtExceptionHandler(handler);
-            thread.start();
+            for (CanalMsgConsumer canalMsgConsumer : canalMsgConsumers) {
+                Thread thread = new Thread(() -> process(canalMsgConsumer));
+                thread.setUncaughtExceptionHandler(handler);
+                thread.start();
+                threads.add(thread);
+            }
             running = true;
         }
     }
 
-    public void writeOut(final List<CommonMessage> commonMessages) {
+    public void writeOut(final List<CommonMessage> commonMessages, List<EtlWatermarks.Chunk> etlChunks) {
+        // 等待所有适配器写入完成
+        // 由于是组间并发操作，所以将阻塞直到耗时最久的工作组操作完成
+        if (!waitApply(applyAsync(convert(commonMessages, etlChunks)))) {
+            throw new RuntimeException("Outer adapter sync failed! ");
+        }
+    }
+
+    /**
+     * 转换为dml, 每个适配器一份, 结构与canalOuterAdapters一致
+     *
+     * @param etlChunks 本批次插入了全量数据的分块, ack之后完成
+     */
+    private List<List<List<Dml>>> convert(List<CommonMessage> commonMessages, List<EtlWatermarks.Chunk> etlChunks) {
+        List<List<List<Dml>>> groupDmls = new ArrayList<>(canalOuterAdapters.size());
+        for (List<OuterAdapter> outerAdapters : canalOuterAdapters) {
+            List<List<Dml>> adapterDmls = new ArrayList<>(outerAdapters.size());
+            for (OuterAdapter outerAdapter : outerAdapters) {
+                List<Dml> dmls = MessageUtil.flatMessage2Dml(canalDestination, groupId, commonMessages);
+                dmls = EtlWatermarks.apply(outerAdapter, dmls, etlChunks);
+                if (Boolean.TRUE.equals(canalClientConfig.getCompactDml()) && outerAdapter.supportDmlCompaction()) {
+                    dmls = DmlCompactor.compact(dmls);
+                }
+                adapterDmls.add(dmls);
+            }
+            groupDmls.add(adapterDmls);
+        }
+        return groupDmls;
+    }
+
+    private List<Future<Boolean>> applyAsync(List<List<List<Dml>>> groupDmls) {
         List<Future<Boolean>> futures = new ArrayList<>();
         // 组间适配器并行运行
-        canalOuterAdapters.forEach(outerAdapters -> {
+        for (int i = 0; i < canalOuterAdapters.size(); i++) {
+            List<OuterAdapter> outerAdapters = canalOuterAdapters.get(i);
+            List<List<Dml>> adapterDmls = groupDmls.get(i);
             futures.add(groupInnerExecutorService.submit(() -> {
                 try {
                     // 组内适配器穿行运行，尽量不要配置组内适配器
-                    outerAdapters.forEach(adapter -> {
+                    for (int j = 0; j < outerAdapters.size(); j++) {
+                        OuterAdapter adapter = outerAdapters.get(j);
                         long begin = System.currentTimeMillis();
-                        List<Dml> dmls = MessageUtil.flatMessage2Dml(canalDestination, groupId, commonMessages);
-                        batchSync(dmls, adapter);
+                        batchSync(adapterDmls.get(j), adapter);
 
                         if (logger.isDebugEnabled()) {
                             logger.debug("{} elapsed time: {}",
                                 adapter.getClass().getName(),
                                 (System.currentTimeMillis() - begin));
                         }
-                    });
+                    }
                     return true;
                 } catch (Exception e) {
                     logger.error(e.getMessage(), e);
                     return false;
                 }
             }));
+        }
+        return futures;
+    }
 
-            // 等待所有适配器写入完成
-            // 由于是组间并发操作，所以将阻塞直到耗时最久的工作组操作完成
-            RuntimeException exception = null;
-            for (Future<Boolean> future : futures) {
-                try {
-                    if (!future.get()) {
-                        exception = new RuntimeException("Outer adapter sync failed! ");
-                    }
-                } catch (Exception e) {
-                    exception = new RuntimeException(e);
+    private boolean waitApply(List<Future<Boolean>> futures) {
+        boolean success = true;
+        for (Future<Boolean> future : futures) {
+            try {
+                if (!future.get()) {
+                    success = false;
                 }
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+                success = false;
             }
-            if (exception != null) {
-                throw exception;
-            }
-        });
+        }
+        return success;
     }
 
     /**
@@ -135,6 +192,17 @@ public class AdapterProcessor {
      * @param adapter
      */
     private void batchSync(List<Dml> dmls, OuterAdapter adapter) {
+        if (adapter.supportConcurrentSync()) {
+            doBatchSync(dmls, adapter);
+        } else {
+            // 多个分区的worker共用一个适配器实例, 不支持并发的适配器串行写入
+            synchronized (adapter) {
+                doBatchSync(dmls, adapter);
+            }
+        }
+    }
+
+    private void doBatchSync(List<Dml> dmls, OuterAdapter adapter) {
         // 分批同步
         if (dmls.size() <= canalClientConfig.getSyncBatchSize()) {
             adapter.sync(dmls);
@@ -143,11 +211,7 @@ public class AdapterProcessor {
             List<Dml> dmlsBatch = new ArrayList<>();
             for (Dml dml : dmls) {
                 dmlsBatch.add(dml);
-                if (dml.getData() == null || dml.getData().isEmpty()) {
-                    len += 1;
-                } else {
-                    len += dml.getData().size();
-                }
+                len += Math.max(1, dml.rowCount());
                 if (len >= canalClientConfig.getSyncBatchSize()) {
                     adapter.sync(dmlsBatch);
                     dmlsBatch.clear();
@@ -160,7 +224,7 @@ public class AdapterProcessor {
         }
     }
 
-    private void process() {
+    private void process(CanalMsgConsumer canalMsgConsumer) {
         while (!running) { // waiting until running == true
             while (!running) {
                 try {
@@ -184,6 +248,8 @@ public class AdapterProcessor {
                 logger.info("=============> Start to connect destination: {} <=============", this.canalDestination);
                 canalMsgConsumer.connect();
                 logger.info("=============> Subscribe destination: {} succeed <=============", this.canalDestination);
+                boolean asyncApply = Boolean.TRUE.equals(canalClientConfig.getAsyncApply())
+                                     && canalMsgConsumer.supportAsyncAck();
                 while (running) {
                     try {
                         syncSwitch.get(canalDestination, 1L, TimeUnit.MINUTES);
@@ -194,6 +260,11 @@ public class AdapterProcessor {
                         break;
                     }
 
+                    if (asyncApply) {
+                        processAsync(canalMsgConsumer, retry);
+                        break;
+                    }
+
                     for (int i = 0; i < retry; i++) {
                         if (!running) {
                             break;
@@ -205,8 +276,10 @@ public class AdapterProcessor {
                             long begin = System.currentTimeMillis();
                             List<CommonMessage> commonMessages = canalMsgConsumer
                                 .getMessage(this.canalClientConfig.getTimeout(), TimeUnit.MILLISECONDS);
-                            writeOut(commonMessages);
+                            List<EtlWatermarks.Chunk> etlChunks = new ArrayList<>();
+                            writeOut(commonMessages, etlChunks);
                             canalMsgConsumer.ack();
+                            EtlWatermarks.ack(etlChunks);
                             if (logger.isDebugEnabled()) {
                                 logger.debug("destination: {} elapsed time: {} ms",
                                     canalDestination,
@@ -248,6 +321,107 @@ public class AdapterProcessor {
         }
     }
 
+    /**
+     * 拉取与写入并行: 当前批次写入的同时拉取并转换下一批, 写入完成后按顺序ack
+     *
+     * <pre>
+     * 1. 写入失败时回滚当前批次以及已经预取的批次, 重试逻辑与同步模式一致
+     * 2. consumer的get/ack/rollback仍然只在当前线程中调用
+     * </pre>
+     */
+    private void processAsync(CanalMsgConsumer canalMsgConsumer, int retry) throws InterruptedException {
+        List<Future<Boolean>> applying = null; // 正在写入的批次
+        List<EtlWatermarks.Chunk> applyingChunks = null;
+        int failures = 0;
+        while (running) {
+            try {
+                syncSwitch.get(canalDestination, 1L, TimeUnit.MINUTES);
+            } catch (TimeoutException e) {
+                break;
+            }
+            if (!running) {
+                break;
+            }
+
+            List<List<List<Dml>>> next = null;
+            List<EtlWatermarks.Chunk> nextChunks = new ArrayList<>();
+            Exception fetchError = null;
+            try {
+                next = convert(canalMsgConsumer.getMessage(this.canalClientConfig.getTimeout(),
+                    TimeUnit.MILLISECONDS), nextChunks);
+            } catch (Exception e) {
+                fetchError = e;
+            }
+
+            if (applying != null) {
+                long begin = System.currentTimeMillis();
+                boolean success = waitAndAck(canalMsgConsumer, applying);
+                if (success) {
+                    EtlWatermarks.ack(applyingChunks);
+                }
+                applying = null;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("destination: {} wait apply time: {} ms",
+                        canalDestination,
+                        System.currentTimeMillis() - begin);
+                }
+                if (!success) {
+                    failures++;
+                    if (failures < retry) {
+                        canalMsgConsumer.rollback(); // 处理失败, 回滚当前及预取的数据
+                        logger.error("Error sync and rollback, execute times: " + failures);
+                        Thread.sleep(500);
+                        continue;
+                    }
+
+                    failures = 0;
+                    if (canalClientConfig.getTerminateOnException()) {
+                        canalMsgConsumer.rollback();
+                        logger.error("Retry fail, turn switch off and abort data transfer.");
+                        syncSwitch.off(canalDestination);
+                        logger.error("finish turn off switch of destination:" + canalDestination);
+                        Thread.sleep(500);
+                        continue;
+                    }
+                    canalMsgConsumer.ack();
+                    logger.error("Error sync but ACK!");
+                } else {
+                    failures = 0;
+                }
+            }
+
+            if (fetchError != null) {
+                canalMsgConsumer.rollback();
+                logger.error(fetchError.getMessage() + " Error fetch and rollback", fetchError);
+                Thread.sleep(500);
+                continue;
+            }
+            applying = applyAsync(next);
+            applyingChunks = nextChunks;
+        }
+
+        if (applying != null) {
+            if (!waitAndAck(canalMsgConsumer, applying)) {
+                canalMsgConsumer.rollback();
+            } else {
+                EtlWatermarks.ack(applyingChunks);
+            }
+        }
+    }
+
+    private boolean waitAndAck(CanalMsgConsumer canalMsgConsumer, List<Future<Boolean>> futures) {
+        if (!waitApply(futures)) {
+            return false;
+        }
+        try {
+            canalMsgConsumer.ack();
+            return true;
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
     public void stop() {
         try {
             if (!running) {
@@ -259,7 +433,7 @@ public class AdapterProcessor {
             syncSwitch.release(canalDestination);
 
             logger.info("destination {} is waiting for adapters' worker thread die!", canalDestination);
-            if (thread != null) {
+            for (Thread thread : threads) {
                 try {
                     thread.join();
                 } catch (InterruptedException e) {
@@ -12,6 +12,7 @@ import javax.annotation.Resource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -23,9 +24,11 @@ import com.alibaba.otter.canal.adapter.launcher.common.EtlLock;
 import com.alibaba.otter.canal.adapter.launcher.common.SyncSwitch;
 import com.alibaba.otter.canal.adapter.launcher.config.AdapterCanalConfig;
 import com.alibaba.otter.canal.client.adapter.OuterAdapter;
+import com.alibaba.otter.canal.client.adapter.support.EtlMonitor;
 import com.alibaba.otter.canal.client.adapter.support.EtlResult;
 import com.alibaba.otter.canal.client.adapter.support.ExtensionLoader;
 import com.alibaba.otter.canal.client.adapter.support.Result;
+import com.alibaba.otter.canal.client.adapter.support.SqlExecutor;
 
 /**
  * 适配器操作Rest
@@ -62,13 +65,16 @@ public class CommonRest {
      * @param key adapter key
      * @param task 任务名对应配置文件名 mytest_user.yml
      * @param params etl where条件参数, 为空全部导入
+     * @param snapshot 全量增量衔接模式, 全量期间不停止增量同步, 通过源库水位表在增量数据中插入全量数据
      */
     @PostMapping("/etl/{type}/{key}/{task}")
     public EtlResult etl(@PathVariable String type, @PathVariable String key, @PathVariable String task,
-                         @RequestParam(name = "params", required = false) String params) {
+                         @RequestParam(name = "params", required = false) String params,
+                         @RequestParam(name = "snapshot", required = false, defaultValue = "false") boolean snapshot) {
         OuterAdapter adapter = loader.getExtension(type, key);
         String destination = adapter.getDestination(task);
         String lockKey = destination == null ? task : destination;
+        String etlKey = etlKey(type, key, task);
 
         boolean locked = etlLock.tryLock(ETL_LOCK_ZK_NODE + type + "-" + lockKey);
         if (!locked) {
@@ -77,7 +83,29 @@ public class CommonRest {
             result.setErrorMessage(task + " 有其他进程正在导入中, 请稍后再试");
             return result;
         }
+        EtlMonitor monitor = EtlMonitor.start(etlKey);
         try {
+            if (snapshot) {
+                // 增量同步需要保持开启, 由增量同步写入全量数据
+                if (!syncSwitch.status(lockKey)) {
+                    EtlResult result = new EtlResult();
+                    result.setSucceeded(false);
+                    result.setErrorMessage(lockKey + " 同步未开启, 无法使用snapshot模式导入");
+                    return result;
+                }
+                // 水位需要与同步表在同一个有序的消费通道中, 按分区并行消费时无法保证
+                String mode = adapterCanalConfig.getMode().toLowerCase();
+                Integer parallelism = adapterCanalConfig.getPartitionParallelism();
+                if (("kafka".equals(mode) || "rocketmq".equals(mode)) && parallelism != null && parallelism > 1) {
+                    EtlResult result = new EtlResult();
+                    result.setSucceeded(false);
+                    result.setErrorMessage("partitionParallelism: " + parallelism + ", snapshot模式只支持单个消费线程");
+                    return result;
+                }
+                monitor.setSnapshot(adapter, adapterCanalConfig.getEtlWatermarkTable());
+                List<String> paramArray = params != null ? Arrays.asList(params.trim().split(";")) : null;
+                return adapter.etl(task, paramArray);
+            }
 
             boolean oriSwitchStatus;
             if (destination != null) {
@@ -106,6 +134,7 @@ public class CommonRest {
                 }
             }
         } finally {
+            EtlMonitor.finish(etlKey);
             etlLock.unlock(ETL_LOCK_ZK_NODE + type + "-" + lockKey);
         }
     }
@@ -116,11 +145,76 @@ public class CommonRest {
      * @param type 类型 hbase, es
      * @param task 任务名对应配置文件名 mytest_person2.yml
      * @param params etl where条件参数, 为空全部导入
+     * @param snapshot 全量增量衔接模式
      */
     @PostMapping("/etl/{type}/{task}")
     public EtlResult etl(@PathVariable String type, @PathVariable String task,
-                         @RequestParam(name = "params", required = false) String params) {
-        return etl(type, null, task, params);
+                         @RequestParam(name = "params", required = false) String params,
+                         @RequestParam(name = "snapshot", required = false, defaultValue = "false") boolean snapshot) {
+        return etl(type, null, task, params, snapshot);
+    }
+
+    /**
+     * ETL进度 curl http://127.0.0.1:8081/etl/rdb/oracle1/mytest_user.yml
+     *
+     * @param type 类型 hbase, es
+     * @param key adapter key
+     * @param task 任务名对应配置文件名 mytest_user.yml
+     */
+    @GetMapping("/etl/{type}/{key}/{task}")
+    public Map<String, Object> etlStatus(@PathVariable String type, @PathVariable String key,
+                                         @PathVariable String task) {
+        EtlMonitor monitor = EtlMonitor.get(etlKey(type, key, task));
+        if (monitor == null) {
+            Map<String, Object> res = new LinkedHashMap<>();
+            res.put("task", task);
+            res.put("running", false);
+            return res;
+        }
+        Map<String, Object> res = monitor.toMap();
+        res.put("running", true);
+        return res;
+    }
+
+    /**
+     * ETL进度 curl http://127.0.0.1:8081/etl/hbase/mytest_person2.yml
+     */
+    @GetMapping("/etl/{type}/{task}")
+    public Map<String, Object> etlStatus(@PathVariable String type, @PathVariable String task) {
+        return etlStatus(type, null, task);
+    }
+
+    /**
+     * 取消ETL curl http://127.0.0.1:8081/etl/rdb/oracle1/mytest_user.yml -X DELETE
+     *
+     * @param type 类型 hbase, es
+     * @param key adapter key
+     * @param task 任务名对应配置文件名 mytest_user.yml
+     */
+    @DeleteMapping("/etl/{type}/{key}/{task}")
+    public Result etlCancel(@PathVariable String type, @PathVariable String key, @PathVariable String task) {
+        EtlMonitor monitor = EtlMonitor.get(etlKey(type, key, task));
+        if (monitor == null) {
+            Result result = new Result();
+            result.setCode(50000);
+            result.setMessage(task + " 没有正在执行的导入任务");
+            return result;
+        }
+        monitor.cancel();
+        logger.info("#Etl task: {} cancelled", monitor.getName());
+        return Result.createSuccess(task + " 导入任务已取消");
+    }
+
+    /**
+     * 取消ETL curl http://127.0.0.1:8081/etl/hbase/mytest_person2.yml -X DELETE
+     */
+    @DeleteMapping("/etl/{type}/{task}")
+    public Result etlCancel(@PathVariable String type, @PathVariable String task) {
+        return etlCancel(type, null, task);
+    }
+
+    private static String etlKey(String type, String key, String task) {
+        return key == null ? type + "-" + task : type + "-" + key + "-" + task;
     }
 
     /**
@@ -149,6 +243,29 @@ public class CommonRest {
         return count(type, null, task);
     }
 
+    /**
+     * 适配器写入指标 curl http://127.0.0.1:8081/metrics/hbase/hbase1
+     *
+     * @param type 类型 hbase
+     * @param key adapter key
+     * @return 如hbase的缓冲数据量、flush次数及耗时
+     */
+    @GetMapping("/metrics/{type}/{key}")
+    public Map<String, Object> metrics(@PathVariable String type, @PathVariable String key) {
+        OuterAdapter adapter = loader.getExtension(type, key);
+        return adapter.metrics();
+    }
+
+    /**
+     * 适配器写入指标 curl http://127.0.0.1:8081/metrics/hbase
+     *
+     * @param type 类型 hbase
+     */
+    @GetMapping("/metrics/{type}")
+    public Map<String, Object> metrics(@PathVariable String type) {
+        return metrics(type, null);
+    }
+
     /**
      * 返回所有实例 curl http://127.0.0.1:8081/destinations
      */
@@ -216,4 +333,23 @@ public class CommonRest {
         res.put("stauts", resStatus);
         return res;
     }
+
+    /**
+     * sql执行耗时统计 curl http://127.0.0.1:8081/sqlStats
+     *
+     * @return 各sql(源库查询和目标库更新)的执行次数、平均/最大耗时和耗时分布
+     */
+    @GetMapping("/sqlStats")
+    public Map<String, Map<String, Object>> sqlStats() {
+        return SqlExecutor.stats();
+    }
+
+    /**
+     * 清空sql执行耗时统计 curl http://127.0.0.1:8081/sqlStats -X DELETE
+     */
+    @DeleteMapping("/sqlStats")
+    public Result resetSqlStats() {
+        SqlExecutor.resetStats();
+        return Result.createSuccess("清空sql统计成功");
+    }
 }
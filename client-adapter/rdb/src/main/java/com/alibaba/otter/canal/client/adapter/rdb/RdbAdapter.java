@@ -6,7 +6,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
@@ -27,6 +30,7 @@ import com.alibaba.otter.canal.client.adapter.support.Dml;
 import com.alibaba.otter.canal.client.adapter.support.EtlResult;
 import com.alibaba.otter.canal.client.adapter.support.OuterAdapterConfig;
 import com.alibaba.otter.canal.client.adapter.support.SPI;
+import com.alibaba.otter.canal.client.adapter.support.SqlExecutor;
 import com.alibaba.otter.canal.client.adapter.support.Util;
 
 /**
@@ -46,8 +50,12 @@ public class RdbAdapter implements OuterAdapter {
 
     private DruidDataSource                         dataSource;
 
-    private RdbSyncService                          rdbSyncService;
-    private RdbMirrorDbSyncService                  rdbMirrorDbSyncService;
+    // RdbSyncService的分区缓冲和执行器只能被一个线程使用, 并发调用sync时每个线程借用一组独立的服务
+    private final Queue<SyncServices>               idleSyncServices    = new ConcurrentLinkedQueue<>();
+    private final List<SyncServices>                allSyncServices     = new CopyOnWriteArrayList<>();
+    private Integer                                 threads;
+    private boolean                                 skipDupException;
+    private Map<String, Map<String, Integer>>       columnsTypeCache    = new ConcurrentHashMap<>();
 
     private RdbConfigMonitor                        rdbConfigMonitor;
 
@@ -125,6 +133,7 @@ public class RdbAdapter implements OuterAdapter {
         dataSource.setTimeBetweenEvictionRunsMillis(60000);
         dataSource.setMinEvictableIdleTimeMillis(300000);
         dataSource.setUseUnfairLock(true);
+        SqlExecutor.enableStatementCache(dataSource);
         // List<String> array = new ArrayList<>();
         // array.add("set names utf8mb4;");
         // dataSource.setConnectionInitSqls(array);
@@ -138,17 +147,10 @@ public class RdbAdapter implements OuterAdapter {
         String threads = properties.get("threads");
         // String commitSize = properties.get("commitSize");
 
-        boolean skipDupException = BooleanUtils.toBoolean(configuration.getProperties()
+        this.threads = threads != null ? Integer.valueOf(threads) : null;
+        this.skipDupException = BooleanUtils.toBoolean(configuration.getProperties()
             .getOrDefault("skipDupException", "true"));
-        rdbSyncService = new RdbSyncService(dataSource,
-            threads != null ? Integer.valueOf(threads) : null,
-            skipDupException);
-
-        rdbMirrorDbSyncService = new RdbMirrorDbSyncService(mirrorDbConfigCache,
-            dataSource,
-            threads != null ? Integer.valueOf(threads) : null,
-            rdbSyncService.getColumnsTypeCache(),
-            skipDupException);
+        idleSyncServices.offer(createSyncServices());
 
         rdbConfigMonitor = new RdbConfigMonitor();
         rdbConfigMonitor.init(configuration.getKey(), this, envProperties);
@@ -164,14 +166,32 @@ public class RdbAdapter implements OuterAdapter {
         if (dmls == null || dmls.isEmpty()) {
             return;
         }
+        SyncServices syncServices = idleSyncServices.poll();
+        if (syncServices == null) {
+            syncServices = createSyncServices();
+        }
         try {
-            rdbSyncService.sync(mappingConfigCache, dmls, envProperties);
-            rdbMirrorDbSyncService.sync(dmls);
+            syncServices.rdbSyncService.sync(mappingConfigCache, dmls, envProperties);
+            syncServices.rdbMirrorDbSyncService.sync(dmls);
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            idleSyncServices.offer(syncServices);
         }
     }
 
+    private SyncServices createSyncServices() {
+        SyncServices syncServices = new SyncServices();
+        syncServices.rdbSyncService = new RdbSyncService(dataSource, threads, columnsTypeCache, skipDupException);
+        syncServices.rdbMirrorDbSyncService = new RdbMirrorDbSyncService(mirrorDbConfigCache,
+            dataSource,
+            threads,
+            columnsTypeCache,
+            skipDupException);
+        allSyncServices.add(syncServices);
+        return syncServices;
+    }
+
     /**
      * ETL方法
      *
@@ -272,6 +292,19 @@ public class RdbAdapter implements OuterAdapter {
         return null;
     }
 
+    /**
+     * 合并后的insert可能与已经写入的行冲突, 只有主键冲突时转为更新(skipDupException)才能合并
+     */
+    @Override
+    public boolean supportDmlCompaction() {
+        return skipDupException;
+    }
+
+    @Override
+    public boolean supportConcurrentSync() {
+        return true;
+    }
+
     /**
      * 销毁方法
      */
@@ -281,12 +314,19 @@ public class RdbAdapter implements OuterAdapter {
             rdbConfigMonitor.destroy();
         }
 
-        if (rdbSyncService != null) {
-            rdbSyncService.close();
+        for (SyncServices syncServices : allSyncServices) {
+            syncServices.rdbSyncService.close();
+            syncServices.rdbMirrorDbSyncService.close();
         }
 
         if (dataSource != null) {
             dataSource.close();
         }
     }
+
+    private static class SyncServices {
+
+        private RdbSyncService         rdbSyncService;
+        private RdbMirrorDbSyncService rdbMirrorDbSyncService;
+    }
 }
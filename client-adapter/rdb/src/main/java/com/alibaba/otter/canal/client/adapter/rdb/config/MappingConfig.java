@@ -105,6 +105,7 @@ public class MappingConfig implements AdapterConfig {
         private boolean             caseInsensitive = false;                 // 目标表不区分大小写，默认是否
 
         private String              etlCondition;                            // etl条件sql
+        private String              etlSplitKey;                              // etl按主键分段的字段, 数值类型
 
         private int                 readBatch       = 5000;
         private int                 commitBatch     = 5000;                  // etl等批量提交大小
@@ -198,6 +199,14 @@ public class MappingConfig implements AdapterConfig {
             this.etlCondition = etlCondition;
         }
 
+        public String getEtlSplitKey() {
+            return etlSplitKey;
+        }
+
+        public void setEtlSplitKey(String etlSplitKey) {
+            this.etlSplitKey = etlSplitKey;
+        }
+
         public int getReadBatch() {
             return readBatch;
         }
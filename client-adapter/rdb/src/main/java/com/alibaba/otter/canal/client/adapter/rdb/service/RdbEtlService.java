@@ -2,10 +2,10 @@ package com.alibaba.otter.canal.client.adapter.rdb.service;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,7 +18,9 @@ import com.alibaba.otter.canal.client.adapter.rdb.config.MappingConfig.DbMapping
 import com.alibaba.otter.canal.client.adapter.rdb.support.SyncUtil;
 import com.alibaba.otter.canal.client.adapter.support.AbstractEtlService;
 import com.alibaba.otter.canal.client.adapter.support.AdapterConfig;
+import com.alibaba.otter.canal.client.adapter.support.EtlPipeline;
 import com.alibaba.otter.canal.client.adapter.support.EtlResult;
+import com.alibaba.otter.canal.client.adapter.support.SqlExecutor;
 import com.alibaba.otter.canal.client.adapter.support.Util;
 
 /**
@@ -76,92 +78,63 @@ public class RdbEtlService extends AbstractEtlService {
                 }
             });
 
-            Util.sqlRS(srcDS, sql, values, rs -> {
-                int idx = 1;
-
-                try {
-                    boolean completed = false;
-
-                    StringBuilder insertSql = new StringBuilder();
-                    insertSql.append("INSERT INTO ").append(SyncUtil.getDbTableName(dbMapping)).append(" (");
-                    columnsMap
-                        .forEach((targetColumnName, srcColumnName) -> insertSql.append(targetColumnName).append(","));
-
-                    int len = insertSql.length();
-                    insertSql.delete(len - 1, len).append(") VALUES (");
-                    int mapLen = columnsMap.size();
-                    for (int i = 0; i < mapLen; i++) {
-                        insertSql.append("?,");
-                    }
-                    len = insertSql.length();
-                    insertSql.delete(len - 1, len).append(")");
-                    try (Connection connTarget = targetDS.getConnection();
-                            PreparedStatement pstmt = connTarget.prepareStatement(insertSql.toString())) {
-                        connTarget.setAutoCommit(false);
-
-                        while (rs.next()) {
-                            completed = false;
-
-                            pstmt.clearParameters();
-
-                            // 删除数据
-                            Map<String, Object> pkVal = new LinkedHashMap<>();
-                            StringBuilder deleteSql = new StringBuilder(
-                                "DELETE FROM " + SyncUtil.getDbTableName(dbMapping) + " WHERE ");
-                            appendCondition(dbMapping, deleteSql, pkVal, rs);
-                            try (PreparedStatement pstmt2 = connTarget.prepareStatement(deleteSql.toString())) {
-                                int k = 1;
-                                for (Object val : pkVal.values()) {
-                                    pstmt2.setObject(k++, val);
-                                }
-                                pstmt2.execute();
-                            }
-
-                            int i = 1;
-                            for (Map.Entry<String, String> entry : columnsMap.entrySet()) {
-                                String targetClolumnName = entry.getKey();
-                                String srcColumnName = entry.getValue();
-                                if (srcColumnName == null) {
-                                    srcColumnName = targetClolumnName;
-                                }
+            StringBuilder insertSql = new StringBuilder();
+            insertSql.append("INSERT INTO ").append(SyncUtil.getDbTableName(dbMapping)).append(" (");
+            columnsMap.forEach((targetColumnName, srcColumnName) -> insertSql.append(targetColumnName).append(","));
 
-                                Integer type = columnType.get(targetClolumnName.toLowerCase());
-
-                                Object value = rs.getObject(srcColumnName);
-                                if (value != null) {
-                                    SyncUtil.setPStmt(type, pstmt, value, i);
-                                } else {
-                                    pstmt.setNull(i, type);
-                                }
+            int len = insertSql.length();
+            insertSql.delete(len - 1, len).append(") VALUES (");
+            int mapLen = columnsMap.size();
+            for (int i = 0; i < mapLen; i++) {
+                insertSql.append("?,");
+            }
+            len = insertSql.length();
+            insertSql.delete(len - 1, len).append(")");
 
-                                i++;
-                            }
+            // 删除数据
+            StringBuilder deleteSql = new StringBuilder("DELETE FROM " + SyncUtil.getDbTableName(dbMapping) + " WHERE ");
+            appendCondition(dbMapping, deleteSql);
 
-                            pstmt.execute();
-                            if (logger.isTraceEnabled()) {
-                                logger.trace("Insert into target table, sql: {}", insertSql);
+            Util.sqlRS(srcDS, sql, values, rs -> {
+                try (Connection connTarget = targetDS.getConnection();
+                        PreparedStatement deleteStmt = connTarget.prepareStatement(deleteSql.toString());
+                        PreparedStatement insertStmt = connTarget.prepareStatement(insertSql.toString())) {
+                    connTarget.setAutoCommit(false);
+
+                    return pipeline(rs,
+                        dbMapping.getCommitBatch(),
+                        row -> convert(dbMapping, columnsMap, row),
+                        batch -> {
+                            // 先批量删除再批量插入, 同一批次内主键重复时只保留最后一行, 与逐行删除插入的结果一致
+                            Map<List<Object>, Object[][]> rowsByPk = new LinkedHashMap<>();
+                            for (Object[][] rowValues : batch) {
+                                rowsByPk.put(Arrays.asList(rowValues[0]), rowValues);
                             }
-
-                            if (idx % dbMapping.getCommitBatch() == 0) {
+                            try {
+                                for (Object[][] rowValues : rowsByPk.values()) {
+                                    setValues(deleteStmt, rowValues[0], null, null);
+                                    deleteStmt.addBatch();
+                                    setValues(insertStmt, rowValues[1], columnsMap, columnType);
+                                    insertStmt.addBatch();
+                                }
+                                SqlExecutor.executeBatch(deleteSql.toString(), deleteStmt);
+                                SqlExecutor.executeBatch(insertSql.toString(), insertStmt);
                                 connTarget.commit();
-                                completed = true;
+                            } catch (SQLException e) {
+                                rollback(connTarget);
+                                throw e;
                             }
-                            idx++;
-                            impCount.incrementAndGet();
+                            // 按去重后实际写入的行数计数
+                            impCount.addAndGet(rowsByPk.size());
                             if (logger.isDebugEnabled()) {
                                 logger.debug("successful import count:" + impCount.get());
                             }
-                        }
-                        if (!completed) {
-                            connTarget.commit();
-                        }
-                    }
-
+                        });
                 } catch (Exception e) {
                     logger.error(dbMapping.getTable() + " etl failed! ==>" + e.getMessage(), e);
                     errMsg.add(dbMapping.getTable() + " etl failed! ==>" + e.getMessage());
                 }
-                return idx;
+                return null;
             });
             return true;
         } catch (Exception e) {
@@ -171,19 +144,68 @@ public class RdbEtlService extends AbstractEtlService {
     }
 
     /**
-     * 拼接目标表主键where条件
+     * 回滚未提交的批次, 回滚失败时保留原始异常
      */
-    private static void appendCondition(DbMapping dbMapping, StringBuilder sql, Map<String, Object> values,
-                                        ResultSet rs) throws SQLException {
-        // 拼接主键
+    private void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.error("etl rollback failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 取出目标表主键值和所有字段值
+     */
+    private static Object[][] convert(DbMapping dbMapping, Map<String, String> columnsMap,
+                                      EtlPipeline.Row row) throws SQLException {
+        Object[] pkValues = new Object[dbMapping.getTargetPk().size()];
+        int i = 0;
         for (Map.Entry<String, String> entry : dbMapping.getTargetPk().entrySet()) {
-            String targetColumnName = entry.getKey();
-            String srcColumnName = entry.getValue();
-            if (srcColumnName == null) {
-                srcColumnName = targetColumnName;
+            String srcColumnName = entry.getValue() == null ? entry.getKey() : entry.getValue();
+            pkValues[i++] = row.getValue(srcColumnName);
+        }
+        Object[] columnValues = new Object[columnsMap.size()];
+        i = 0;
+        for (Map.Entry<String, String> entry : columnsMap.entrySet()) {
+            String srcColumnName = entry.getValue() == null ? entry.getKey() : entry.getValue();
+            columnValues[i++] = row.getValue(srcColumnName);
+        }
+        return new Object[][] { pkValues, columnValues };
+    }
+
+    /**
+     * 设置参数, columnType为空时不做类型转换
+     */
+    private static void setValues(PreparedStatement pstmt, Object[] values, Map<String, String> columnsMap,
+                                  Map<String, Integer> columnType) throws SQLException {
+        pstmt.clearParameters();
+        if (columnType == null) {
+            for (int i = 0; i < values.length; i++) {
+                pstmt.setObject(i + 1, values[i]);
+            }
+            return;
+        }
+        int i = 0;
+        for (String targetColumnName : columnsMap.keySet()) {
+            Integer type = columnType.get(targetColumnName.toLowerCase());
+            Object value = values[i];
+            if (value != null) {
+                SyncUtil.setPStmt(type, pstmt, value, i + 1);
+            } else {
+                pstmt.setNull(i + 1, type);
             }
+            i++;
+        }
+    }
+
+    /**
+     * 拼接目标表主键where条件
+     */
+    private static void appendCondition(DbMapping dbMapping, StringBuilder sql) {
+        // 拼接主键
+        for (String targetColumnName : dbMapping.getTargetPk().keySet()) {
             sql.append(targetColumnName).append("=? AND ");
-            values.put(targetColumnName, rs.getObject(srcColumnName));
         }
         int len = sql.length();
         sql.delete(len - 4, len);
@@ -113,6 +113,10 @@ public class RdbMirrorDbSyncService {
         }
     }
 
+    public void close() {
+        rdbSyncService.close();
+    }
+
     /**
      * 初始化表配置
      *
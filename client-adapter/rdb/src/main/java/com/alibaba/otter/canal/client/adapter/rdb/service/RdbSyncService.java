@@ -283,8 +283,16 @@ public class RdbSyncService {
         } catch (SQLException e) {
             if (skipDupException
                 && (e.getMessage().contains("Duplicate entry") || e.getMessage().startsWith("ORA-00001:"))) {
-                // ignore
+                // 主键冲突时按主键更新为插入的数据, 重复同步或合并后的insert都能得到最终状态
                 // TODO 增加更多关系数据库的主键冲突的错误码
+                SingleDml upsert = new SingleDml();
+                upsert.setDestination(dml.getDestination());
+                upsert.setDatabase(dml.getDatabase());
+                upsert.setTable(dml.getTable());
+                upsert.setType("UPDATE");
+                upsert.setData(data);
+                upsert.setOld(new LinkedHashMap<>(data));
+                update(batchExecutor, config, upsert);
             } else {
                 throw e;
             }
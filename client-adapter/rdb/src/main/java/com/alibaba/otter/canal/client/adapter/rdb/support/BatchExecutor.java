@@ -14,6 +14,8 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.otter.canal.client.adapter.support.SqlExecutor;
+
 /**
  * sql批量执行器
  *
@@ -60,7 +62,7 @@ public class BatchExecutor implements Closeable {
             SyncUtil.setPStmt(type, pstmt, value, i + 1);
         }
 
-        pstmt.execute();
+        SqlExecutor.execute(sql, pstmt);
         idx.incrementAndGet();
         pstmt.close();
     }
@@ -67,15 +67,16 @@ public class SingleDml {
 
     public static List<SingleDml> dml2SingleDmls(Dml dml, boolean caseInsensitive) {
         List<SingleDml> singleDmls = new ArrayList<>();
-        if (dml.getData() != null) {
-            int size = dml.getData().size();
+        // 列式存储时按行视图读取, 不生成整批的Map列表
+        if (dml.columnar() != null || dml.getData() != null) {
+            int size = dml.rowCount();
             for (int i = 0; i < size; i++) {
                 SingleDml singleDml = new SingleDml();
                 singleDml.setDestination(dml.getDestination());
                 singleDml.setDatabase(dml.getDatabase());
                 singleDml.setTable(dml.getTable());
                 singleDml.setType(dml.getType());
-                Map<String, Object> data = dml.getData().get(i);
+                Map<String, Object> data = dml.getRow(i);
                 if (caseInsensitive) {
                     data = toCaseInsensitiveMap(data);
                 }
@@ -0,0 +1,188 @@
+package com.alibaba.otter.canal.client.adapter.rdb.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.adapter.rdb.config.MappingConfig;
+import com.alibaba.otter.canal.client.adapter.rdb.service.RdbEtlService;
+
+/**
+ * RDB全量导入的批量删除插入, 使用h2内存库
+ *
+ * <pre>
+ * 查询按mysql流式读取设置fetchSize为Integer.MIN_VALUE, h2不支持, 测试数据源忽略该设置
+ * </pre>
+ */
+public class RdbEtlServiceTest {
+
+    private static final String URL            = "jdbc:h2:mem:rdb_etl;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private final AtomicInteger rollbacks      = new AtomicInteger();
+    private Connection          keepAlive;
+
+    @Before
+    public void setUp() throws Exception {
+        keepAlive = DriverManager.getConnection(URL, "sa", "");
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS etl_user");
+            // 源表没有主键约束, 用于构造同一批次内的重复主键
+            stmt.execute("CREATE TABLE etl_user (id BIGINT, name VARCHAR(64))");
+            stmt.execute("DROP TABLE IF EXISTS `etl_target`");
+            stmt.execute("CREATE TABLE `etl_target` (`id` BIGINT PRIMARY KEY, `name` VARCHAR(8))");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        keepAlive.close();
+    }
+
+    @Test
+    public void testDuplicatePkInBatch() throws Exception {
+        execute("INSERT INTO etl_user VALUES (1, 'a'), (2, 'b'), (1, 'a2'), (3, 'c'), (3, 'c2')");
+
+        AtomicLong impCount = new AtomicLong();
+        List<String> errMsg = importData(10, impCount);
+
+        Assert.assertTrue(errMsg.toString(), errMsg.isEmpty());
+        // 按去重后的行数计数
+        Assert.assertEquals(3L, impCount.get());
+        Map<Long, String> expected = new LinkedHashMap<>();
+        expected.put(1L, "a2");
+        expected.put(2L, "b");
+        expected.put(3L, "c2");
+        Assert.assertEquals(expected, target());
+    }
+
+    @Test
+    public void testRollbackOnFailure() throws Exception {
+        execute("INSERT INTO `etl_target` VALUES (1, 'old1'), (2, 'old2'), (3, 'old3'), (4, 'old4')");
+        // 第二个批次中id=4的name超出目标字段长度, 插入失败
+        execute("INSERT INTO etl_user VALUES (1, 'a'), (2, 'b'), (3, 'c'), (4, 'too long name')");
+
+        List<String> errMsg = importData(2);
+
+        Assert.assertEquals(1, errMsg.size());
+        Assert.assertEquals(1, rollbacks.get());
+        Map<Long, String> expected = new LinkedHashMap<>();
+        expected.put(1L, "a");
+        expected.put(2L, "b");
+        // 失败批次的删除已经回滚
+        expected.put(3L, "old3");
+        expected.put(4L, "old4");
+        Assert.assertEquals(expected, target());
+    }
+
+    private List<String> importData(int commitBatch) {
+        return importData(commitBatch, new AtomicLong());
+    }
+
+    private List<String> importData(int commitBatch, AtomicLong impCount) {
+        List<String> errMsg = new ArrayList<>();
+        DataSource dataSource = dataSource();
+        new TestEtlService(dataSource, mappingConfig(commitBatch)).importData(dataSource, impCount, errMsg);
+        return errMsg;
+    }
+
+    private MappingConfig mappingConfig(int commitBatch) {
+        MappingConfig.DbMapping dbMapping = new MappingConfig.DbMapping();
+        dbMapping.setDatabase("PUBLIC");
+        dbMapping.setTable("etl_user");
+        dbMapping.setTargetTable("etl_target");
+        dbMapping.setTargetPk(new LinkedHashMap<>(Collections.singletonMap("id", "id")));
+        dbMapping.setMapAll(true);
+        dbMapping.setCommitBatch(commitBatch);
+
+        MappingConfig config = new MappingConfig();
+        config.setDbMapping(dbMapping);
+        return config;
+    }
+
+    private void execute(String sql) throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private Map<Long, String> target() throws Exception {
+        Map<Long, String> rows = new LinkedHashMap<>();
+        try (Statement stmt = keepAlive.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT `id`, `name` FROM `etl_target` ORDER BY `id`")) {
+            while (rs.next()) {
+                rows.put(rs.getLong(1), rs.getString(2));
+            }
+        }
+        return rows;
+    }
+
+    private DataSource dataSource() {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] { DataSource.class },
+            (proxy, method, args) -> {
+                if ("getConnection".equals(method.getName())) {
+                    return connection(DriverManager.getConnection(URL, "sa", ""));
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    private Connection connection(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] { Connection.class },
+            (proxy, method, args) -> {
+                if ("rollback".equals(method.getName())) {
+                    rollbacks.incrementAndGet();
+                }
+                Object result = invoke(conn, method, args);
+                if (result instanceof PreparedStatement) {
+                    PreparedStatement pstmt = (PreparedStatement) result;
+                    return Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class[] { PreparedStatement.class },
+                        (p, m, a) -> "setFetchSize".equals(m.getName()) ? null : invoke(pstmt, m, a));
+                }
+                return result;
+            });
+    }
+
+    private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class TestEtlService extends RdbEtlService {
+
+        private final MappingConfig config;
+
+        TestEtlService(DataSource targetDS, MappingConfig config){
+            super(targetDS, config);
+            this.config = config;
+        }
+
+        void importData(DataSource srcDS, AtomicLong impCount, List<String> errMsg) {
+            String sql = "SELECT * FROM " + config.getDbMapping().getTable();
+            executeSqlImport(srcDS, sql, null, config.getDbMapping(), impCount, errMsg);
+        }
+    }
+}
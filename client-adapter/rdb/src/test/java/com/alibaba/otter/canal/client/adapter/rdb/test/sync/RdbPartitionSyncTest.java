@@ -0,0 +1,156 @@
+package com.alibaba.otter.canal.client.adapter.rdb.test.sync;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.adapter.rdb.RdbAdapter;
+import com.alibaba.otter.canal.client.adapter.support.Dml;
+import com.alibaba.otter.canal.client.adapter.support.OuterAdapterConfig;
+
+/**
+ * 多个分区worker并发调用同一个RdbAdapter.sync, 使用h2内存库验证写入结果
+ */
+public class RdbPartitionSyncTest {
+
+    private static final String URL      = "jdbc:h2:mem:partition_sync;MODE=MySQL;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1";
+    private static final int    ROWS     = 500;
+    private static final int    BATCH    = 20;
+
+    private Connection          keepAlive;
+    private RdbAdapter          adapter;
+
+    @Before
+    public void setUp() throws Exception {
+        keepAlive = DriverManager.getConnection(URL, "sa", "");
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS `partition_user`");
+            stmt.execute("CREATE TABLE `partition_user` (`id` BIGINT PRIMARY KEY, `name` VARCHAR(64), `version` INT)");
+        }
+
+        OuterAdapterConfig config = new OuterAdapterConfig();
+        config.setName("rdb");
+        config.setKey("h2");
+        Map<String, String> properties = new HashMap<>();
+        properties.put("jdbc.driverClassName", "org.h2.Driver");
+        properties.put("jdbc.url", URL);
+        properties.put("jdbc.username", "sa");
+        properties.put("jdbc.password", "");
+        properties.put("threads", "2");
+        config.setProperties(properties);
+
+        adapter = new RdbAdapter();
+        adapter.init(config, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (adapter != null) {
+            adapter.destroy();
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    public void testTwoPartitions() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int partition = 0; partition < 2; partition++) {
+                int p = partition;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // 分区p负责id % 2 == p的行, 先插入再更新
+                    for (int from = 0; from < ROWS; from += BATCH) {
+                        List<Dml> dmls = new ArrayList<>();
+                        for (int id = from; id < from + BATCH; id++) {
+                            if (id % 2 == p) {
+                                dmls.add(insert(id));
+                                dmls.add(update(id));
+                            }
+                        }
+                        adapter.sync(dmls);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try (Statement stmt = keepAlive.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT `id`, `name`, `version` FROM `partition_user` ORDER BY `id`")) {
+            int expected = 0;
+            while (rs.next()) {
+                Assert.assertEquals(expected, rs.getLong(1));
+                Assert.assertEquals("user" + expected + "_v2", rs.getString(2));
+                Assert.assertEquals(2, rs.getInt(3));
+                expected++;
+            }
+            Assert.assertEquals(ROWS, expected);
+        }
+    }
+
+    private static Dml insert(long id) {
+        Dml dml = dml("INSERT");
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", id);
+        data.put("name", "user" + id);
+        data.put("version", 1);
+        List<Map<String, Object>> dataList = new ArrayList<>();
+        dataList.add(data);
+        dml.setData(dataList);
+        return dml;
+    }
+
+    private static Dml update(long id) {
+        Dml dml = dml("UPDATE");
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", id);
+        data.put("name", "user" + id + "_v2");
+        data.put("version", 2);
+        List<Map<String, Object>> dataList = new ArrayList<>();
+        dataList.add(data);
+        dml.setData(dataList);
+        Map<String, Object> old = new LinkedHashMap<>();
+        old.put("name", "user" + id);
+        old.put("version", 1);
+        List<Map<String, Object>> oldList = new ArrayList<>();
+        oldList.add(old);
+        dml.setOld(oldList);
+        return dml;
+    }
+
+    private static Dml dml(String type) {
+        Dml dml = new Dml();
+        dml.setDestination("example");
+        dml.setDatabase("mytest");
+        dml.setTable("partition_user");
+        dml.setType(type);
+        dml.setPkNames(Collections.singletonList("id"));
+        dml.setTs(System.currentTimeMillis());
+        return dml;
+    }
+}
@@ -9,6 +9,7 @@ import com.alibaba.otter.canal.client.adapter.OuterAdapter;
 import com.alibaba.otter.canal.client.adapter.support.Dml;
 import com.alibaba.otter.canal.client.adapter.support.EtlResult;
 import com.alibaba.otter.canal.client.adapter.support.OuterAdapterConfig;
+import com.alibaba.otter.canal.client.adapter.support.PartitionedDmlExecutor;
 import com.alibaba.otter.canal.client.adapter.support.SPI;
 import com.alibaba.otter.canal.client.adapter.tablestore.common.PropertyConstants;
 import com.alibaba.otter.canal.client.adapter.tablestore.config.ConfigLoader;
@@ -48,6 +49,8 @@ public class TablestoreAdapter implements OuterAdapter {
 
     private OuterAdapterConfig configuration;
 
+    private PartitionedDmlExecutor partitionedDmlExecutor;                     // 按主键分区并行转换写入
+
 
     @Override
     public void init(OuterAdapterConfig configuration, Properties envProperties) {
@@ -112,6 +115,8 @@ public class TablestoreAdapter implements OuterAdapter {
         }
 
         tablestoreSyncService = new TablestoreSyncService();
+        String threads = properties.get("threads");
+        partitionedDmlExecutor = new PartitionedDmlExecutor(threads != null ? Integer.parseInt(threads) : 1);
     }
 
     /**
@@ -141,37 +146,39 @@ public class TablestoreAdapter implements OuterAdapter {
         }
 
         try {
-            Set<TableStoreWriter> writerSet = new HashSet<>();
-            List<Future<WriterResult>> futureList = new ArrayList<>();
-            for (Dml dml : dmls) {
-                String destination = StringUtils.trimToEmpty(dml.getDestination());
-                String groupId = StringUtils.trimToEmpty(dml.getGroupId());
-                String database = dml.getDatabase();
-                String table = dml.getTable();
-                String key;
-                if (envProperties != null && !"tcp".equalsIgnoreCase(envProperties.getProperty("canal.conf.mode"))) {
-                    key = destination + "-" + groupId + "_" + database + "-" + table;
-                } else {
-                    key = destination + "_" + database + "-" + table;
-                }
-                Map<String, MappingConfig> configMap = mappingConfigCache.get(key);
-                if (configMap == null) {
-                    // 可能有dml中涉及到的表并没有出现在配置中，说明此类dml并不需要同步
-                    continue;
-                }
+            Set<TableStoreWriter> writerSet = ConcurrentHashMap.newKeySet();
+            List<Future<WriterResult>> futureList = Collections.synchronizedList(new ArrayList<>());
+            partitionedDmlExecutor.execute(dmls, (partition, partitionDmls) -> {
+                for (Dml dml : partitionDmls) {
+                    String destination = StringUtils.trimToEmpty(dml.getDestination());
+                    String groupId = StringUtils.trimToEmpty(dml.getGroupId());
+                    String database = dml.getDatabase();
+                    String table = dml.getTable();
+                    String key;
+                    if (envProperties != null && !"tcp".equalsIgnoreCase(envProperties.getProperty("canal.conf.mode"))) {
+                        key = destination + "-" + groupId + "_" + database + "-" + table;
+                    } else {
+                        key = destination + "_" + database + "-" + table;
+                    }
+                    Map<String, MappingConfig> configMap = mappingConfigCache.get(key);
+                    if (configMap == null) {
+                        // 可能有dml中涉及到的表并没有出现在配置中，说明此类dml并不需要同步
+                        continue;
+                    }
 
-                Map<String, TableStoreWriter> writerMap = writerCache.get(key);
+                    Map<String, TableStoreWriter> writerMap = writerCache.get(key);
 
-                for (Map.Entry<String, MappingConfig> entry : configMap.entrySet()) {
-                    TableStoreWriter w = writerMap.get(entry.getKey());
-                    // 拿到所有future用于判定失败的记录
-                    Future<WriterResult> futureTemp = tablestoreSyncService.sync(entry.getValue(), dml, w);
-                    if (futureTemp != null) {
-                        writerSet.add(w);
-                        futureList.add(futureTemp);
+                    for (Map.Entry<String, MappingConfig> entry : configMap.entrySet()) {
+                        TableStoreWriter w = writerMap.get(entry.getKey());
+                        // 拿到所有future用于判定失败的记录
+                        Future<WriterResult> futureTemp = tablestoreSyncService.sync(entry.getValue(), dml, w);
+                        if (futureTemp != null) {
+                            writerSet.add(w);
+                            futureList.add(futureTemp);
+                        }
                     }
                 }
-            }
+            });
 
             if (writerSet.isEmpty()) {
                 return;
@@ -304,6 +311,9 @@ public class TablestoreAdapter implements OuterAdapter {
         if (tablestoreSyncService != null) {
             tablestoreSyncService.close();
         }
+        if (partitionedDmlExecutor != null) {
+            partitionedDmlExecutor.close();
+        }
 
         if (writerCache != null) {
             for (Map<String, TableStoreWriter> tmpMap : writerCache.values()) {
@@ -164,6 +164,7 @@ public class MappingConfig implements AdapterConfig {
         private Map<String, String> targetColumns;                           // 目标表字段映射
         private Map<String, String> targetColumnsParsed;
         private String              etlCondition;                            // etl条件sql
+        private String              etlSplitKey;                              // etl按主键分段的字段, 数值类型
 
         private int                 readBatch       = 5000;
         private int                 commitBatch     = 5000;                  // etl等批量提交大小
@@ -225,6 +226,14 @@ public class MappingConfig implements AdapterConfig {
             this.etlCondition = etlCondition;
         }
 
+        public String getEtlSplitKey() {
+            return etlSplitKey;
+        }
+
+        public void setEtlSplitKey(String etlSplitKey) {
+            this.etlSplitKey = etlSplitKey;
+        }
+
         public int getReadBatch() {
             return readBatch;
         }
@@ -20,6 +20,8 @@ public class CanalConstants {
     public static final String CANAL_MQ_DATABASE_HASH         = ROOT + "." + "mq.database.hash";
     public static final String CANAL_MQ_BUILD_THREAD_SIZE     = ROOT + "." + "mq.build.thread.size";
     public static final String CANAL_MQ_SEND_THREAD_SIZE      = ROOT + "." + "mq.send.thread.size";
+    // 同一个topic并行消费时consumer的序号
+    public static final String CANAL_MQ_CONSUMER_INDEX        = ROOT + "." + "mq.consumer.index";
 
     public static final String CANAL_ALIYUN_ACCESS_KEY        = ROOT + "." + "aliyun.accessKey";
     public static final String CANAL_ALIYUN_SECRET_KEY        = ROOT + "." + "aliyun.secretKey";
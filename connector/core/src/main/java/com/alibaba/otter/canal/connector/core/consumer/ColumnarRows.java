@@ -0,0 +1,146 @@
+package com.alibaba.otter.canal.connector.core.consumer;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 按列序号存放的行数据, 值在解析时已经按sqlType转换为java类型
+ *
+ * <pre>
+ * 按行以Map形式只读访问时使用{@link #row(int)}, 不复制数据
+ * 需要完整的Map列表时通过{@link #toMaps()}按需生成一次, 同一批数据的多个适配器共用
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class ColumnarRows implements Serializable {
+
+    private static final long                   serialVersionUID = 5216813526349316718L;
+
+    private final TableSchema                   schema;
+    private final List<Object[]>                rows;
+    private transient List<Map<String, Object>> maps;                                   // 按需生成的Map形式数据
+
+    public ColumnarRows(TableSchema schema, List<Object[]> rows){
+        this.schema = schema;
+        this.rows = rows;
+    }
+
+    public TableSchema getSchema() {
+        return schema;
+    }
+
+    public List<Object[]> getRows() {
+        return rows;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public Object getValue(int row, int ordinal) {
+        return rows.get(row)[ordinal];
+    }
+
+    public Object getValue(int row, String columnName) {
+        int ordinal = schema.getOrdinal(columnName);
+        return ordinal < 0 ? null : rows.get(row)[ordinal];
+    }
+
+    /**
+     * 第row行的只读Map视图, 按列序号直接读取行数据, 不生成新的Map
+     */
+    public Map<String, Object> row(int row) {
+        return new RowView(schema, rows.get(row));
+    }
+
+    /**
+     * 兼容Map形式的行数据, 只生成一次
+     */
+    public synchronized List<Map<String, Object>> toMaps() {
+        if (maps == null) {
+            List<Map<String, Object>> result = new ArrayList<>(rows.size());
+            int columnCount = schema.getColumnCount();
+            for (Object[] values : rows) {
+                Map<String, Object> row = new LinkedHashMap<>(columnCount * 4 / 3 + 1);
+                for (int i = 0; i < columnCount; i++) {
+                    row.put(schema.getColumnName(i), values[i]);
+                }
+                result.add(row);
+            }
+            maps = result;
+        }
+        return maps;
+    }
+
+    private static class RowView extends AbstractMap<String, Object> {
+
+        private final TableSchema schema;
+        private final Object[]    values;
+
+        private RowView(TableSchema schema, Object[] values){
+            this.schema = schema;
+            this.values = values;
+        }
+
+        @Override
+        public int size() {
+            return schema.getColumnCount();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && schema.getOrdinal((String) key) >= 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            int ordinal = schema.getOrdinal((String) key);
+            return ordinal < 0 ? null : values[ordinal];
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+
+                @Override
+                public int size() {
+                    return schema.getColumnCount();
+                }
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+
+                        private int ordinal = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return ordinal < schema.getColumnCount();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = ordinal++;
+                            return new SimpleImmutableEntry<>(schema.getColumnName(i), values[i]);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
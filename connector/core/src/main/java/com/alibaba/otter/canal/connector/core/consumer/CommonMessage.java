@@ -24,6 +24,8 @@ public class CommonMessage implements Serializable {
     private List<Map<String, Object>> data;
     // 旧数据列表,用于update,size和data的size一一对应
     private List<Map<String, Object>> old;
+    // 列式存储的数据, 存在时data由其按需生成
+    private ColumnarRows              columnar;
 
     public String getDatabase() {
         return database;
@@ -82,11 +84,27 @@ public class CommonMessage implements Serializable {
     }
 
     public List<Map<String, Object>> getData() {
+        if (data == null && columnar != null) {
+            data = columnar.toMaps();
+        }
         return data;
     }
 
     public void setData(List<Map<String, Object>> data) {
         this.data = data;
+        this.columnar = null;
+    }
+
+    /**
+     * 列式存储的数据, 没有时返回null, 此时只能通过getData访问
+     */
+    public ColumnarRows columnar() {
+        return columnar;
+    }
+
+    public void setColumnar(ColumnarRows columnar) {
+        this.columnar = columnar;
+        this.data = null;
     }
 
     public List<Map<String, Object>> getOld() {
@@ -113,6 +131,7 @@ public class CommonMessage implements Serializable {
         es = null;
         data = null;
         old = null;
+        columnar = null;
         sql = null;
     }
 
@@ -120,6 +139,6 @@ public class CommonMessage implements Serializable {
     public String toString() {
         return "CommonMessage{" + "database='" + database + '\'' + ", table='" + table + '\'' + ", pkNames=" + pkNames
                + ", isDdl=" + isDdl + ", type='" + type + '\'' + ", es=" + es + ", ts=" + ts + ", sql='" + sql + '\''
-               + ", data=" + data + ", old=" + old + '}';
+               + ", data=" + getData() + ", old=" + old + '}';
     }
 }
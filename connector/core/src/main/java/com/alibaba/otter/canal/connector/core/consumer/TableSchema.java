@@ -0,0 +1,103 @@
+package com.alibaba.otter.canal.connector.core.consumer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+
+/**
+ * 表结构描述, 同一个表结构的所有行共用, 列值按列序号存放在{@link ColumnarRows}中
+ *
+ * @version 1.1.6
+ */
+public class TableSchema implements Serializable {
+
+    private static final long          serialVersionUID = -2836395672150392431L;
+
+    private final String               database;
+    private final String               table;
+    private final String[]             columnNames;
+    private final int[]                sqlTypes;
+    private final String[]             mysqlTypes;
+    private final List<String>         pkNames;
+    private final Map<String, Integer> ordinals;                                 // 列名 -> 列序号
+
+    public TableSchema(String database, String table, List<CanalEntry.Column> columns){
+        this.database = database;
+        this.table = table;
+        int size = columns.size();
+        this.columnNames = new String[size];
+        this.sqlTypes = new int[size];
+        this.mysqlTypes = new String[size];
+        this.ordinals = new HashMap<>(size * 2);
+        List<String> pks = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            CanalEntry.Column column = columns.get(i);
+            columnNames[i] = column.getName();
+            sqlTypes[i] = column.getSqlType();
+            mysqlTypes[i] = column.getMysqlType();
+            ordinals.put(column.getName(), i);
+            if (column.getIsKey()) {
+                pks.add(column.getName());
+            }
+        }
+        this.pkNames = Collections.unmodifiableList(pks);
+    }
+
+    /**
+     * 行数据的列是否与表结构完全一致(列数、列名、类型)
+     */
+    public boolean matches(List<CanalEntry.Column> columns) {
+        if (columns.size() != columnNames.length) {
+            return false;
+        }
+        for (int i = 0; i < columnNames.length; i++) {
+            CanalEntry.Column column = columns.get(i);
+            if (!columnNames[i].equals(column.getName()) || sqlTypes[i] != column.getSqlType()
+                || !mysqlTypes[i].equals(column.getMysqlType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    public String getColumnName(int ordinal) {
+        return columnNames[ordinal];
+    }
+
+    public int getSqlType(int ordinal) {
+        return sqlTypes[ordinal];
+    }
+
+    public String getMysqlType(int ordinal) {
+        return mysqlTypes[ordinal];
+    }
+
+    public List<String> getPkNames() {
+        return pkNames;
+    }
+
+    /**
+     * 列序号, 不存在返回-1
+     */
+    public int getOrdinal(String columnName) {
+        Integer ordinal = ordinals.get(columnName);
+        return ordinal == null ? -1 : ordinal;
+    }
+}
@@ -0,0 +1,55 @@
+package com.alibaba.otter.canal.connector.core.consumer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 表结构缓存, 每个consumer(对应一个destination/topic)一份, 超过容量时淘汰最久未使用的表
+ *
+ * @version 1.1.6
+ */
+public class TableSchemaCache {
+
+    public static final int                DEFAULT_CAPACITY = 1024;
+
+    private final Map<String, TableSchema> schemas;
+
+    public TableSchemaCache(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TableSchemaCache(int capacity){
+        this.schemas = new LinkedHashMap<String, TableSchema>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TableSchema> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized TableSchema get(String database, String table) {
+        return schemas.get(key(database, table));
+    }
+
+    public synchronized void put(TableSchema schema) {
+        schemas.put(key(schema.getDatabase(), schema.getTable()), schema);
+    }
+
+    /**
+     * DDL之后表结构失效
+     */
+    public synchronized void invalidate(String database, String table) {
+        schemas.remove(key(database, table));
+    }
+
+    public synchronized int size() {
+        return schemas.size();
+    }
+
+    private static String key(String database, String table) {
+        return database + "." + table;
+    }
+}
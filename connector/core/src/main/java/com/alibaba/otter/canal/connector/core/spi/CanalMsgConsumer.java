@@ -52,4 +52,18 @@ public interface CanalMsgConsumer {
      * 断开连接
      */
     void disconnect();
+
+    /**
+     * 是否支持异步ack
+     *
+     * <pre>
+     * 支持时允许在ack之前继续getMessage(最多保留多个未ack的批次)
+     * 1. 每次getMessage(包括没有数据的情况)都对应一次ack，ack按getMessage的顺序提交最早的一个批次
+     * 2. rollback回滚所有未ack的批次
+     * 3. 所有方法仍然只在同一个线程中调用
+     * </pre>
+     */
+    default boolean supportAsyncAck() {
+        return false;
+    }
 }
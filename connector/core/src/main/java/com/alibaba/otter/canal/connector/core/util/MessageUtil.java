@@ -7,7 +7,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.alibaba.otter.canal.connector.core.consumer.ColumnarRows;
 import com.alibaba.otter.canal.connector.core.consumer.CommonMessage;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchema;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchemaCache;
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.Message;
 
@@ -20,6 +23,16 @@ import com.alibaba.otter.canal.protocol.Message;
 public class MessageUtil {
 
     public static List<CommonMessage> convert(Message message) {
+        return convert(message, new TableSchemaCache());
+    }
+
+    /**
+     * 转换消息, 表结构缓存由调用方(consumer)持有, 在多个消息之间复用
+     *
+     * @param message 消息
+     * @param tableSchemas 表结构缓存, 列发生变化或者DDL时重建
+     */
+    public static List<CommonMessage> convert(Message message, TableSchemaCache tableSchemas) {
         if (message == null) {
             return null;
         }
@@ -54,6 +67,12 @@ public class MessageUtil {
             List<Map<String, Object>> data = new ArrayList<>();
             List<Map<String, Object>> old = new ArrayList<>();
 
+            if (rowChange.getIsDdl()) {
+                tableSchemas.invalidate(msg.getDatabase(), msg.getTable());
+            } else if (convertColumnar(msg, rowChange, tableSchemas)) {
+                continue;
+            }
+
             if (!rowChange.getIsDdl()) {
                 Set<String> updateSet = new HashSet<>();
                 msg.setPkNames(new ArrayList<>());
@@ -132,4 +151,83 @@ public class MessageUtil {
 
         return msgs;
     }
+
+    /**
+     * 所有行的列与表结构一致时按列序号存放数据, 不一致(如minimal row image)时返回false
+     */
+    private static boolean convertColumnar(CommonMessage msg, CanalEntry.RowChange rowChange,
+                                           TableSchemaCache tableSchemas) {
+        CanalEntry.EventType eventType = rowChange.getEventType();
+        if ((eventType != CanalEntry.EventType.INSERT && eventType != CanalEntry.EventType.UPDATE
+             && eventType != CanalEntry.EventType.DELETE)
+            || rowChange.getRowDatasCount() == 0) {
+            return false;
+        }
+
+        List<CanalEntry.Column> firstColumns = rowColumns(eventType, rowChange.getRowDatas(0));
+        if (firstColumns.isEmpty()) {
+            return false;
+        }
+        TableSchema schema = tableSchemas.get(msg.getDatabase(), msg.getTable());
+        if (schema == null || !schema.matches(firstColumns)) {
+            schema = new TableSchema(msg.getDatabase(), msg.getTable(), firstColumns);
+            tableSchemas.put(schema);
+        }
+        for (CanalEntry.RowData rowData : rowChange.getRowDatasList()) {
+            if (!schema.matches(rowColumns(eventType, rowData))) {
+                return false;
+            }
+        }
+
+        int columnCount = schema.getColumnCount();
+        List<Object[]> rows = new ArrayList<>(rowChange.getRowDatasCount());
+        List<Map<String, Object>> old = new ArrayList<>();
+        Set<String> updateSet = new HashSet<>();
+        for (CanalEntry.RowData rowData : rowChange.getRowDatasList()) {
+            List<CanalEntry.Column> columns = rowColumns(eventType, rowData);
+            Object[] values = new Object[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                CanalEntry.Column column = columns.get(i);
+                values[i] = column.getIsNull() ? null : JdbcTypeUtil.typeConvert(msg.getTable(),
+                    column.getName(),
+                    column.getValue(),
+                    schema.getSqlType(i),
+                    schema.getMysqlType(i));
+                // 获取update为true的字段
+                if (column.getUpdated()) {
+                    updateSet.add(column.getName());
+                }
+            }
+            rows.add(values);
+
+            if (eventType == CanalEntry.EventType.UPDATE) {
+                // update操作将记录修改前的值
+                Map<String, Object> rowOld = new LinkedHashMap<>();
+                for (CanalEntry.Column column : rowData.getBeforeColumnsList()) {
+                    if (updateSet.contains(column.getName())) {
+                        rowOld.put(column.getName(),
+                            column.getIsNull() ? null : JdbcTypeUtil.typeConvert(msg.getTable(),
+                                column.getName(),
+                                column.getValue(),
+                                column.getSqlType(),
+                                column.getMysqlType()));
+                    }
+                }
+                if (!rowOld.isEmpty()) {
+                    old.add(rowOld);
+                }
+            }
+        }
+
+        msg.setPkNames(new ArrayList<>(schema.getPkNames()));
+        msg.setColumnar(new ColumnarRows(schema, rows));
+        if (!old.isEmpty()) {
+            msg.setOld(old);
+        }
+        return true;
+    }
+
+    private static List<CanalEntry.Column> rowColumns(CanalEntry.EventType eventType, CanalEntry.RowData rowData) {
+        return eventType == CanalEntry.EventType.DELETE ? rowData.getBeforeColumnsList() : rowData.getAfterColumnsList();
+    }
 }
@@ -0,0 +1,170 @@
+package com.alibaba.otter.canal.connector.core.util;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.connector.core.consumer.CommonMessage;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchema;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchemaCache;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+
+/**
+ * 按列存放的消息转换及表结构缓存
+ */
+public class MessageUtilTest {
+
+    @Test
+    public void testSchemaReuse() {
+        TableSchemaCache tableSchemas = new TableSchemaCache();
+        CommonMessage first = convertOne(insert("test", "t", row(1L, "a")), tableSchemas);
+        CommonMessage second = convertOne(insert("test", "t", row(2L, "b")), tableSchemas);
+
+        Assert.assertNotNull(first.columnar());
+        Assert.assertNotNull(second.columnar());
+        // 列一致时复用同一份表结构
+        Assert.assertSame(first.columnar().getSchema(), second.columnar().getSchema());
+        Assert.assertEquals(Collections.singletonList("id"), second.getPkNames());
+        Assert.assertEquals(2L, second.getData().get(0).get("id"));
+        Assert.assertEquals("b", second.getData().get(0).get("name"));
+        Assert.assertEquals(1, tableSchemas.size());
+    }
+
+    @Test
+    public void testMismatchFallback() {
+        TableSchemaCache tableSchemas = new TableSchemaCache();
+        // minimal row image: 第二行缺少name列, 回退到map存放
+        CommonMessage msg = convertOne(insert("test", "t", row(1L, "a"), Collections.singletonList(id(2L))),
+            tableSchemas);
+
+        Assert.assertNull(msg.columnar());
+        Assert.assertEquals(2, msg.getData().size());
+        Assert.assertEquals("a", msg.getData().get(0).get("name"));
+        Assert.assertEquals(2L, msg.getData().get(1).get("id"));
+        Assert.assertFalse(msg.getData().get(1).containsKey("name"));
+    }
+
+    @Test
+    public void testColumnChangeRebuildsSchema() {
+        TableSchemaCache tableSchemas = new TableSchemaCache();
+        TableSchema before = convertOne(insert("test", "t", row(1L, "a")), tableSchemas).columnar().getSchema();
+        CommonMessage msg = convertOne(insert("test", "t", Collections.singletonList(id(2L))), tableSchemas);
+
+        Assert.assertNotNull(msg.columnar());
+        Assert.assertNotSame(before, msg.columnar().getSchema());
+        Assert.assertEquals(1, msg.columnar().getSchema().getColumnCount());
+        Assert.assertSame(msg.columnar().getSchema(), tableSchemas.get("test", "t"));
+    }
+
+    @Test
+    public void testDdlInvalidate() {
+        TableSchemaCache tableSchemas = new TableSchemaCache();
+        convertOne(insert("test", "t", row(1L, "a")), tableSchemas);
+        convertOne(insert("test", "t2", row(1L, "a")), tableSchemas);
+        Assert.assertNotNull(tableSchemas.get("test", "t"));
+
+        CommonMessage ddl = convertOne(ddl("test", "t", "alter table t add column c int"), tableSchemas);
+        Assert.assertTrue(ddl.getIsDdl());
+        Assert.assertNull(tableSchemas.get("test", "t"));
+        // 其他表不受影响
+        Assert.assertNotNull(tableSchemas.get("test", "t2"));
+    }
+
+    @Test
+    public void testSeparateCaches() {
+        // 不同consumer的缓存互不影响, 同名表不会串用表结构
+        TableSchemaCache cache1 = new TableSchemaCache();
+        TableSchemaCache cache2 = new TableSchemaCache();
+        TableSchema schema1 = convertOne(insert("test", "t", row(1L, "a")), cache1).columnar().getSchema();
+        TableSchema schema2 = convertOne(insert("test", "t", Collections.singletonList(id(1L))), cache2)
+            .columnar()
+            .getSchema();
+
+        Assert.assertEquals(2, schema1.getColumnCount());
+        Assert.assertEquals(1, schema2.getColumnCount());
+        Assert.assertSame(schema1, cache1.get("test", "t"));
+        Assert.assertSame(schema2, cache2.get("test", "t"));
+    }
+
+    @Test
+    public void testCacheCapacity() {
+        TableSchemaCache tableSchemas = new TableSchemaCache(2);
+        convertOne(insert("test", "t1", row(1L, "a")), tableSchemas);
+        convertOne(insert("test", "t2", row(1L, "a")), tableSchemas);
+        // 访问t1, 淘汰最久未使用的t2
+        Assert.assertNotNull(tableSchemas.get("test", "t1"));
+        convertOne(insert("test", "t3", row(1L, "a")), tableSchemas);
+
+        Assert.assertEquals(2, tableSchemas.size());
+        Assert.assertNotNull(tableSchemas.get("test", "t1"));
+        Assert.assertNull(tableSchemas.get("test", "t2"));
+        Assert.assertNotNull(tableSchemas.get("test", "t3"));
+    }
+
+    private static CommonMessage convertOne(CanalEntry.Entry entry, TableSchemaCache tableSchemas) {
+        Message message = new Message(1L, Collections.singletonList(entry));
+        List<CommonMessage> msgs = MessageUtil.convert(message, tableSchemas);
+        Assert.assertEquals(1, msgs.size());
+        return msgs.get(0);
+    }
+
+    @SafeVarargs
+    private static CanalEntry.Entry insert(String database, String table, List<CanalEntry.Column>... rows) {
+        CanalEntry.RowChange.Builder rowChange = CanalEntry.RowChange.newBuilder()
+            .setEventType(CanalEntry.EventType.INSERT);
+        for (List<CanalEntry.Column> columns : rows) {
+            rowChange.addRowDatas(CanalEntry.RowData.newBuilder().addAllAfterColumns(columns));
+        }
+        return entry(database, table, rowChange.build());
+    }
+
+    private static CanalEntry.Entry ddl(String database, String table, String sql) {
+        return entry(database,
+            table,
+            CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.ALTER)
+                .setIsDdl(true)
+                .setSql(sql)
+                .build());
+    }
+
+    private static CanalEntry.Entry entry(String database, String table, CanalEntry.RowChange rowChange) {
+        CanalEntry.Header header = CanalEntry.Header.newBuilder()
+            .setSchemaName(database)
+            .setTableName(table)
+            .setEventType(rowChange.getEventType())
+            .build();
+        return CanalEntry.Entry.newBuilder()
+            .setEntryType(CanalEntry.EntryType.ROWDATA)
+            .setHeader(header)
+            .setStoreValue(rowChange.toByteString())
+            .build();
+    }
+
+    private static List<CanalEntry.Column> row(long id, String name) {
+        return Arrays.asList(id(id),
+            CanalEntry.Column.newBuilder()
+                .setIndex(1)
+                .setName("name")
+                .setValue(name)
+                .setSqlType(Types.VARCHAR)
+                .setMysqlType("varchar(32)")
+                .build());
+    }
+
+    private static CanalEntry.Column id(long id) {
+        return CanalEntry.Column.newBuilder()
+            .setIndex(0)
+            .setName("id")
+            .setIsKey(true)
+            .setValue(String.valueOf(id))
+            .setSqlType(Types.BIGINT)
+            .setMysqlType("bigint(20)")
+            .build();
+    }
+}
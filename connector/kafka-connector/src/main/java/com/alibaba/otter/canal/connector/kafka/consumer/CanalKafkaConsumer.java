@@ -1,24 +1,29 @@
 package com.alibaba.otter.canal.connector.kafka.consumer;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import com.alibaba.otter.canal.common.utils.PropertiesUtils;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.otter.canal.connector.core.config.CanalConstants;
 import com.alibaba.otter.canal.connector.core.consumer.CommonMessage;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchemaCache;
 import com.alibaba.otter.canal.connector.core.spi.CanalMsgConsumer;
 import com.alibaba.otter.canal.connector.core.spi.SPI;
 import com.alibaba.otter.canal.connector.core.util.MessageUtil;
@@ -35,12 +40,24 @@ public class CanalKafkaConsumer implements CanalMsgConsumer {
 
     private static final String      PREFIX_KAFKA_CONFIG = "kafka.";
 
-    private KafkaConsumer<String, ?> kafkaConsumer;
+    private Consumer<String, ?>      kafkaConsumer;
     private boolean                  flatMessage         = true;
     private String                   topic;
 
-    private Map<Integer, Long>       currentOffsets      = new ConcurrentHashMap<>();
+    // 未ack的批次, 按poll的顺序排列
+    private Deque<KafkaBatch>        batches             = new ArrayDeque<>();
     private Properties               kafkaProperties     = new Properties();
+    // 表结构缓存, 在多个消息之间复用
+    private final TableSchemaCache   tableSchemas        = new TableSchemaCache();
+
+    public CanalKafkaConsumer(){
+    }
+
+    CanalKafkaConsumer(Consumer<String, ?> kafkaConsumer, String topic, boolean flatMessage){
+        this.kafkaConsumer = kafkaConsumer;
+        this.topic = topic;
+        this.flatMessage = flatMessage;
+    }
 
     @Override
     public void init(Properties properties, String topic, String groupId) {
@@ -79,16 +96,15 @@ public class CanalKafkaConsumer implements CanalMsgConsumer {
     @SuppressWarnings("unchecked")
     @Override
     public List<CommonMessage> getMessage(Long timeout, TimeUnit unit) {
+        KafkaBatch batch = new KafkaBatch();
+        batches.offer(batch);
         if (!flatMessage) {
             ConsumerRecords<String, Message> records = (ConsumerRecords<String, Message>) kafkaConsumer.poll(unit.toMillis(timeout));
             if (!records.isEmpty()) {
-                currentOffsets.clear();
                 List<CommonMessage> messages = new ArrayList<>();
                 for (ConsumerRecord<String, Message> record : records) {
-                    if (currentOffsets.get(record.partition()) == null) {
-                        currentOffsets.put(record.partition(), record.offset());
-                    }
-                    messages.addAll(MessageUtil.convert(record.value()));
+                    batch.add(record);
+                    messages.addAll(MessageUtil.convert(record.value(), tableSchemas));
                 }
                 return messages;
             }
@@ -97,11 +113,8 @@ public class CanalKafkaConsumer implements CanalMsgConsumer {
 
             if (!records.isEmpty()) {
                 List<CommonMessage> messages = new ArrayList<>();
-                currentOffsets.clear();
                 for (ConsumerRecord<String, String> record : records) {
-                    if (currentOffsets.get(record.partition()) == null) {
-                        currentOffsets.put(record.partition(), record.offset());
-                    }
+                    batch.add(record);
                     String flatMessageJson = record.value();
                     CommonMessage flatMessages = JSON.parseObject(flatMessageJson, CommonMessage.class);
                     messages.add(flatMessages);
@@ -114,22 +127,38 @@ public class CanalKafkaConsumer implements CanalMsgConsumer {
 
     @Override
     public void rollback() {
-        // 回滚所有分区
-        if (kafkaConsumer != null) {
-            for (Map.Entry<Integer, Long> entry : currentOffsets.entrySet()) {
-                kafkaConsumer.seek(new TopicPartition(topic, entry.getKey()), currentOffsets.get(entry.getKey()));
-                kafkaConsumer.commitSync();
+        // 回滚所有分区到最早一个未ack批次的位点
+        if (kafkaConsumer != null && !batches.isEmpty()) {
+            Map<Integer, Long> rollbackOffsets = new HashMap<>();
+            for (KafkaBatch batch : batches) {
+                batch.startOffsets.forEach(rollbackOffsets::putIfAbsent);
+            }
+            for (Map.Entry<Integer, Long> entry : rollbackOffsets.entrySet()) {
+                kafkaConsumer.seek(new TopicPartition(topic, entry.getKey()), entry.getValue());
             }
+            kafkaConsumer.commitSync();
         }
+        batches.clear();
     }
 
     @Override
     public void ack() {
+        KafkaBatch batch = batches.poll();
         if (kafkaConsumer != null) {
-            kafkaConsumer.commitSync();
+            if (batches.isEmpty()) {
+                kafkaConsumer.commitSync();
+            } else if (batch != null && !batch.commitOffsets.isEmpty()) {
+                // 后续批次已经拉取, 只提交当前批次的位点
+                kafkaConsumer.commitSync(batch.commitOffsets);
+            }
         }
     }
 
+    @Override
+    public boolean supportAsyncAck() {
+        return true;
+    }
+
     @Override
     public void disconnect() {
         if (kafkaConsumer != null) {
@@ -140,4 +169,18 @@ public class CanalKafkaConsumer implements CanalMsgConsumer {
             kafkaConsumer = null;
         }
     }
+
+    private static class KafkaBatch {
+
+        // 批次中每个分区的起始位点, 用于回滚
+        private Map<Integer, Long>                     startOffsets  = new HashMap<>();
+        // 批次中每个分区需要提交的位点
+        private Map<TopicPartition, OffsetAndMetadata> commitOffsets = new HashMap<>();
+
+        private void add(ConsumerRecord<String, ?> record) {
+            startOffsets.putIfAbsent(record.partition(), record.offset());
+            commitOffsets.put(new TopicPartition(record.topic(), record.partition()),
+                new OffsetAndMetadata(record.offset() + 1));
+        }
+    }
 }
@@ -0,0 +1,116 @@
+package com.alibaba.otter.canal.connector.kafka.consumer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 异步ack模式下多个未ack批次的位点提交和回滚, 使用MockConsumer
+ */
+public class CanalKafkaConsumerTest {
+
+    private static final String         TOPIC = "example";
+    private static final TopicPartition P0    = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition P1    = new TopicPartition(TOPIC, 1);
+
+    private MockConsumer<String, String> mockConsumer;
+    private CanalKafkaConsumer           consumer;
+
+    @Before
+    public void setUp() {
+        mockConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        mockConsumer.assign(Arrays.asList(P0, P1));
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+        beginningOffsets.put(P0, 0L);
+        beginningOffsets.put(P1, 0L);
+        mockConsumer.updateBeginningOffsets(beginningOffsets);
+        consumer = new CanalKafkaConsumer(mockConsumer, TOPIC, true);
+    }
+
+    @Test
+    public void testAckInOrder() {
+        add(P0, 0L, 1L);
+        add(P1, 0L);
+        Assert.assertEquals(3, consumer.getMessage(100L, TimeUnit.MILLISECONDS).size());
+        // 写入第一批时预取第二批
+        add(P0, 2L, 3L);
+        Assert.assertEquals(2, consumer.getMessage(100L, TimeUnit.MILLISECONDS).size());
+
+        // 只提交第一批的位点
+        consumer.ack();
+        Assert.assertEquals(2L, committed(P0));
+        Assert.assertEquals(1L, committed(P1));
+
+        consumer.ack();
+        Assert.assertEquals(4L, committed(P0));
+        Assert.assertEquals(1L, committed(P1));
+    }
+
+    @Test
+    public void testRollbackPrefetched() {
+        add(P0, 0L, 1L);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        consumer.ack();
+
+        add(P0, 2L);
+        add(P1, 0L);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        add(P0, 3L);
+        add(P1, 1L);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+
+        // 回滚到最早一个未ack批次的位点
+        consumer.rollback();
+        Assert.assertEquals(2L, mockConsumer.position(P0));
+        Assert.assertEquals(0L, mockConsumer.position(P1));
+        Assert.assertEquals(2L, committed(P0));
+
+        // 回滚之后没有未ack的批次
+        consumer.ack();
+        Assert.assertEquals(2L, committed(P0));
+        Assert.assertEquals(0L, committed(P1));
+    }
+
+    @Test
+    public void testEmptyPoll() {
+        add(P0, 0L);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        // 空批次同样占一个ack
+        Assert.assertNull(consumer.getMessage(100L, TimeUnit.MILLISECONDS));
+        add(P0, 1L);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+
+        consumer.ack();
+        Assert.assertEquals(1L, committed(P0));
+        consumer.ack();
+        Assert.assertEquals(1L, committed(P0));
+        consumer.ack();
+        Assert.assertEquals(2L, committed(P0));
+    }
+
+    private void add(TopicPartition tp, long... offsets) {
+        for (long offset : offsets) {
+            mockConsumer.addRecord(new ConsumerRecord<>(TOPIC,
+                tp.partition(),
+                offset,
+                null,
+                "{\"database\":\"test\",\"table\":\"user\",\"type\":\"INSERT\",\"data\":[{\"id\":\"" + offset
+                      + "\"}]}"));
+        }
+    }
+
+    private long committed(TopicPartition tp) {
+        OffsetAndMetadata offset = mockConsumer.committed(tp);
+        return offset == null ? 0L : offset.offset();
+    }
+}
@@ -4,6 +4,7 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.otter.canal.common.utils.MQUtil;
 import com.alibaba.otter.canal.connector.core.config.CanalConstants;
 import com.alibaba.otter.canal.connector.core.consumer.CommonMessage;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchemaCache;
 import com.alibaba.otter.canal.connector.core.spi.CanalMsgConsumer;
 import com.alibaba.otter.canal.connector.core.spi.SPI;
 import com.alibaba.otter.canal.connector.core.util.CanalMessageSerializerUtil;
@@ -39,6 +40,10 @@ public class CanalPulsarMQConsumer implements CanalMsgConsumer {
      * 是否为扁平消息
      */
     private boolean flatMessage = false;
+    /**
+     * 表结构缓存, 在多个消息之间复用
+     */
+    private final TableSchemaCache tableSchemas = new TableSchemaCache();
     /**
      * 主题名称
      */
@@ -230,7 +235,7 @@ public class CanalPulsarMQConsumer implements CanalMsgConsumer {
                 byte[] data = msg.getData();
                 if (!this.flatMessage) {
                     Message message = CanalMessageSerializerUtil.deserializer(data);
-                    List<CommonMessage> list = MessageUtil.convert(message);
+                    List<CommonMessage> list = MessageUtil.convert(message, tableSchemas);
                     messageList.addAll(list);
                 } else {
                     CommonMessage commonMessage = JSON.parseObject(data, CommonMessage.class);
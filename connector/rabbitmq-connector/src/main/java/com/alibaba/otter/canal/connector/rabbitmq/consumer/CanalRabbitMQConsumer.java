@@ -16,6 +16,7 @@ import org.slf4j.LoggerFactory;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.otter.canal.connector.core.config.CanalConstants;
 import com.alibaba.otter.canal.connector.core.consumer.CommonMessage;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchemaCache;
 import com.alibaba.otter.canal.connector.core.spi.CanalMsgConsumer;
 import com.alibaba.otter.canal.connector.core.spi.SPI;
 import com.alibaba.otter.canal.connector.core.util.CanalMessageSerializerUtil;
@@ -64,6 +65,8 @@ public class CanalRabbitMQConsumer implements CanalMsgConsumer {
     private long                                               batchProcessTimeout = 60 * 1000;
     private BlockingQueue<ConsumerBatchMessage<CommonMessage>> messageBlockingQueue;
     private volatile ConsumerBatchMessage<CommonMessage>       lastGetBatchMessage = null;
+    // 表结构缓存, 在多个消息之间复用
+    private final TableSchemaCache                             tableSchemas        = new TableSchemaCache();
 
     @Override
     public void init(Properties properties, String topic, String groupId) {
@@ -140,7 +143,7 @@ public class CanalRabbitMQConsumer implements CanalMsgConsumer {
         List<CommonMessage> messageList = new ArrayList<>();
         if (!flatMessage) {
             Message message = CanalMessageSerializerUtil.deserializer(messageData);
-            messageList.addAll(MessageUtil.convert(message));
+            messageList.addAll(MessageUtil.convert(message, tableSchemas));
         } else {
             CommonMessage commonMessage = JSON.parseObject(messageData, CommonMessage.class);
             messageList.add(commonMessage);
@@ -1,6 +1,9 @@
 package com.alibaba.otter.canal.connector.rocketmq.consumer;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
@@ -16,6 +19,7 @@ import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
 import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
 import org.apache.rocketmq.client.consumer.rebalance.AllocateMessageQueueAveragely;
 import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.remoting.RPCHook;
 import org.slf4j.Logger;
@@ -24,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.otter.canal.connector.core.config.CanalConstants;
 import com.alibaba.otter.canal.connector.core.consumer.CommonMessage;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchemaCache;
 import com.alibaba.otter.canal.connector.core.spi.CanalMsgConsumer;
 import com.alibaba.otter.canal.connector.core.spi.SPI;
 import com.alibaba.otter.canal.connector.core.util.CanalMessageSerializerUtil;
@@ -43,6 +48,7 @@ public class CanalRocketMQConsumer implements CanalMsgConsumer {
 
     private static final Logger                                logger               = LoggerFactory.getLogger(CanalRocketMQConsumer.class);
     private static final String                                CLOUD_ACCESS_CHANNEL = "cloud";
+    private static final ConsumerBatchMessage<CommonMessage>   EMPTY_BATCH_MESSAGE  = new ConsumerBatchMessage<>(Collections.emptyList());
 
     private String                                             nameServer;
     private String                                             topic;
@@ -52,7 +58,8 @@ public class CanalRocketMQConsumer implements CanalMsgConsumer {
     private int                                                batchSize            = -1;
     private long                                               batchProcessTimeout  = 60 * 1000;
     private boolean                                            flatMessage;
-    private volatile ConsumerBatchMessage<CommonMessage>       lastGetBatchMessage  = null;
+    // 已经get但还未ack的批次, 按get的顺序排列
+    private Deque<ConsumerBatchMessage<CommonMessage>>         getBatchMessages     = new ArrayDeque<>();
     private String                                             accessKey;
     private String                                             secretKey;
     private String                                             customizedTraceTopic;
@@ -60,6 +67,9 @@ public class CanalRocketMQConsumer implements CanalMsgConsumer {
     private String                                             accessChannel;
     private String                                             namespace;
     private String                                             filter               = "*";
+    private String                                             consumerIndex;
+    // 表结构缓存, 在多个消息之间复用
+    private final TableSchemaCache                             tableSchemas         = new TableSchemaCache();
 
     @Override
     public void init(Properties properties, String topic, String groupName) {
@@ -85,6 +95,7 @@ public class CanalRocketMQConsumer implements CanalMsgConsumer {
         if (StringUtils.isNotEmpty(subscribeFilter)) {
             this.filter = subscribeFilter;
         }
+        this.consumerIndex = properties.getProperty(CanalConstants.CANAL_MQ_CONSUMER_INDEX);
     }
 
     @Override
@@ -103,6 +114,10 @@ public class CanalRocketMQConsumer implements CanalMsgConsumer {
             enableMessageTrace,
             customizedTraceTopic);
         rocketMQConsumer.setVipChannelEnabled(false);
+        if (StringUtils.isNotEmpty(consumerIndex)) {
+            // 同一个进程内同group的多个consumer需要不同的instanceName, 否则会共用一个client无法分摊队列
+            rocketMQConsumer.setInstanceName(UtilAll.getPid() + "#" + topic + "#" + consumerIndex);
+        }
         if (CLOUD_ACCESS_CHANNEL.equals(this.accessChannel)) {
             rocketMQConsumer.setAccessChannel(AccessChannel.CLOUD);
         }
@@ -149,7 +164,7 @@ public class CanalRocketMQConsumer implements CanalMsgConsumer {
                 try {
                     if (!flatMessage) {
                         Message message = CanalMessageSerializerUtil.deserializer(data);
-                        messageList.addAll(MessageUtil.convert(message));
+                        messageList.addAll(MessageUtil.convert(message, tableSchemas));
                     } else {
                         CommonMessage commonMessage = JSON.parseObject(data, CommonMessage.class);
                         messageList.add(commonMessage);
@@ -183,15 +198,13 @@ public class CanalRocketMQConsumer implements CanalMsgConsumer {
     @Override
     public List<CommonMessage> getMessage(Long timeout, TimeUnit unit) {
         try {
-            if (this.lastGetBatchMessage != null) {
-                throw new CanalClientException("mq get/ack not support concurrent & async ack");
-            }
-
             ConsumerBatchMessage<CommonMessage> batchMessage = messageBlockingQueue.poll(timeout, unit);
             if (batchMessage != null) {
-                this.lastGetBatchMessage = batchMessage;
+                getBatchMessages.offer(batchMessage);
                 return batchMessage.getData();
             }
+            // 没有数据时也占一个位置, 保证ack与get一一对应
+            getBatchMessages.offer(EMPTY_BATCH_MESSAGE);
         } catch (InterruptedException ex) {
             logger.warn("Get message timeout", ex);
             throw new CanalClientException("Failed to fetch the data after: " + timeout);
@@ -201,30 +214,29 @@ public class CanalRocketMQConsumer implements CanalMsgConsumer {
 
     @Override
     public void rollback() {
-        try {
-            if (this.lastGetBatchMessage != null) {
-                this.lastGetBatchMessage.fail();
-            }
-        } finally {
-            this.lastGetBatchMessage = null;
+        ConsumerBatchMessage<CommonMessage> batchMessage;
+        while ((batchMessage = getBatchMessages.poll()) != null) {
+            batchMessage.fail();
         }
     }
 
     @Override
     public void ack() {
+        ConsumerBatchMessage<CommonMessage> batchMessage = getBatchMessages.poll();
         try {
-            if (this.lastGetBatchMessage != null) {
-                this.lastGetBatchMessage.ack();
+            if (batchMessage != null) {
+                batchMessage.ack();
             }
         } catch (Throwable e) {
-            if (this.lastGetBatchMessage != null) {
-                this.lastGetBatchMessage.fail();
-            }
-        } finally {
-            this.lastGetBatchMessage = null;
+            batchMessage.fail();
         }
     }
 
+    @Override
+    public boolean supportAsyncAck() {
+        return true;
+    }
+
     @Override
     public void disconnect() {
         rocketMQConsumer.unsubscribe(topic);
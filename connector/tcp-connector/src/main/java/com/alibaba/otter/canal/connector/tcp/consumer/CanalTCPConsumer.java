@@ -6,6 +6,7 @@ import com.alibaba.otter.canal.client.impl.ClusterNodeAccessStrategy;
 import com.alibaba.otter.canal.client.impl.SimpleCanalConnector;
 import com.alibaba.otter.canal.common.zookeeper.ZkClientx;
 import com.alibaba.otter.canal.connector.core.consumer.CommonMessage;
+import com.alibaba.otter.canal.connector.core.consumer.TableSchemaCache;
 import com.alibaba.otter.canal.connector.core.spi.CanalMsgConsumer;
 import com.alibaba.otter.canal.connector.core.spi.SPI;
 import com.alibaba.otter.canal.connector.core.util.MessageUtil;
@@ -16,6 +17,8 @@ import org.apache.commons.lang.StringUtils;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
@@ -31,9 +34,20 @@ import java.util.concurrent.TimeUnit;
 @SPI("tcp")
 public class CanalTCPConsumer implements CanalMsgConsumer {
 
-    private Long           currentBatchId = null;
-    private CanalConnector canalConnector;
-    private int            batchSize      = 500;
+    // 未ack的batchId, 按get的顺序排列
+    private Deque<Long>      batchIds     = new ArrayDeque<>();
+    private CanalConnector   canalConnector;
+    private int              batchSize    = 500;
+    // 表结构缓存, 在多个批次之间复用
+    private TableSchemaCache tableSchemas = new TableSchemaCache();
+
+    public CanalTCPConsumer(){
+    }
+
+    CanalTCPConsumer(CanalConnector canalConnector, int batchSize){
+        this.canalConnector = canalConnector;
+        this.batchSize = batchSize;
+    }
 
     @Override
     public void init(Properties properties, String destination, String groupId) {
@@ -69,12 +83,12 @@ public class CanalTCPConsumer implements CanalMsgConsumer {
         try {
             Message message = canalConnector.getWithoutAck(batchSize, timeout, unit);
             long batchId = message.getId();
-            currentBatchId = batchId;
+            batchIds.offer(batchId);
             int size = message.getEntries().size();
             if (batchId == -1 || size == 0) {
                 return null;
             } else {
-                return MessageUtil.convert(message);
+                return MessageUtil.convert(message, tableSchemas);
             }
         } catch (Throwable e) {
             throw new RuntimeException(e);
@@ -83,20 +97,31 @@ public class CanalTCPConsumer implements CanalMsgConsumer {
 
     @Override
     public void rollback() {
-        if (currentBatchId != null && currentBatchId != -1) {
-            canalConnector.rollback(currentBatchId);
-            currentBatchId = null;
+        if (batchIds.size() > 1) {
+            // 存在多个未ack的批次, 全部回滚
+            canalConnector.rollback();
+        } else {
+            Long batchId = batchIds.peek();
+            if (batchId != null && batchId != -1) {
+                canalConnector.rollback(batchId);
+            }
         }
+        batchIds.clear();
     }
 
     @Override
     public void ack() {
-        if (currentBatchId != null) {
-            canalConnector.ack(currentBatchId);
-            currentBatchId = null;
+        Long batchId = batchIds.poll();
+        if (batchId != null) {
+            canalConnector.ack(batchId);
         }
     }
 
+    @Override
+    public boolean supportAsyncAck() {
+        return true;
+    }
+
     @Override
     public void disconnect() {
         canalConnector.unsubscribe();
@@ -0,0 +1,97 @@
+package com.alibaba.otter.canal.connector.tcp.consumer;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.CanalConnector;
+import com.alibaba.otter.canal.protocol.Message;
+
+/**
+ * 异步ack模式下多个未ack批次的ack/回滚顺序
+ */
+public class CanalTCPConsumerTest {
+
+    private final Deque<Long>  batchIds = new ArrayDeque<>();
+    private final List<String> calls    = new ArrayList<>();
+
+    @Test
+    public void testAckInOrder() {
+        CanalTCPConsumer consumer = consumer(1L, 2L, 3L);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        // 写入第一批时已经预取第二批, ack按get的顺序
+        consumer.ack();
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        consumer.ack();
+        consumer.ack();
+        // 没有未ack的批次
+        consumer.ack();
+
+        Assert.assertEquals(Arrays.asList("ack:1", "ack:2", "ack:3"), calls);
+    }
+
+    @Test
+    public void testRollbackPrefetched() {
+        CanalTCPConsumer consumer = consumer(1L, 2L, 3L, 4L);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        // 多个未ack的批次全部回滚
+        consumer.rollback();
+        Assert.assertEquals(Collections.singletonList("rollback"), calls);
+
+        // 回滚后重新get, 不会ack回滚之前的批次
+        calls.clear();
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        consumer.ack();
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        consumer.rollback();
+        Assert.assertEquals(Arrays.asList("ack:3", "rollback:4"), calls);
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        CanalTCPConsumer consumer = consumer(-1L, 1L);
+        Assert.assertNull(consumer.getMessage(100L, TimeUnit.MILLISECONDS));
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        consumer.ack();
+        consumer.ack();
+        Assert.assertEquals(Arrays.asList("ack:-1", "ack:1"), calls);
+
+        // 只有一个空批次时不需要回滚
+        calls.clear();
+        batchIds.add(-1L);
+        consumer.getMessage(100L, TimeUnit.MILLISECONDS);
+        consumer.rollback();
+        Assert.assertTrue(calls.isEmpty());
+    }
+
+    private CanalTCPConsumer consumer(Long... ids) {
+        batchIds.addAll(Arrays.asList(ids));
+        CanalConnector connector = (CanalConnector) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] { CanalConnector.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getWithoutAck":
+                        return new Message(batchIds.poll(), new ArrayList<>());
+                    case "ack":
+                        calls.add("ack:" + args[0]);
+                        return null;
+                    case "rollback":
+                        calls.add(args == null ? "rollback" : "rollback:" + args[0]);
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        return new CanalTCPConsumer(connector, 100);
+    }
+}
@@ -1,6 +1,15 @@
 package com.taobao.tddl.dbsync.binlog;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -17,10 +26,12 @@ public final class CharsetConversion {
 
     static final class Entry {
 
-        protected final int    charsetId;
-        protected final String mysqlCharset;
-        protected final String mysqlCollation;
-        protected final String javaCharset;
+        protected final int        charsetId;
+        protected final String     mysqlCharset;
+        protected final String     mysqlCollation;
+        protected final String     javaCharset;
+        protected volatile Charset charset;       // 延迟解析的java charset
+        protected volatile boolean resolved;
 
         Entry(final int id, String mysqlCharset, // NL
               String mysqlCollation, String javaCharset){
@@ -390,6 +401,123 @@ public final class CharsetConversion {
         }
     }
 
+    /**
+     * Return resolved java charset, resolved only once per charset id.
+     */
+    public static Charset getJavaCharsetInstance(final int id) {
+        if (id <= 0 || id >= entries.length) {
+            return null;
+        }
+        Entry entry = entries[id];
+        if (entry == null) {
+            return null;
+        }
+
+        if (!entry.resolved) {
+            Charset charset = null;
+            try {
+                if (entry.javaCharset != null) {
+                    charset = Charset.forName(entry.javaCharset);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Unsupported java charset for: id = " + id + ", name = " + entry.javaCharset);
+            }
+            entry.charset = charset;
+            entry.resolved = true;
+        }
+        return entry.charset;
+    }
+
+    // ================== string decoding ===================
+
+    // ascii字符在这些编码中都是单字节且与ascii一致, 纯ascii的数据可以直接构造latin1字符串
+    private static final ConcurrentMap<Charset, Boolean>          ASCII_COMPATIBLE = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Map<Charset, CharsetDecoder>> DECODERS         = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<CharBuffer[]>                 CHAR_BUFFERS     = ThreadLocal.withInitial(() -> new CharBuffer[1]);
+
+    /**
+     * 按指定的编码解码字符串, 等价于new String(buf, off, len, charset)
+     *
+     * <pre>
+     * 1. 纯ascii的数据在ascii兼容的编码下直接构造字符串, 不经过decoder
+     * 2. UTF-8/ISO-8859-1等jdk内置了快速路径的编码直接使用String构造
+     * 3. 其他编码复用线程内的CharsetDecoder和CharBuffer
+     * </pre>
+     */
+    @SuppressWarnings("deprecation")
+    public static String decode(final byte[] buf, final int off, final int len, final Charset charset) {
+        if (len == 0) {
+            return "";
+        }
+        if (isAscii(buf, off, len) && isAsciiCompatible(charset)) {
+            // hibyte为0, jdk9以后直接生成latin1的compact string
+            return new String(buf, 0, off, len);
+        }
+        if (charset == StandardCharsets.UTF_8 || charset == StandardCharsets.ISO_8859_1
+            || charset == StandardCharsets.US_ASCII) {
+            return new String(buf, off, len, charset);
+        }
+
+        CharsetDecoder decoder = DECODERS.get().get(charset);
+        if (decoder == null) {
+            // 与String构造保持一致, 非法字符替换
+            decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            DECODERS.get().put(charset, decoder);
+        }
+
+        int capacity = (int) (len * (double) decoder.maxCharsPerByte()) + 1;
+        CharBuffer[] holder = CHAR_BUFFERS.get();
+        CharBuffer out = holder[0];
+        if (out == null || out.capacity() < capacity) {
+            out = CharBuffer.allocate(Math.max(capacity, 256));
+            holder[0] = out;
+        }
+        out.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(buf, off, len), out, true);
+        decoder.flush(out);
+        return new String(out.array(), 0, out.position());
+    }
+
+    /**
+     * 判断数据是否全部为ascii, 每次合并8个字节的符号位, 减少分支
+     */
+    public static boolean isAscii(final byte[] buf, final int off, final int len) {
+        final int end = off + len;
+        int i = off;
+        for (; i + 8 <= end; i += 8) {
+            int bits = buf[i] | buf[i + 1] | buf[i + 2] | buf[i + 3] | buf[i + 4] | buf[i + 5] | buf[i + 6]
+                       | buf[i + 7];
+            if ((bits & 0x80) != 0) {
+                return false;
+            }
+        }
+        int bits = 0;
+        for (; i < end; i++) {
+            bits |= buf[i];
+        }
+        return (bits & 0x80) == 0;
+    }
+
+    static boolean isAsciiCompatible(final Charset charset) {
+        Boolean compatible = ASCII_COMPATIBLE.get(charset);
+        if (compatible == null) {
+            byte[] ascii = new byte[128];
+            for (int i = 0; i < ascii.length; i++) {
+                ascii[i] = (byte) i;
+            }
+            String string = new String(ascii, charset);
+            compatible = string.length() == ascii.length;
+            for (int i = 0; compatible && i < ascii.length; i++) {
+                compatible = string.charAt(i) == i;
+            }
+            ASCII_COMPATIBLE.put(charset, compatible);
+        }
+        return compatible;
+    }
+
     public static void main(String[] args) {
         for (int i = 0; i < entries.length; i++) {
             Entry entry = entries[i];
@@ -0,0 +1,624 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_DOUBLE;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_INT16;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_INT32;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_INT64;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_LARGE_ARRAY;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_LARGE_OBJECT;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_LITERAL;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_OPAQUE;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_SMALL_ARRAY;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_SMALL_OBJECT;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_STRING;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_UINT16;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_UINT32;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.JSONB_TYPE_UINT64;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.KEY_ENTRY_SIZE_LARGE;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.KEY_ENTRY_SIZE_SMALL;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.LARGE_OFFSET_SIZE;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.SMALL_OFFSET_SIZE;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.VALUE_ENTRY_SIZE_LARGE;
+import static com.taobao.tddl.dbsync.binlog.JsonConversion.VALUE_ENTRY_SIZE_SMALL;
+import static com.taobao.tddl.dbsync.binlog.JsonDiffConversion.DIFF_OPERATION_REMOVE;
+import static com.taobao.tddl.dbsync.binlog.JsonDiffConversion.JSON_DIFF_OPERATION_COUNT;
+import static com.taobao.tddl.dbsync.binlog.event.RowsLogBuffer.appendNumber2;
+import static com.taobao.tddl.dbsync.binlog.event.RowsLogBuffer.appendNumber4;
+import static com.taobao.tddl.dbsync.binlog.event.RowsLogBuffer.usecondsToStr;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * MySQL json二进制流式转化为UTF-8的json文本, 输出与{@link JsonConversion}/{@link JsonDiffConversion}一致
+ *
+ * <pre>
+ * 1. 直接按偏移量读取二进制数据, 不复制子文档, 也不创建Json_Value等中间对象
+ * 2. 结果写入可复用的{@link JsonSink}, 纯ascii的key和字符串直接拷贝字节
+ * 3. partial update只解析diff中变更路径的值, 未变更的部分不会被解析
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class JsonStreamConversion {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 解析buffer当前位置开始的json值(不包含类型字节), 不移动buffer的位置
+     */
+    public static void write_value(int type, LogBuffer buffer, long len, Charset charset, JsonSink sink) {
+        if (buffer.position + len > buffer.origin + buffer.limit) {
+            throw new IllegalArgumentException("limit excceed: " + (buffer.position - buffer.origin + len));
+        }
+        write_value(type, buffer.buffer, buffer.position, len, charset, sink);
+    }
+
+    /**
+     * 流式输出partial json的diff, 格式与{@link JsonDiffConversion#print_json_diff}一致, 只读取len范围内的数据
+     */
+    public static void write_json_diff(LogBuffer buffer, long len, String columnName, int columnIndex,
+                                       Charset charset, JsonSink sink) {
+        final byte[] data = buffer.buffer;
+        final int start = buffer.position;
+        final int end = (int) Math.min(start + len, buffer.origin + buffer.limit);
+        List<String> operation_names = new ArrayList<>();
+        int p = start;
+        while (p < end) {
+            int operation_int = data[p++] & 0xff;
+            if (operation_int >= JSON_DIFF_OPERATION_COUNT) {
+                throw new IllegalArgumentException("reading operation type (invalid operation code)");
+            }
+
+            // skip path
+            long[] packed = read_packed_long(data, p);
+            long path_length = packed[0];
+            p = (int) packed[1];
+            if (path_length > len) {
+                throw new IllegalArgumentException("skipping path");
+            }
+            operation_names.add(json_diff_operation_name(operation_int, data[p + (int) path_length - 1]));
+            p += (int) path_length;
+
+            // skip value
+            if (operation_int != DIFF_OPERATION_REMOVE) {
+                packed = read_packed_long(data, p);
+                if (packed[0] > len) {
+                    throw new IllegalArgumentException("skipping path");
+                }
+                p = (int) (packed[1] + packed[0]);
+            }
+        }
+
+        // Print function names in reverse order.
+        for (int i = operation_names.size() - 1; i >= 0; i--) {
+            if (i == 0 || operation_names.get(i - 1) != operation_names.get(i)) {
+                sink.writeAscii(operation_names.get(i));
+                sink.write('(');
+            }
+        }
+
+        // Print column id
+        if (columnName != null) {
+            write_string(columnName, false, sink);
+        } else {
+            sink.write('@');
+            sink.writeLong(columnIndex);
+        }
+
+        if (operation_names.size() == 0) {
+            return;
+        }
+
+        sink.write(',');
+        sink.write(' ');
+        p = start;
+        int diff_i = 0;
+        while (p < end) {
+            int operation_int = data[p++] & 0xff;
+
+            // Print path
+            long[] packed = read_packed_long(data, p);
+            p = (int) packed[1];
+            sink.write('\'');
+            write_fix_string(data, p, (int) packed[0], StandardCharsets.ISO_8859_1, false, sink);
+            sink.write('\'');
+            p += (int) packed[0];
+
+            if (operation_int != DIFF_OPERATION_REMOVE) {
+                sink.write(',');
+                sink.write(' ');
+                packed = read_packed_long(data, p);
+                long value_length = packed[0];
+                p = (int) packed[1];
+                write_value(data[p] & 0xff, data, p + 1, value_length - 1, charset, sink);
+                p += (int) value_length;
+            }
+
+            // Print closing parenthesis
+            if (p >= end || operation_names.get(diff_i + 1) != operation_names.get(diff_i)) {
+                sink.write(')');
+            }
+
+            if (p < end) {
+                sink.write(',');
+                sink.write(' ');
+            }
+            diff_i++;
+        }
+    }
+
+    private static void write_value(int type, byte[] data, int offset, long len, Charset charset, JsonSink sink) {
+        switch (type) {
+            case JSONB_TYPE_SMALL_OBJECT:
+                write_array_or_object(true, data, offset, len, false, charset, sink);
+                break;
+            case JSONB_TYPE_LARGE_OBJECT:
+                write_array_or_object(true, data, offset, len, true, charset, sink);
+                break;
+            case JSONB_TYPE_SMALL_ARRAY:
+                write_array_or_object(false, data, offset, len, false, charset, sink);
+                break;
+            case JSONB_TYPE_LARGE_ARRAY:
+                write_array_or_object(false, data, offset, len, true, charset, sink);
+                break;
+            default:
+                write_scalar(type, data, offset, len, charset, sink);
+        }
+    }
+
+    private static void write_array_or_object(boolean object, byte[] data, int offset, long len, boolean large,
+                                              Charset charset, JsonSink sink) {
+        int offset_size = large ? LARGE_OFFSET_SIZE : SMALL_OFFSET_SIZE;
+        if (len < 2 * offset_size) {
+            throw new IllegalArgumentException("illegal json data");
+        }
+        long element_count = read_offset_or_size(data, offset, large);
+        long bytes = read_offset_or_size(data, offset + offset_size, large);
+        if (bytes > len) {
+            throw new IllegalArgumentException("illegal json data");
+        }
+
+        int key_entry_size = large ? KEY_ENTRY_SIZE_LARGE : KEY_ENTRY_SIZE_SMALL;
+        int value_entry_size = large ? VALUE_ENTRY_SIZE_LARGE : VALUE_ENTRY_SIZE_SMALL;
+        long header_size = 2 * offset_size;
+        if (object) {
+            header_size += element_count * key_entry_size;
+        }
+        header_size += element_count * value_entry_size;
+        if (header_size > bytes) {
+            throw new IllegalArgumentException("illegal json data");
+        }
+
+        int first_value_entry = offset + 2 * offset_size + (object ? (int) element_count * key_entry_size : 0);
+        sink.write(object ? '{' : '[');
+        for (int i = 0; i < element_count; i++) {
+            if (i > 0) {
+                sink.write(',');
+                sink.write(' ');
+            }
+
+            if (object) {
+                int key_entry = offset + 2 * offset_size + key_entry_size * i;
+                long key_offset = read_offset_or_size(data, key_entry, large);
+                int key_length = uint16(data, key_entry + offset_size);
+                sink.write('"');
+                write_fix_string(data, offset + (int) key_offset, key_length, charset, false, sink);
+                sink.write('"');
+                sink.write(':');
+                sink.write(' ');
+            }
+
+            int value_entry = first_value_entry + value_entry_size * i;
+            int type = data[value_entry] & 0xff;
+            if (type == JSONB_TYPE_INT16 || type == JSONB_TYPE_UINT16 || type == JSONB_TYPE_LITERAL
+                || (large && (type == JSONB_TYPE_INT32 || type == JSONB_TYPE_UINT32))) {
+                // 值直接保存在value entry中
+                write_scalar(type, data, value_entry + 1, value_entry_size - 1, charset, sink);
+            } else {
+                long value_offset = read_offset_or_size(data, value_entry + 1, large);
+                if (value_offset >= bytes) {
+                    throw new IllegalArgumentException("illegal json data");
+                }
+                write_value(type, data, offset + (int) value_offset, bytes - value_offset, charset, sink);
+            }
+        }
+        sink.write(object ? '}' : ']');
+    }
+
+    private static void write_scalar(int type, byte[] data, int offset, long len, Charset charset, JsonSink sink) {
+        switch (type) {
+            case JSONB_TYPE_LITERAL:
+                switch (data[offset]) {
+                    case JsonConversion.JSONB_NULL_LITERAL:
+                        sink.writeAscii("null");
+                        break;
+                    case JsonConversion.JSONB_TRUE_LITERAL:
+                        sink.writeAscii("true");
+                        break;
+                    case JsonConversion.JSONB_FALSE_LITERAL:
+                        sink.writeAscii("false");
+                        break;
+                    default:
+                        throw new IllegalArgumentException("illegal json data");
+                }
+                break;
+            case JSONB_TYPE_INT16:
+                sink.writeLong((short) uint16(data, offset));
+                break;
+            case JSONB_TYPE_INT32:
+                sink.writeLong((int) uint32(data, offset));
+                break;
+            case JSONB_TYPE_INT64:
+                sink.writeLong(long64(data, offset));
+                break;
+            case JSONB_TYPE_UINT16:
+                sink.writeLong(uint16(data, offset));
+                break;
+            case JSONB_TYPE_UINT32:
+                sink.writeLong(uint32(data, offset));
+                break;
+            case JSONB_TYPE_UINT64:
+                long value = long64(data, offset);
+                if (value >= 0) {
+                    sink.writeLong(value);
+                } else {
+                    sink.writeAscii(Long.toUnsignedString(value));
+                }
+                break;
+            case JSONB_TYPE_DOUBLE:
+                sink.writeAscii(Double.toString(Double.longBitsToDouble(long64(data, offset))));
+                break;
+            case JSONB_TYPE_STRING: {
+                long[] length = read_variable_length(data, offset, (int) Math.min(len, 5));
+                if (len < length[0] + length[1]) {
+                    throw new IllegalArgumentException("illegal json data");
+                }
+                sink.write('"');
+                write_fix_string(data, offset + (int) length[0], (int) length[1], charset, true, sink);
+                sink.write('"');
+                break;
+            }
+            case JSONB_TYPE_OPAQUE: {
+                // 第一个字节为字段类型, 之后为变长的数据长度
+                int field_type = data[offset] & 0xff;
+                long[] length = read_variable_length(data, offset + 1, (int) Math.min(len - 1, 5));
+                if (length[1] == 0 || len < length[0] + length[1]) {
+                    throw new IllegalArgumentException("illegal json data");
+                }
+                write_opaque(field_type, data, offset + 1 + (int) length[0], (int) length[1], charset, sink);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("illegal json data");
+        }
+    }
+
+    private static void write_opaque(int field_type, byte[] data, int offset, int len, Charset charset,
+                                     JsonSink sink) {
+        if (field_type == LogEvent.MYSQL_TYPE_NEWDECIMAL) {
+            int precision = data[offset];
+            int scale = data[offset + 1];
+            LogBuffer buffer = new LogBuffer(data, offset, len);
+            sink.writeAscii(buffer.getDecimal(2, precision, scale).toPlainString());
+        } else if (field_type == LogEvent.MYSQL_TYPE_TIME) {
+            long packed_value = long64(data, offset);
+            String text;
+            if (packed_value == 0) {
+                text = "00:00:00";
+            } else {
+                long ultime = Math.abs(packed_value);
+                long intpart = ultime >> 24;
+                int frac = (int) (ultime % (1L << 24));
+                StringBuilder builder = new StringBuilder(17);
+                if (packed_value < 0) {
+                    builder.append('-');
+                }
+
+                int d = (int) ((intpart >> 12) % (1 << 10));
+                if (d > 100) {
+                    builder.append(String.valueOf(d));
+                } else {
+                    appendNumber2(builder, d);
+                }
+                builder.append(':');
+                appendNumber2(builder, (int) ((intpart >> 6) % (1 << 6)));
+                builder.append(':');
+                appendNumber2(builder, (int) (intpart % (1 << 6)));
+                builder.append('.').append(usecondsToStr(frac, 6));
+                text = builder.toString();
+            }
+            sink.write('"');
+            sink.writeAscii(text);
+            sink.write('"');
+        } else if (field_type == LogEvent.MYSQL_TYPE_DATE || field_type == LogEvent.MYSQL_TYPE_DATETIME
+                   || field_type == LogEvent.MYSQL_TYPE_TIMESTAMP) {
+            long packed_value = long64(data, offset);
+            String text;
+            if (packed_value == 0) {
+                text = "0000-00-00 00:00:00";
+            } else {
+                long ultime = Math.abs(packed_value);
+                long intpart = ultime >> 24;
+                int frac = (int) (ultime % (1L << 24));
+                long ymd = intpart >> 17;
+                long ym = ymd >> 5;
+                long hms = intpart % (1 << 17);
+                StringBuilder builder = new StringBuilder(26);
+                appendNumber4(builder, (int) (ym / 13));
+                builder.append('-');
+                appendNumber2(builder, (int) (ym % 13));
+                builder.append('-');
+                appendNumber2(builder, (int) (ymd % (1 << 5)));
+                builder.append(' ');
+                appendNumber2(builder, (int) (hms >> 12));
+                builder.append(':');
+                appendNumber2(builder, (int) ((hms >> 6) % (1 << 6)));
+                builder.append(':');
+                appendNumber2(builder, (int) (hms % (1 << 6)));
+                builder.append('.').append(usecondsToStr(frac, 6));
+                text = builder.toString();
+            }
+            sink.write('"');
+            sink.writeAscii(text);
+            sink.write('"');
+        } else {
+            sink.write('"');
+            write_fix_string(data, offset, len, charset, true, sink);
+            sink.write('"');
+        }
+    }
+
+    /**
+     * 与LogBuffer.getFixString一致, 遇到'\0'结束
+     */
+    private static void write_fix_string(byte[] data, int offset, int len, Charset charset, boolean escape,
+                                         JsonSink sink) {
+        int end = offset;
+        final int limit = offset + len;
+        for (; end < limit && data[end] != '\0'; end++)
+            /* empty loop */;
+
+        if (CharsetConversion.isAscii(data, offset, end - offset) && CharsetConversion.isAsciiCompatible(charset)) {
+            if (!escape) {
+                sink.write(data, offset, end - offset);
+                return;
+            }
+
+            int from = offset;
+            for (int i = offset; i < end; i++) {
+                if (needEscape(data[i])) {
+                    sink.write(data, from, i - from);
+                    escape(data[i], sink);
+                    from = i + 1;
+                }
+            }
+            sink.write(data, from, end - from);
+        } else {
+            write_string(CharsetConversion.decode(data, offset, end - offset, charset), escape, sink);
+        }
+    }
+
+    private static void write_string(String value, boolean escape, JsonSink sink) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (escape && needEscape(c)) {
+                escape(c, sink);
+            } else if (c < 0x80) {
+                sink.write(c);
+            } else if (c < 0x800) {
+                sink.write(0xc0 | (c >> 6));
+                sink.write(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                sink.write(0xf0 | (codePoint >> 18));
+                sink.write(0x80 | ((codePoint >> 12) & 0x3f));
+                sink.write(0x80 | ((codePoint >> 6) & 0x3f));
+                sink.write(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // 与String.getBytes一致, 不成对的代理字符输出为'?'
+                sink.write('?');
+            } else {
+                sink.write(0xe0 | (c >> 12));
+                sink.write(0x80 | ((c >> 6) & 0x3f));
+                sink.write(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static boolean needEscape(int c) {
+        return c == '"' || c == '\\' || (c >= 0 && c < 32) || (c >= 0x7f && c <= 0xA0);
+    }
+
+    // 转义规则与JsonConversion.escapse一致
+    private static void escape(int c, JsonSink sink) {
+        if (c == '"') {
+            sink.write('\\');
+            sink.write('"');
+        } else if (c == '\n') {
+            sink.write('\\');
+            sink.write('n');
+        } else if (c == '\r') {
+            sink.write('\\');
+            sink.write('r');
+        } else if (c == '\\') {
+            sink.write('\\');
+            sink.write('\\');
+        } else if (c == '\t') {
+            sink.write('\\');
+            sink.write('t');
+        } else {
+            sink.writeAscii(c < 16 ? "\\u000" : "\\u00");
+            if (c >= 16) {
+                sink.write(HEX[(c >> 4) & 0xf]);
+            }
+            sink.write(HEX[c & 0xf]);
+        }
+    }
+
+    private static String json_diff_operation_name(int operationType, int last_path_char) {
+        switch (operationType) {
+            case JsonDiffConversion.DIFF_OPERATION_REPLACE:
+                return "JSON_REPLACE";
+            case JsonDiffConversion.DIFF_OPERATION_INSERT:
+                return last_path_char == ']' ? "JSON_ARRAY_INSERT" : "JSON_INSERT";
+            case DIFF_OPERATION_REMOVE:
+                return "JSON_REMOVE";
+        }
+        throw new IllegalArgumentException("illeagal operationType : " + operationType);
+    }
+
+    // 返回{长度字节数, 长度}
+    private static long[] read_variable_length(byte[] data, int offset, int max_bytes) {
+        long tlen = 0;
+        for (int i = 0; i < max_bytes; i++) {
+            // Get the next 7 bits of the length.
+            tlen |= (long) (data[offset + i] & 0x7f) << (7 * i);
+            if ((data[offset + i] & 0x80) == 0) {
+                // The length shouldn't exceed 32 bits.
+                if (tlen > 4294967296L) {
+                    throw new IllegalArgumentException("illegal json data");
+                }
+                return new long[] { i + 1, tlen };
+            }
+        }
+        return new long[] { 0, 0 };
+    }
+
+    // 与LogBuffer.getPackedLong一致, 返回{值, 下一个位置}
+    private static long[] read_packed_long(byte[] data, int offset) {
+        final int lead = data[offset] & 0xff;
+        if (lead < 251) {
+            return new long[] { lead, offset + 1 };
+        }
+        switch (lead) {
+            case 251:
+                return new long[] { LogBuffer.NULL_LENGTH, offset + 1 };
+            case 252:
+                return new long[] { uint16(data, offset + 1), offset + 3 };
+            case 253:
+                return new long[] { uint16(data, offset + 1) | ((data[offset + 3] & 0xffL) << 16), offset + 4 };
+            default: /* Must be 254 when here */
+                return new long[] { uint32(data, offset + 1), offset + 9 };
+        }
+    }
+
+    private static long read_offset_or_size(byte[] data, int offset, boolean large) {
+        return large ? uint32(data, offset) : uint16(data, offset);
+    }
+
+    private static int uint16(byte[] data, int offset) {
+        return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8);
+    }
+
+    private static long uint32(byte[] data, int offset) {
+        return (data[offset] & 0xffL) | ((data[offset + 1] & 0xffL) << 8) | ((data[offset + 2] & 0xffL) << 16)
+               | ((data[offset + 3] & 0xffL) << 24);
+    }
+
+    private static long long64(byte[] data, int offset) {
+        return uint32(data, offset) | (uint32(data, offset + 4) << 32);
+    }
+
+    /**
+     * 可复用的UTF-8字节输出
+     */
+    public static final class JsonSink {
+
+        // 超过该大小的buffer不在线程中保留, 避免大文档长期占用内存
+        private static final int                 MAX_RETAIN_SIZE = 1024 * 1024;
+        private static final ThreadLocal<JsonSink> LOCAL         = ThreadLocal.withInitial(JsonSink::new);
+
+        private byte[]                           buf;
+        private int                              count;
+
+        public JsonSink(){
+            this(1024);
+        }
+
+        public JsonSink(int initialCapacity){
+            buf = new byte[initialCapacity];
+        }
+
+        /**
+         * 当前线程复用的sink, 使用前已经清空
+         */
+        public static JsonSink local() {
+            JsonSink sink = LOCAL.get();
+            sink.reset();
+            return sink;
+        }
+
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        public void writeAscii(String value) {
+            int len = value.length();
+            ensureCapacity(count + len);
+            for (int i = 0; i < len; i++) {
+                buf[count++] = (byte) value.charAt(i);
+            }
+        }
+
+        public void writeLong(long value) {
+            if (value == Long.MIN_VALUE) {
+                writeAscii(Long.toString(value));
+                return;
+            }
+            ensureCapacity(count + 20);
+            if (value < 0) {
+                buf[count++] = '-';
+                value = -value;
+            }
+            int start = count;
+            do {
+                buf[count++] = (byte) ('0' + (value % 10));
+                value /= 10;
+            } while (value > 0);
+            // 反转数字
+            for (int i = start, j = count - 1; i < j; i++, j--) {
+                byte tmp = buf[i];
+                buf[i] = buf[j];
+                buf[j] = tmp;
+            }
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public void reset() {
+            if (buf.length > MAX_RETAIN_SIZE) {
+                buf = new byte[1024];
+            }
+            count = 0;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, 0, count, StandardCharsets.UTF_8);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, capacity));
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.BitSet;
 
@@ -1132,6 +1133,31 @@ public class LogBuffer {
         }
     }
 
+    /**
+     * Return fix-length string from buffer without null-terminate checking,
+     * decoding by resolved charset, see {@link CharsetConversion#decode}
+     */
+    public final String getFullString(final int pos, final int len, Charset charset) {
+        if (pos + len > limit || pos < 0) throw new IllegalArgumentException("limit excceed: "
+                                                                             + (pos < 0 ? pos : (pos + len)));
+
+        return CharsetConversion.decode(buffer, origin + pos, len, charset);
+    }
+
+    /**
+     * Return next fix-length string from buffer without null-terminate
+     * checking, decoding by resolved charset, see
+     * {@link CharsetConversion#decode}
+     */
+    public final String getFullString(final int len, Charset charset) {
+        if (position + len > origin + limit) throw new IllegalArgumentException("limit excceed: "
+                                                                                + (position + len - origin));
+
+        String string = CharsetConversion.decode(buffer, position, len, charset);
+        position += len;
+        return string;
+    }
+
     /**
      * Return dynamic length string from buffer.
      */
@@ -1,7 +1,9 @@
 package com.taobao.tddl.dbsync.binlog;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,6 +34,7 @@ import com.taobao.tddl.dbsync.binlog.event.StartLogEventV3;
 import com.taobao.tddl.dbsync.binlog.event.StopLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.TransactionContextLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TransactionPayloadLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.UnknownLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.UpdateRowsLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.UserVarLogEvent;
@@ -140,6 +143,56 @@ public final class LogDecoder {
         return null;
     }
 
+    /**
+     * 解析事务压缩事件中的所有事件, 需要与其他事件一样按binlog顺序调用(会维护context中的table map/gtid)
+     *
+     * <pre>
+     * 1. payload内的事件不带checksum, 解析时临时替换context中的format description
+     * 2. payload内的事件没有位点, 起始位点统一记为外层事件的起始位点, 保留各自的事件长度
+     * 3. 最后一个事件(事务结束的XID/COMMIT)的起始位点记为外层事件的结束位点, 事务消费完成后从下一个事件继续, 不会重放整个事务
+     * </pre>
+     */
+    public List<LogEvent> decodePayload(TransactionPayloadLogEvent payloadEvent, LogContext context)
+                                                                                                   throws IOException {
+        LogHeader payloadHeader = payloadEvent.getHeader();
+        byte[] data = payloadEvent.getUncompressed();
+        LogBuffer buffer = new LogBuffer(data, 0, data.length);
+
+        if (context.getLogPosition() == null) {
+            // 已经解析好的事件直接投递时context中没有位点
+            context.setLogPosition(new LogPosition(payloadHeader.getLogFileName(), payloadHeader.getLogPos()));
+        }
+
+        List<LogEvent> events = new ArrayList<LogEvent>();
+        FormatDescriptionLogEvent descriptionEvent = context.getFormatDescription();
+        context.setFormatDescription(new FormatDescriptionLogEvent(descriptionEvent, LogEvent.BINLOG_CHECKSUM_ALG_OFF));
+        try {
+            while (buffer.hasRemaining()) {
+                LogEvent event = decode(buffer, context);
+                if (event == null) {
+                    throw new IOException("Transaction payload contains a truncated event, from: "
+                                          + context.getLogPosition());
+                }
+
+                events.add(event);
+            }
+
+            long startPos = payloadHeader.getLogPos() - payloadHeader.getEventLen();
+            for (int i = 0; i < events.size(); i++) {
+                LogHeader header = events.get(i).getHeader();
+                long pos = (i == events.size() - 1) ? payloadHeader.getLogPos() : startPos;
+                header.setLogFileName(payloadHeader.getLogFileName());
+                header.setPosition(pos + header.getEventLen(), header.getEventLen());
+            }
+        } finally {
+            context.setFormatDescription(descriptionEvent);
+            context.getLogPosition().position = payloadHeader.getLogPos();
+        }
+
+        payloadEvent.setEvents(events);
+        return events;
+    }
+
     /**
      * Deserialize an event from buffer.
      *
@@ -360,6 +413,12 @@ public final class LogDecoder {
                 header.putGtid(context.getGtidSet(), gtidLogEvent);
                 return event;
             }
+            case LogEvent.TRANSACTION_PAYLOAD_EVENT: {
+                TransactionPayloadLogEvent event = new TransactionPayloadLogEvent(header, buffer, descriptionEvent);
+                /* updating position in context */
+                logPosition.position = header.getLogPos();
+                return event;
+            }
             case LogEvent.GTID_LOG_EVENT:
             case LogEvent.ANONYMOUS_GTID_LOG_EVENT: {
                 GtidLogEvent event = new GtidLogEvent(header, buffer, descriptionEvent);
@@ -175,6 +175,9 @@ public abstract class LogEvent {
      */
     public static final int    PARTIAL_UPDATE_ROWS_EVENT                = 39;
 
+    /* Compressed transaction payload, MySQL 8.0.20+ */
+    public static final int    TRANSACTION_PAYLOAD_EVENT                = 40;
+
     // mariaDb 5.5.34
     /* New MySQL/Sun events are to be added right above this comment */
     public static final int    MYSQL_EVENTS_END                         = 49;
@@ -369,6 +372,8 @@ public abstract class LogEvent {
                 return "Previous_gtids";
             case PARTIAL_UPDATE_ROWS_EVENT:
                 return "Update_rows_partial";
+            case TRANSACTION_PAYLOAD_EVENT:
+                return "Transaction_payload";
             default:
                 return "Unknown"; /* impossible */
         }
@@ -86,6 +86,25 @@ public class LogPosition implements Cloneable, Comparable<LogPosition> {
         return val;
     }
 
+    /**
+     * Compares binlog file names by the numeric sequence after the last '.',
+     * so that mysql-bin.1000000 follows mysql-bin.999999. Names with different
+     * base names or without a numeric suffix are compared as strings.
+     */
+    public static int compareFileName(String fileName, String otherFileName) {
+        final int dot = fileName.lastIndexOf('.');
+        final int otherDot = otherFileName.lastIndexOf('.');
+        if (dot > 0 && dot == otherDot && fileName.regionMatches(0, otherFileName, 0, dot)) {
+            try {
+                return Long.compare(Long.parseLong(fileName.substring(dot + 1)),
+                    Long.parseLong(otherFileName.substring(otherDot + 1)));
+            } catch (NumberFormatException e) {
+                // not a numeric suffix
+            }
+        }
+        return fileName.compareTo(otherFileName);
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -0,0 +1,282 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+
+/**
+ * 基于内存映射读取本地binlog文件, 用法与{@link FileLogFetcher}一致
+ *
+ * <pre>
+ * 1. 文件按窗口映射, 从映射区批量拷贝到buffer, 不需要每次read系统调用
+ * 2. 后台按顺序预读当前文件后续的数据(MappedByteBuffer.load, 即madvise WILLNEED)
+ * 3. 可以提前预读下一个binlog文件的开头, 见{@link #prefetch(File)}
+ * </pre>
+ *
+ * 注意: LogBuffer基于byte[]实现, 事件数据仍然会从映射区拷贝一次到buffer中
+ *
+ * @version 1.1.6
+ */
+public final class MmapLogFetcher extends LogFetcher {
+
+    protected static final Log           logger            = LogFactory.getLog(MmapLogFetcher.class);
+
+    public static final int              DEFAULT_MAP_SIZE  = 256 * 1024 * 1024;
+    public static final int              DEFAULT_READAHEAD = 8 * 1024 * 1024;
+
+    private static final AtomicInteger   THREAD_INDEX      = new AtomicInteger();
+    private static final ExecutorService READAHEAD_POOL    = Executors.newCachedThreadPool(r -> {
+                                                               Thread t = new Thread(r, "MmapLogFetcher-readahead-"
+                                                                                        + THREAD_INDEX.incrementAndGet());
+                                                               t.setDaemon(true);
+                                                               return t;
+                                                           });
+
+    private final int                    mapSize;
+    private final int                    readahead;
+
+    private RandomAccessFile             file;
+    private FileChannel                  channel;
+    private MappedByteBuffer             mapped;
+    private long                         mapOffset;                                                      // 当前映射窗口在文件中的偏移
+    private long                         readaheadOffset;                                                // 已经提交预读的文件偏移
+    private Future<?>                    readaheadFuture;
+
+    public MmapLogFetcher(){
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_READAHEAD);
+    }
+
+    public MmapLogFetcher(final int initialCapacity){
+        this(initialCapacity, DEFAULT_READAHEAD);
+    }
+
+    public MmapLogFetcher(final int initialCapacity, final int readahead){
+        this(initialCapacity, readahead, DEFAULT_MAP_SIZE);
+    }
+
+    public MmapLogFetcher(final int initialCapacity, final int readahead, final int mapSize){
+        super(initialCapacity, DEFAULT_GROWTH_FACTOR);
+        this.readahead = readahead;
+        this.mapSize = mapSize;
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(File file) throws FileNotFoundException, IOException {
+        open(file, 0L);
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(String filePath) throws FileNotFoundException, IOException {
+        open(new File(filePath), 0L);
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(String filePath, final long filePosition) throws FileNotFoundException, IOException {
+        open(new File(filePath), filePosition);
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(File file, final long filePosition) throws FileNotFoundException, IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+
+        map(0L);
+        ensureCapacity(BIN_LOG_HEADER_SIZE);
+        if (mapped.remaining() < BIN_LOG_HEADER_SIZE) {
+            throw new IOException("No binlog file header");
+        }
+        mapped.get(buffer, 0, BIN_LOG_HEADER_SIZE);
+        if (buffer[0] != FileLogFetcher.BINLOG_MAGIC[0] || buffer[1] != FileLogFetcher.BINLOG_MAGIC[1]
+            || buffer[2] != FileLogFetcher.BINLOG_MAGIC[2] || buffer[3] != FileLogFetcher.BINLOG_MAGIC[3]) {
+            throw new IOException("Error binlog file header: "
+                                  + Arrays.toString(Arrays.copyOf(buffer, BIN_LOG_HEADER_SIZE)));
+        }
+
+        limit = 0;
+        origin = 0;
+        position = 0;
+
+        if (filePosition > BIN_LOG_HEADER_SIZE) {
+            // 与FileLogFetcher一致, 先读取format description再跳到指定位置
+            final int maxFormatDescriptionEventLen = FormatDescriptionLogEvent.LOG_EVENT_MINIMAL_HEADER_LEN
+                                                     + FormatDescriptionLogEvent.ST_COMMON_HEADER_LEN_OFFSET
+                                                     + LogEvent.ENUM_END_EVENT + LogEvent.BINLOG_CHECKSUM_ALG_DESC_LEN
+                                                     + LogEvent.CHECKSUM_CRC32_SIGNATURE_LEN;
+
+            ensureCapacity(maxFormatDescriptionEventLen);
+            limit = Math.min(maxFormatDescriptionEventLen, mapped.remaining());
+            mapped.get(buffer, 0, limit);
+            limit = (int) getUint32(LogEvent.EVENT_LEN_OFFSET);
+            seek(filePosition);
+        }
+        readaheadOffset = offset();
+        readahead();
+    }
+
+    /**
+     * 后台预读下一个binlog文件的开头, 切换文件时可以直接命中page cache
+     */
+    public void prefetch(final File next) {
+        if (next == null || readahead <= 0) {
+            return;
+        }
+
+        READAHEAD_POOL.submit(() -> {
+            try (RandomAccessFile raf = new RandomAccessFile(next, "r")) {
+                long size = Math.min(raf.length(), readahead);
+                if (size > 0) {
+                    raf.getChannel().map(MapMode.READ_ONLY, 0, size).load();
+                }
+            } catch (Throwable e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("prefetch binlog file " + next + " failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.taobao.tddl.dbsync.binlog.LogFetcher#fetch()
+     */
+    public boolean fetch() throws IOException {
+        boolean fetched = false;
+        while (true) {
+            int required = FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN;
+            if (limit >= FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN) {
+                int lenPosition = origin + 4 + 1 + 4;
+                long eventLen = ((long) (0xff & buffer[lenPosition++]))
+                                | ((long) (0xff & buffer[lenPosition++]) << 8)
+                                | ((long) (0xff & buffer[lenPosition++]) << 16)
+                                | ((long) (0xff & buffer[lenPosition++]) << 24);
+                if (limit >= eventLen) {
+                    /* buffer中已经有完整的事件 */
+                    return true;
+                }
+                required = (int) eventLen;
+            }
+
+            if (!mapped.hasRemaining() && !map(offset())) {
+                /* Reach binlog file end, 不完整的事件留给decoder处理 */
+                return fetched;
+            }
+
+            /* 剩余的数据移到buffer头部, 再从映射区补充 */
+            if (origin > 0) {
+                System.arraycopy(buffer, origin, buffer, 0, limit);
+                origin = 0;
+            }
+            position = 0;
+            ensureCapacity(required);
+            int len = Math.min(buffer.length - limit, mapped.remaining());
+            mapped.get(buffer, limit, len);
+            limit += len;
+            fetched = true;
+            readahead();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.taobao.tddl.dbsync.binlog.LogFetcher#close()
+     */
+    public void close() throws IOException {
+        if (readaheadFuture != null) {
+            readaheadFuture.cancel(false);
+            readaheadFuture = null;
+        }
+        if (file != null) {
+            file.close();
+        }
+
+        // 映射区由gc回收
+        file = null;
+        channel = null;
+        mapped = null;
+    }
+
+    // 当前读取到的文件偏移
+    private long offset() {
+        return mapOffset + mapped.position();
+    }
+
+    private void seek(long filePosition) throws IOException {
+        if (filePosition >= mapOffset && filePosition <= mapOffset + mapped.limit()) {
+            mapped.position((int) (filePosition - mapOffset));
+        } else {
+            map(filePosition);
+        }
+    }
+
+    // 映射从offset开始的窗口, 文件可能还在写入, 每次重新获取文件大小
+    private boolean map(long offset) throws IOException {
+        long size = Math.min(mapSize, channel.size() - offset);
+        if (size <= 0) {
+            if (mapped == null) {
+                mapped = channel.map(MapMode.READ_ONLY, offset, 0);
+                mapOffset = offset;
+            }
+            return false;
+        }
+
+        mapped = channel.map(MapMode.READ_ONLY, offset, size);
+        mapOffset = offset;
+        return true;
+    }
+
+    // 读取位置接近已预读的位置时, 提交下一段预读
+    private void readahead() {
+        if (readahead <= 0) {
+            return;
+        }
+
+        final long offset = offset();
+        if (readaheadOffset - offset > readahead / 2
+            || (readaheadFuture != null && !readaheadFuture.isDone())) {
+            return;
+        }
+
+        final FileChannel channel = this.channel;
+        final long start = Math.max(offset, readaheadOffset);
+        try {
+            final long size = Math.min(readahead, channel.size() - start);
+            if (size <= 0) {
+                return;
+            }
+            readaheadOffset = start + size;
+            readaheadFuture = READAHEAD_POOL.submit(() -> {
+                try {
+                    channel.map(MapMode.READ_ONLY, start, size).load();
+                } catch (Throwable e) {
+                    // 文件已经关闭, 忽略
+                }
+            });
+        } catch (IOException e) {
+            // ignore, 预读失败不影响读取
+        }
+    }
+}
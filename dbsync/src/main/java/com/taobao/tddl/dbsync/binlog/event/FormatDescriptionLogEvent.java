@@ -62,6 +62,7 @@ public final class FormatDescriptionLogEvent extends StartLogEventV3 {
     public static final int   TRANSACTION_CONTEXT_HEADER_LEN      = 18;
     public static final int   VIEW_CHANGE_HEADER_LEN              = 52;
     public static final int   XA_PREPARE_HEADER_LEN               = 0;
+    public static final int   TRANSACTION_PAYLOAD_HEADER_LEN      = 0;
 
     public static final int   ANNOTATE_ROWS_HEADER_LEN            = 0;
     public static final int   BINLOG_CHECKPOINT_HEADER_LEN        = 4;
@@ -151,6 +152,19 @@ public final class FormatDescriptionLogEvent extends StartLogEventV3 {
         this.header.checksumAlg = binlogChecksum;
     }
 
+    /**
+     * 复制format description并替换checksum算法, 事务压缩事件内部的事件不带checksum
+     */
+    public FormatDescriptionLogEvent(FormatDescriptionLogEvent descriptionEvent, int binlogChecksum){
+        this.binlogVersion = descriptionEvent.binlogVersion;
+        this.serverVersion = descriptionEvent.serverVersion;
+        this.commonHeaderLen = descriptionEvent.commonHeaderLen;
+        this.numberOfEventTypes = descriptionEvent.numberOfEventTypes;
+        this.postHeaderLen = descriptionEvent.postHeaderLen;
+        this.serverVersionSplit = descriptionEvent.serverVersionSplit;
+        this.header.checksumAlg = binlogChecksum;
+    }
+
     public FormatDescriptionLogEvent(final int binlogVersion){
         this.binlogVersion = binlogVersion;
 
@@ -212,6 +226,7 @@ public final class FormatDescriptionLogEvent extends StartLogEventV3 {
                 postHeaderLen[VIEW_CHANGE_EVENT - 1] = VIEW_CHANGE_HEADER_LEN;
                 postHeaderLen[XA_PREPARE_LOG_EVENT - 1] = XA_PREPARE_HEADER_LEN;
                 postHeaderLen[PARTIAL_UPDATE_ROWS_EVENT - 1] = ROWS_HEADER_LEN_V2;
+                postHeaderLen[TRANSACTION_PAYLOAD_EVENT - 1] = TRANSACTION_PAYLOAD_HEADER_LEN;
 
                 // mariadb 10
                 postHeaderLen[ANNOTATE_ROWS_EVENT - 1] = ANNOTATE_ROWS_HEADER_LEN;
@@ -294,6 +294,14 @@ public final class LogHeader {
         this.logFileName = logFileName;
     }
 
+    /**
+     * 事务压缩事件内部的事件没有位点, 由外层事件的位点推算
+     */
+    public void setPosition(long logPos, int eventLen) {
+        this.logPos = logPos;
+        this.eventLen = eventLen;
+    }
+
     private void processCheckSum(LogBuffer buffer) {
         if (checksumAlg != LogEvent.BINLOG_CHECKSUM_ALG_OFF && checksumAlg != LogEvent.BINLOG_CHECKSUM_ALG_UNDEF) {
             crc = buffer.getUint32(eventLen - LogEvent.BINLOG_CHECKSUM_LEN);
@@ -1,6 +1,7 @@
 package com.taobao.tddl.dbsync.binlog.event;
 
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.BitSet;
@@ -8,9 +9,8 @@ import java.util.BitSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import com.taobao.tddl.dbsync.binlog.JsonConversion;
-import com.taobao.tddl.dbsync.binlog.JsonConversion.Json_Value;
-import com.taobao.tddl.dbsync.binlog.JsonDiffConversion;
+import com.taobao.tddl.dbsync.binlog.JsonStreamConversion;
+import com.taobao.tddl.dbsync.binlog.JsonStreamConversion.JsonSink;
 import com.taobao.tddl.dbsync.binlog.LogBuffer;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 
@@ -33,7 +33,8 @@ public final class RowsLogBuffer {
     private final LogBuffer    buffer;
     private final int          columnLen;
     private final int          jsonColumnCount;
-    private final String       charsetName;
+    private final Charset      charset;
+    private final Charset[]    columnCharsets;   // 按列的charset, 为null时都使用charset
 
     private final BitSet       nullBits;
     private int                nullBitIndex;
@@ -42,15 +43,24 @@ public final class RowsLogBuffer {
     private final boolean      partial;
     private final BitSet       partialBits;
 
+    // json列直接返回mysql的二进制数据(包含类型字节), 由使用方自行解析
+    private boolean            jsonBinary;
+
     private boolean            fNull;
     private int                javaType;
     private int                length;
     private Serializable       value;
 
     public RowsLogBuffer(LogBuffer buffer, final int columnLen, String charsetName, int jsonColumnCount, boolean partial){
+        this(buffer, columnLen, Charset.forName(charsetName), null, jsonColumnCount, partial);
+    }
+
+    public RowsLogBuffer(LogBuffer buffer, final int columnLen, Charset charset, Charset[] columnCharsets,
+                         int jsonColumnCount, boolean partial){
         this.buffer = buffer;
         this.columnLen = columnLen;
-        this.charsetName = charsetName;
+        this.charset = charset;
+        this.columnCharsets = columnCharsets;
         this.partial = partial;
         this.jsonColumnCount = jsonColumnCount;
         this.nullBits = new BitSet(columnLen);
@@ -126,6 +136,16 @@ public final class RowsLogBuffer {
         }
     }
 
+    /**
+     * 字符串列解码使用的charset
+     */
+    public final Charset getColumnCharset(int columnIndex) {
+        if (columnCharsets != null && columnIndex < columnCharsets.length && columnCharsets[columnIndex] != null) {
+            return columnCharsets[columnIndex];
+        }
+        return charset;
+    }
+
     /**
      * Maps the given MySQL type to the correct JDBC type.
      */
@@ -1017,7 +1037,7 @@ public final class RowsLogBuffer {
                     javaType = Types.VARBINARY;
                     value = binary;
                 } else {
-                    value = buffer.getFullString(len, charsetName);
+                    value = buffer.getFullString(len, getColumnCharset(columnIndex));
                     javaType = Types.VARCHAR;
                 }
 
@@ -1039,7 +1059,7 @@ public final class RowsLogBuffer {
                     javaType = Types.BINARY;
                     value = binary;
                 } else {
-                    value = buffer.getFullString(len, charsetName);
+                    value = buffer.getFullString(len, getColumnCharset(columnIndex));
                     javaType = Types.CHAR; // Types.VARCHAR;
                 }
                 length = len;
@@ -1067,15 +1087,13 @@ public final class RowsLogBuffer {
                         throw new IllegalArgumentException("!! Unknown JSON packlen = " + meta);
                 }
 
+                javaType = Types.VARCHAR;
                 if (partialBits.get(1)) {
                     // print_json_diff
                     int position = buffer.position();
-                    StringBuilder builder = JsonDiffConversion.print_json_diff(buffer,
-                        len,
-                        columnName,
-                        columnIndex,
-                        charsetName);
-                    value = builder.toString();
+                    JsonSink sink = JsonSink.local();
+                    JsonStreamConversion.write_json_diff(buffer, len, columnName, columnIndex, charset, sink);
+                    value = sink.toString();
                     buffer.position(position + len);
                 } else {
                     if (0 == len) {
@@ -1083,19 +1101,19 @@ public final class RowsLogBuffer {
                         // has no
                         // value, value parsing should be skipped
                         value = "";
+                    } else if (jsonBinary) {
+                        byte[] binary = new byte[len];
+                        buffer.fillBytes(binary, 0, len);
+                        value = binary;
+                        javaType = Types.LONGVARBINARY;
                     } else {
                         int position = buffer.position();
-                        Json_Value jsonValue = JsonConversion.parse_value(buffer.getUint8(),
-                            buffer,
-                            len - 1,
-                            charsetName);
-                        StringBuilder builder = new StringBuilder();
-                        jsonValue.toJsonString(builder, charsetName);
-                        value = builder.toString();
+                        JsonSink sink = JsonSink.local();
+                        JsonStreamConversion.write_value(buffer.getUint8(), buffer, len - 1, charset, sink);
+                        value = sink.toString();
                         buffer.position(position + len);
                     }
                 }
-                javaType = Types.VARCHAR;
                 length = len;
                 break;
             }
@@ -1162,6 +1180,17 @@ public final class RowsLogBuffer {
         return length;
     }
 
+    public boolean isJsonBinary() {
+        return jsonBinary;
+    }
+
+    /**
+     * json列(非partial update)返回byte[]的二进制数据, 不再解析为json文本
+     */
+    public void setJsonBinary(boolean jsonBinary) {
+        this.jsonBinary = jsonBinary;
+    }
+
     public static String usecondsToStr(int frac, int meta) {
         String sec = String.valueOf(frac);
         if (meta > 6) {
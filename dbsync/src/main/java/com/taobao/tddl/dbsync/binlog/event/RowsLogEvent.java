@@ -1,5 +1,6 @@
 package com.taobao.tddl.dbsync.binlog.event;
 
+import java.nio.charset.Charset;
 import java.util.BitSet;
 
 import com.taobao.tddl.dbsync.binlog.exception.TableIdNotFoundException;
@@ -223,6 +224,14 @@ public abstract class RowsLogEvent extends LogEvent {
         return new RowsLogBuffer(rowsBuf, columnLen, charsetName, jsonColumnCount, partial);
     }
 
+    /**
+     * @param columnCharset 是否按table map中每一列的charset解码字符串, 没有charset元数据的列使用charset
+     */
+    public final RowsLogBuffer getRowsBuf(Charset charset, boolean columnCharset) {
+        Charset[] columnCharsets = (columnCharset && table != null) ? table.getColumnCharsets() : null;
+        return new RowsLogBuffer(rowsBuf, columnLen, charset, columnCharsets, jsonColumnCount, partial);
+    }
+
     public final int getFlags(final int flags) {
         return this.flags & flags;
     }
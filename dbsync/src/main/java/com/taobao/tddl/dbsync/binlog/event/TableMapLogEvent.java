@@ -1,9 +1,11 @@
 package com.taobao.tddl.dbsync.binlog.event;
 
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 
+import com.taobao.tddl.dbsync.binlog.CharsetConversion;
 import com.taobao.tddl.dbsync.binlog.LogBuffer;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 
@@ -383,8 +385,12 @@ public final class TableMapLogEvent extends LogEvent {
     // Primary key with prefix
     public static final int      PRIMARY_KEY_WITH_PREFIX = 9;
 
+    // binary collation id
+    private static final int     BINARY_CHARSET          = 63;
+
     private int                  default_charset;
     private boolean              existOptionalMetaData   = false;
+    private Charset[]            javaColumnCharsets;             // 按列解析好的java charset, 没有charset元数据时为null
 
     private static final class Pair {
 
@@ -514,6 +520,7 @@ public final class TableMapLogEvent extends LogEvent {
                         columnInfo[i].charset = cs;
                     }
                 }
+                resolveColumnCharsets();
             }
         }
 
@@ -522,6 +529,19 @@ public final class TableMapLogEvent extends LogEvent {
         // }
     }
 
+    private void resolveColumnCharsets() {
+        Charset[] charsets = new Charset[columnCnt];
+        boolean found = false;
+        for (int i = 0; i < columnCnt; i++) {
+            // binary字符集按字节处理, 仍然使用默认的编码
+            if (columnInfo[i].charset > 0 && columnInfo[i].charset != BINARY_CHARSET) {
+                charsets[i] = CharsetConversion.getJavaCharsetInstance(columnInfo[i].charset);
+                found |= charsets[i] != null;
+            }
+        }
+        javaColumnCharsets = found ? charsets : null;
+    }
+
     /**
      * Decode field metadata by column types.
      * 
@@ -813,6 +833,13 @@ public final class TableMapLogEvent extends LogEvent {
         return columnCnt;
     }
 
+    /**
+     * 每一列的java charset, 下标与{@link #getColumnInfo()}一致, 未知的列为null
+     */
+    public final Charset[] getColumnCharsets() {
+        return javaColumnCharsets;
+    }
+
     public final ColumnInfo[] getColumnInfo() {
         return columnInfo;
     }
@@ -0,0 +1,169 @@
+package com.taobao.tddl.dbsync.binlog.event;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.github.luben.zstd.Zstd;
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+
+/**
+ * binlog_transaction_compression开启后, 整个事务的事件压缩后放在一个payload事件中
+ *
+ * <pre>
+ * body:
+ *   字段列表, 每个字段为 type(packed) + length(packed) + value(packed), 以END_MARK结束
+ *   payload, 压缩后的事件(不带checksum)
+ * </pre>
+ *
+ * @version 1.1.6
+ * @since mysql 8.0.20
+ */
+public class TransactionPayloadLogEvent extends LogEvent {
+
+    public static final int OTW_PAYLOAD_HEADER_END_MARK         = 0;
+    public static final int OTW_PAYLOAD_SIZE_FIELD              = 1;
+    public static final int OTW_PAYLOAD_COMPRESSION_TYPE_FIELD  = 2;
+    public static final int OTW_PAYLOAD_UNCOMPRESSED_SIZE_FIELD = 3;
+
+    public static final int COMPRESSION_ZSTD                    = 0;
+    public static final int COMPRESSION_NONE                    = 255;
+
+    private int             compressionType                     = COMPRESSION_NONE;
+    private long            payloadSize;
+    private long            uncompressedSize;
+    private byte[]          payload;
+    private byte[]          uncompressed;
+    private List<LogEvent>  events;
+
+    public TransactionPayloadLogEvent(LogHeader header, LogBuffer buffer, FormatDescriptionLogEvent descriptionEvent)
+                                                                                                                     throws IOException{
+        this(header,
+            buffer,
+            descriptionEvent.getCommonHeaderLen() + FormatDescriptionLogEvent.TRANSACTION_PAYLOAD_HEADER_LEN);
+    }
+
+    private TransactionPayloadLogEvent(LogHeader header, LogBuffer buffer, int offset) throws IOException{
+        super(header);
+
+        buffer.position(offset);
+        while (buffer.hasRemaining()) {
+            int type = (int) buffer.getPackedLong();
+            if (type == OTW_PAYLOAD_HEADER_END_MARK) {
+                break;
+            }
+
+            int length = (int) buffer.getPackedLong();
+            switch (type) {
+                case OTW_PAYLOAD_SIZE_FIELD:
+                    payloadSize = buffer.getPackedLong();
+                    break;
+                case OTW_PAYLOAD_COMPRESSION_TYPE_FIELD:
+                    compressionType = (int) buffer.getPackedLong();
+                    break;
+                case OTW_PAYLOAD_UNCOMPRESSED_SIZE_FIELD:
+                    uncompressedSize = buffer.getPackedLong();
+                    break;
+                default:
+                    // 忽略不认识的字段
+                    buffer.forward(length);
+            }
+        }
+
+        if (payloadSize > buffer.remaining()) {
+            throw new IOException("Transaction payload is truncated, payload size: " + payloadSize + ", remaining: "
+                                  + buffer.remaining());
+        }
+        payload = buffer.getData((int) payloadSize);
+    }
+
+    /**
+     * 直接从未解析的事件数据中解压payload, 不依赖format description, 可以在解析线程之外并行执行
+     *
+     * @param buffer 从事件头开始的完整事件
+     * @return 解压后的数据, 非payload事件返回null
+     */
+    public static byte[] decompress(LogBuffer buffer) throws IOException {
+        if (buffer.limit() < FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN
+            || buffer.getUint8(EVENT_TYPE_OFFSET) != TRANSACTION_PAYLOAD_EVENT) {
+            return null;
+        }
+
+        LogHeader header = new LogHeader(TRANSACTION_PAYLOAD_EVENT);
+        int offset = FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN
+                     + FormatDescriptionLogEvent.TRANSACTION_PAYLOAD_HEADER_LEN;
+        // 解析线程之后还要从头解析这个buffer, 解压完成后恢复位置
+        int position = buffer.position();
+        try {
+            return new TransactionPayloadLogEvent(header, buffer, offset).getUncompressed();
+        } finally {
+            buffer.position(position);
+        }
+    }
+
+    /**
+     * 解压后的事件数据, 只解压一次
+     */
+    public byte[] getUncompressed() throws IOException {
+        if (uncompressed == null) {
+            uncompressed = doDecompress();
+        }
+        return uncompressed;
+    }
+
+    /**
+     * 设置已经解压好的数据, 跳过解压
+     */
+    public void setUncompressed(byte[] uncompressed) {
+        this.uncompressed = uncompressed;
+    }
+
+    private byte[] doDecompress() throws IOException {
+        switch (compressionType) {
+            case COMPRESSION_NONE:
+                return payload;
+            case COMPRESSION_ZSTD: {
+                byte[] data = new byte[(int) uncompressedSize];
+                long size = Zstd.decompressByteArray(data, 0, data.length, payload, 0, payload.length);
+                if (Zstd.isError(size)) {
+                    throw new IOException("Decompress transaction payload failed: " + Zstd.getErrorName(size));
+                }
+                if (size != data.length) {
+                    throw new IOException("Transaction payload uncompressed size mismatch, expected: "
+                                          + data.length + ", actual: " + size);
+                }
+                return data;
+            }
+            default:
+                throw new IOException("Unsupported transaction payload compression type: " + compressionType);
+        }
+    }
+
+    public int getCompressionType() {
+        return compressionType;
+    }
+
+    public long getPayloadSize() {
+        return payloadSize;
+    }
+
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * 解析后的事务内事件, 未解析时为null
+     */
+    public List<LogEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * 设置解析后的事件, 同时释放压缩数据
+     */
+    public void setEvents(List<LogEvent> events) {
+        this.events = events;
+        this.payload = null;
+        this.uncompressed = null;
+    }
+}
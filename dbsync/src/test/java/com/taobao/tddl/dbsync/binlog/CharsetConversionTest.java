@@ -0,0 +1,52 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CharsetConversionTest {
+
+    private static final String[] VALUES = { "", "a", "hello canal", "0123456789abcdefg", "中文字符串",
+            "mixed 中文 and ascii", "Ünïcödé" };
+
+    @Test
+    public void testJavaCharsetInstance() {
+        Assert.assertEquals(StandardCharsets.UTF_8, CharsetConversion.getJavaCharsetInstance(33));
+        Assert.assertEquals(StandardCharsets.UTF_8, CharsetConversion.getJavaCharsetInstance(45));
+        Assert.assertEquals(Charset.forName("GBK"), CharsetConversion.getJavaCharsetInstance(28));
+        Assert.assertSame(CharsetConversion.getJavaCharsetInstance(28), CharsetConversion.getJavaCharsetInstance(28));
+        Assert.assertNull(CharsetConversion.getJavaCharsetInstance(0));
+        Assert.assertNull(CharsetConversion.getJavaCharsetInstance(2000));
+    }
+
+    @Test
+    public void testDecodeSameAsString() {
+        for (String name : new String[] { "UTF-8", "GBK", "ISO8859_1", "Big5", "UnicodeBig", "UTF-32" }) {
+            Charset charset = Charset.forName(name);
+            for (String value : VALUES) {
+                byte[] bytes = value.getBytes(charset);
+                byte[] buf = new byte[bytes.length + 6];
+                System.arraycopy(bytes, 0, buf, 3, bytes.length);
+                Assert.assertEquals(name + ":" + value,
+                    new String(bytes, charset),
+                    CharsetConversion.decode(buf, 3, bytes.length, charset));
+            }
+        }
+    }
+
+    @Test
+    public void testIsAscii() {
+        byte[] buf = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertTrue(CharsetConversion.isAscii(buf, 0, buf.length));
+        for (int i = 0; i < buf.length; i++) {
+            byte[] copy = buf.clone();
+            copy[i] = (byte) 0x80;
+            Assert.assertFalse(CharsetConversion.isAscii(copy, 0, copy.length));
+            Assert.assertTrue(CharsetConversion.isAscii(copy, i + 1, copy.length - i - 1));
+        }
+        Assert.assertFalse(CharsetConversion.isAsciiCompatible(Charset.forName("UnicodeBig")));
+        Assert.assertTrue(CharsetConversion.isAsciiCompatible(Charset.forName("GBK")));
+    }
+}
@@ -0,0 +1,148 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 测试用的mysql json二进制编码, 支持Map/List/String/Integer/Long/Double/Boolean/null
+ */
+class JsonBinaryEncoder {
+
+    /**
+     * 返回类型字节 + 数据, 与binlog中json列的内容一致
+     */
+    static byte[] encode(Object value, boolean large) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(type(value, large));
+        byte[] data = value(value, large);
+        out.write(data, 0, data.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * partial update的一个diff操作
+     */
+    static byte[] diff(int operation, String path, Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(operation);
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        writePacked(out, pathBytes.length);
+        out.write(pathBytes, 0, pathBytes.length);
+        if (operation != JsonDiffConversion.DIFF_OPERATION_REMOVE) {
+            byte[] data = encode(value, false);
+            writePacked(out, data.length);
+            out.write(data, 0, data.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static int type(Object value, boolean large) {
+        if (value instanceof Map) {
+            return large ? JsonConversion.JSONB_TYPE_LARGE_OBJECT : JsonConversion.JSONB_TYPE_SMALL_OBJECT;
+        } else if (value instanceof List) {
+            return large ? JsonConversion.JSONB_TYPE_LARGE_ARRAY : JsonConversion.JSONB_TYPE_SMALL_ARRAY;
+        } else if (value instanceof String) {
+            return JsonConversion.JSONB_TYPE_STRING;
+        } else if (value instanceof Integer) {
+            return JsonConversion.JSONB_TYPE_INT16;
+        } else if (value instanceof Long) {
+            return JsonConversion.JSONB_TYPE_INT64;
+        } else if (value instanceof Double) {
+            return JsonConversion.JSONB_TYPE_DOUBLE;
+        } else {
+            return JsonConversion.JSONB_TYPE_LITERAL;
+        }
+    }
+
+    private static boolean inline(Object value) {
+        return value == null || value instanceof Boolean || value instanceof Integer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] value(Object value, boolean large) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            container(out, new ArrayList<>(map.keySet()), new ArrayList<>(map.values()), large);
+        } else if (value instanceof List) {
+            container(out, null, (List<Object>) value, large);
+        } else if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            long len = bytes.length;
+            do {
+                int b = (int) (len & 0x7f);
+                len >>>= 7;
+                out.write(len > 0 ? b | 0x80 : b);
+            } while (len > 0);
+            out.write(bytes, 0, bytes.length);
+        } else if (value instanceof Integer) {
+            writeInt(out, (Integer) value, 2);
+        } else if (value instanceof Long) {
+            writeInt(out, (Long) value, 8);
+        } else if (value instanceof Double) {
+            writeInt(out, Double.doubleToLongBits((Double) value), 8);
+        } else if (value == null) {
+            out.write(JsonConversion.JSONB_NULL_LITERAL);
+        } else {
+            out.write((Boolean) value ? JsonConversion.JSONB_TRUE_LITERAL : JsonConversion.JSONB_FALSE_LITERAL);
+        }
+        return out.toByteArray();
+    }
+
+    private static void container(ByteArrayOutputStream out, List<String> keys, List<Object> values, boolean large) {
+        int offsetSize = large ? JsonConversion.LARGE_OFFSET_SIZE : JsonConversion.SMALL_OFFSET_SIZE;
+        int count = values.size();
+        int headerSize = 2 * offsetSize + count * (1 + offsetSize);
+        if (keys != null) {
+            headerSize += count * (2 + offsetSize);
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (keys != null) {
+            for (String key : keys) {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                writeInt(header, headerSize + body.size(), offsetSize);
+                writeInt(header, bytes.length, 2);
+                body.write(bytes, 0, bytes.length);
+            }
+        }
+        for (Object value : values) {
+            header.write(type(value, large));
+            byte[] data = value(value, large);
+            if (inline(value)) {
+                byte[] padded = new byte[offsetSize];
+                System.arraycopy(data, 0, padded, 0, data.length);
+                header.write(padded, 0, offsetSize);
+            } else {
+                writeInt(header, headerSize + body.size(), offsetSize);
+                body.write(data, 0, data.length);
+            }
+        }
+
+        writeInt(out, count, offsetSize);
+        writeInt(out, headerSize + body.size(), offsetSize);
+        byte[] bytes = header.toByteArray();
+        out.write(bytes, 0, bytes.length);
+        bytes = body.toByteArray();
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writePacked(ByteArrayOutputStream out, long value) {
+        if (value < 251) {
+            out.write((int) value);
+        } else {
+            out.write(252);
+            writeInt(out, value, 2);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value, int size) {
+        for (int i = 0; i < size; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+}
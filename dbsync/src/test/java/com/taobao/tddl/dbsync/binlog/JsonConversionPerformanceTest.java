@@ -0,0 +1,45 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.lang.management.ManagementFactory;
+
+import com.taobao.tddl.dbsync.binlog.JsonStreamConversion.JsonSink;
+
+/**
+ * 对比JsonConversion和JsonStreamConversion解析大json文档的耗时和内存分配
+ */
+public class JsonConversionPerformanceTest {
+
+    public static void main(String args[]) {
+        int[] sizes = { 100, 1000, 5000 };
+        for (int rows : sizes) {
+            byte[] data = JsonBinaryEncoder.encode(JsonStreamConversionTest.largeDocument(rows), true);
+            int loops = Math.max(20, 20000 / rows);
+            // 预热
+            run(data, loops, false);
+            run(data, loops, true);
+
+            System.out.println("json size : " + data.length + " , loops : " + loops);
+            System.out.println(" old    : " + run(data, loops, false));
+            System.out.println(" stream : " + run(data, loops, true));
+        }
+    }
+
+    private static String run(byte[] data, int loops, boolean stream) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocated = bean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long length = 0;
+        for (int i = 0; i < loops; i++) {
+            if (stream) {
+                length += JsonStreamConversionTest.streamJson(data, JsonSink.local()).length();
+            } else {
+                length += JsonStreamConversionTest.oldJson(data).length();
+            }
+        }
+        long cost = System.nanoTime() - start;
+        allocated = bean.getThreadAllocatedBytes(threadId) - allocated;
+        return "avg cost : " + (cost / loops / 1000) + "us , avg alloc : " + (allocated / loops / 1024)
+               + "KB , chars : " + (length / loops);
+    }
+}
@@ -0,0 +1,134 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.taobao.tddl.dbsync.binlog.JsonConversion.Json_Value;
+import com.taobao.tddl.dbsync.binlog.JsonStreamConversion.JsonSink;
+
+public class JsonStreamConversionTest {
+
+    @Test
+    public void testSameAsJsonConversion() {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put("id", 1);
+        doc.put("big", 1234567890123L);
+        doc.put("neg", -42);
+        doc.put("pi", 3.14d);
+        doc.put("ok", true);
+        doc.put("no", false);
+        doc.put("nil", null);
+        doc.put("text", "a\"b\\c\n\r\t\u0001\u001f\u007f  中文 😀");
+        doc.put("中文key", Arrays.asList(1, "x", Arrays.asList(), new LinkedHashMap<>()));
+
+        assertSame(JsonBinaryEncoder.encode(doc, false));
+        assertSame(JsonBinaryEncoder.encode(doc, true));
+        assertSame(JsonBinaryEncoder.encode("plain", false));
+        assertSame(JsonBinaryEncoder.encode(Arrays.asList(null, 7L, 0.5d), false));
+    }
+
+    @Test
+    public void testLargeDocument() {
+        byte[] data = JsonBinaryEncoder.encode(largeDocument(2000), true);
+        Assert.assertTrue(data.length > 100 * 1024);
+        assertSame(data);
+    }
+
+    @Test
+    public void testJsonDiff() {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("k", "v\"");
+        value.put("n", 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, JsonBinaryEncoder.diff(JsonDiffConversion.DIFF_OPERATION_REPLACE, "$.a", value));
+        write(out, JsonBinaryEncoder.diff(JsonDiffConversion.DIFF_OPERATION_REPLACE, "$.b", "中文"));
+        write(out, JsonBinaryEncoder.diff(JsonDiffConversion.DIFF_OPERATION_REMOVE, "$.c", null));
+        write(out, JsonBinaryEncoder.diff(JsonDiffConversion.DIFF_OPERATION_INSERT, "$.d[1]", 5L));
+        byte[] data = out.toByteArray();
+
+        String expected = JsonDiffConversion.print_json_diff(new LogBuffer(data, 0, data.length),
+            data.length,
+            "col",
+            1,
+            "UTF-8").toString();
+        JsonSink sink = new JsonSink();
+        JsonStreamConversion.write_json_diff(new LogBuffer(data, 0, data.length),
+            data.length,
+            "col",
+            1,
+            StandardCharsets.UTF_8,
+            sink);
+        Assert.assertEquals(expected, sink.toString());
+
+        // diff之后还有其他列的数据, 只解析len范围内的内容
+        byte[] padded = Arrays.copyOf(data, data.length + 8);
+        sink.reset();
+        JsonStreamConversion.write_json_diff(new LogBuffer(padded, 0, padded.length),
+            data.length,
+            null,
+            1,
+            StandardCharsets.UTF_8,
+            sink);
+        Assert.assertEquals(expected.replace("col", "@1"), sink.toString());
+    }
+
+    @Test
+    public void testSinkReuse() {
+        JsonSink sink = JsonSink.local();
+        sink.writeLong(Long.MIN_VALUE);
+        sink.write(' ');
+        sink.writeLong(-120);
+        sink.write(' ');
+        sink.writeLong(0);
+        Assert.assertEquals(Long.MIN_VALUE + " -120 0", sink.toString());
+        Assert.assertSame(sink, JsonSink.local());
+        Assert.assertEquals(0, JsonSink.local().size());
+    }
+
+    static Map<String, Object> largeDocument(int rows) {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        List<Object> items = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", (long) i);
+            item.put("name", "item-" + i);
+            item.put("desc", "描述 description " + i);
+            item.put("price", i * 1.5d);
+            item.put("tags", Arrays.asList("a", "b", i % 2 == 0));
+            items.add(item);
+        }
+        doc.put("items", items);
+        doc.put("count", rows);
+        return doc;
+    }
+
+    static String oldJson(byte[] data) {
+        LogBuffer buffer = new LogBuffer(data, 0, data.length);
+        Json_Value value = JsonConversion.parse_value(buffer.getUint8(), buffer, data.length - 1, "UTF-8");
+        StringBuilder builder = new StringBuilder();
+        value.toJsonString(builder, "UTF-8");
+        return builder.toString();
+    }
+
+    static String streamJson(byte[] data, JsonSink sink) {
+        LogBuffer buffer = new LogBuffer(data, 0, data.length);
+        JsonStreamConversion.write_value(buffer.getUint8(), buffer, data.length - 1, StandardCharsets.UTF_8, sink);
+        return sink.toString();
+    }
+
+    private void assertSame(byte[] data) {
+        Assert.assertEquals(oldJson(data), streamJson(data, new JsonSink()));
+    }
+
+    private void write(ByteArrayOutputStream out, byte[] data) {
+        out.write(data, 0, data.length);
+    }
+}
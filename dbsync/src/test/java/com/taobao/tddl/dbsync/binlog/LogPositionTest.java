@@ -0,0 +1,21 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * binlog文件名按序号比较
+ */
+public class LogPositionTest {
+
+    @Test
+    public void testCompareFileName() {
+        Assert.assertTrue(LogPosition.compareFileName("mysql-bin.000009", "mysql-bin.000010") < 0);
+        Assert.assertTrue(LogPosition.compareFileName("mysql-bin.999999", "mysql-bin.1000000") < 0);
+        Assert.assertTrue(LogPosition.compareFileName("mysql-bin.1000000", "mysql-bin.999999") > 0);
+        Assert.assertEquals(0, LogPosition.compareFileName("mysql-bin.000010", "mysql-bin.000010"));
+        // 前缀不同或者后缀不是数字时按字符串比较
+        Assert.assertTrue(LogPosition.compareFileName("binlog.000002", "mysql-bin.000001") < 0);
+        Assert.assertTrue(LogPosition.compareFileName("mysql-bin.abc", "mysql-bin.abd") < 0);
+    }
+}
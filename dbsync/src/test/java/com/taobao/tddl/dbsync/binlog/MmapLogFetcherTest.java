@@ -0,0 +1,67 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MmapLogFetcherTest {
+
+    private File binlog;
+
+    @Before
+    public void setUp() {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("dummy.txt");
+        File dummyFile = new File(url.getFile());
+        binlog = new File(dummyFile.getParent() + "/binlog", "mysql-bin.000001");
+    }
+
+    @Test
+    public void testSameAsFileLogFetcher() throws IOException {
+        List<String> expected = events(new FileLogFetcher(1024 * 16), 0L);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, events(new MmapLogFetcher(1024 * 16), 0L));
+        // 映射窗口和buffer都很小, 事件跨窗口
+        Assert.assertEquals(expected, events(new MmapLogFetcher(64, 512, 1000), 0L));
+    }
+
+    @Test
+    public void testOpenWithPosition() throws IOException {
+        // 从第10个事件结束的位置开始读取
+        List<String> all = events(new FileLogFetcher(1024 * 16), 0L);
+        String event = all.get(10);
+        long position = Long.parseLong(event.substring(event.indexOf(':') + 1));
+        List<String> expected = events(new FileLogFetcher(1024 * 16), position);
+        Assert.assertEquals(all.size() - 10, expected.size()); // format description + 后续事件
+        Assert.assertEquals(expected, events(new MmapLogFetcher(1024 * 16), position));
+        Assert.assertEquals(expected, events(new MmapLogFetcher(64, 512, 1000), position));
+    }
+
+    private List<String> events(LogFetcher fetcher, long position) throws IOException {
+        List<String> events = new ArrayList<>();
+        try {
+            if (fetcher instanceof FileLogFetcher) {
+                ((FileLogFetcher) fetcher).open(binlog, position);
+            } else {
+                ((MmapLogFetcher) fetcher).open(binlog, position);
+            }
+            LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+            LogContext context = new LogContext();
+            context.setLogPosition(new LogPosition(binlog.getName()));
+            while (fetcher.fetch()) {
+                LogEvent event = decoder.decode(fetcher, context);
+                if (event != null) {
+                    events.add(event.getHeader().getType() + ":" + event.getLogPos());
+                }
+            }
+        } finally {
+            fetcher.close();
+        }
+        return events;
+    }
+}
@@ -0,0 +1,140 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.luben.zstd.Zstd;
+import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TransactionPayloadLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.XidLogEvent;
+
+public class TransactionPayloadLogEventTest {
+
+    private static final long LOG_POS       = 1000L;
+    private static final int  XID_EVENT_LEN = 19 + 8;
+
+    @Test
+    public void testDecodeZstdPayload() throws IOException {
+        byte[] events = concat(xidEvent(1L), xidEvent(2L));
+        byte[] data = payloadEvent(TransactionPayloadLogEvent.COMPRESSION_ZSTD, Zstd.compress(events), events.length);
+        assertPayload(data);
+    }
+
+    @Test
+    public void testDecodeUncompressedPayload() throws IOException {
+        byte[] events = concat(xidEvent(1L), xidEvent(2L));
+        byte[] data = payloadEvent(TransactionPayloadLogEvent.COMPRESSION_NONE, events, events.length);
+        assertPayload(data);
+    }
+
+    @Test
+    public void testDecompressRawBuffer() throws IOException {
+        byte[] events = concat(xidEvent(1L), xidEvent(2L));
+        byte[] data = payloadEvent(TransactionPayloadLogEvent.COMPRESSION_ZSTD, Zstd.compress(events), events.length);
+        LogBuffer buffer = new LogBuffer(data, 0, data.length);
+        Assert.assertArrayEquals(events, TransactionPayloadLogEvent.decompress(buffer));
+        // 解压不改变buffer的位置, 后续还要解析事件头
+        Assert.assertEquals(0, buffer.position());
+
+        byte[] xid = xidEvent(1L);
+        Assert.assertNull(TransactionPayloadLogEvent.decompress(new LogBuffer(xid, 0, xid.length)));
+    }
+
+    private void assertPayload(byte[] data) throws IOException {
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        context.setLogPosition(new LogPosition("mysql-bin.000001", 4L));
+
+        LogEvent event = decoder.decode(new LogBuffer(data, 0, data.length), context);
+        Assert.assertTrue(event instanceof TransactionPayloadLogEvent);
+
+        List<LogEvent> events = decoder.decodePayload((TransactionPayloadLogEvent) event, context);
+        Assert.assertEquals(2, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Assert.assertTrue(events.get(i) instanceof XidLogEvent);
+            Assert.assertEquals(i + 1, ((XidLogEvent) events.get(i)).getXid());
+            Assert.assertEquals(XID_EVENT_LEN, events.get(i).getEventLen());
+            Assert.assertEquals("mysql-bin.000001", events.get(i).getHeader().getLogFileName());
+        }
+        // 事务内的事件从外层事件的起始位点开始, 事务结束事件从外层事件的结束位点开始, 重启后不会重放整个事务
+        LogEvent begin = events.get(0);
+        LogEvent commit = events.get(1);
+        Assert.assertEquals(LOG_POS - data.length, begin.getLogPos() - begin.getEventLen());
+        Assert.assertEquals(LOG_POS, commit.getLogPos() - commit.getEventLen());
+        Assert.assertEquals(LOG_POS, context.getLogPosition().getPosition());
+        // 解析完成后恢复format description
+        Assert.assertSame(FormatDescriptionLogEvent.FORMAT_DESCRIPTION_EVENT_5_x, context.getFormatDescription());
+    }
+
+    private static byte[] xidEvent(long xid) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header(out, LogEvent.XID_EVENT, XID_EVENT_LEN, 0L);
+        writeInt(out, xid, 8);
+        return out.toByteArray();
+    }
+
+    private static byte[] payloadEvent(int compressionType, byte[] payload, int uncompressedSize) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        field(body, TransactionPayloadLogEvent.OTW_PAYLOAD_COMPRESSION_TYPE_FIELD, compressionType);
+        field(body, TransactionPayloadLogEvent.OTW_PAYLOAD_UNCOMPRESSED_SIZE_FIELD, uncompressedSize);
+        field(body, TransactionPayloadLogEvent.OTW_PAYLOAD_SIZE_FIELD, payload.length);
+        writePacked(body, TransactionPayloadLogEvent.OTW_PAYLOAD_HEADER_END_MARK);
+        body.write(payload, 0, payload.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header(out, LogEvent.TRANSACTION_PAYLOAD_EVENT, 19 + body.size(), LOG_POS);
+        byte[] bytes = body.toByteArray();
+        out.write(bytes, 0, bytes.length);
+        return out.toByteArray();
+    }
+
+    private static void header(ByteArrayOutputStream out, int type, int eventLen, long logPos) {
+        writeInt(out, 0L, 4); // when
+        out.write(type);
+        writeInt(out, 1L, 4); // server id
+        writeInt(out, eventLen, 4);
+        writeInt(out, logPos, 4);
+        writeInt(out, 0L, 2); // flags
+    }
+
+    private static void field(ByteArrayOutputStream out, int type, long value) {
+        ByteArrayOutputStream v = new ByteArrayOutputStream();
+        writePacked(v, value);
+        writePacked(out, type);
+        writePacked(out, v.size());
+        byte[] bytes = v.toByteArray();
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writePacked(ByteArrayOutputStream out, long value) {
+        if (value < 251) {
+            out.write((int) value);
+        } else if (value < 0x10000L) {
+            out.write(252);
+            writeInt(out, value, 2);
+        } else if (value < 0x1000000L) {
+            out.write(253);
+            writeInt(out, value, 3);
+        } else {
+            out.write(254);
+            writeInt(out, value, 8);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value, int len) {
+        for (int i = 0; i < len; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] res = new byte[a.length + b.length];
+        System.arraycopy(a, 0, res, 0, a.length);
+        System.arraycopy(b, 0, res, a.length, b.length);
+        return res;
+    }
+}
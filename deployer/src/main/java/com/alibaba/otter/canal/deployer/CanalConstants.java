@@ -28,6 +28,8 @@ public class CanalConstants {
     public static final String CANAL_ADMIN_REGISTER_NAME            = ROOT + "." + "admin.register.name";
     public static final String CANAL_ZKSERVERS                      = ROOT + "." + "zkServers";
     public static final String CANAL_WITHOUT_NETTY                  = ROOT + "." + "withoutNetty";
+    public static final String CANAL_LONG_POLL                      = ROOT + "." + "longPoll";
+    public static final String CANAL_LONG_POLL_THREADS              = ROOT + "." + "longPoll.threads";
 
     public static final String CANAL_DESTINATIONS                   = ROOT + "." + "destinations";
     public static final String CANAL_AUTO_SCAN                      = ROOT + "." + "auto.scan";
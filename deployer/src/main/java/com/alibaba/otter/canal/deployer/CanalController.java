@@ -111,6 +111,11 @@ public class CanalController {
         this.adminPasswd = getProperty(properties, CanalConstants.CANAL_ADMIN_PASSWD);
         embededCanalServer.setUser(getProperty(properties, CanalConstants.CANAL_USER));
         embededCanalServer.setPasswd(getProperty(properties, CanalConstants.CANAL_PASSWD));
+        embededCanalServer.setLongPoll(BooleanUtils.toBoolean(getProperty(properties,
+            CanalConstants.CANAL_LONG_POLL)));
+        embededCanalServer.setLongPollThreads(Integer.valueOf(getProperty(properties,
+            CanalConstants.CANAL_LONG_POLL_THREADS,
+            "2")));
 
         String canalWithoutNetty = getProperty(properties, CanalConstants.CANAL_WITHOUT_NETTY);
         if (canalWithoutNetty == null || "false".equals(canalWithoutNetty)) {
@@ -5,10 +5,12 @@ import java.net.InetSocketAddress;
 import java.security.DigestException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.otter.canal.parse.driver.mysql.packets.Capability;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.HeaderPacket;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.client.AuthSwitchResponsePacket;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.client.ClientAuthenticationPacket;
@@ -18,6 +20,7 @@ import com.alibaba.otter.canal.parse.driver.mysql.packets.server.AuthSwitchReque
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ErrorPacket;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.HandshakeInitializationPacket;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.Reply323Packet;
+import com.alibaba.otter.canal.parse.driver.mysql.socket.CompressedSocketChannel;
 import com.alibaba.otter.canal.parse.driver.mysql.socket.SocketChannel;
 import com.alibaba.otter.canal.parse.driver.mysql.socket.SocketChannelPool;
 import com.alibaba.otter.canal.parse.driver.mysql.utils.MSC;
@@ -51,6 +54,19 @@ public class MysqlConnector {
     private AtomicBoolean       connected         = new AtomicBoolean(false);
     // serverVersion
     private String              serverVersion;
+    // 协议压缩: none/zlib/zstd, zstd需要mysql 8.0.18+, 服务端不支持时降级
+    private String              compression       = COMPRESSION_NONE;
+    private int                 zstdLevel         = 3;
+    // 实际协商的压缩算法
+    private String              negotiated        = COMPRESSION_NONE;
+    // 压缩协议下网络实际接收的字节数
+    private AtomicLong          receivedWireBytes;
+    // socket实现: bio/netty, 为空时使用canal.socketChannel的配置
+    private String              socketChannel;
+
+    public static final String  COMPRESSION_NONE  = "none";
+    public static final String  COMPRESSION_ZLIB  = "zlib";
+    public static final String  COMPRESSION_ZSTD  = "zstd";
 
     public static final int     timeout           = 5 * 1000;                                     // 5s
 
@@ -77,9 +93,17 @@ public class MysqlConnector {
     public void connect() throws IOException {
         if (connected.compareAndSet(false, true)) {
             try {
-                channel = SocketChannelPool.open(address);
+                channel = SocketChannelPool.open(address, socketChannel);
                 logger.info("connect MysqlConnection to {}...", address);
                 negotiate(channel);
+                if (!COMPRESSION_NONE.equals(negotiated)) {
+                    // 认证成功后切换到压缩协议
+                    channel = new CompressedSocketChannel(channel,
+                        COMPRESSION_ZSTD.equals(negotiated),
+                        zstdLevel,
+                        receivedWireBytes);
+                    logger.info("use {} compressed protocol to {}", negotiated, address);
+                }
             } catch (Exception e) {
                 disconnect();
                 throw new IOException("connect " + this.address + " failure", e);
@@ -144,6 +168,9 @@ public class MysqlConnector {
         connector.setSendBufferSize(getSendBufferSize());
         connector.setSoTimeout(getSoTimeout());
         connector.setConnTimeout(connTimeout);
+        connector.setCompression(compression);
+        connector.setZstdLevel(zstdLevel);
+        connector.setSocketChannel(socketChannel);
         return connector;
     }
 
@@ -192,6 +219,12 @@ public class MysqlConnector {
         clientAuth.setDatabaseName(defaultSchema);
         clientAuth.setScrumbleBuff(joinAndCreateScrumbleBuff(handshakePacket));
         clientAuth.setAuthPluginName("mysql_native_password".getBytes());
+        negotiated = chooseCompression(handshakePacket.serverCapabilities);
+        if (COMPRESSION_ZSTD.equals(negotiated)) {
+            clientAuth.enableZstdCompress(zstdLevel);
+        } else if (COMPRESSION_ZLIB.equals(negotiated)) {
+            clientAuth.enableCompress();
+        }
 
         byte[] clientAuthPkgBody = clientAuth.toBytes();
         HeaderPacket h = new HeaderPacket();
@@ -278,6 +311,25 @@ public class MysqlConnector {
         }
     }
 
+    private String chooseCompression(int serverCapabilities) {
+        if (COMPRESSION_NONE.equalsIgnoreCase(compression)) {
+            return COMPRESSION_NONE;
+        }
+
+        if (COMPRESSION_ZSTD.equalsIgnoreCase(compression)
+            && (serverCapabilities & Capability.CLIENT_ZSTD_COMPRESSION_ALGORITHM) != 0) {
+            return COMPRESSION_ZSTD;
+        }
+        if ((serverCapabilities & Capability.CLIENT_COMPRESS) != 0) {
+            if (!COMPRESSION_ZLIB.equalsIgnoreCase(compression)) {
+                logger.warn("server {} does not support {} compression, use zlib instead", address, compression);
+            }
+            return COMPRESSION_ZLIB;
+        }
+        logger.warn("server {} does not support compressed protocol, use uncompressed protocol", address);
+        return COMPRESSION_NONE;
+    }
+
     private void auth323(SocketChannel channel, byte packetSequenceNumber, byte[] seed) throws IOException {
         // auth 323
         Reply323Packet r323 = new Reply323Packet();
@@ -419,4 +471,42 @@ public class MysqlConnector {
         return serverVersion;
     }
 
+    public String getCompression() {
+        return compression;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression == null ? COMPRESSION_NONE : compression.trim().toLowerCase();
+    }
+
+    public int getZstdLevel() {
+        return zstdLevel;
+    }
+
+    public void setZstdLevel(int zstdLevel) {
+        this.zstdLevel = zstdLevel;
+    }
+
+    /**
+     * 实际协商的压缩算法, 连接建立后有效
+     */
+    public String getNegotiatedCompression() {
+        return negotiated;
+    }
+
+    /**
+     * 压缩协议下网络实际接收的字节数统计
+     */
+    public void setReceivedWireBytes(AtomicLong receivedWireBytes) {
+        this.receivedWireBytes = receivedWireBytes;
+    }
+
+    public String getSocketChannel() {
+        return socketChannel;
+    }
+
+    public void setSocketChannel(String socketChannel) {
+        this.socketChannel = socketChannel;
+    }
+
 }
@@ -0,0 +1,272 @@
+package com.alibaba.otter.canal.parse.driver.mysql;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.parse.driver.mysql.packets.client.QueryCommandPacket;
+import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ErrorPacket;
+import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ResultSetPacket;
+import com.alibaba.otter.canal.parse.driver.mysql.utils.PacketManager;
+
+/**
+ * 元数据查询通道, 在多个连接上pipeline执行查询, 多个线程的查询可以并发进行
+ *
+ * <pre>
+ * 1. 查询命令直接写出, 不等待同一个连接上前一个查询的结果
+ * 2. 每个连接一个读线程, 按发送顺序读取结果并完成对应的future
+ * 3. 所有连接的未完成查询数达到connections * maxInFlight时, 提交查询的线程等待
+ * 4. 连接异常时该连接上未完成的查询全部失败, 下一次提交时重新建立连接
+ * </pre>
+ *
+ * socket实现与canal.socketChannel一致(bio/netty), 可以通过setSocketChannel单独指定
+ * 注意: 为保证按顺序读取结果, 通道使用的连接不开启压缩协议
+ *
+ * @version 1.1.6
+ */
+public class MysqlQueryChannel {
+
+    private static final Logger  logger        = LoggerFactory.getLogger(MysqlQueryChannel.class);
+
+    private final MysqlConnector template;
+    private final int            maxInFlight;
+    private final Semaphore      permits;
+    private final Session[]      sessions;
+    private final AtomicInteger  next          = new AtomicInteger();
+    private final AtomicInteger  threads       = new AtomicInteger();
+    private volatile boolean     running       = false;
+    private String               socketChannel;                          // bio or netty, 为空时使用canal.socketChannel
+
+    public MysqlQueryChannel(MysqlConnector template, int connections, int maxInFlight){
+        if (connections <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("connections and maxInFlight must be positive");
+        }
+        this.template = template;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(connections * maxInFlight);
+        this.sessions = new Session[connections];
+    }
+
+    public void start() {
+        running = true;
+    }
+
+    public void stop() {
+        running = false;
+        for (int i = 0; i < sessions.length; i++) {
+            Session session;
+            synchronized (this) {
+                session = sessions[i];
+                sessions[i] = null;
+            }
+            if (session != null) {
+                session.close(new IOException("query channel is stopped"));
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 异步执行查询, 未完成的查询达到上限时等待, 最长等待soTimeout
+     */
+    public CompletableFuture<ResultSetPacket> query(String queryString) {
+        CompletableFuture<ResultSetPacket> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new IOException("query channel is not running"));
+            return future;
+        }
+
+        try {
+            if (!permits.tryAcquire(template.getSoTimeout(), TimeUnit.MILLISECONDS)) {
+                future.completeExceptionally(new IOException("too many in-flight queries, wait timeout"));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new IOException("interrupted while waiting for query channel", e));
+            return future;
+        }
+
+        future.whenComplete((result, e) -> permits.release());
+        int index = choose();
+        try {
+            session(index).submit(queryString, future);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 同步执行查询, 当前线程等待结果, 其他线程的查询不受影响
+     */
+    public ResultSetPacket queryAndWait(String queryString) throws IOException {
+        try {
+            return query(queryString).get(template.getSoTimeout(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("query timeout with command: " + queryString, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted with command: " + queryString, e);
+        }
+    }
+
+    // 选择未完成查询最少的连接
+    private int choose() {
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % sessions.length;
+        int index = start;
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < sessions.length; i++) {
+            int current = (start + i) % sessions.length;
+            Session session = sessions[current];
+            int inflight = session == null ? 0 : session.inflight.size();
+            if (inflight < min) {
+                min = inflight;
+                index = current;
+            }
+            if (inflight == 0) {
+                break;
+            }
+        }
+        return index;
+    }
+
+    private Session session(int index) throws IOException {
+        synchronized (this) {
+            Session session = sessions[index];
+            if (session != null && !session.closed) {
+                return session;
+            }
+
+            MysqlConnector connector = template.fork();
+            connector.setCompression(MysqlConnector.COMPRESSION_NONE);
+            if (socketChannel != null) {
+                connector.setSocketChannel(socketChannel);
+            }
+            connector.connect();
+            session = new Session(connector);
+            sessions[index] = session;
+            return session;
+        }
+    }
+
+    private static class PendingQuery {
+
+        private final String                             queryString;
+        private final CompletableFuture<ResultSetPacket> future;
+
+        PendingQuery(String queryString, CompletableFuture<ResultSetPacket> future){
+            this.queryString = queryString;
+            this.future = future;
+        }
+    }
+
+    private class Session implements Runnable {
+
+        private final MysqlConnector              connector;
+        private final MysqlQueryExecutor          executor;
+        private final BlockingQueue<PendingQuery> inflight = new LinkedBlockingQueue<>();
+        private volatile boolean                  closed   = false;
+
+        Session(MysqlConnector connector) throws IOException{
+            this.connector = connector;
+            this.executor = new MysqlQueryExecutor(connector);
+            Thread reader = new Thread(this, "MysqlQueryChannel-" + threads.incrementAndGet());
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        synchronized void submit(String queryString, CompletableFuture<ResultSetPacket> future) throws IOException {
+            if (closed) {
+                throw new IOException("connection of query channel is closed");
+            }
+
+            QueryCommandPacket cmd = new QueryCommandPacket();
+            cmd.setQueryString(queryString);
+            // 先入队再写出, 保证读线程按发送顺序匹配结果
+            inflight.add(new PendingQuery(queryString, future));
+            try {
+                PacketManager.writeBody(connector.getChannel(), cmd.toBytes());
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        public void run() {
+            Throwable cause = null;
+            try {
+                while (running && !closed) {
+                    PendingQuery query = inflight.poll(1000, TimeUnit.MILLISECONDS);
+                    if (query == null) {
+                        continue;
+                    }
+
+                    try {
+                        byte[] body = executor.readNextPacket();
+                        if (body[0] < 0) {
+                            // 服务端返回错误, 连接仍然可用
+                            ErrorPacket packet = new ErrorPacket();
+                            packet.fromBytes(body);
+                            query.future.completeExceptionally(new IOException(packet + "\n with command: "
+                                                                               + query.queryString));
+                        } else {
+                            query.future.complete(executor.readResultSet(body));
+                        }
+                    } catch (Throwable e) {
+                        query.future.completeExceptionally(e);
+                        throw e;
+                    }
+                }
+            } catch (Throwable e) {
+                if (!closed) {
+                    logger.warn("query channel connection to {} failed", connector.getAddress(), e);
+                }
+                cause = e;
+            } finally {
+                close(cause != null ? cause : new IOException("query channel is stopped"));
+            }
+        }
+
+        void close(Throwable cause) {
+            closed = true;
+            try {
+                connector.disconnect();
+            } catch (IOException e) {
+                // ignore
+            }
+
+            // 与submit互斥, 关闭后不会再有新的查询入队
+            synchronized (this) {
+                PendingQuery query;
+                while ((query = inflight.poll()) != null) {
+                    query.future.completeExceptionally(cause instanceof IOException ? cause : new IOException(cause));
+                }
+            }
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setSocketChannel(String socketChannel) {
+        this.socketChannel = socketChannel;
+    }
+}
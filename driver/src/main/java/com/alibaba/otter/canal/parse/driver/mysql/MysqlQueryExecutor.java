@@ -61,6 +61,13 @@ public class MysqlQueryExecutor {
             throw new IOException(packet + "\n with command: " + queryString);
         }
 
+        return readResultSet(body);
+    }
+
+    /**
+     * 读取结果集, body为已经读取的Result Set Header Packet
+     */
+    public ResultSetPacket readResultSet(byte[] body) throws IOException {
         ResultSetHeaderPacket rsHeader = new ResultSetHeaderPacket();
         rsHeader.fromBytes(body);
 
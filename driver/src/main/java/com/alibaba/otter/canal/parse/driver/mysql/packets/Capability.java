@@ -167,4 +167,10 @@ public interface Capability {
      */
     int CLIENT_DEPRECATE_EOF                  = 0x01000000;
 
+    // Compression protocol extended to support zstd compression method.
+    // Server: Supports zstd compression. Client: Switches to zstd compressed
+    // protocol after successful authentication, the compression level is
+    // appended to Handshake Response Packet. (MySQL 8.0.18+)
+    int CLIENT_ZSTD_COMPRESSION_ALGORITHM     = 0x04000000;
+
 }
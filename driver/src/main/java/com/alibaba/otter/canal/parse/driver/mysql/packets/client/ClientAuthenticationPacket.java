@@ -25,6 +25,7 @@ public class ClientAuthenticationPacket extends PacketWithHeaderPacket {
     private int    serverCapabilities;
     private byte[] scrumbleBuff;
     private byte[] authPluginName;
+    private int    zstdCompressionLevel;
 
     public void fromBytes(byte[] data) {
         // bypass since nowhere to use.
@@ -43,6 +44,7 @@ public class ClientAuthenticationPacket extends PacketWithHeaderPacket {
      *  n (Length Coded Binary)      scramble_buff (1 + x bytes)
      *  n (Null-Terminated String)   databasename (optional)
      *  n (Null-Terminated String)   auth plugin name (optional)
+     *  1                            zstd compression level (optional)
      * </pre>
      * 
      * @throws IOException
@@ -81,6 +83,10 @@ public class ClientAuthenticationPacket extends PacketWithHeaderPacket {
         if (getAuthPluginName() != null) {
             ByteHelper.writeNullTerminated(getAuthPluginName(), out);
         }
+        // 9 . zstd compression level (optional)
+        if ((clientCapability & Capability.CLIENT_ZSTD_COMPRESSION_ALGORITHM) != 0) {
+            out.write(zstdCompressionLevel);
+        }
         // end write
         return out.toByteArray();
     }
@@ -140,6 +146,21 @@ public class ClientAuthenticationPacket extends PacketWithHeaderPacket {
         return authPluginName;
     }
 
+    /**
+     * 开启zlib压缩协议
+     */
+    public void enableCompress() {
+        this.clientCapability |= Capability.CLIENT_COMPRESS;
+    }
+
+    /**
+     * 开启zstd压缩协议
+     */
+    public void enableZstdCompress(int level) {
+        this.clientCapability |= Capability.CLIENT_ZSTD_COMPRESSION_ALGORITHM;
+        this.zstdCompressionLevel = level;
+    }
+
     public void setAuthPluginName(byte[] authPluginName) {
         this.authPluginName = authPluginName;
         if (authPluginName != null) {
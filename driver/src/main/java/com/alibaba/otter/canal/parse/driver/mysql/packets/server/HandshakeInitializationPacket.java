@@ -79,6 +79,8 @@ public class HandshakeInitializationPacket extends PacketWithHeaderPacket {
             int capabilityFlags2 = ByteHelper.readUnsignedShortLittleEndian(data, index);
             index += 2;
             int capabilities = (capabilityFlags2 << 16) | this.serverCapabilities;
+            // 保留高位的capability, 用于协商压缩算法
+            this.serverCapabilities = capabilities;
             // int authPluginDataLen = -1;
             // if ((capabilities & Capability.CLIENT_PLUGIN_AUTH) != 0) {
             // authPluginDataLen = data[index];
@@ -0,0 +1,226 @@
+package com.alibaba.otter.canal.parse.driver.mysql.socket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * mysql压缩协议, 认证成功后包装原始的链接, 对上层透明
+ *
+ * <pre>
+ * 压缩包格式: 3字节压缩后长度 + 1字节压缩包序号 + 3字节压缩前长度(0代表未压缩) + 数据
+ * 数据解压后为一个或多个(也可能是不完整的)普通mysql包, 读取时按普通协议的字节流返回
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class CompressedSocketChannel implements SocketChannel {
+
+    public static final int     HEADER_LEN          = 7;
+    private static final int    MIN_COMPRESS_LENGTH = 50;       // 小于该长度不压缩, 与mysql一致
+    private static final int    MAX_PAYLOAD_LENGTH  = 0xffffff;
+    private static final byte[] EMPTY               = new byte[0];
+
+    private final SocketChannel channel;
+    private final boolean       zstd;
+    private final int           zstdLevel;
+    private final AtomicLong    receivedWireBytes;              // 网络上实际接收的字节数, 可以为null
+    private Inflater            inflater;
+    private Deflater            deflater;
+
+    private byte[]              buffer              = EMPTY;    // 已解压未读取的数据
+    private int                 position;
+
+    /**
+     * @param channel 已经完成认证的链接
+     * @param zstd true使用zstd, false使用zlib
+     * @param zstdLevel zstd压缩级别
+     * @param receivedWireBytes 网络接收字节数统计, 可以为null
+     */
+    public CompressedSocketChannel(SocketChannel channel, boolean zstd, int zstdLevel, AtomicLong receivedWireBytes){
+        this.channel = channel;
+        this.zstd = zstd;
+        this.zstdLevel = zstdLevel;
+        this.receivedWireBytes = receivedWireBytes;
+        if (!zstd) {
+            this.inflater = new Inflater();
+            this.deflater = new Deflater();
+        }
+    }
+
+    public void write(byte[]... buf) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] bs : buf) {
+            out.write(bs);
+        }
+        byte[] payload = out.toByteArray();
+        // 压缩包序号从第一个普通包的序号开始
+        int sequence = payload.length > 3 ? payload[3] : 0;
+        int offset = 0;
+        do {
+            int len = Math.min(MAX_PAYLOAD_LENGTH, payload.length - offset);
+            writeFrame(payload, offset, len, sequence++);
+            offset += len;
+        } while (offset < payload.length);
+    }
+
+    private void writeFrame(byte[] payload, int offset, int len, int sequence) throws IOException {
+        byte[] data = null;
+        if (len >= MIN_COMPRESS_LENGTH) {
+            data = compress(payload, offset, len);
+            if (data.length >= len) {
+                // 压缩后没有变小, 直接发送原始数据
+                data = null;
+            }
+        }
+
+        byte[] header = new byte[HEADER_LEN];
+        if (data == null) {
+            writeMedium(header, 0, len);
+            header[3] = (byte) sequence;
+            writeMedium(header, 4, 0);
+            data = new byte[len];
+            System.arraycopy(payload, offset, data, 0, len);
+        } else {
+            writeMedium(header, 0, data.length);
+            header[3] = (byte) sequence;
+            writeMedium(header, 4, len);
+        }
+        channel.write(header, data);
+    }
+
+    public byte[] read(int readSize) throws IOException {
+        byte[] data = new byte[readSize];
+        read(data, 0, readSize, -1);
+        return data;
+    }
+
+    public byte[] read(int readSize, int timeout) throws IOException {
+        byte[] data = new byte[readSize];
+        read(data, 0, readSize, timeout);
+        return data;
+    }
+
+    @Override
+    public void read(byte[] data, int off, int len, int timeout) throws IOException {
+        int n = 0;
+        while (n < len) {
+            if (position >= buffer.length) {
+                readFrame(timeout);
+                continue;
+            }
+
+            int size = Math.min(len - n, buffer.length - position);
+            System.arraycopy(buffer, position, data, off + n, size);
+            position += size;
+            n += size;
+        }
+    }
+
+    private void readFrame(int timeout) throws IOException {
+        byte[] header = timeout > 0 ? channel.read(HEADER_LEN, timeout) : channel.read(HEADER_LEN);
+        int compressedLength = readMedium(header, 0);
+        int uncompressedLength = readMedium(header, 4);
+        byte[] data = timeout > 0 ? channel.read(compressedLength, timeout) : channel.read(compressedLength);
+        if (receivedWireBytes != null) {
+            receivedWireBytes.addAndGet(HEADER_LEN + compressedLength);
+        }
+
+        buffer = uncompressedLength == 0 ? data : decompress(data, uncompressedLength);
+        position = 0;
+    }
+
+    private byte[] compress(byte[] payload, int offset, int len) throws IOException {
+        if (zstd) {
+            byte[] src = payload;
+            if (offset != 0 || len != payload.length) {
+                src = new byte[len];
+                System.arraycopy(payload, offset, src, 0, len);
+            }
+            return Zstd.compress(src, zstdLevel);
+        }
+
+        deflater.reset();
+        deflater.setInput(payload, offset, len);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(len);
+        byte[] buf = new byte[Math.min(len, 8192)];
+        while (!deflater.finished()) {
+            int size = deflater.deflate(buf);
+            out.write(buf, 0, size);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] decompress(byte[] data, int uncompressedLength) throws IOException {
+        if (zstd) {
+            byte[] dst = new byte[uncompressedLength];
+            long size = Zstd.decompressByteArray(dst, 0, dst.length, data, 0, data.length);
+            if (Zstd.isError(size) || size != uncompressedLength) {
+                throw new IOException("Decompress zstd packet failed: "
+                                      + (Zstd.isError(size) ? Zstd.getErrorName(size) : "size mismatch " + size));
+            }
+            return dst;
+        }
+
+        inflater.reset();
+        inflater.setInput(data);
+        byte[] dst = new byte[uncompressedLength];
+        try {
+            int n = 0;
+            while (n < uncompressedLength && !inflater.finished()) {
+                int size = inflater.inflate(dst, n, uncompressedLength - n);
+                if (size == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += size;
+            }
+            if (n != uncompressedLength) {
+                throw new IOException("Decompress zlib packet failed, expected " + uncompressedLength
+                                      + " bytes, actual " + n + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Decompress zlib packet failed", e);
+        }
+        return dst;
+    }
+
+    private static int readMedium(byte[] data, int index) {
+        return (data[index] & 0xff) | ((data[index + 1] & 0xff) << 8) | ((data[index + 2] & 0xff) << 16);
+    }
+
+    private static void writeMedium(byte[] data, int index, int value) {
+        data[index] = (byte) (value & 0xff);
+        data[index + 1] = (byte) ((value >>> 8) & 0xff);
+        data[index + 2] = (byte) ((value >>> 16) & 0xff);
+    }
+
+    public boolean isConnected() {
+        return channel.isConnected();
+    }
+
+    public SocketAddress getRemoteSocketAddress() {
+        return channel.getRemoteSocketAddress();
+    }
+
+    public SocketAddress getLocalSocketAddress() {
+        return channel.getLocalSocketAddress();
+    }
+
+    public void close() {
+        channel.close();
+        if (inflater != null) {
+            inflater.end();
+        }
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+}
@@ -11,7 +11,16 @@ import org.apache.commons.lang.StringUtils;
 public abstract class SocketChannelPool {
 
     public static SocketChannel open(SocketAddress address) throws Exception {
-        String type = chooseSocketChannel();
+        return open(address, null);
+    }
+
+    /**
+     * 指定socket实现(bio/netty), 为空时使用canal.socketChannel的配置
+     */
+    public static SocketChannel open(SocketAddress address, String type) throws Exception {
+        if (StringUtils.isEmpty(type)) {
+            type = chooseSocketChannel();
+        }
         if ("netty".equalsIgnoreCase(type)) {
             return NettySocketChannelPool.open(address);
         } else {
@@ -0,0 +1,264 @@
+package com.alibaba.otter.canal.parse.driver.mysql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.driver.mysql.packets.Capability;
+import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ResultSetPacket;
+
+public class MysqlQueryChannelTest {
+
+    private FakeMysqlServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeMysqlServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop();
+    }
+
+    @Test
+    public void testPipelinedQueryWithBio() throws Exception {
+        assertPipelinedQuery("bio");
+    }
+
+    @Test
+    public void testPipelinedQueryWithNetty() throws Exception {
+        // netty 4.1.6在jdk9以上需要--add-opens才能初始化
+        Assume.assumeTrue(System.getProperty("java.specification.version").startsWith("1."));
+        assertPipelinedQuery("netty");
+    }
+
+    @Test
+    public void testErrorKeepsConnection() throws Exception {
+        MysqlQueryChannel channel = new MysqlQueryChannel(connector(), 1, 4);
+        channel.setSocketChannel("bio");
+        channel.start();
+        try {
+            CompletableFuture<ResultSetPacket> error = channel.query("error");
+            CompletableFuture<ResultSetPacket> ok = channel.query("select 1");
+            try {
+                error.get(5, TimeUnit.SECONDS);
+                Assert.fail("error packet is expected");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause().getMessage().contains("fake error"));
+            }
+            Assert.assertEquals("select 1", ok.get(5, TimeUnit.SECONDS).getFieldValues().get(0));
+            Assert.assertEquals(1, server.connections.get());
+        } finally {
+            channel.stop();
+        }
+
+        // 停止后不再接受查询
+        try {
+            channel.queryAndWait("select 1");
+            Assert.fail("channel is stopped");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void assertPipelinedQuery(String socketChannel) throws Exception {
+        MysqlQueryChannel channel = new MysqlQueryChannel(connector(), 2, 4);
+        channel.setSocketChannel(socketChannel);
+        channel.start();
+        try {
+            List<CompletableFuture<ResultSetPacket>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(channel.query("show create table `test`.`t" + i + "`"));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                ResultSetPacket packet = futures.get(i).get(10, TimeUnit.SECONDS);
+                Assert.assertEquals("show create table `test`.`t" + i + "`", packet.getFieldValues().get(0));
+                Assert.assertEquals("sql", packet.getFieldDescriptors().get(0).getName());
+            }
+            Assert.assertEquals("select 1", channel.queryAndWait("select 1").getFieldValues().get(0));
+            Assert.assertTrue(server.connections.get() <= 2);
+        } finally {
+            channel.stop();
+        }
+    }
+
+    private MysqlConnector connector() {
+        MysqlConnector connector = new MysqlConnector(new InetSocketAddress("127.0.0.1", server.getPort()),
+            "canal",
+            "canal");
+        connector.setSoTimeout(10 * 1000);
+        return connector;
+    }
+
+    /**
+     * 只支持握手和查询的mysql服务端, 查询结果为一行一列的sql原文, 顺序处理每个连接上的命令
+     */
+    private static class FakeMysqlServer implements Runnable {
+
+        private final ServerSocket  serverSocket;
+        private final AtomicInteger connections = new AtomicInteger();
+        private final List<Socket>  sockets     = new ArrayList<>();
+
+        FakeMysqlServer() throws IOException{
+            serverSocket = new ServerSocket(0);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void start() {
+            Thread thread = new Thread(this, "fake-mysql-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws IOException {
+            serverSocket.close();
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    socket.close();
+                }
+            }
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    synchronized (sockets) {
+                        sockets.add(socket);
+                    }
+                    connections.incrementAndGet();
+                    Thread thread = new Thread(() -> serve(socket), "fake-mysql-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException e) {
+                // server closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                handshake(out);
+                readPacket(in); // client authentication
+                writePacket(out, 2, new byte[] { 0, 0, 0, 2, 0, 0, 0 });
+
+                while (true) {
+                    byte[] command = readPacket(in);
+                    if (command[0] != 0x03) {
+                        break; // quit
+                    }
+                    String sql = new String(command, 1, command.length - 1, StandardCharsets.UTF_8);
+                    if ("error".equals(sql)) {
+                        ByteArrayOutputStream error = new ByteArrayOutputStream();
+                        error.write(0xff);
+                        error.write(new byte[] { 0x48, 0x04, '#' });
+                        error.write("HY000fake error".getBytes(StandardCharsets.UTF_8));
+                        writePacket(out, 1, error.toByteArray());
+                    } else {
+                        writeResultSet(out, sql);
+                    }
+                }
+            } catch (IOException e) {
+                // connection closed
+            }
+        }
+
+        private void handshake(OutputStream out) throws IOException {
+            ByteArrayOutputStream packet = new ByteArrayOutputStream();
+            packet.write(10);
+            packet.write("5.7.0-fake".getBytes(StandardCharsets.UTF_8));
+            packet.write(0);
+            packet.write(new byte[] { 1, 0, 0, 0 }); // thread id
+            packet.write("12345678".getBytes(StandardCharsets.UTF_8));
+            packet.write(0);
+            int capabilities = Capability.CLIENT_PROTOCOL_41 | Capability.CLIENT_SECURE_CONNECTION;
+            packet.write(capabilities & 0xff);
+            packet.write((capabilities >> 8) & 0xff);
+            packet.write(33); // charset
+            packet.write(new byte[] { 2, 0 }); // status
+            packet.write(new byte[] { 0, 0 }); // capabilities high
+            packet.write(21);
+            packet.write(new byte[10]);
+            packet.write("abcdefghijkl".getBytes(StandardCharsets.UTF_8));
+            packet.write(0);
+            writePacket(out, 0, packet.toByteArray());
+        }
+
+        private void writeResultSet(OutputStream out, String sql) throws IOException {
+            ByteArrayOutputStream field = new ByteArrayOutputStream();
+            for (String name : new String[] { "def", "", "", "", "sql", "" }) {
+                writeLengthCoded(field, name.getBytes(StandardCharsets.UTF_8));
+            }
+            field.write(0x0c);
+            field.write(new byte[] { 33, 0 }); // charset
+            field.write(new byte[] { (byte) 0xff, 0, 0, 0 }); // length
+            field.write(0xfd); // var string
+            field.write(new byte[] { 0, 0, 0, 0, 0 }); // flags, decimals, filler
+            ByteArrayOutputStream row = new ByteArrayOutputStream();
+            writeLengthCoded(row, sql.getBytes(StandardCharsets.UTF_8));
+            byte[] eof = new byte[] { (byte) 0xfe, 0, 0, 2, 0 };
+
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            response.write(packet(1, new byte[] { 1 }));
+            response.write(packet(2, field.toByteArray()));
+            response.write(packet(3, eof));
+            response.write(packet(4, row.toByteArray()));
+            response.write(packet(5, eof));
+            out.write(response.toByteArray());
+            out.flush();
+        }
+
+        private void writeLengthCoded(ByteArrayOutputStream out, byte[] data) throws IOException {
+            out.write(data.length); // 测试数据都小于251
+            out.write(data);
+        }
+
+        private byte[] readPacket(DataInputStream in) throws IOException {
+            byte[] header = new byte[4];
+            in.readFully(header);
+            int length = (header[0] & 0xff) | ((header[1] & 0xff) << 8) | ((header[2] & 0xff) << 16);
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return body;
+        }
+
+        private void writePacket(OutputStream out, int sequence, byte[] body) throws IOException {
+            out.write(packet(sequence, body));
+            out.flush();
+        }
+
+        private byte[] packet(int sequence, byte[] body) {
+            byte[] packet = new byte[body.length + 4];
+            packet[0] = (byte) body.length;
+            packet[1] = (byte) (body.length >> 8);
+            packet[2] = (byte) (body.length >> 16);
+            packet[3] = (byte) sequence;
+            System.arraycopy(body, 0, packet, 4, body.length);
+            return packet;
+        }
+    }
+}
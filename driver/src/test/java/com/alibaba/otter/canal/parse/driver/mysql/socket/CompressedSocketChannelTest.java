@@ -0,0 +1,126 @@
+package com.alibaba.otter.canal.parse.driver.mysql.socket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressedSocketChannelTest {
+
+    @Test
+    public void testZlibRoundTrip() throws IOException {
+        assertRoundTrip(false);
+    }
+
+    @Test
+    public void testZstdRoundTrip() throws IOException {
+        assertRoundTrip(true);
+    }
+
+    @Test
+    public void testSmallPacketNotCompressed() throws IOException {
+        MemorySocketChannel memory = new MemorySocketChannel();
+        CompressedSocketChannel channel = new CompressedSocketChannel(memory, false, 3, null);
+        byte[] packet = packet(1, new byte[] { 1, 2, 3 });
+        channel.write(packet);
+
+        byte[] wire = memory.out.toByteArray();
+        Assert.assertEquals(CompressedSocketChannel.HEADER_LEN + packet.length, wire.length);
+        Assert.assertEquals(packet.length, wire[0]);
+        Assert.assertEquals(1, wire[3]); // 压缩包序号与普通包一致
+        Assert.assertEquals(0, wire[4] | wire[5] | wire[6]);
+    }
+
+    private void assertRoundTrip(boolean zstd) throws IOException {
+        byte[] body = new byte[64 * 1024];
+        Random random = new Random(0);
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) ('a' + random.nextInt(4));
+        }
+        byte[] first = packet(0, body);
+        byte[] second = packet(1, new byte[] { 1, 2, 3 });
+
+        MemorySocketChannel memory = new MemorySocketChannel();
+        new CompressedSocketChannel(memory, zstd, 3, null).write(first);
+        new CompressedSocketChannel(memory, zstd, 3, null).write(second);
+        byte[] wire = memory.out.toByteArray();
+        Assert.assertTrue(wire.length < first.length);
+
+        AtomicLong received = new AtomicLong();
+        memory.in = wire;
+        CompressedSocketChannel reader = new CompressedSocketChannel(memory, zstd, 3, received);
+        // 按普通协议的方式读取: 先读包头, 再读包体
+        Assert.assertArrayEquals(header(first), reader.read(4));
+        Assert.assertArrayEquals(body, reader.read(body.length, 1000));
+        byte[] data = new byte[second.length];
+        reader.read(data, 0, data.length, 1000);
+        Assert.assertArrayEquals(second, data);
+        Assert.assertEquals(wire.length, received.get());
+    }
+
+    private static byte[] packet(int sequence, byte[] body) {
+        byte[] packet = new byte[4 + body.length];
+        packet[0] = (byte) (body.length & 0xff);
+        packet[1] = (byte) ((body.length >>> 8) & 0xff);
+        packet[2] = (byte) ((body.length >>> 16) & 0xff);
+        packet[3] = (byte) sequence;
+        System.arraycopy(body, 0, packet, 4, body.length);
+        return packet;
+    }
+
+    private static byte[] header(byte[] packet) {
+        byte[] header = new byte[4];
+        System.arraycopy(packet, 0, header, 0, 4);
+        return header;
+    }
+
+    private static class MemorySocketChannel implements SocketChannel {
+
+        private ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private byte[]                in  = new byte[0];
+        private int                   position;
+
+        public void write(byte[]... buf) throws IOException {
+            for (byte[] bs : buf) {
+                out.write(bs);
+            }
+        }
+
+        public byte[] read(int readSize) throws IOException {
+            byte[] data = new byte[readSize];
+            read(data, 0, readSize, 0);
+            return data;
+        }
+
+        public byte[] read(int readSize, int timeout) throws IOException {
+            return read(readSize);
+        }
+
+        public void read(byte[] data, int off, int len, int timeout) throws IOException {
+            if (position + len > in.length) {
+                throw new IOException("EOF");
+            }
+            System.arraycopy(in, position, data, off, len);
+            position += len;
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public SocketAddress getRemoteSocketAddress() {
+            return null;
+        }
+
+        public SocketAddress getLocalSocketAddress() {
+            return null;
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -121,6 +121,10 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
     protected void afterDump(ErosaConnection connection) {
     }
 
+    // 事务消费成功后的回调
+    protected void afterTransactionConsumed(List<CanalEntry.Entry> transaction) {
+    }
+
     public void sendAlarm(String destination, String msg) {
         if (this.alarmHandler != null) {
             this.alarmHandler.sendAlarm(destination, msg);
@@ -143,6 +147,7 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
             if (position != null) { // 可能position为空
                 logPositionManager.persistLogPosition(AbstractEventParser.this.destination, position);
             }
+            afterTransactionConsumed(transaction);
         });
     }
 
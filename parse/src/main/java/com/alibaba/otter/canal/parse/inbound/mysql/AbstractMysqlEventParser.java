@@ -16,9 +16,10 @@ import com.alibaba.otter.canal.parse.inbound.mysql.tsdb.DefaultTableMetaTSDBFact
 import com.alibaba.otter.canal.parse.inbound.mysql.tsdb.TableMetaTSDB;
 import com.alibaba.otter.canal.parse.inbound.mysql.tsdb.TableMetaTSDBFactory;
 import com.alibaba.otter.canal.protocol.position.EntryPosition;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
 import org.apache.commons.lang.StringUtils;
 
-public abstract class AbstractMysqlEventParser extends AbstractEventParser {
+public abstract class AbstractMysqlEventParser extends AbstractEventParser<LogEvent> {
 
     protected static final long    BINLOG_START_OFFEST       = 4L;
 
@@ -26,12 +27,18 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
     protected boolean              enableTsdb                = false;
     protected int                  tsdbSnapshotInterval      = 24;
     protected int                  tsdbSnapshotExpire        = 360;
+    // 初始化dump表结构的并发连接数
+    protected int                  tsdbDumpThreadSize        = 4;
     protected String               tsdbSpringXml;
     protected TableMetaTSDB        tableMetaTSDB;
 
     // 编码信息
     protected byte                 connectionCharsetNumber   = (byte) 33;
     protected Charset              connectionCharset         = Charset.forName("UTF-8");
+    // 按binlog中每一列的charset解码字符串, 默认都使用connectionCharset
+    protected boolean              columnCharset             = false;
+    // json列不解析为文本, 直接输出json二进制数据
+    protected boolean              jsonBinary                = false;
     protected boolean              filterQueryDcl            = false;
     protected boolean              filterQueryDml            = false;
     protected boolean              filterQueryDdl            = false;
@@ -44,7 +51,13 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
     protected boolean              filterDmlDelete           = false;
     // instance received binlog bytes
     protected final AtomicLong     receivedBinlogBytes       = new AtomicLong(0L);
+    // instance received wire bytes, 开启协议压缩时为压缩后的字节数
+    protected final AtomicLong     receivedWireBytes         = new AtomicLong(0L);
     private final AtomicLong       eventsPublishBlockingTime = new AtomicLong(0L);
+    // tsdb初始化时dump表结构的耗时(ms)
+    protected final AtomicLong     tableMetaDumpTime         = new AtomicLong(0L);
+    // 解析耗时采样统计
+    protected final ParserProfiler profiler                  = new ParserProfiler();
 
     protected BinlogParser buildParser() {
         LogEventConvert convert = new LogEventConvert();
@@ -60,12 +73,15 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
         convert.setFieldBlackFilterMap(getFieldBlackFilterMap());
 
         convert.setCharset(connectionCharset);
+        convert.setColumnCharset(columnCharset);
+        convert.setJsonBinary(jsonBinary);
         convert.setFilterQueryDcl(filterQueryDcl);
         convert.setFilterQueryDml(filterQueryDml);
         convert.setFilterQueryDdl(filterQueryDdl);
         convert.setFilterRows(filterRows);
         convert.setFilterTableError(filterTableError);
         convert.setUseDruidDdlFilter(useDruidDdlFilter);
+        convert.setProfiler(profiler);
         return convert;
     }
 
@@ -180,6 +196,7 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
             transactionBuffer,
             destination, filterDmlInsert, filterDmlUpdate, filterDmlDelete);
         mysqlMultiStageCoprocessor.setEventsPublishBlockingTime(eventsPublishBlockingTime);
+        mysqlMultiStageCoprocessor.setProfiler(profiler);
         return mysqlMultiStageCoprocessor;
     }
 
@@ -221,6 +238,14 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
         this.filterTableError = filterTableError;
     }
 
+    public void setColumnCharset(boolean columnCharset) {
+        this.columnCharset = columnCharset;
+    }
+
+    public void setJsonBinary(boolean jsonBinary) {
+        this.jsonBinary = jsonBinary;
+    }
+
     public boolean isUseDruidDdlFilter() {
         return useDruidDdlFilter;
     }
@@ -285,6 +310,25 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
         return this.receivedBinlogBytes;
     }
 
+    public AtomicLong getReceivedWireBytes() {
+        return this.receivedWireBytes;
+    }
+
+    public AtomicLong getTableMetaDumpTime() {
+        return this.tableMetaDumpTime;
+    }
+
+    public ParserProfiler getProfiler() {
+        return this.profiler;
+    }
+
+    /**
+     * 解析耗时的采样率, 每profileSampleRate个事件采样一个, 0表示关闭
+     */
+    public void setProfileSampleRate(int profileSampleRate) {
+        this.profiler.setSampleRate(profileSampleRate);
+    }
+
     public int getTsdbSnapshotInterval() {
         return tsdbSnapshotInterval;
     }
@@ -301,4 +345,12 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
         this.tsdbSnapshotExpire = tsdbSnapshotExpire;
     }
 
+    public int getTsdbDumpThreadSize() {
+        return tsdbDumpThreadSize;
+    }
+
+    public void setTsdbDumpThreadSize(int tsdbDumpThreadSize) {
+        this.tsdbDumpThreadSize = tsdbDumpThreadSize;
+    }
+
 }
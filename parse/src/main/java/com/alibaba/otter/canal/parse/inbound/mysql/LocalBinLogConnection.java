@@ -3,8 +3,15 @@ package com.alibaba.otter.canal.parse.inbound.mysql;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.StringUtils;
@@ -18,12 +25,13 @@ import com.alibaba.otter.canal.parse.inbound.ErosaConnection;
 import com.alibaba.otter.canal.parse.inbound.MultiStageCoprocessor;
 import com.alibaba.otter.canal.parse.inbound.SinkFunction;
 import com.alibaba.otter.canal.parse.inbound.mysql.local.BinLogFileQueue;
-import com.taobao.tddl.dbsync.binlog.FileLogFetcher;
 import com.taobao.tddl.dbsync.binlog.LogContext;
 import com.taobao.tddl.dbsync.binlog.LogDecoder;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.MmapLogFetcher;
 import com.taobao.tddl.dbsync.binlog.event.QueryLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TransactionPayloadLogEvent;
 
 /**
  * local bin log connection (not real connection)
@@ -32,13 +40,15 @@ import com.taobao.tddl.dbsync.binlog.event.QueryLogEvent;
  */
 public class LocalBinLogConnection implements ErosaConnection {
 
-    private static final Logger logger     = LoggerFactory.getLogger(LocalBinLogConnection.class);
-    private BinLogFileQueue     binlogs    = null;
+    private static final Logger logger        = LoggerFactory.getLogger(LocalBinLogConnection.class);
+    private static final Object END_OF_FILE   = new Object();
+    private BinLogFileQueue     binlogs       = null;
     private boolean             needWait;
     private String              directory;
-    private int                 bufferSize = 16 * 1024;
-    private boolean             running    = false;
+    private int                 bufferSize    = 16 * 1024;
+    private boolean             running       = false;
     private long                serverId;
+    private int                 parallelFiles = 1;                                             // 同时解析的binlog文件数, 大于1时提前解码后续文件
 
     /** rdsOosMode binlog 的 serverId 是两个 */
     private boolean             isRdsOssMode = false;
@@ -98,12 +108,18 @@ public class LocalBinLogConnection implements ErosaConnection {
     }
 
     public void dump(String binlogfilename, Long binlogPosition, SinkFunction func) throws IOException {
+        if (parallelFiles > 1) {
+            parallelDump(binlogfilename, binlogPosition, true, func::sink);
+            return;
+        }
+
         File current = new File(directory, binlogfilename);
 
-        try (FileLogFetcher fetcher = new FileLogFetcher(bufferSize)) {
+        try (MmapLogFetcher fetcher = new MmapLogFetcher(bufferSize)) {
             LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
             LogContext context = new LogContext();
             fetcher.open(current, binlogPosition);
+            fetcher.prefetch(binlogs.getNextFile(current));
             context.setLogPosition(new LogPosition(binlogfilename, binlogPosition));
             while (running) {
                 boolean needContinue = true;
@@ -115,7 +131,7 @@ public class LocalBinLogConnection implements ErosaConnection {
                     }
                     checkServerId(event);
 
-                    if (!func.sink(event)) {
+                    if (!MysqlConnection.sink(func, decoder, event, context)) {
                         needContinue = false;
                         break;
                     }
@@ -138,6 +154,7 @@ public class LocalBinLogConnection implements ErosaConnection {
 
                     current = nextFile;
                     fetcher.open(current);
+                    fetcher.prefetch(binlogs.getNextFile(current));
                     context.setLogPosition(new LogPosition(nextFile.getName()));
                 } else {
                     break;// 跳出
@@ -180,14 +197,16 @@ public class LocalBinLogConnection implements ErosaConnection {
         String binlogFilename = null;
         long binlogFileOffset = 0;
 
-        FileLogFetcher fetcher = new FileLogFetcher(bufferSize);
+        MmapLogFetcher fetcher = new MmapLogFetcher(bufferSize);
         LogDecoder decoder = new LogDecoder();
         decoder.handle(LogEvent.FORMAT_DESCRIPTION_EVENT);
         decoder.handle(LogEvent.QUERY_EVENT);
         decoder.handle(LogEvent.XID_EVENT);
+        decoder.handle(LogEvent.TRANSACTION_PAYLOAD_EVENT);
         LogContext context = new LogContext();
         try {
             fetcher.open(current);
+            fetcher.prefetch(binlogs.getBefore(current));
             context.setLogPosition(new LogPosition(current.getName()));
             while (running) {
                 boolean needContinue = true;
@@ -217,6 +236,12 @@ public class LocalBinLogConnection implements ErosaConnection {
                         } else if (LogEvent.XID_EVENT == event.getHeader().getType()) {
                             lastXidLogFilename = current.getName();
                             lastXidLogFileOffset = event.getLogPos();
+                        } else if (LogEvent.TRANSACTION_PAYLOAD_EVENT == event.getHeader().getType()) {
+                            // 压缩的事务包含了BEGIN和COMMIT
+                            binlogFilename = lastXidLogFilename;
+                            binlogFileOffset = lastXidLogFileOffset;
+                            lastXidLogFilename = current.getName();
+                            lastXidLogFileOffset = event.getLogPos();
                         } else if (LogEvent.FORMAT_DESCRIPTION_EVENT == event.getHeader().getType()) {
                             lastXidLogFilename = current.getName();
                             lastXidLogFileOffset = event.getLogPos();
@@ -234,6 +259,7 @@ public class LocalBinLogConnection implements ErosaConnection {
 
                     current = nextFile;
                     fetcher.open(current);
+                    fetcher.prefetch(binlogs.getBefore(current));
                     context.setLogPosition(new LogPosition(current.getName()));
                 } else {
                     break;// 跳出
@@ -260,10 +286,17 @@ public class LocalBinLogConnection implements ErosaConnection {
             throw new CanalParseException("binlog:" + binlogfilename + " is not found");
         }
 
-        try (FileLogFetcher fetcher = new FileLogFetcher(bufferSize)) {
+        if (parallelFiles > 1) {
+            // 压缩的事务由coprocessor展开
+            parallelDump(binlogfilename, binlogPosition, false, coprocessor::publish);
+            return;
+        }
+
+        try (MmapLogFetcher fetcher = new MmapLogFetcher(bufferSize)) {
             LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
             LogContext context = new LogContext();
             fetcher.open(current, binlogPosition);
+            fetcher.prefetch(binlogs.getNextFile(current));
             context.setLogPosition(new LogPosition(binlogfilename, binlogPosition));
             while (running) {
                 boolean needContinue = true;
@@ -297,6 +330,7 @@ public class LocalBinLogConnection implements ErosaConnection {
 
                     current = nextFile;
                     fetcher.open(current);
+                    fetcher.prefetch(binlogs.getNextFile(current));
                     binlogfilename = nextFile.getName();
                 } else {
                     break;// 跳出
@@ -307,6 +341,88 @@ public class LocalBinLogConnection implements ErosaConnection {
         }
     }
 
+    /**
+     * 多个binlog文件并行解码, 按文件和位点的顺序投递
+     *
+     * <pre>
+     * 1. 每个文件由单独的线程解码到有界队列中, 最多同时解码parallelFiles个文件
+     * 2. 每个文件都有自己的format description和table map, 解码之间没有依赖
+     * 3. 投递、表结构变更(tsdb)和位点仍然在当前线程中按顺序处理, 文件切换时的语义与串行解析一致
+     * </pre>
+     */
+    private void parallelDump(String binlogfilename, Long binlogPosition, boolean expandPayload,
+                              Predicate<LogEvent> sink) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelFiles, r -> {
+            Thread t = new Thread(r, "LocalBinLogDecoder-" + binlogfilename);
+            t.setDaemon(true);
+            return t;
+        });
+        LinkedList<FileDecodeTask> tasks = new LinkedList<>();
+        try {
+            tasks.add(submit(executor, new File(directory, binlogfilename), binlogPosition, expandPayload));
+            while (running && !tasks.isEmpty()) {
+                // 提前解析已经存在的后续文件
+                File last = tasks.getLast().file;
+                while (tasks.size() < parallelFiles) {
+                    File next = binlogs.getNextFile(last);
+                    if (next == null) {
+                        break;
+                    }
+                    tasks.add(submit(executor, next, 0L, expandPayload));
+                    last = next;
+                }
+
+                FileDecodeTask task = tasks.removeFirst();
+                boolean needContinue = true;
+                while (true) {
+                    LogEvent event = task.take();
+                    if (event == null) {
+                        break;
+                    }
+                    checkServerId(event);
+
+                    if (!sink.test(event)) {
+                        needContinue = false;
+                        break;
+                    }
+                }
+
+                task.cancel();
+                if (!needContinue || !task.finished) {
+                    break;// 跳出
+                }
+                parserFinish(task.file.getName());
+
+                if (tasks.isEmpty()) {// 读取下一个
+                    File nextFile;
+                    if (needWait) {
+                        nextFile = binlogs.waitForNextFile(task.file);
+                    } else {
+                        nextFile = binlogs.getNextFile(task.file);
+                    }
+
+                    if (nextFile == null) {
+                        break;
+                    }
+                    tasks.add(submit(executor, nextFile, 0L, expandPayload));
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("LocalBinLogConnection dump interrupted");
+        } finally {
+            for (FileDecodeTask task : tasks) {
+                task.cancel();
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private FileDecodeTask submit(ExecutorService executor, File file, long position, boolean expandPayload) {
+        FileDecodeTask task = new FileDecodeTask(file, position, expandPayload);
+        executor.execute(task);
+        return task;
+    }
+
     private void parserFinish(String fileName) {
         if (parserListener != null) {
             parserListener.onFinish(fileName);
@@ -322,14 +438,16 @@ public class LocalBinLogConnection implements ErosaConnection {
         String binlogFilename = null;
         long binlogFileOffset = 0;
 
-        FileLogFetcher fetcher = new FileLogFetcher(bufferSize);
+        MmapLogFetcher fetcher = new MmapLogFetcher(bufferSize);
         LogDecoder decoder = new LogDecoder();
         decoder.handle(LogEvent.FORMAT_DESCRIPTION_EVENT);
         decoder.handle(LogEvent.QUERY_EVENT);
         decoder.handle(LogEvent.XID_EVENT);
+        decoder.handle(LogEvent.TRANSACTION_PAYLOAD_EVENT);
         LogContext context = new LogContext();
         try {
             fetcher.open(current);
+            fetcher.prefetch(binlogs.getBefore(current));
             context.setLogPosition(new LogPosition(current.getName()));
             while (running) {
                 boolean needContinue = true;
@@ -359,6 +477,12 @@ public class LocalBinLogConnection implements ErosaConnection {
                         } else if (LogEvent.XID_EVENT == event.getHeader().getType()) {
                             lastXidLogFilename = current.getName();
                             lastXidLogFileOffset = event.getLogPos();
+                        } else if (LogEvent.TRANSACTION_PAYLOAD_EVENT == event.getHeader().getType()) {
+                            // 压缩的事务包含了BEGIN和COMMIT
+                            binlogFilename = lastXidLogFilename;
+                            binlogFileOffset = lastXidLogFileOffset;
+                            lastXidLogFilename = current.getName();
+                            lastXidLogFileOffset = event.getLogPos();
                         } else if (LogEvent.FORMAT_DESCRIPTION_EVENT == event.getHeader().getType()) {
                             lastXidLogFilename = current.getName();
                             lastXidLogFileOffset = event.getLogPos();
@@ -376,6 +500,7 @@ public class LocalBinLogConnection implements ErosaConnection {
 
                     current = nextFile;
                     fetcher.open(current);
+                    fetcher.prefetch(binlogs.getBefore(current));
                     context.setLogPosition(new LogPosition(current.getName()));
                 } else {
                     break;// 跳出
@@ -401,6 +526,7 @@ public class LocalBinLogConnection implements ErosaConnection {
         connection.setBufferSize(this.bufferSize);
         connection.setDirectory(this.directory);
         connection.setNeedWait(this.needWait);
+        connection.setParallelFiles(this.parallelFiles);
         return connection;
     }
 
@@ -433,6 +559,14 @@ public class LocalBinLogConnection implements ErosaConnection {
         this.bufferSize = bufferSize;
     }
 
+    public int getParallelFiles() {
+        return parallelFiles;
+    }
+
+    public void setParallelFiles(int parallelFiles) {
+        this.parallelFiles = parallelFiles;
+    }
+
     public long getServerId() {
         return serverId;
     }
@@ -451,4 +585,95 @@ public class LocalBinLogConnection implements ErosaConnection {
         void onFinish(String fileName);
     }
 
+    /**
+     * 解码单个binlog文件, 事件放入有界队列, 以END结束
+     */
+    private class FileDecodeTask implements Runnable {
+
+        private final File                  file;
+        private final long                  position;
+        private final boolean               expandPayload;
+        private final BlockingQueue<Object> queue    = new ArrayBlockingQueue<>(1024);
+        private volatile boolean            cancelled;
+        private boolean                     finished = false;                                 // 文件是否已经完整读取
+
+        FileDecodeTask(File file, long position, boolean expandPayload){
+            this.file = file;
+            this.position = position;
+            this.expandPayload = expandPayload;
+        }
+
+        @Override
+        public void run() {
+            try (MmapLogFetcher fetcher = new MmapLogFetcher(bufferSize)) {
+                LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+                LogContext context = new LogContext();
+                fetcher.open(file, position);
+                context.setLogPosition(new LogPosition(file.getName(), position));
+                while (fetcher.fetch()) {
+                    LogEvent event = decoder.decode(fetcher, context);
+                    if (event == null) {
+                        continue;
+                    }
+
+                    if (expandPayload && event instanceof TransactionPayloadLogEvent) {
+                        for (LogEvent payloadEvent : decoder.decodePayload((TransactionPayloadLogEvent) event,
+                            context)) {
+                            if (!put(payloadEvent)) {
+                                return;
+                            }
+                        }
+                    } else if (!put(event)) {
+                        return;
+                    }
+                }
+                put(END_OF_FILE);
+            } catch (Throwable e) {
+                put(e);
+            }
+        }
+
+        /**
+         * 按顺序获取解码后的事件, 文件结束或者停止时返回null
+         */
+        LogEvent take() throws IOException, InterruptedException {
+            while (running) {
+                Object item = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    continue;
+                } else if (item == END_OF_FILE) {
+                    finished = true;
+                    return null;
+                } else if (item instanceof IOException) {
+                    throw (IOException) item;
+                } else if (item instanceof RuntimeException) {
+                    throw (RuntimeException) item;
+                } else if (item instanceof Throwable) {
+                    throw new CanalParseException("decode binlog file " + file.getName() + " failed",
+                        (Throwable) item);
+                }
+                return (LogEvent) item;
+            }
+            return null;
+        }
+
+        void cancel() {
+            cancelled = true;
+            queue.clear();
+        }
+
+        private boolean put(Object item) {
+            try {
+                while (!cancelled) {
+                    if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+
 }
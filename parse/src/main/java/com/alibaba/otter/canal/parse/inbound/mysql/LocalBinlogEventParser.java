@@ -14,6 +14,7 @@ import com.alibaba.otter.canal.parse.index.CanalLogPositionManager;
 import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
 import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
 
 /**
  * 基于本地binlog文件的复制
@@ -21,7 +22,7 @@ import com.alibaba.otter.canal.protocol.position.LogPosition;
  * @author jianghang 2012-6-21 下午04:07:33
  * @version 1.0.0
  */
-public class LocalBinlogEventParser extends AbstractMysqlEventParser implements CanalEventParser {
+public class LocalBinlogEventParser extends AbstractMysqlEventParser implements CanalEventParser<LogEvent> {
 
     // 数据库信息
     protected AuthenticationInfo masterInfo;
@@ -30,8 +31,9 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
     protected TableMetaCache     tableMetaCache;        // 对应meta
 
     protected String             directory;
-    protected boolean            needWait   = false;
-    protected int                bufferSize = 16 * 1024;
+    protected boolean            needWait      = false;
+    protected int                bufferSize    = 16 * 1024;
+    protected int                parallelFiles = 1;     // 同时解码的binlog文件数
 
     public LocalBinlogEventParser(){
         // this.runningInfo = new AuthenticationInfo();
@@ -108,6 +110,7 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
         connection.setBufferSize(this.bufferSize);
         connection.setDirectory(this.directory);
         connection.setNeedWait(this.needWait);
+        connection.setParallelFiles(this.parallelFiles);
 
         return connection;
     }
@@ -187,4 +190,8 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
     public void setNeedWait(boolean needWait) {
         this.needWait = needWait;
     }
+
+    public void setParallelFiles(int parallelFiles) {
+        this.parallelFiles = parallelFiles;
+    }
 }
@@ -10,6 +10,7 @@ import java.nio.charset.Charset;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
@@ -39,6 +40,7 @@ import com.taobao.tddl.dbsync.binlog.LogContext;
 import com.taobao.tddl.dbsync.binlog.LogDecoder;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TransactionPayloadLogEvent;
 
 public class MysqlConnection implements ErosaConnection {
 
@@ -57,6 +59,9 @@ public class MysqlConnection implements ErosaConnection {
     private int                 binlogChecksum = LogEvent.BINLOG_CHECKSUM_ALG_OFF;
     // dump binlog bytes, 暂不包括meta与TSDB
     private AtomicLong          receivedBinlogBytes;
+    // 同一个数据源的多个instance共享一条dump链接
+    private boolean             sharedDump     = false;
+    private int                 sharedDumpBufferSize = 1024;
 
     public MysqlConnection(){
     }
@@ -130,6 +135,7 @@ public class MysqlConnection implements ErosaConnection {
         decoder.handle(LogEvent.FORMAT_DESCRIPTION_EVENT);
         decoder.handle(LogEvent.QUERY_EVENT);
         decoder.handle(LogEvent.XID_EVENT);
+        decoder.handle(LogEvent.TRANSACTION_PAYLOAD_EVENT);
         LogContext context = new LogContext();
         // 若entry position存在gtid，则使用传入的gtid作为gtidSet
         // 拼接的标准,否则同时开启gtid和tsdb时，会导致丢失gtid
@@ -156,13 +162,18 @@ public class MysqlConnection implements ErosaConnection {
                 throw new CanalParseException("parse failed");
             }
 
-            if (!func.sink(event)) {
+            if (!sink(func, decoder, event, context)) {
                 break;
             }
         }
     }
 
     public void dump(String binlogfilename, Long binlogPosition, SinkFunction func) throws IOException {
+        if (sharedDump) {
+            dumpShared(binlogfilename, binlogPosition, func);
+            return;
+        }
+
         updateSettings();
         loadBinlogChecksum();
         sendRegisterSlave();
@@ -181,7 +192,7 @@ public class MysqlConnection implements ErosaConnection {
                 throw new CanalParseException("parse failed");
             }
 
-            if (!func.sink(event)) {
+            if (!sink(func, decoder, event, context)) {
                 break;
             }
 
@@ -213,7 +224,7 @@ public class MysqlConnection implements ErosaConnection {
                     throw new CanalParseException("parse failed");
                 }
 
-                if (!func.sink(event)) {
+                if (!sink(func, decoder, event, context)) {
                     break;
                 }
             }
@@ -226,6 +237,11 @@ public class MysqlConnection implements ErosaConnection {
 
     @Override
     public void dump(String binlogfilename, Long binlogPosition, MultiStageCoprocessor coprocessor) throws IOException {
+        if (sharedDump) {
+            dumpShared(binlogfilename, binlogPosition, coprocessor);
+            return;
+        }
+
         updateSettings();
         loadBinlogChecksum();
         sendRegisterSlave();
@@ -270,6 +286,104 @@ public class MysqlConnection implements ErosaConnection {
         }
     }
 
+    /**
+     * 事务压缩事件展开为事务内的事件逐个投递, 与未开启压缩时的事件序列一致
+     */
+    static boolean sink(SinkFunction func, LogDecoder decoder, LogEvent event, LogContext context)
+                                                                                                  throws IOException {
+        if (event instanceof TransactionPayloadLogEvent) {
+            for (LogEvent payloadEvent : decoder.decodePayload((TransactionPayloadLogEvent) event, context)) {
+                if (!func.sink(payloadEvent)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return func.sink(event);
+    }
+
+    /**
+     * 共享dump链接的reader使用，只负责拉取和分包，不做解析
+     */
+    void dumpRaw(String binlogfilename, Long binlogPosition, Predicate<LogBuffer> sink) throws IOException {
+        updateSettings();
+        loadBinlogChecksum();
+        sendRegisterSlave();
+        sendBinlogDump(binlogfilename, binlogPosition);
+        try (DirectLogFetcher fetcher = new DirectLogFetcher(connector.getReceiveBufferSize())) {
+            fetcher.start(connector.getChannel());
+            while (fetcher.fetch()) {
+                accumulateReceivedBytes(fetcher.limit());
+                LogBuffer buffer = fetcher.duplicate();
+                fetcher.consume(fetcher.limit());
+                if (!sink.test(buffer)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void dumpShared(String binlogfilename, Long binlogPosition, SinkFunction func) throws IOException {
+        loadBinlogChecksum();
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        context.setFormatDescription(new FormatDescriptionLogEvent(4, binlogChecksum));
+        SharedBinlogDumper.Subscriber subscriber = SharedBinlogDumper.subscribe(this,
+            binlogfilename,
+            binlogPosition,
+            sharedDumpBufferSize);
+        try {
+            while (isConnected()) {
+                LogBuffer buffer = subscriber.poll();
+                if (buffer == null) {
+                    continue;
+                }
+
+                accumulateReceivedBytes(buffer.limit());
+                LogEvent event = decoder.decode(buffer, context);
+                if (event == null) {
+                    throw new CanalParseException("parse failed");
+                }
+
+                if (!sink(func, decoder, event, context)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscriber.close();
+        }
+    }
+
+    private void dumpShared(String binlogfilename, Long binlogPosition, MultiStageCoprocessor coprocessor)
+                                                                                                          throws IOException {
+        loadBinlogChecksum();
+        ((MysqlMultiStageCoprocessor) coprocessor).setConnection(this);
+        ((MysqlMultiStageCoprocessor) coprocessor).setBinlogChecksum(binlogChecksum);
+        SharedBinlogDumper.Subscriber subscriber = SharedBinlogDumper.subscribe(this,
+            binlogfilename,
+            binlogPosition,
+            sharedDumpBufferSize);
+        try {
+            while (isConnected()) {
+                LogBuffer buffer = subscriber.poll();
+                if (buffer == null) {
+                    continue;
+                }
+
+                accumulateReceivedBytes(buffer.limit());
+                if (!coprocessor.publish(buffer)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscriber.close();
+        }
+    }
+
     private void sendRegisterSlave() throws IOException {
         RegisterSlaveCommandPacket cmd = new RegisterSlaveCommandPacket();
         SocketAddress socketAddress = connector.getChannel().getLocalSocketAddress();
@@ -697,6 +811,22 @@ public class MysqlConnection implements ErosaConnection {
         this.receivedBinlogBytes = receivedBinlogBytes;
     }
 
+    int getBinlogChecksum() {
+        return binlogChecksum;
+    }
+
+    public boolean isSharedDump() {
+        return sharedDump;
+    }
+
+    public void setSharedDump(boolean sharedDump) {
+        this.sharedDump = sharedDump;
+    }
+
+    public void setSharedDumpBufferSize(int sharedDumpBufferSize) {
+        this.sharedDumpBufferSize = sharedDumpBufferSize;
+    }
+
     public boolean isMariaDB() {
         return connector.getServerVersion() != null && connector.getServerVersion().toLowerCase().contains("mariadb");
     }
@@ -1,5 +1,8 @@
 package com.alibaba.otter.canal.parse.inbound.mysql;
 
+import static com.taobao.tddl.dbsync.binlog.LogPosition.compareFileName;
+
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -14,6 +17,7 @@ import org.springframework.util.CollectionUtils;
 import com.alibaba.otter.canal.common.utils.JsonUtils;
 import com.alibaba.otter.canal.parse.CanalEventParser;
 import com.alibaba.otter.canal.parse.CanalHASwitchable;
+import com.alibaba.otter.canal.parse.driver.mysql.MysqlQueryChannel;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.FieldPacket;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ResultSetPacket;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
@@ -43,13 +47,14 @@ import com.taobao.tddl.dbsync.binlog.LogEvent;
  * @author jianghang 2012-6-21 下午04:06:32
  * @version 1.0.0
  */
-public class MysqlEventParser extends AbstractMysqlEventParser implements CanalEventParser, CanalHASwitchable {
+public class MysqlEventParser extends AbstractMysqlEventParser implements CanalEventParser<LogEvent>, CanalHASwitchable {
 
     private CanalHAController    haController                      = null;
 
     private int                  defaultConnectionTimeoutInSeconds = 30;       // sotimeout
     private int                  receiveBufferSize                 = 64 * 1024;
     private int                  sendBufferSize                    = 64 * 1024;
+    private String               protocolCompression               = "none";   // none/zlib/zstd
     // 数据库信息
     protected AuthenticationInfo masterInfo;                                   // 主库
     protected AuthenticationInfo standbyInfo;                                  // 备库
@@ -71,6 +76,15 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
     private boolean              rdsOssMode                        = false;
     private boolean              autoResetLatestPosMode            = false;    // true:
                                                                                 // binlog被删除之后，自动按最新的数据订阅
+    private boolean              sharedDump                        = false;    // 同一个数据源的多个instance共享dump链接
+    private int                  sharedDumpBufferSize              = 1024;     // 共享dump时每个instance的事件队列大小
+    private boolean              timestampIndexEnable              = false;    // 记录时间戳到位点的索引, 加速按时间戳启动
+    private String               timestampIndexDir;
+    private int                  timestampIndexInterval            = 60;       // 索引间隔, 秒
+    private TimestampPositionIndex timestampIndex;
+    private int                  metaQueryConnections              = 0;        // 表结构查询的pipeline连接数, 0表示只使用metaConnection
+    private int                  metaQueryMaxInFlight              = 8;        // 每个连接上未返回的查询数上限
+    private MysqlQueryChannel    metaQueryChannel;
 
     protected ErosaConnection buildErosaConnection() {
         return buildMysqlConnection(this.runningInfo);
@@ -125,10 +139,20 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
                 ((DatabaseTableMeta) tableMetaTSDB).setBlackFilter(eventBlackFilter);
                 ((DatabaseTableMeta) tableMetaTSDB).setSnapshotInterval(tsdbSnapshotInterval);
                 ((DatabaseTableMeta) tableMetaTSDB).setSnapshotExpire(tsdbSnapshotExpire);
+                ((DatabaseTableMeta) tableMetaTSDB).setDumpThreadSize(tsdbDumpThreadSize);
+                ((DatabaseTableMeta) tableMetaTSDB).setDumpTableMetaTime(tableMetaDumpTime);
                 ((DatabaseTableMeta) tableMetaTSDB).init(destination);
             }
 
+            if (metaQueryConnections > 0) {
+                metaQueryChannel = new MysqlQueryChannel(metaConnection.getConnector(),
+                    metaQueryConnections,
+                    metaQueryMaxInFlight);
+                metaQueryChannel.start();
+            }
+
             tableMetaCache = new TableMetaCache(metaConnection, tableMetaTSDB);
+            tableMetaCache.setQueryChannel(metaQueryChannel);
             ((LogEventConvert) binlogParser).setTableMetaCache(tableMetaCache);
         }
     }
@@ -152,6 +176,8 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
                     .getAddress(), e);
             }
         }
+
+        stopMetaQueryChannel();
     }
 
     public void start() throws CanalParseException {
@@ -159,6 +185,18 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
             runningInfo = masterInfo;
         }
 
+        if (timestampIndexEnable && StringUtils.isNotEmpty(timestampIndexDir)) {
+            timestampIndex = new TimestampPositionIndex(new File(timestampIndexDir),
+                timestampIndexInterval * 1000L,
+                100000);
+            try {
+                timestampIndex.start();
+            } catch (IOException e) {
+                logger.warn("start timestamp index failed, search position by timestamp without index", e);
+                timestampIndex = null;
+            }
+        }
+
         super.start();
     }
 
@@ -172,11 +210,42 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
             }
         }
 
+        stopMetaQueryChannel();
+
         if (tableMetaCache != null) {
             tableMetaCache.clearTableMeta();
         }
 
         super.stop();
+
+        if (timestampIndex != null) {
+            timestampIndex.stop();
+            timestampIndex = null;
+        }
+    }
+
+    private void stopMetaQueryChannel() {
+        if (metaQueryChannel != null) {
+            metaQueryChannel.stop();
+            metaQueryChannel = null;
+        }
+    }
+
+    @Override
+    protected void afterTransactionConsumed(List<CanalEntry.Entry> transaction) {
+        TimestampPositionIndex index = timestampIndex;
+        if (index == null) {
+            return;
+        }
+
+        // 记录事务起始位点, 从该位点开始dump不会截断事务
+        String address = indexAddress();
+        for (CanalEntry.Entry entry : transaction) {
+            if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONBEGIN) {
+                CanalEntry.Header header = entry.getHeader();
+                index.record(address, header.getLogfileName(), header.getLogfileOffset(), header.getExecuteTime());
+            }
+        }
     }
 
     protected TimerTask buildHeartBeatTimeTask(ErosaConnection connection) {
@@ -308,8 +377,12 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
         connection.getConnector().setReceiveBufferSize(receiveBufferSize);
         connection.getConnector().setSendBufferSize(sendBufferSize);
         connection.getConnector().setSoTimeout(defaultConnectionTimeoutInSeconds * 1000);
+        connection.getConnector().setCompression(protocolCompression);
+        connection.getConnector().setReceivedWireBytes(receivedWireBytes);
         connection.setCharset(connectionCharset);
         connection.setReceivedBinlogBytes(receivedBinlogBytes);
+        connection.setSharedDump(sharedDump);
+        connection.setSharedDumpBufferSize(sharedDumpBufferSize);
         // 随机生成slaveId
         if (this.slaveId <= 0) {
             this.slaveId = generateUniqueServerId();
@@ -591,14 +664,41 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
         String minBinlogFileName = startPosition.getJournalName();
         logger.info("show master status to set search end condition:{} ", endPosition);
         String startSearchBinlogFile = endPosition.getJournalName();
+        // 通过时间戳索引缩小扫描范围, 索引没有覆盖的部分仍然逐个文件向前扫描
+        EntryPosition indexedPosition = null;
+        if (timestampIndex != null) {
+            String address = indexAddress();
+            String searchFile = timestampIndex.searchFile(address, startTimestamp);
+            if (inRange(searchFile, minBinlogFileName, maxBinlogFileName)) {
+                startSearchBinlogFile = searchFile;
+            }
+            indexedPosition = timestampIndex.floor(address, startTimestamp);
+            if (indexedPosition != null
+                && !inRange(indexedPosition.getJournalName(), minBinlogFileName, maxBinlogFileName)) {
+                indexedPosition = null;
+            }
+            logger.info("search timestamp index from {} with indexed position:{}", startSearchBinlogFile, indexedPosition);
+        }
         boolean shouldBreak = false;
         while (running && !shouldBreak) {
             try {
+                long startOffset = 4L;
+                if (indexedPosition != null
+                    && StringUtils.equals(indexedPosition.getJournalName(), startSearchBinlogFile)) {
+                    startOffset = indexedPosition.getPosition();
+                }
                 EntryPosition entryPosition = findAsPerTimestampInSpecificLogFile(mysqlConnection,
                     startTimestamp,
                     endPosition,
                     startSearchBinlogFile,
+                    startOffset,
                     false);
+                if (entryPosition == null && startOffset > 4L) {
+                    // 索引位点之后没有找到, 索引可能已经失效, 从文件头重新扫描
+                    logger.warn("indexed position {} is invalid, search from the beginning of file", indexedPosition);
+                    indexedPosition = null;
+                    continue;
+                }
                 if (entryPosition == null) {
                     if (StringUtils.equalsIgnoreCase(minBinlogFileName, startSearchBinlogFile)) {
                         // 已经找到最早的一个binlog，没必要往前找了
@@ -645,6 +745,16 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
         return null;
     }
 
+    private String indexAddress() {
+        return runningInfo.getAddress().getHostString() + ":" + runningInfo.getAddress().getPort();
+    }
+
+    private boolean inRange(String binlogFile, String minBinlogFile, String maxBinlogFile) {
+        // binlog序号超过6位后长度会变化, 按后缀的数值比较
+        return binlogFile != null && compareFileName(binlogFile, minBinlogFile) >= 0
+               && compareFileName(binlogFile, maxBinlogFile) <= 0;
+    }
+
     /**
      * 查询当前db的serverId信息
      */
@@ -759,12 +869,29 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
                                                               final EntryPosition endPosition,
                                                               final String searchBinlogFile,
                                                               final Boolean justForPositionTimestamp) {
+        return findAsPerTimestampInSpecificLogFile(mysqlConnection,
+            startTimestamp,
+            endPosition,
+            searchBinlogFile,
+            4L,
+            justForPositionTimestamp);
+    }
+
+    /**
+     * 从指定的事务起始位点开始查找, startOffset为4时从文件头开始
+     */
+    private EntryPosition findAsPerTimestampInSpecificLogFile(MysqlConnection mysqlConnection,
+                                                              final Long startTimestamp,
+                                                              final EntryPosition endPosition,
+                                                              final String searchBinlogFile,
+                                                              final long startOffset,
+                                                              final Boolean justForPositionTimestamp) {
 
         final LogPosition logPosition = new LogPosition();
         try {
             mysqlConnection.reconnect();
             // 开始遍历文件
-            mysqlConnection.seek(searchBinlogFile, 4L, endPosition.getGtid(), new SinkFunction<LogEvent>() {
+            mysqlConnection.seek(searchBinlogFile, startOffset, endPosition.getGtid(), new SinkFunction<LogEvent>() {
 
                 private LogPosition lastPosition;
 
@@ -828,7 +955,7 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
 
                         lastPosition = buildLastPosition(entry);
                     } catch (Throwable e) {
-                        processSinkError(e, lastPosition, searchBinlogFile, 4L);
+                        processSinkError(e, lastPosition, searchBinlogFile, startOffset);
                     }
 
                     return running;
@@ -899,6 +1026,10 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
         this.sendBufferSize = sendBufferSize;
     }
 
+    public void setProtocolCompression(String protocolCompression) {
+        this.protocolCompression = protocolCompression;
+    }
+
     public void setMasterInfo(AuthenticationInfo masterInfo) {
         this.masterInfo = masterInfo;
     }
@@ -966,4 +1097,36 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
     public void setAutoResetLatestPosMode(boolean autoResetLatestPosMode) {
         this.autoResetLatestPosMode = autoResetLatestPosMode;
     }
+
+    public boolean isSharedDump() {
+        return sharedDump;
+    }
+
+    public void setSharedDump(boolean sharedDump) {
+        this.sharedDump = sharedDump;
+    }
+
+    public void setTimestampIndexEnable(boolean timestampIndexEnable) {
+        this.timestampIndexEnable = timestampIndexEnable;
+    }
+
+    public void setTimestampIndexDir(String timestampIndexDir) {
+        this.timestampIndexDir = timestampIndexDir;
+    }
+
+    public void setTimestampIndexInterval(int timestampIndexInterval) {
+        this.timestampIndexInterval = timestampIndexInterval;
+    }
+
+    public void setSharedDumpBufferSize(int sharedDumpBufferSize) {
+        this.sharedDumpBufferSize = sharedDumpBufferSize;
+    }
+
+    public void setMetaQueryConnections(int metaQueryConnections) {
+        this.metaQueryConnections = metaQueryConnections;
+    }
+
+    public void setMetaQueryMaxInFlight(int metaQueryMaxInFlight) {
+        this.metaQueryMaxInFlight = metaQueryMaxInFlight;
+    }
 }
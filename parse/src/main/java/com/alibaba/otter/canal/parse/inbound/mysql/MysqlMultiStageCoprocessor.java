@@ -1,5 +1,7 @@
 package com.alibaba.otter.canal.parse.inbound.mysql;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +37,7 @@ import com.taobao.tddl.dbsync.binlog.LogEvent;
 import com.taobao.tddl.dbsync.binlog.event.DeleteRowsLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.RowsLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TransactionPayloadLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.UpdateRowsLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.WriteRowsLogEvent;
 
@@ -43,9 +46,10 @@ import com.taobao.tddl.dbsync.binlog.event.WriteRowsLogEvent;
  * 
  * <pre>
  * 1. 网络接收 (单线程)
- * 2. 事件基本解析 (单线程，事件类型、DDL解析构造TableMeta、维护位点信息)
- * 3. 事件深度解析 (多线程, DML事件数据的完整解析)
- * 4. 投递到store (单线程)
+ * 2. 事务压缩事件解压 (多线程, 非压缩事件直接跳过)
+ * 3. 事件基本解析 (单线程，事件类型、DDL解析构造TableMeta、维护位点信息)
+ * 4. 事件深度解析 (多线程, DML事件数据的完整解析)
+ * 5. 投递到store (单线程)
  * </pre>
  * 
  * @author agapple 2018年7月3日 下午4:54:17
@@ -62,15 +66,18 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
     private int                               ringBufferSize;
     private RingBuffer<MessageEvent>          disruptorMsgBuffer;
     private ExecutorService                   parserExecutor;
+    private ExecutorService                   decompressExecutor;
     private ExecutorService                   stageExecutor;
     private String                            destination;
     private volatile CanalParseException      exception;
     private AtomicLong                        eventsPublishBlockingTime;
     private GTIDSet                           gtidSet;
+    private WorkerPool<MessageEvent>          decompressPool;
     private WorkerPool<MessageEvent>          workerPool;
     private BatchEventProcessor<MessageEvent> simpleParserStage;
     private BatchEventProcessor<MessageEvent> sinkStoreStage;
     private LogContext                        logContext;
+    private ParserProfiler                    profiler;
     protected boolean                         filterDmlInsert = false;
     protected boolean                         filterDmlUpdate = false;
     protected boolean                         filterDmlDelete = false;
@@ -99,19 +106,33 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
         this.parserExecutor = Executors.newFixedThreadPool(tc, new NamedThreadFactory("MultiStageCoprocessor-Parser-"
                                                                                       + destination));
 
+        this.decompressExecutor = Executors.newFixedThreadPool(tc,
+            new NamedThreadFactory("MultiStageCoprocessor-Decompress-" + destination));
         this.stageExecutor = Executors.newFixedThreadPool(2, new NamedThreadFactory("MultiStageCoprocessor-other-"
                                                                                     + destination));
         SequenceBarrier sequenceBarrier = disruptorMsgBuffer.newBarrier();
         ExceptionHandler exceptionHandler = new SimpleFatalExceptionHandler();
         // stage 2
+        WorkHandler<MessageEvent>[] decompressHandlers = new DecompressStage[tc];
+        for (int i = 0; i < tc; i++) {
+            decompressHandlers[i] = new DecompressStage();
+        }
+        decompressPool = new WorkerPool<MessageEvent>(disruptorMsgBuffer,
+            sequenceBarrier,
+            exceptionHandler,
+            decompressHandlers);
+        Sequence[] decompressSequence = decompressPool.getWorkerSequences();
+        disruptorMsgBuffer.addGatingSequences(decompressSequence);
+
+        // stage 3
         this.logContext = new LogContext();
         simpleParserStage = new BatchEventProcessor<>(disruptorMsgBuffer,
-            sequenceBarrier,
+            disruptorMsgBuffer.newBarrier(decompressSequence),
             new SimpleParserStage(logContext));
         simpleParserStage.setExceptionHandler(exceptionHandler);
         disruptorMsgBuffer.addGatingSequences(simpleParserStage.getSequence());
 
-        // stage 3
+        // stage 4
         SequenceBarrier dmlParserSequenceBarrier = disruptorMsgBuffer.newBarrier(simpleParserStage.getSequence());
         WorkHandler<MessageEvent>[] workHandlers = new DmlParserStage[tc];
         for (int i = 0; i < tc; i++) {
@@ -124,7 +145,7 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
         Sequence[] sequence = workerPool.getWorkerSequences();
         disruptorMsgBuffer.addGatingSequences(sequence);
 
-        // stage 4
+        // stage 5
         SequenceBarrier sinkSequenceBarrier = disruptorMsgBuffer.newBarrier(sequence);
         sinkStoreStage = new BatchEventProcessor<>(disruptorMsgBuffer, sinkSequenceBarrier, new SinkStoreStage());
         sinkStoreStage.setExceptionHandler(exceptionHandler);
@@ -133,6 +154,7 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
         // start work
         stageExecutor.submit(simpleParserStage);
         stageExecutor.submit(sinkStoreStage);
+        decompressPool.start(decompressExecutor);
         workerPool.start(parserExecutor);
     }
 
@@ -145,35 +167,29 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
     @Override
     public void stop() {
         // fix bug #968，对于pool与
+        decompressPool.halt();
         workerPool.halt();
         simpleParserStage.halt();
         sinkStoreStage.halt();
-        try {
-            parserExecutor.shutdownNow();
-            while (!parserExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
-                if (parserExecutor.isShutdown() || parserExecutor.isTerminated()) {
-                    break;
-                }
-
-                parserExecutor.shutdownNow();
-            }
-        } catch (Throwable e) {
-            // ignore
-        }
+        shutdown(decompressExecutor);
+        shutdown(parserExecutor);
+        shutdown(stageExecutor);
+        super.stop();
+    }
 
+    private void shutdown(ExecutorService executor) {
         try {
-            stageExecutor.shutdownNow();
-            while (!stageExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
-                if (stageExecutor.isShutdown() || stageExecutor.isTerminated()) {
+            executor.shutdownNow();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (executor.isShutdown() || executor.isTerminated()) {
                     break;
                 }
 
-                stageExecutor.shutdownNow();
+                executor.shutdownNow();
             }
         } catch (Throwable e) {
             // ignore
         }
-        super.stop();
     }
 
     public boolean publish(LogBuffer buffer) {
@@ -237,6 +253,11 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
         return isStart();
     }
 
+    // 按采样率统计各阶段的耗时, 未开启时不取时间
+    private boolean sample() {
+        return profiler != null && profiler.sample();
+    }
+
     // 处理无数据的情况，避免空循环挂死
     private void applyWait(int fullTimes) {
         int newFullTimes = fullTimes > maxFullTimes ? maxFullTimes : fullTimes;
@@ -248,6 +269,36 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
 
     }
 
+    /**
+     * 事务压缩事件的解压比较耗cpu, 在基本解析之前并行处理, 解析线程直接使用解压后的数据
+     */
+    private class DecompressStage implements WorkHandler<MessageEvent>, LifecycleAware {
+
+        @Override
+        public void onEvent(MessageEvent event) throws Exception {
+            try {
+                if (event.getBuffer() != null) {
+                    event.setPayload(TransactionPayloadLogEvent.decompress(event.getBuffer()));
+                } else if (event.getEvent() instanceof TransactionPayloadLogEvent) {
+                    ((TransactionPayloadLogEvent) event.getEvent()).getUncompressed();
+                }
+            } catch (Throwable e) {
+                exception = new CanalParseException(e);
+                throw exception;
+            }
+        }
+
+        @Override
+        public void onStart() {
+
+        }
+
+        @Override
+        public void onShutdown() {
+
+        }
+    }
+
     private class SimpleParserStage implements EventHandler<MessageEvent>, LifecycleAware {
 
         private LogDecoder decoder;
@@ -262,6 +313,8 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
         }
 
         public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+            boolean sampled = sample();
+            long start = sampled ? System.nanoTime() : 0L;
             try {
                 LogEvent logEvent = event.getEvent();
                 if (logEvent == null) {
@@ -270,47 +323,73 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
                     event.setEvent(logEvent);
                 }
 
-                int eventType = logEvent.getHeader().getType();
-                TableMeta tableMeta = null;
-                boolean needDmlParse = false;
-                switch (eventType) {
-                    case LogEvent.WRITE_ROWS_EVENT_V1:
-                    case LogEvent.WRITE_ROWS_EVENT:
-                        if (!filterDmlInsert) {
-                            tableMeta = logEventConvert.parseRowsEventForTableMeta((WriteRowsLogEvent) logEvent);
-                            needDmlParse = true;
-                        }
-                        break;
-                    case LogEvent.UPDATE_ROWS_EVENT_V1:
-                    case LogEvent.PARTIAL_UPDATE_ROWS_EVENT:
-                    case LogEvent.UPDATE_ROWS_EVENT:
-                        if (!filterDmlUpdate) {
-                            tableMeta = logEventConvert.parseRowsEventForTableMeta((UpdateRowsLogEvent) logEvent);
-                            needDmlParse = true;
-                        }
-                        break;
-                    case LogEvent.DELETE_ROWS_EVENT_V1:
-                    case LogEvent.DELETE_ROWS_EVENT:
-                        if (!filterDmlDelete) {
-                            tableMeta = logEventConvert.parseRowsEventForTableMeta((DeleteRowsLogEvent) logEvent);
-                            needDmlParse = true;
-                        }
-                        break;
-                    case LogEvent.ROWS_QUERY_LOG_EVENT:
-                        needDmlParse = true;
-                        break;
-                    default:
-                        CanalEntry.Entry entry = logEventConvert.parse(event.getEvent(), false);
-                        event.setEntry(entry);
+                if (logEvent instanceof TransactionPayloadLogEvent) {
+                    // 压缩的事务展开为多个事件, 按顺序挂在当前事件下
+                    TransactionPayloadLogEvent payloadEvent = (TransactionPayloadLogEvent) logEvent;
+                    if (event.getPayload() != null) {
+                        payloadEvent.setUncompressed(event.getPayload());
+                        event.setPayload(null);
+                    }
+                    List<LogEvent> logEvents = decoder.decodePayload(payloadEvent, context);
+                    List<MessageEvent> payloadEvents = new ArrayList<MessageEvent>(logEvents.size());
+                    for (LogEvent e : logEvents) {
+                        MessageEvent payloadMessage = new MessageEvent();
+                        payloadMessage.setEvent(e);
+                        parse(payloadMessage, e);
+                        payloadEvents.add(payloadMessage);
+                    }
+                    event.setPayloadEvents(payloadEvents);
+                } else {
+                    parse(event, logEvent);
                 }
-
-                // 记录一下DML的表结构
-                event.setNeedDmlParse(needDmlParse);
-                event.setTable(tableMeta);
             } catch (Throwable e) {
                 exception = new CanalParseException(e);
                 throw exception;
             }
+
+            if (sampled) {
+                profiler.recordStage(ParserProfiler.STAGE_SIMPLE_PARSER, System.nanoTime() - start);
+            }
+        }
+
+        private void parse(MessageEvent event, LogEvent logEvent) {
+            int eventType = logEvent.getHeader().getType();
+            TableMeta tableMeta = null;
+            boolean needDmlParse = false;
+            switch (eventType) {
+                case LogEvent.WRITE_ROWS_EVENT_V1:
+                case LogEvent.WRITE_ROWS_EVENT:
+                    if (!filterDmlInsert) {
+                        tableMeta = logEventConvert.parseRowsEventForTableMeta((WriteRowsLogEvent) logEvent);
+                        needDmlParse = true;
+                    }
+                    break;
+                case LogEvent.UPDATE_ROWS_EVENT_V1:
+                case LogEvent.PARTIAL_UPDATE_ROWS_EVENT:
+                case LogEvent.UPDATE_ROWS_EVENT:
+                    if (!filterDmlUpdate) {
+                        tableMeta = logEventConvert.parseRowsEventForTableMeta((UpdateRowsLogEvent) logEvent);
+                        needDmlParse = true;
+                    }
+                    break;
+                case LogEvent.DELETE_ROWS_EVENT_V1:
+                case LogEvent.DELETE_ROWS_EVENT:
+                    if (!filterDmlDelete) {
+                        tableMeta = logEventConvert.parseRowsEventForTableMeta((DeleteRowsLogEvent) logEvent);
+                        needDmlParse = true;
+                    }
+                    break;
+                case LogEvent.ROWS_QUERY_LOG_EVENT:
+                    needDmlParse = true;
+                    break;
+                default:
+                    CanalEntry.Entry entry = logEventConvert.parse(logEvent, false);
+                    event.setEntry(entry);
+            }
+
+            // 记录一下DML的表结构
+            event.setNeedDmlParse(needDmlParse);
+            event.setTable(tableMeta);
         }
 
         @Override
@@ -328,25 +407,41 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
 
         @Override
         public void onEvent(MessageEvent event) throws Exception {
+            boolean sampled = sample();
+            long start = sampled ? System.nanoTime() : 0L;
             try {
-                if (event.isNeedDmlParse()) {
-                    int eventType = event.getEvent().getHeader().getType();
-                    CanalEntry.Entry entry = null;
-                    switch (eventType) {
-                        case LogEvent.ROWS_QUERY_LOG_EVENT:
-                            entry = logEventConvert.parse(event.getEvent(), false);
-                            break;
-                        default:
-                            // 单独解析dml事件
-                            entry = logEventConvert.parseRowsEvent((RowsLogEvent) event.getEvent(), event.getTable());
+                if (event.getPayloadEvents() != null) {
+                    for (MessageEvent payloadEvent : event.getPayloadEvents()) {
+                        parse(payloadEvent);
                     }
-
-                    event.setEntry(entry);
+                } else {
+                    parse(event);
                 }
             } catch (Throwable e) {
                 exception = new CanalParseException(e);
                 throw exception;
             }
+
+            if (sampled) {
+                profiler.recordStage(ParserProfiler.STAGE_DML_PARSER, System.nanoTime() - start);
+            }
+        }
+
+        private void parse(MessageEvent event) {
+            if (event.isNeedDmlParse()) {
+                int eventType = event.getEvent().getHeader().getType();
+                CanalEntry.Entry entry = null;
+                switch (eventType) {
+                    case LogEvent.ROWS_QUERY_LOG_EVENT:
+                        entry = logEventConvert.parse(event.getEvent(), false);
+                        break;
+                    default:
+                        // 单独解析dml事件
+                        entry = logEventConvert.parseRowsEvent((RowsLogEvent) event.getEvent(), event.getTable());
+                }
+
+                event.setEntry(entry);
+            }
         }
 
         @Override
@@ -363,8 +458,16 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
     private class SinkStoreStage implements EventHandler<MessageEvent>, LifecycleAware {
 
         public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+            boolean sampled = sample();
+            long start = sampled ? System.nanoTime() : 0L;
             try {
-                if (event.getEntry() != null) {
+                if (event.getPayloadEvents() != null) {
+                    for (MessageEvent payloadEvent : event.getPayloadEvents()) {
+                        if (payloadEvent.getEntry() != null) {
+                            transactionBuffer.add(payloadEvent.getEntry());
+                        }
+                    }
+                } else if (event.getEntry() != null) {
                     transactionBuffer.add(event.getEntry());
                 }
 
@@ -381,10 +484,16 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
                 event.setTable(null);
                 event.setEntry(null);
                 event.setNeedDmlParse(false);
+                event.setPayload(null);
+                event.setPayloadEvents(null);
             } catch (Throwable e) {
                 exception = new CanalParseException(e);
                 throw exception;
             }
+
+            if (sampled) {
+                profiler.recordStage(ParserProfiler.STAGE_SINK_STORE, System.nanoTime() - start);
+            }
         }
 
         @Override
@@ -400,11 +509,13 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
 
     static class MessageEvent {
 
-        private LogBuffer        buffer;
-        private CanalEntry.Entry entry;
-        private boolean          needDmlParse = false;
-        private TableMeta        table;
-        private LogEvent         event;
+        private LogBuffer          buffer;
+        private CanalEntry.Entry   entry;
+        private boolean            needDmlParse = false;
+        private TableMeta          table;
+        private LogEvent           event;
+        private byte[]             payload;       // 解压后的事务压缩数据
+        private List<MessageEvent> payloadEvents; // 事务压缩事件展开后的事件
 
         public LogBuffer getBuffer() {
             return buffer;
@@ -446,6 +557,22 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
             this.table = table;
         }
 
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public void setPayload(byte[] payload) {
+            this.payload = payload;
+        }
+
+        public List<MessageEvent> getPayloadEvents() {
+            return payloadEvents;
+        }
+
+        public void setPayloadEvents(List<MessageEvent> payloadEvents) {
+            this.payloadEvents = payloadEvents;
+        }
+
     }
 
     static class SimpleFatalExceptionHandler implements ExceptionHandler {
@@ -492,4 +619,8 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
         this.gtidSet = gtidSet;
     }
 
+    public void setProfiler(ParserProfiler profiler) {
+        this.profiler = profiler;
+    }
+
 }
@@ -0,0 +1,185 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+
+/**
+ * 解析耗时的采样统计, 按处理阶段、事件类型、schema.table分别记录耗时分布
+ *
+ * <pre>
+ * 1. 每sampleRate个事件随机采样一个, sampleRate <= 0时关闭, 未采样的事件不调用System.nanoTime
+ * 2. 耗时按{@link #BUCKETS}分桶计数, 同时记录采样次数和总耗时
+ * 3. 表维度最多记录{@link #MAX_TABLES}张表, 超出后新表不再统计
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class ParserProfiler {
+
+    public static final String                      STAGE_SIMPLE_PARSER = "simpleParser";
+    public static final String                      STAGE_DML_PARSER    = "dmlParser";
+    public static final String                      STAGE_SINK_STORE    = "sinkStore";
+    // 分桶上限, 单位us
+    public static final long[]                      BUCKETS             = { 1, 5, 10, 50, 100, 500, 1000, 5000,
+            10000, 50000, 100000, 500000, 1000000 };
+    public static final int                         MAX_TABLES          = 10000;
+
+    private volatile int                            sampleRate          = 0;
+    private final Map<String, Timer>                stageTimers         = new LinkedHashMap<>();
+    private final AtomicReferenceArray<Timer>       eventTimers         = new AtomicReferenceArray<>(LogEvent.ENUM_END_EVENT);
+    private final ConcurrentMap<String, TableTimer> tableTimers         = new ConcurrentHashMap<>();
+
+    public ParserProfiler(){
+        stageTimers.put(STAGE_SIMPLE_PARSER, new Timer());
+        stageTimers.put(STAGE_DML_PARSER, new Timer());
+        stageTimers.put(STAGE_SINK_STORE, new Timer());
+    }
+
+    /**
+     * 当前事件是否需要采样
+     */
+    public boolean sample() {
+        int rate = sampleRate;
+        return rate > 0 && (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0);
+    }
+
+    public void recordStage(String stage, long nanos) {
+        stageTimers.get(stage).record(nanos);
+    }
+
+    public void recordEvent(int eventType, long nanos) {
+        if (eventType < 0 || eventType >= eventTimers.length()) {
+            return;
+        }
+
+        Timer timer = eventTimers.get(eventType);
+        if (timer == null) {
+            eventTimers.compareAndSet(eventType, null, new Timer());
+            timer = eventTimers.get(eventType);
+        }
+        timer.record(nanos);
+    }
+
+    public void recordTable(String schema, String table, long bytes, long nanos) {
+        String name = schema + "." + table;
+        TableTimer timer = tableTimers.get(name);
+        if (timer == null) {
+            if (tableTimers.size() >= MAX_TABLES) {
+                return;
+            }
+            timer = tableTimers.computeIfAbsent(name, TableTimer::new);
+        }
+        timer.bytes.addAndGet(bytes);
+        timer.record(nanos);
+    }
+
+    public Map<String, Timer> getStageTimers() {
+        return Collections.unmodifiableMap(stageTimers);
+    }
+
+    /**
+     * @return 事件类型名称 -> 耗时, 只包含有采样数据的类型
+     */
+    public Map<String, Timer> getEventTimers() {
+        Map<String, Timer> timers = new LinkedHashMap<>();
+        for (int i = 0; i < eventTimers.length(); i++) {
+            Timer timer = eventTimers.get(i);
+            if (timer != null) {
+                timers.put(LogEvent.getTypeName(i), timer);
+            }
+        }
+        return timers;
+    }
+
+    /**
+     * 按采样总耗时倒序返回最耗时的n张表
+     */
+    public List<TableTimer> topTables(int n) {
+        List<TableTimer> tables = new ArrayList<>(tableTimers.values());
+        tables.sort((t1, t2) -> Long.compare(t2.getSum(), t1.getSum()));
+        return tables.size() > n ? new ArrayList<>(tables.subList(0, n)) : tables;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * 耗时分布, buckets[i]为耗时不超过BUCKETS[i]且超过BUCKETS[i-1]的次数, 最后一个为超过所有分桶的次数
+     */
+    public static class Timer {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+        private final AtomicLong      count   = new AtomicLong(0L);
+        private final AtomicLong      sum     = new AtomicLong(0L);
+
+        public void record(long nanos) {
+            long micros = nanos / 1000;
+            int index = 0;
+            while (index < BUCKETS.length && micros > BUCKETS[index]) {
+                index++;
+            }
+            buckets.incrementAndGet(index);
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+        }
+
+        public long[] getBuckets() {
+            long[] result = new long[buckets.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = buckets.get(i);
+            }
+            return result;
+        }
+
+        /**
+         * 采样次数
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * 采样总耗时, 单位ns
+         */
+        public long getSum() {
+            return sum.get();
+        }
+    }
+
+    public static class TableTimer extends Timer {
+
+        private final String     name;
+        private final AtomicLong bytes = new AtomicLong(0L);
+
+        TableTimer(String name){
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 采样事件的binlog字节数
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+
+/**
+ * 同一个mysql源上的多个instance共享一条binlog dump链接
+ *
+ * <pre>
+ * 1. 按照address + username区分数据源，第一个订阅者触发dump，从所有订阅者中最小的位点开始拉取
+ * 2. reader只负责拉取和分包，每个订阅者有独立的有界队列，由各自instance的coprocessor完成解析、过滤和位点管理
+ * 3. 订阅者队列满时reader阻塞，整体进度受最慢的订阅者控制
+ * 4. 订阅者的起始位点落后于reader当前位点时，reader从最小位点重新dump，其余订阅者按各自的位点过滤掉重复数据
+ * 5. 新订阅者加入时先补发当前binlog文件的rotate/format description事件，保证解码上下文完整
+ * 6. 只支持binlog file + position的模式，gtid模式仍然使用独立的dump链接
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class SharedBinlogDumper {
+
+    private static final Logger                          logger           = LoggerFactory.getLogger(SharedBinlogDumper.class);
+    private static final Map<String, SharedBinlogDumper> dumpers          = new ConcurrentHashMap<>();
+    private static final long                            POLL_INTERVAL_MS = 1000L;
+
+    private final String                                 key;
+    private final MysqlConnection                        connection;
+    private final List<Subscriber>                       subscribers      = new CopyOnWriteArrayList<>();
+    private Thread                                       readerThread;
+    private volatile boolean                             running          = false;
+    private volatile boolean                             restart          = false;
+    // 下一次dump的起始位点
+    private String                                       dumpJournalName;
+    private long                                         dumpPosition;
+    // reader当前解析到的位点
+    private volatile String                              currentJournalName;
+    private volatile long                                currentPosition;
+    // 当前binlog文件的rotate/format description事件，用于新订阅者初始化解码上下文
+    private volatile LogBuffer                           rotateEvent;
+    private volatile LogBuffer                           formatDescriptionEvent;
+
+    private SharedBinlogDumper(String key, MysqlConnection connection){
+        this.key = key;
+        this.connection = connection;
+    }
+
+    /**
+     * 订阅binlog，返回的subscriber需要在dump结束时close
+     */
+    public static Subscriber subscribe(MysqlConnection source, String journalName, long position, int bufferSize)
+                                                                                                                  throws IOException {
+        if (StringUtils.isEmpty(journalName)) {
+            throw new CanalParseException("shared binlog dump requires journal name, gtid mode is not supported");
+        }
+
+        String key = source.getAddress() + "#" + source.getAuthInfo().getUsername();
+        synchronized (dumpers) {
+            SharedBinlogDumper dumper = dumpers.get(key);
+            if (dumper == null) {
+                MysqlConnection connection = source.fork();
+                connection.setReceivedBinlogBytes(null);
+                connection.connect();
+                dumper = new SharedBinlogDumper(key, connection);
+                dumpers.put(key, dumper);
+            }
+
+            return dumper.addSubscriber(journalName, position, bufferSize);
+        }
+    }
+
+    private synchronized Subscriber addSubscriber(String journalName, long position, int bufferSize) {
+        Subscriber subscriber = new Subscriber(journalName, position, bufferSize);
+        if (!running) {
+            dumpJournalName = journalName;
+            dumpPosition = position;
+            subscribers.add(subscriber);
+            start();
+        } else {
+            if (compare(journalName, position, currentJournalName, currentPosition) < 0) {
+                // 新订阅者落后于reader，从所有订阅者中最小的位点重新dump
+                dumpJournalName = journalName;
+                dumpPosition = position;
+                for (Subscriber other : subscribers) {
+                    if (compare(other.journalName, other.position, dumpJournalName, dumpPosition) < 0) {
+                        dumpJournalName = other.journalName;
+                        dumpPosition = other.position;
+                    }
+                }
+                restart = true;
+                logger.info("shared binlog dump [{}] restart from {}:{} for new subscriber", key, journalName, position);
+            } else {
+                // 直接加入，先补齐解码上下文
+                subscriber.init(rotateEvent, formatDescriptionEvent);
+            }
+            subscribers.add(subscriber);
+        }
+
+        logger.info("subscribe shared binlog dump [{}] from {}:{}, subscribers:{}",
+            key,
+            journalName,
+            position,
+            subscribers.size());
+        return subscriber;
+    }
+
+    private void removeSubscriber(Subscriber subscriber) {
+        synchronized (dumpers) {
+            subscribers.remove(subscriber);
+            if (subscribers.isEmpty()) {
+                stop();
+            }
+        }
+    }
+
+    private void start() {
+        running = true;
+        readerThread = new Thread(this::run, "shared-binlog-dump-" + key);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    private void stop() {
+        running = false;
+        dumpers.remove(key, this);
+        if (readerThread != null) {
+            readerThread.interrupt();
+        }
+        try {
+            connection.disconnect();
+        } catch (IOException e) {
+            logger.warn("disconnect shared binlog dump [{}] failed", key, e);
+        }
+        logger.info("stop shared binlog dump [{}]", key);
+    }
+
+    private void run() {
+        while (running) {
+            String journalName;
+            long position;
+            synchronized (this) {
+                journalName = dumpJournalName;
+                position = dumpPosition;
+                restart = false;
+            }
+
+            try {
+                if (connection.isConnected()) {
+                    connection.reconnect();
+                } else {
+                    connection.connect();
+                }
+                connection.dumpRaw(journalName, position, this::dispatch);
+                if (running && !restart) {
+                    throw new IOException("shared binlog dump [" + key + "] reached end of stream");
+                }
+            } catch (Throwable e) {
+                if (!running) {
+                    break;
+                }
+                if (restart) {
+                    continue;
+                }
+
+                logger.error("shared binlog dump [{}] failed", key, e);
+                synchronized (dumpers) {
+                    for (Subscriber subscriber : subscribers) {
+                        subscriber.fail(e);
+                    }
+                    subscribers.clear();
+                    stop();
+                }
+            }
+        }
+    }
+
+    /**
+     * 分发一个完整的binlog事件，返回false代表需要结束当前dump
+     */
+    private boolean dispatch(LogBuffer buffer) {
+        if (!running || restart) {
+            return false;
+        }
+
+        int type = buffer.getUint8(LogEvent.EVENT_TYPE_OFFSET);
+        long logPosition = buffer.getUint32(LogEvent.LOG_POS_OFFSET);
+        if (type == LogEvent.ROTATE_EVENT) {
+            int checksumLength = 0;
+            if (connection.getBinlogChecksum() != LogEvent.BINLOG_CHECKSUM_ALG_OFF) {
+                checksumLength = LogEvent.BINLOG_CHECKSUM_LEN;
+            }
+            int nameOffset = FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN + 8;
+            int nameLength = (int) buffer.getUint32(LogEvent.EVENT_LEN_OFFSET) - nameOffset - checksumLength;
+            currentJournalName = buffer.getFixString(nameOffset, nameLength, StandardCharsets.ISO_8859_1.name());
+            currentPosition = buffer.getLong64(FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN);
+            rotateEvent = buffer;
+        } else if (type == LogEvent.FORMAT_DESCRIPTION_EVENT) {
+            formatDescriptionEvent = buffer;
+        } else if (logPosition > 0) {
+            currentPosition = logPosition;
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.offer(buffer, type, currentJournalName, logPosition);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compare(String journalName, long position, String otherJournalName, long otherPosition) {
+        if (otherJournalName == null) {
+            return 1;
+        }
+        int result = LogPosition.compareFileName(journalName, otherJournalName);
+        return result != 0 ? result : Long.compare(position, otherPosition);
+    }
+
+    public class Subscriber {
+
+        private final BlockingQueue<LogBuffer> queue;
+        // 已经投递的最后一个事件的位点，reader重新dump时过滤重复数据
+        private volatile String                journalName;
+        private volatile long                  position;
+        private volatile Throwable             error;
+        private volatile boolean               closed = false;
+
+        Subscriber(String journalName, long position, int bufferSize){
+            this.journalName = journalName;
+            this.position = position;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        void init(LogBuffer rotate, LogBuffer formatDescription) {
+            if (rotate != null) {
+                queue.offer(rotate.duplicate());
+            }
+            if (formatDescription != null) {
+                queue.offer(formatDescription.duplicate());
+            }
+        }
+
+        void offer(LogBuffer buffer, int type, String eventJournalName, long eventPosition)
+                                                                                           throws InterruptedException {
+            if (closed) {
+                return;
+            }
+
+            boolean control = type == LogEvent.ROTATE_EVENT || type == LogEvent.FORMAT_DESCRIPTION_EVENT
+                              || type == LogEvent.HEARTBEAT_LOG_EVENT || eventPosition == 0;
+            if (!control) {
+                if (compare(eventJournalName, eventPosition, journalName, position) <= 0) {
+                    return; // 已经投递过
+                }
+                journalName = eventJournalName;
+                position = eventPosition;
+            }
+
+            // 每个订阅者独立的buffer副本，避免解析时的position互相影响
+            LogBuffer copy = buffer.duplicate();
+            while (!closed && running) {
+                if (queue.offer(copy, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+
+        void fail(Throwable cause) {
+            this.error = cause;
+        }
+
+        /**
+         * 获取下一个binlog事件，超时返回null
+         */
+        public LogBuffer poll() throws IOException, InterruptedException {
+            LogBuffer buffer = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (buffer == null && error != null) {
+                throw new IOException("shared binlog dump [" + key + "] failed", error);
+            }
+            return buffer;
+        }
+
+        public void close() {
+            if (!closed) {
+                closed = true;
+                queue.clear();
+                removeSubscriber(this);
+            }
+        }
+    }
+}
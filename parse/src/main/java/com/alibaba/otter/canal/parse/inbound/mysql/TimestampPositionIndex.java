@@ -0,0 +1,275 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
+
+/**
+ * binlog时间戳到位点的稀疏索引, 用于按时间戳查找启动位点
+ *
+ * <pre>
+ * 1. 消费过程中每隔interval记录一个事务起始位点(时间戳, binlog文件, 偏移量), 每个binlog文件的第一个事务一定会记录
+ * 2. 同时记录每个binlog文件最后一个事务的时间戳
+ * 3. 索引追加写入文件, 重启后加载, 数据库地址变化时清空
+ * 4. 查找时二分得到时间戳之前最近的位点, 只需要从该位点开始扫描有限的binlog, 索引没有覆盖的部分仍然按文件扫描
+ * </pre>
+ *
+ * 文件格式: 第一行为#数据库地址, 之后每行为"E 时间戳 binlog文件 偏移量"或"L binlog文件 最后时间戳"
+ *
+ * @version 1.1.6
+ */
+public class TimestampPositionIndex {
+
+    private static final Logger           logger         = LoggerFactory.getLogger(TimestampPositionIndex.class);
+    public static final String            FILE_NAME      = "timestamp.idx";
+
+    private final File                    file;
+    private final long                    interval;                                                  // 记录间隔, 毫秒
+    private final int                     maxEntries;
+
+    private String                        address;
+    private final List<Entry>             entries        = new ArrayList<>();
+    private final Map<String, Long>       lastTimestamps = new HashMap<>();                          // binlog文件 -> 最后一个事务的时间戳
+    private String                        currentFile;
+    private Writer                        writer;
+
+    public TimestampPositionIndex(File dir, long interval, int maxEntries){
+        this.file = new File(dir, FILE_NAME);
+        this.interval = interval;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 加载已有的索引
+     */
+    public synchronized void start() throws IOException {
+        FileUtils.forceMkdir(file.getParentFile());
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    load(line);
+                }
+            } catch (RuntimeException e) {
+                // 文件损坏时丢弃, 不影响正常的查找
+                logger.warn("load timestamp index {} failed, discard it", file, e);
+                address = null;
+                entries.clear();
+                lastTimestamps.clear();
+            }
+        }
+
+        if (entries.size() > maxEntries) {
+            entries.subList(0, entries.size() - maxEntries).clear();
+        }
+        rewrite();
+        logger.info("load {} entries from timestamp index {}", entries.size(), file);
+    }
+
+    public synchronized void stop() {
+        if (writer != null) {
+            try {
+                writeLast();
+            } catch (IOException e) {
+                logger.warn("write timestamp index {} failed", file, e);
+            }
+            IOUtils.closeQuietly(writer);
+            writer = null;
+        }
+    }
+
+    /**
+     * 记录一个事务的起始位点, 在消费线程中调用
+     */
+    public synchronized void record(String address, String journalName, long position, long timestamp) {
+        if (writer == null || StringUtils.isEmpty(journalName) || timestamp <= 0) {
+            return;
+        }
+
+        try {
+            if (!StringUtils.equals(this.address, address)) {
+                // 切换了数据库, 之前的索引已经没有意义
+                this.address = address;
+                entries.clear();
+                lastTimestamps.clear();
+                currentFile = null;
+                rewrite();
+            }
+
+            if (!StringUtils.equals(currentFile, journalName)) {
+                writeLast();
+                currentFile = journalName;
+                append(new Entry(timestamp, journalName, position));
+            } else if (entries.isEmpty() || timestamp - entries.get(entries.size() - 1).timestamp >= interval) {
+                append(new Entry(timestamp, journalName, position));
+            }
+
+            Long last = lastTimestamps.get(journalName);
+            if (last == null || last < timestamp) {
+                lastTimestamps.put(journalName, timestamp);
+            }
+        } catch (IOException e) {
+            logger.warn("write timestamp index {} failed", file, e);
+        }
+    }
+
+    /**
+     * 时间戳之前(不包含)最近的索引位点
+     */
+    public synchronized EntryPosition floor(String address, long timestamp) {
+        if (!StringUtils.equals(this.address, address)) {
+            return null;
+        }
+        int index = search(timestamp) - 1;
+        if (index < 0) {
+            return null;
+        }
+        Entry entry = entries.get(index);
+        return new EntryPosition(entry.journalName, entry.position, entry.timestamp);
+    }
+
+    /**
+     * 按时间戳查找时最晚需要扫描的binlog文件, 返回null代表索引没有覆盖该时间戳
+     *
+     * <pre>
+     * 1. 时间戳之前最近的位点所在文件中存在不早于该时间戳的事务, 只需要扫描该文件
+     * 2. 否则从时间戳之后最近的位点所在文件开始向前扫描
+     * </pre>
+     */
+    public synchronized String searchFile(String address, long timestamp) {
+        if (!StringUtils.equals(this.address, address)) {
+            return null;
+        }
+        int index = search(timestamp);
+        if (index > 0) {
+            String journalName = entries.get(index - 1).journalName;
+            Long last = lastTimestamps.get(journalName);
+            if (last != null && last >= timestamp) {
+                return journalName;
+            }
+        }
+        return index < entries.size() ? entries.get(index).journalName : null;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // 第一个时间戳不小于timestamp的位置
+    private int search(long timestamp) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries.get(mid).timestamp < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void load(String line) {
+        if (line.startsWith("#")) {
+            address = line.substring(1);
+            return;
+        }
+
+        String[] fields = StringUtils.split(line, ' ');
+        if (fields.length == 4 && "E".equals(fields[0])) {
+            Entry entry = new Entry(Long.parseLong(fields[1]), fields[2], Long.parseLong(fields[3]));
+            if (entries.isEmpty() || entries.get(entries.size() - 1).timestamp <= entry.timestamp) {
+                entries.add(entry);
+            }
+        } else if (fields.length == 3 && "L".equals(fields[0])) {
+            lastTimestamps.put(fields[1], Long.parseLong(fields[2]));
+        }
+    }
+
+    private void append(Entry entry) throws IOException {
+        // 保证时间戳有序, 时间回退的事务不记录
+        if (!entries.isEmpty() && entries.get(entries.size() - 1).timestamp > entry.timestamp) {
+            return;
+        }
+
+        entries.add(entry);
+        if (entries.size() > maxEntries) {
+            // 淘汰最早的10%
+            entries.subList(0, Math.max(1, maxEntries / 10)).clear();
+            rewrite();
+        } else {
+            writer.write("E " + entry.timestamp + " " + entry.journalName + " " + entry.position + "\n");
+            writer.flush();
+        }
+    }
+
+    private void writeLast() throws IOException {
+        Long last = currentFile == null ? null : lastTimestamps.get(currentFile);
+        if (last != null) {
+            writer.write("L " + currentFile + " " + last + "\n");
+            writer.flush();
+        }
+    }
+
+    private void rewrite() throws IOException {
+        IOUtils.closeQuietly(writer);
+        // 只保留索引中还存在的binlog文件
+        Map<String, Long> lasts = new HashMap<>();
+        for (Entry entry : entries) {
+            Long last = lastTimestamps.get(entry.journalName);
+            if (last != null) {
+                lasts.put(entry.journalName, last);
+            }
+        }
+        lastTimestamps.clear();
+        lastTimestamps.putAll(lasts);
+
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false), StandardCharsets.UTF_8));
+        if (address != null) {
+            writer.write("#" + address + "\n");
+        }
+        for (Entry entry : entries) {
+            writer.write("E " + entry.timestamp + " " + entry.journalName + " " + entry.position + "\n");
+        }
+        for (Map.Entry<String, Long> last : lastTimestamps.entrySet()) {
+            if (!StringUtils.equals(last.getKey(), currentFile)) {
+                writer.write("L " + last.getKey() + " " + last.getValue() + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    private static class Entry {
+
+        private final long   timestamp;
+        private final String journalName;
+        private final long   position;
+
+        Entry(long timestamp, String journalName, long position){
+            this.timestamp = timestamp;
+            this.journalName = journalName;
+            this.position = position;
+        }
+    }
+}
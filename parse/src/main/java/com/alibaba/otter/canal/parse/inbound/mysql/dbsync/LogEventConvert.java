@@ -23,6 +23,7 @@ import com.alibaba.otter.canal.parse.exception.CanalParseException;
 import com.alibaba.otter.canal.parse.inbound.BinlogParser;
 import com.alibaba.otter.canal.parse.inbound.TableMeta;
 import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
+import com.alibaba.otter.canal.parse.inbound.mysql.ParserProfiler;
 import com.alibaba.otter.canal.parse.inbound.mysql.ddl.DdlResult;
 import com.alibaba.otter.canal.parse.inbound.mysql.ddl.DruidDdlParser;
 import com.alibaba.otter.canal.parse.inbound.mysql.ddl.SimpleDdlParser;
@@ -39,6 +40,7 @@ import com.alibaba.otter.canal.protocol.CanalEntry.TransactionEnd;
 import com.alibaba.otter.canal.protocol.CanalEntry.Type;
 import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.google.protobuf.ByteString;
+import com.taobao.tddl.dbsync.binlog.CharsetConversion;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 import com.taobao.tddl.dbsync.binlog.event.DeleteRowsLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.GtidLogEvent;
@@ -95,6 +97,10 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
 
     private TableMetaCache              tableMetaCache;
     private Charset                     charset             = Charset.defaultCharset();
+    // 按table map中每一列的charset解码, mysql8.0以后binlog中才有列的charset
+    private boolean                     columnCharset       = false;
+    // json列输出mysql json二进制数据(iso-8859-1编码), 由下游自行解析
+    private boolean                     jsonBinary          = false;
     private boolean                     filterQueryDcl      = false;
     private boolean                     filterQueryDml      = false;
     private boolean                     filterQueryDdl      = false;
@@ -103,6 +109,8 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
     // 新增rows过滤，用于仅订阅除rows以外的数据
     private boolean                     filterRows          = false;
     private boolean                     useDruidDdlFilter   = true;
+    // 解析耗时采样, 为空时不统计
+    private ParserProfiler              profiler;
 
     public LogEventConvert(){
 
@@ -114,6 +122,20 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
             return null;
         }
 
+        // rows事件在parseRowsEvent中按表统计
+        if (profiler == null || logEvent instanceof RowsLogEvent || !profiler.sample()) {
+            return parseEvent(logEvent, isSeek);
+        }
+
+        long start = System.nanoTime();
+        try {
+            return parseEvent(logEvent, isSeek);
+        } finally {
+            profiler.recordEvent(logEvent.getHeader().getType(), System.nanoTime() - start);
+        }
+    }
+
+    private Entry parseEvent(LogEvent logEvent, boolean isSeek) {
         int eventType = logEvent.getHeader().getType();
         switch (eventType) {
             case LogEvent.QUERY_EVENT:
@@ -524,6 +546,26 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         if (filterRows) {
             return null;
         }
+
+        if (profiler == null || !profiler.sample()) {
+            return doParseRowsEvent(event, tableMeta);
+        }
+
+        long start = System.nanoTime();
+        Entry entry = doParseRowsEvent(event, tableMeta);
+        long cost = System.nanoTime() - start;
+        profiler.recordEvent(event.getHeader().getType(), cost);
+        if (entry != null) {
+            // 被过滤或拿不到表结构的事件不计入表维度
+            profiler.recordTable(entry.getHeader().getSchemaName(),
+                entry.getHeader().getTableName(),
+                event.getHeader().getEventLen(),
+                cost);
+        }
+        return entry;
+    }
+
+    private Entry doParseRowsEvent(RowsLogEvent event, TableMeta tableMeta) {
         try {
             if (tableMeta == null) { // 如果没有外部指定
                 tableMeta = parseRowsEventForTableMeta(event);
@@ -552,7 +594,8 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
             rowChangeBuider.setIsDdl(false);
 
             rowChangeBuider.setEventType(eventType);
-            RowsLogBuffer buffer = event.getRowsBuf(charset.name());
+            RowsLogBuffer buffer = event.getRowsBuf(charset, columnCharset);
+            buffer.setJsonBinary(jsonBinary);
             BitSet columns = event.getColumns();
             BitSet changeColumns = event.getChangeColumns();
 
@@ -835,7 +878,11 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                         // mysql binlog中blob/text都处理为blob类型，需要反查table
                         // meta，按编码解析text
                         if (fieldMeta != null && isText(fieldMeta.getColumnType())) {
-                            columnBuilder.setValue(new String((byte[]) value, charset));
+                            byte[] text = (byte[]) value;
+                            columnBuilder.setValue(CharsetConversion.decode(text,
+                                0,
+                                text.length,
+                                buffer.getColumnCharset(i)));
                             javaType = Types.CLOB;
                         } else {
                             // byte数组，直接使用iso-8859-1保留对应编码，浪费内存
@@ -1098,6 +1145,14 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         this.filterTableError = filterTableError;
     }
 
+    public void setColumnCharset(boolean columnCharset) {
+        this.columnCharset = columnCharset;
+    }
+
+    public void setJsonBinary(boolean jsonBinary) {
+        this.jsonBinary = jsonBinary;
+    }
+
     public void setFilterRows(boolean filterRows) {
         this.filterRows = filterRows;
     }
@@ -1105,4 +1160,8 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
     public void setUseDruidDdlFilter(boolean useDruidDdlFilter) {
         this.useDruidDdlFilter = useDruidDdlFilter;
     }
+
+    public void setProfiler(ParserProfiler profiler) {
+        this.profiler = profiler;
+    }
 }
@@ -8,6 +8,7 @@ import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 
+import com.alibaba.otter.canal.parse.driver.mysql.MysqlQueryChannel;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.FieldPacket;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ResultSetPacket;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
@@ -45,6 +46,8 @@ public class TableMetaCache {
     private TableMetaTSDB                   tableMetaTSDB;
     // 第一层tableId,第二层schema.table,解决tableId重复，对应多张表
     private LoadingCache<String, TableMeta> tableMetaDB;
+    // 设置后表结构查询通过pipeline通道并发执行, 否则在connection上串行执行
+    private volatile MysqlQueryChannel      queryChannel;
 
     public TableMetaCache(MysqlConnection con, TableMetaTSDB tableMetaTSDB){
         this.connection = con;
@@ -60,7 +63,7 @@ public class TableMetaCache {
                     } catch (Throwable e) {
                         // 尝试做一次retry操作
                         try {
-                            connection.reconnect();
+                            reconnect();
                             return getTableMetaByDB(name);
                         } catch (IOException e1) {
                             throw new CanalParseException("fetch failed by table meta:" + name, e1);
@@ -90,15 +93,15 @@ public class TableMetaCache {
         }
     }
 
-    private synchronized TableMeta getTableMetaByDB(String fullname) throws IOException {
+    private TableMeta getTableMetaByDB(String fullname) throws IOException {
         try {
-            ResultSetPacket packet = connection.query("show create table " + fullname);
+            ResultSetPacket packet = query("show create table " + fullname);
             String[] names = StringUtils.split(fullname, "`.`");
             String schema = names[0];
             String table = names[1].substring(0, names[1].length());
             return new TableMeta(schema, table, parseTableMeta(schema, table, packet));
         } catch (Throwable e) { // fallback to desc table
-            ResultSetPacket packet = connection.query("desc " + fullname);
+            ResultSetPacket packet = query("desc " + fullname);
             String[] names = StringUtils.split(fullname, "`.`");
             String schema = names[0];
             String table = names[1].substring(0, names[1].length());
@@ -168,10 +171,12 @@ public class TableMetaCache {
         return getTableMeta(schema, table, true, position);
     }
 
-    public synchronized TableMeta getTableMeta(String schema, String table, boolean useCache, EntryPosition position) {
+    public TableMeta getTableMeta(String schema, String table, boolean useCache, EntryPosition position) {
         TableMeta tableMeta = null;
         if (tableMetaTSDB != null) {
-            tableMeta = tableMetaTSDB.find(schema, table);
+            synchronized (this) {
+                tableMeta = tableMetaTSDB.find(schema, table);
+            }
             if (tableMeta == null) {
                 // 因为条件变化，可能第一次的tableMeta没取到，需要从db获取一次，并记录到snapshot中
                 String fullName = getFullName(schema, table);
@@ -179,18 +184,20 @@ public class TableMetaCache {
                 String createDDL = null;
                 try {
                     try {
-                        packet = connection.query("show create table " + fullName);
+                        packet = query("show create table " + fullName);
                     } catch (Exception e) {
                         // 尝试做一次retry操作
-                        connection.reconnect();
-                        packet = connection.query("show create table " + fullName);
+                        reconnect();
+                        packet = query("show create table " + fullName);
                     }
                     if (packet.getFieldValues().size() > 0) {
                         createDDL = packet.getFieldValues().get(1);
                     }
-                    // 强制覆盖掉内存值
-                    tableMetaTSDB.apply(position, schema, createDDL, "first");
-                    tableMeta = tableMetaTSDB.find(schema, table);
+                    synchronized (this) {
+                        // 强制覆盖掉内存值
+                        tableMetaTSDB.apply(position, schema, createDDL, "first");
+                        tableMeta = tableMetaTSDB.find(schema, table);
+                    }
                 } catch (IOException e) {
                     throw new CanalParseException("fetch failed by table meta:" + fullName, e);
                 }
@@ -251,6 +258,30 @@ public class TableMetaCache {
         }
     }
 
+    // 查询期间不持有TableMetaCache的锁, 多个解析线程加载不同的表时不会互相阻塞
+    private ResultSetPacket query(String sql) throws IOException {
+        MysqlQueryChannel channel = queryChannel;
+        if (channel != null && channel.isRunning()) {
+            return channel.queryAndWait(sql);
+        }
+
+        synchronized (connection) {
+            return connection.query(sql);
+        }
+    }
+
+    private void reconnect() throws IOException {
+        MysqlQueryChannel channel = queryChannel;
+        if (channel != null && channel.isRunning()) {
+            // 通道中异常的连接会在下一次查询时重建
+            return;
+        }
+
+        synchronized (connection) {
+            connection.reconnect();
+        }
+    }
+
     private String getFullName(String schema, String table) {
         StringBuilder builder = new StringBuilder();
         return builder.append('`')
@@ -263,6 +294,14 @@ public class TableMetaCache {
             .toString();
     }
 
+    public MysqlQueryChannel getQueryChannel() {
+        return queryChannel;
+    }
+
+    public void setQueryChannel(MysqlQueryChannel queryChannel) {
+        this.queryChannel = queryChannel;
+    }
+
     public boolean isOnTSDB() {
         return isOnTSDB;
     }
@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -53,16 +54,25 @@ public class BinlogDownloadQueue {
     private LinkedBlockingQueue<Runnable>   taskQueue     = new LinkedBlockingQueue<>();
     private LinkedList<BinlogFile>          binlogList;
     private final int                       batchFileSize;
-    private Thread                          downloadThread;
+    private final int                       downloadThreadSize;                   // 并发下载的线程数
+    private List<Thread>                    downloadThreads;
     public boolean                          running       = true;
     private final String                    destDir;
     private String                          hostId;
     private int                             currentSize;
     private String                          lastDownload;
+    private long                            nextSequence;                         // 下一个排队下载文件的序号
+    private long                            nextPublish;                          // 下一个允许发布的文件序号
 
     public BinlogDownloadQueue(List<BinlogFile> downloadQueue, int batchFileSize, String destDir) throws IOException{
+        this(downloadQueue, batchFileSize, 1, destDir);
+    }
+
+    public BinlogDownloadQueue(List<BinlogFile> downloadQueue, int batchFileSize, int downloadThreadSize, String destDir)
+                                                                                                                  throws IOException{
         this.binlogList = new LinkedList(downloadQueue);
         this.batchFileSize = batchFileSize;
+        this.downloadThreadSize = Math.max(1, downloadThreadSize);
         this.destDir = destDir;
         this.currentSize = 0;
         prepareBinlogList();
@@ -84,12 +94,16 @@ public class BinlogDownloadQueue {
     }
 
     public void silenceDownload() {
-        if (downloadThread != null) {
+        if (downloadThreads != null) {
             return;
         }
-        downloadThread = new Thread(new DownloadThread(), "download-" + destDir);
-        downloadThread.setDaemon(true);
-        downloadThread.start();
+        downloadThreads = new ArrayList<>(downloadThreadSize);
+        for (int i = 0; i < downloadThreadSize; i++) {
+            Thread thread = new Thread(new DownloadThread(), "download-" + destDir + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            downloadThreads.add(thread);
+        }
     }
 
     public BinlogFile tryOne() throws Throwable {
@@ -97,7 +111,7 @@ public class BinlogDownloadQueue {
         if (binlogFile == null) {
             throw new CanalParseException("download binlog is null");
         }
-        download(binlogFile);
+        publish(download(binlogFile));
         hostId = binlogFile.getHostInstanceID();
         this.currentSize++;
         return binlogFile;
@@ -141,6 +155,7 @@ public class BinlogDownloadQueue {
             if (binlogFile == null) {
                 break;
             }
+            binlogFile.setSequence(nextSequence++);
             this.downloadQueue.put(binlogFile);
             this.lastDownload = "mysql-bin." + binlogFile.getFileName();
             this.currentSize++;
@@ -156,17 +171,52 @@ public class BinlogDownloadQueue {
         this.currentSize = 0;
         binlogList.clear();
         downloadQueue.clear();
+        synchronized (this) {
+            notifyAll();// 唤醒等待发布的线程
+        }
         try {
-            downloadThread.interrupt();
-            downloadThread.join();// 等待其结束
+            if (downloadThreads != null) {
+                for (Thread thread : downloadThreads) {
+                    thread.interrupt();
+                }
+                for (Thread thread : downloadThreads) {
+                    thread.join();// 等待其结束
+                }
+            }
         } catch (InterruptedException e) {
             // ignore
         } finally {
-            downloadThread = null;
+            downloadThreads = null;
+        }
+    }
+
+    /**
+     * 多线程下载时文件完成的顺序不确定, 而BinLogFileQueue按发现的顺序追加文件,
+     * 所以下载完成后按排队的顺序依次重命名, 保证解析端看到的文件有序
+     */
+    private synchronized void publish(BinlogFile binlogFile, List<File> files) throws InterruptedException {
+        while (running && binlogFile.getSequence() != nextPublish) {
+            wait(1000);
+        }
+        if (!running) {
+            return;
+        }
+        try {
+            publish(files);
+        } finally {
+            nextPublish++;
+            notifyAll();
+        }
+    }
+
+    private static void publish(List<File> files) {
+        for (File file : files) {
+            String name = StringUtils.removeEnd(file.getName(), ".tmp");
+            file.renameTo(new File(file.getParentFile(), name));
         }
     }
 
-    private void download(BinlogFile binlogFile) throws Throwable {
+    private List<File> download(BinlogFile binlogFile) throws Throwable {
         String downloadLink = binlogFile.getDownloadLink();
         String fileName = binlogFile.getFileName();
 
@@ -204,10 +254,12 @@ public class BinlogDownloadQueue {
         if (statusCode != HttpResponseStatus.OK.code()) {
             throw new RuntimeException("download failed , url:" + downloadLink + " , statusCode:" + statusCode);
         }
-        saveFile(new File(destDir), "mysql-bin." + fileName, response);
+        return saveFile(new File(destDir), "mysql-bin." + fileName, response);
     }
 
-    private static void saveFile(File parentFile, String fileName, HttpResponse response) throws IOException {
+    // 返回下载完成的临时文件, 由调用方决定何时重命名
+    private static List<File> saveFile(File parentFile, String fileName, HttpResponse response) throws IOException {
+        List<File> files = new ArrayList<>();
         InputStream is = response.getEntity().getContent();
         long totalSize = Long.parseLong(response.getFirstHeader("Content-Length").getValue());
         if (response.getFirstHeader("Content-Disposition") != null) {
@@ -237,7 +289,7 @@ public class BinlogDownloadQueue {
                             bos.write(buffer, 0, read);
                         }
                         logger.info("download file " + tarFile.getName() + " end!");
-                        tarFile.renameTo(new File(parentFile, name));
+                        files.add(tarFile);
                     } finally {
                         IOUtils.closeQuietly(bos);
                     }
@@ -274,11 +326,12 @@ public class BinlogDownloadQueue {
                 } finally {
                     IOUtils.closeQuietly(fos);
                 }
-                file.renameTo(new File(parentFile, fileName));
+                files.add(file);
             }
         } finally {
             IOUtils.closeQuietly(fos);
         }
+        return files;
     }
 
     public void execute(Runnable runnable) throws InterruptedException {
@@ -295,9 +348,9 @@ public class BinlogDownloadQueue {
                     binlogFile = downloadQueue.poll(5000, TimeUnit.MILLISECONDS);
                     if (binlogFile != null) {
                         int retry = 1;
-                        while (true) {
+                        while (running) {
                             try {
-                                download(binlogFile);
+                                publish(binlogFile, download(binlogFile));
                                 break;
                             } catch (Throwable e) {
                                 if (retry % 10 == 0) {
@@ -27,6 +27,8 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
     private String                    instanceId;                                             // rds实例id
     private String                    directory;                                              // binlog目录
     private int                       batchFileSize             = 4;                          // 最多下载的binlog文件数量
+    private int                       downloadThreadSize        = 1;                          // 并发下载的线程数
+    private int                       parallelFiles             = 1;                          // 同时解码的binlog文件数
 
     private RdsLocalBinlogEventParser rdsLocalBinlogEventParser = null;
     private ExecutorService           executorService           = Executors.newSingleThreadExecutor(r -> {
@@ -52,6 +54,8 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
             rdsLocalBinlogEventParser.setAlarmHandler(this.getAlarmHandler());
             rdsLocalBinlogEventParser.setConnectionCharsetStd(this.connectionCharset);
             rdsLocalBinlogEventParser.setConnectionCharsetNumber(this.connectionCharsetNumber);
+            rdsLocalBinlogEventParser.setColumnCharset(this.columnCharset);
+            rdsLocalBinlogEventParser.setJsonBinary(this.jsonBinary);
             rdsLocalBinlogEventParser.setEnableTsdb(this.enableTsdb);
             rdsLocalBinlogEventParser.setEventBlackFilter(this.eventBlackFilter);
             rdsLocalBinlogEventParser.setFilterQueryDcl(this.filterQueryDcl);
@@ -71,6 +75,8 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
             rdsLocalBinlogEventParser.setEventSink(eventSink);
             rdsLocalBinlogEventParser.setDirectory(directory);
             rdsLocalBinlogEventParser.setBatchFileSize(batchFileSize);
+            rdsLocalBinlogEventParser.setDownloadThreadSize(downloadThreadSize);
+            rdsLocalBinlogEventParser.setParallelFiles(parallelFiles);
             rdsLocalBinlogEventParser.setParallel(this.parallel);
             rdsLocalBinlogEventParser.setParallelBufferSize(this.parallelBufferSize);
             rdsLocalBinlogEventParser.setParallelThreadSize(this.parallelThreadSize);
@@ -153,4 +159,12 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
         this.batchFileSize = batchFileSize;
     }
 
+    public void setDownloadThreadSize(int downloadThreadSize) {
+        this.downloadThreadSize = downloadThreadSize;
+    }
+
+    public void setParallelFiles(int parallelFiles) {
+        this.parallelFiles = parallelFiles;
+    }
+
 }
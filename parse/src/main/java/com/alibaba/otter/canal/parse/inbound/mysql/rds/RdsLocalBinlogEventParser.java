@@ -18,6 +18,7 @@ import com.alibaba.otter.canal.parse.inbound.mysql.LocalBinlogEventParser;
 import com.alibaba.otter.canal.parse.inbound.mysql.rds.data.BinlogFile;
 import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
 
 /**
  * 基于rds binlog备份文件的复制
@@ -25,7 +26,7 @@ import com.alibaba.otter.canal.protocol.position.LogPosition;
  * @author agapple 2017年10月15日 下午1:27:36
  * @since 1.0.25
  */
-public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements CanalEventParser, LocalBinLogConnection.FileParserListener {
+public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements CanalEventParser<LogEvent>, LocalBinLogConnection.FileParserListener {
 
     private String              url;                // openapi地址
     private String              accesskey;          // 云账号的ak
@@ -36,6 +37,7 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
     private BinlogDownloadQueue binlogDownloadQueue;
     private ParseFinishListener finishListener;
     private int                 batchFileSize;
+    private int                 downloadThreadSize = 1;
 
     public RdsLocalBinlogEventParser(){
     }
@@ -72,7 +74,7 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
                 throw new CanalParseException("start timestamp : " + startTimeInMill + " binlog files is empty");
             }
 
-            binlogDownloadQueue = new BinlogDownloadQueue(binlogFiles, batchFileSize, directory);
+            binlogDownloadQueue = new BinlogDownloadQueue(binlogFiles, batchFileSize, downloadThreadSize, directory);
             binlogDownloadQueue.silenceDownload();
             needWait = true;
             // try to download one file,use to test server id
@@ -215,4 +217,8 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
     public void setBatchFileSize(int batchFileSize) {
         this.batchFileSize = batchFileSize;
     }
+
+    public void setDownloadThreadSize(int downloadThreadSize) {
+        this.downloadThreadSize = downloadThreadSize;
+    }
 }
@@ -13,6 +13,7 @@ public class BinlogFile {
     private String HostInstanceID;
     private String LinkExpiredTime;
     private String fileName;
+    private long   sequence; // 下载排队的序号
 
     public Long getFileSize() {
         return FileSize;
@@ -70,6 +71,14 @@ public class BinlogFile {
         this.fileName = fileName;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
     @Override
     public String toString() {
         return "BinlogFile [FileSize=" + FileSize + ", LogBeginTime=" + LogBeginTime + ", LogEndTime=" + LogEndTime
@@ -1,15 +1,22 @@
 package com.alibaba.otter.canal.parse.inbound.mysql.tsdb;
 
 import java.io.IOException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
@@ -25,6 +32,7 @@ import com.alibaba.druid.sql.repository.Schema;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.alibaba.otter.canal.filter.CanalEventFilter;
+import com.alibaba.otter.canal.parse.driver.mysql.MysqlQueryChannel;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ResultSetPacket;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
 import com.alibaba.otter.canal.parse.inbound.TableMeta;
@@ -48,6 +56,7 @@ import com.alibaba.otter.canal.protocol.position.EntryPosition;
 public class DatabaseTableMeta implements TableMetaTSDB {
 
     public static final EntryPosition       INIT_POSITION       = new EntryPosition("0", 0L, -2L, -1L);
+    private static final int                DUMP_MAX_IN_FLIGHT  = 16;
     private static Logger                   logger              = LoggerFactory.getLogger(DatabaseTableMeta.class);
     private static Pattern                  pattern             = Pattern.compile("Duplicate entry '.*' for key '*'");
     private static Pattern                  h2Pattern           = Pattern.compile("Unique index or primary key violation");
@@ -73,6 +82,8 @@ public class DatabaseTableMeta implements TableMetaTSDB {
     private int                             snapshotInterval    = 24;
     private int                             snapshotExpire      = 360;
     private ScheduledFuture<?>              scheduleSnapshotFuture;
+    private int                             dumpThreadSize      = 4;                                                       // 初始化dump表结构的并发连接数
+    private AtomicLong                      dumpTableMetaTime   = new AtomicLong(0L);                                      // 最近一次dump表结构的耗时(ms)
 
     public DatabaseTableMeta(){
 
@@ -188,27 +199,33 @@ public class DatabaseTableMeta implements TableMetaTSDB {
      * 初始化的时候dump一下表结构
      */
     private boolean dumpTableMeta(MysqlConnection connection, final CanalEventFilter filter) {
+        long start = System.currentTimeMillis();
+        int count;
+        if (dumpThreadSize > 1) {
+            count = dumpTableMetaParallel(connection, filter);
+        } else {
+            count = dumpTableMetaSerial(connection, filter);
+        }
+
+        long cost = System.currentTimeMillis() - start;
+        dumpTableMetaTime.set(cost);
+        logger.info("dump table meta successful, tables : {} , threads : {} , cost : {}ms",
+            count,
+            Math.max(dumpThreadSize, 1),
+            cost);
+        return true;
+    }
+
+    private int dumpTableMetaSerial(MysqlConnection connection, final CanalEventFilter filter) {
+        int count = 0;
         try {
             ResultSetPacket packet = connection.query("show databases");
             List<String> schemas = new ArrayList<>();
             schemas.addAll(packet.getFieldValues());
 
             for (String schema : schemas) {
-                // filter views
-                packet = connection.query("show full tables from `" + schema + "` where Table_type = 'BASE TABLE'");
-                List<String> tables = new ArrayList<>();
-                for (String table : packet.getFieldValues()) {
-                    if ("BASE TABLE".equalsIgnoreCase(table)) {
-                        continue;
-                    }
-                    String fullName = schema + "." + table;
-                    if (blackFilter == null || !blackFilter.filter(fullName)) {
-                        if (filter == null || filter.filter(fullName)) {
-                            tables.add(table);
-                        }
-                    }
-                }
-
+                packet = connection.query(showTablesSql(schema));
+                List<String> tables = filterTables(schema, packet, filter);
                 if (tables.isEmpty()) {
                     continue;
                 }
@@ -223,16 +240,103 @@ public class DatabaseTableMeta implements TableMetaTSDB {
                     if (onePacket.getFieldValues().size() > 1) {
                         String oneTableCreateSql = onePacket.getFieldValues().get(1);
                         memoryTableMeta.apply(INIT_POSITION, schema, oneTableCreateSql, null);
+                        count++;
                     }
                 }
             }
 
-            return true;
+            return count;
         } catch (IOException e) {
             throw new CanalParseException(e);
         }
     }
 
+    /**
+     * 在多个连接上并发查询表结构, 查询结果仍由当前线程按schema/table的顺序apply到memoryTableMeta,
+     * 结果与串行dump一致, memoryTableMeta不需要额外的并发控制
+     */
+    private int dumpTableMetaParallel(MysqlConnection connection, final CanalEventFilter filter) {
+        int count = 0;
+        MysqlQueryChannel channel = new MysqlQueryChannel(connection.getConnector(),
+            dumpThreadSize,
+            DUMP_MAX_IN_FLIGHT);
+        channel.start();
+        try {
+            List<String> schemas = new ArrayList<>(channel.queryAndWait("show databases").getFieldValues());
+            Map<String, CompletableFuture<ResultSetPacket>> tablesFutures = new LinkedHashMap<>();
+            for (String schema : schemas) {
+                tablesFutures.put(schema, channel.query(showTablesSql(schema)));
+            }
+
+            // 控制已提交未apply的查询数, 避免表很多时堆积过多的结果
+            int window = dumpThreadSize * DUMP_MAX_IN_FLIGHT * 2;
+            Deque<Map.Entry<String, CompletableFuture<ResultSetPacket>>> pending = new ArrayDeque<>(window);
+            for (Map.Entry<String, CompletableFuture<ResultSetPacket>> entry : tablesFutures.entrySet()) {
+                String schema = entry.getKey();
+                for (String table : filterTables(schema, await(entry.getValue()), filter)) {
+                    String sql = "show create table `" + schema + "`.`" + table + "`";
+                    pending.add(new SimpleEntry<>(schema, channel.query(sql)));
+                    if (pending.size() >= window) {
+                        count += applyCreateTable(pending.poll());
+                    }
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                count += applyCreateTable(pending.poll());
+            }
+            return count;
+        } catch (IOException e) {
+            throw new CanalParseException(e);
+        } finally {
+            channel.stop();
+        }
+    }
+
+    private int applyCreateTable(Map.Entry<String, CompletableFuture<ResultSetPacket>> pending) throws IOException {
+        ResultSetPacket packet = await(pending.getValue());
+        if (packet.getFieldValues().size() > 1) {
+            memoryTableMeta.apply(INIT_POSITION, pending.getKey(), packet.getFieldValues().get(1), null);
+            return 1;
+        }
+        return 0;
+    }
+
+    private ResultSetPacket await(CompletableFuture<ResultSetPacket> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private String showTablesSql(String schema) {
+        // filter views
+        return "show full tables from `" + schema + "` where Table_type = 'BASE TABLE'";
+    }
+
+    private List<String> filterTables(String schema, ResultSetPacket packet, final CanalEventFilter filter) {
+        List<String> tables = new ArrayList<>();
+        for (String table : packet.getFieldValues()) {
+            if ("BASE TABLE".equalsIgnoreCase(table)) {
+                continue;
+            }
+            String fullName = schema + "." + table;
+            if (blackFilter == null || !blackFilter.filter(fullName)) {
+                if (filter == null || filter.filter(fullName)) {
+                    tables.add(table);
+                }
+            }
+        }
+        return tables;
+    }
+
     private boolean applyHistoryToDB(EntryPosition position, String schema, String ddl, String extra) {
         Map<String, String> content = new HashMap<>();
         content.put("destination", destination);
@@ -682,6 +786,22 @@ public class DatabaseTableMeta implements TableMetaTSDB {
         return connection;
     }
 
+    public int getDumpThreadSize() {
+        return dumpThreadSize;
+    }
+
+    public void setDumpThreadSize(int dumpThreadSize) {
+        this.dumpThreadSize = dumpThreadSize;
+    }
+
+    public AtomicLong getDumpTableMetaTime() {
+        return dumpTableMetaTime;
+    }
+
+    public void setDumpTableMetaTime(AtomicLong dumpTableMetaTime) {
+        this.dumpTableMetaTime = dumpTableMetaTime;
+    }
+
     public boolean isUkDuplicateException(Throwable t) {
         if (pattern.matcher(t.getMessage()).find() || h2Pattern.matcher(t.getMessage()).find()) {
             // 违反外键约束时也抛出这种异常，所以这里还要判断包含字符串Duplicate entry
@@ -0,0 +1,65 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.SinkFunction;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+
+public class LocalBinLogConnectionTest {
+
+    private String directory;
+
+    @Before
+    public void setUp() {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("binlog/mysql-bin.000001");
+        directory = new File(url.getFile()).getParent();
+    }
+
+    @Test
+    public void testParallelSameAsSerial() throws IOException {
+        List<String> finished = new ArrayList<>();
+        List<String> expected = dump(1, Long.MAX_VALUE, finished);
+        Assert.assertEquals(2, finished.size());
+
+        List<String> parallelFinished = new ArrayList<>();
+        Assert.assertEquals(expected, dump(2, Long.MAX_VALUE, parallelFinished));
+        Assert.assertEquals(finished, parallelFinished);
+    }
+
+    @Test
+    public void testParallelStop() throws IOException {
+        List<String> finished = new ArrayList<>();
+        List<String> events = dump(2, 10, finished);
+        Assert.assertEquals(10, events.size());
+        // 没有读完的文件不能通知完成
+        Assert.assertTrue(finished.isEmpty());
+    }
+
+    private List<String> dump(int parallelFiles, final long max, final List<String> finished) throws IOException {
+        LocalBinLogConnection connection = new LocalBinLogConnection(directory, false);
+        connection.setParallelFiles(parallelFiles);
+        connection.setParserListener(finished::add);
+        final List<String> events = new ArrayList<>();
+        connection.connect();
+        try {
+            connection.dump("mysql-bin.000001", 4L, new SinkFunction<LogEvent>() {
+
+                public boolean sink(LogEvent event) {
+                    events.add(event.getHeader().getLogFileName() + ":" + event.getLogPos());
+                    return events.size() < max;
+                }
+            });
+        } finally {
+            connection.disconnect();
+        }
+        return events;
+    }
+}
@@ -0,0 +1,185 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.LogEventConvert;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.github.luben.zstd.Zstd;
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogContext;
+import com.taobao.tddl.dbsync.binlog.LogDecoder;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.event.TransactionPayloadLogEvent;
+
+/**
+ * 事务压缩事件经过解压stage后的解析和位点
+ */
+public class MysqlMultiStageCoprocessorTest {
+
+    private static final String          BINLOG_NAME   = "mysql-bin.000001";
+    private static final long            PAYLOAD_POS   = 1000L;
+    private static final int             XID_EVENT_LEN = 19 + 8;
+
+    private final List<CanalEntry.Entry> entries       = new ArrayList<>();
+    private EventTransactionBuffer       transactionBuffer;
+    private MysqlMultiStageCoprocessor   coprocessor;
+
+    @Before
+    public void setUp() {
+        transactionBuffer = new EventTransactionBuffer(transaction -> {
+            synchronized (entries) {
+                entries.addAll(transaction);
+            }
+        });
+        transactionBuffer.setBufferSize(1024);
+        transactionBuffer.start();
+
+        coprocessor = new MysqlMultiStageCoprocessor(1024, 2, new LogEventConvert(), transactionBuffer, "test",
+            false, false, false);
+        coprocessor.setEventsPublishBlockingTime(new AtomicLong());
+        coprocessor.start();
+    }
+
+    @After
+    public void tearDown() {
+        coprocessor.stop();
+        transactionBuffer.stop();
+    }
+
+    @Test
+    public void testDecompressBuffer() throws Exception {
+        byte[] rotate = rotateEvent(BINLOG_NAME, 4L);
+        Assert.assertTrue(coprocessor.publish(new LogBuffer(rotate, 0, rotate.length)));
+        byte[] payload = payloadEvent(1L, 2L);
+        Assert.assertTrue(coprocessor.publish(new LogBuffer(payload, 0, payload.length)));
+
+        assertEntries(payload.length);
+    }
+
+    @Test
+    public void testDecompressEvent() throws Exception {
+        // 已经解析好的事件(如本地binlog)直接投递, 由解压stage解压
+        byte[] payload = payloadEvent(1L, 2L);
+        LogContext context = new LogContext();
+        context.setLogPosition(new LogPosition(BINLOG_NAME, 4L));
+        LogEvent event = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT)
+            .decode(new LogBuffer(payload, 0, payload.length), context);
+        Assert.assertTrue(event instanceof TransactionPayloadLogEvent);
+        Assert.assertTrue(coprocessor.publish(event));
+
+        assertEntries(payload.length);
+    }
+
+    private void assertEntries(int payloadLen) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        synchronized (entries) {
+            Assert.assertEquals(2, entries.size());
+            for (CanalEntry.Entry entry : entries) {
+                Assert.assertEquals(CanalEntry.EntryType.TRANSACTIONEND, entry.getEntryType());
+                Assert.assertEquals(BINLOG_NAME, entry.getHeader().getLogfileName());
+            }
+            Assert.assertEquals("1", CanalEntry.TransactionEnd.parseFrom(entries.get(0).getStoreValue())
+                .getTransactionId());
+            // 事务内的事件从外层事件的起始位点开始, 最后一个事件从外层事件的结束位点开始
+            Assert.assertEquals(PAYLOAD_POS - payloadLen, entries.get(0).getHeader().getLogfileOffset());
+            Assert.assertEquals(PAYLOAD_POS, entries.get(1).getHeader().getLogfileOffset());
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static byte[] rotateEvent(String fileName, long position) {
+        byte[] name = fileName.getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header(out, LogEvent.ROTATE_EVENT, 19 + 8 + name.length, 0L);
+        writeInt(out, position, 8);
+        out.write(name, 0, name.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] xidEvent(long xid) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header(out, LogEvent.XID_EVENT, XID_EVENT_LEN, 0L);
+        writeInt(out, xid, 8);
+        return out.toByteArray();
+    }
+
+    private static byte[] payloadEvent(long... xids) {
+        ByteArrayOutputStream events = new ByteArrayOutputStream();
+        for (long xid : xids) {
+            byte[] bytes = xidEvent(xid);
+            events.write(bytes, 0, bytes.length);
+        }
+        byte[] payload = Zstd.compress(events.toByteArray());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        field(body, TransactionPayloadLogEvent.OTW_PAYLOAD_COMPRESSION_TYPE_FIELD,
+            TransactionPayloadLogEvent.COMPRESSION_ZSTD);
+        field(body, TransactionPayloadLogEvent.OTW_PAYLOAD_UNCOMPRESSED_SIZE_FIELD, events.size());
+        field(body, TransactionPayloadLogEvent.OTW_PAYLOAD_SIZE_FIELD, payload.length);
+        writePacked(body, TransactionPayloadLogEvent.OTW_PAYLOAD_HEADER_END_MARK);
+        body.write(payload, 0, payload.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header(out, LogEvent.TRANSACTION_PAYLOAD_EVENT, 19 + body.size(), PAYLOAD_POS);
+        byte[] bytes = body.toByteArray();
+        out.write(bytes, 0, bytes.length);
+        return out.toByteArray();
+    }
+
+    private static void header(ByteArrayOutputStream out, int type, int eventLen, long logPos) {
+        writeInt(out, 0L, 4); // when
+        out.write(type);
+        writeInt(out, 1L, 4); // server id
+        writeInt(out, eventLen, 4);
+        writeInt(out, logPos, 4);
+        writeInt(out, 0L, 2); // flags
+    }
+
+    private static void field(ByteArrayOutputStream out, int type, long value) {
+        ByteArrayOutputStream v = new ByteArrayOutputStream();
+        writePacked(v, value);
+        writePacked(out, type);
+        writePacked(out, v.size());
+        byte[] bytes = v.toByteArray();
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writePacked(ByteArrayOutputStream out, long value) {
+        if (value < 251) {
+            out.write((int) value);
+        } else if (value < 0x10000L) {
+            out.write(252);
+            writeInt(out, value, 2);
+        } else {
+            out.write(253);
+            writeInt(out, value, 3);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value, int len) {
+        for (int i = 0; i < len; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+}
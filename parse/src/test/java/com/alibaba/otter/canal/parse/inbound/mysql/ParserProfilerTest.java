@@ -0,0 +1,95 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.mysql.ParserProfiler.TableTimer;
+import com.alibaba.otter.canal.parse.inbound.mysql.ParserProfiler.Timer;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+
+public class ParserProfilerTest {
+
+    @Test
+    public void testSample() {
+        ParserProfiler profiler = new ParserProfiler();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse(profiler.sample());
+        }
+
+        profiler.setSampleRate(1);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(profiler.sample());
+        }
+
+        profiler.setSampleRate(10);
+        int sampled = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (profiler.sample()) {
+                sampled++;
+            }
+        }
+        Assert.assertTrue(sampled > 8000 && sampled < 12000);
+    }
+
+    @Test
+    public void testBuckets() {
+        Timer timer = new Timer();
+        timer.record(500L); // 0.5us
+        timer.record(1000L); // 1us
+        timer.record(3 * 1000L); // 3us
+        timer.record(2 * 1000 * 1000 * 1000L); // 2s
+
+        long[] buckets = timer.getBuckets();
+        Assert.assertEquals(ParserProfiler.BUCKETS.length + 1, buckets.length);
+        Assert.assertEquals(2, buckets[0]);
+        Assert.assertEquals(1, buckets[1]);
+        Assert.assertEquals(1, buckets[buckets.length - 1]);
+        Assert.assertEquals(4, timer.getCount());
+        Assert.assertEquals(500L + 1000L + 3000L + 2000000000L, timer.getSum());
+    }
+
+    @Test
+    public void testStageAndEvent() {
+        ParserProfiler profiler = new ParserProfiler();
+        profiler.recordStage(ParserProfiler.STAGE_DML_PARSER, 1000L);
+        profiler.recordEvent(LogEvent.WRITE_ROWS_EVENT, 1000L);
+        profiler.recordEvent(LogEvent.WRITE_ROWS_EVENT, 2000L);
+        profiler.recordEvent(LogEvent.ENUM_END_EVENT, 1000L); // ignore
+
+        Assert.assertEquals(3, profiler.getStageTimers().size());
+        Assert.assertEquals(1, profiler.getStageTimers().get(ParserProfiler.STAGE_DML_PARSER).getCount());
+        Assert.assertEquals(0, profiler.getStageTimers().get(ParserProfiler.STAGE_SINK_STORE).getCount());
+
+        Map<String, Timer> events = profiler.getEventTimers();
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(2, events.get(LogEvent.getTypeName(LogEvent.WRITE_ROWS_EVENT)).getCount());
+    }
+
+    @Test
+    public void testTopTables() {
+        ParserProfiler profiler = new ParserProfiler();
+        profiler.recordTable("test", "small", 100, 1000L);
+        profiler.recordTable("test", "hot", 1000, 5000L);
+        profiler.recordTable("test", "hot", 1000, 5000L);
+        profiler.recordTable("test", "medium", 100, 3000L);
+
+        List<TableTimer> tables = profiler.topTables(2);
+        Assert.assertEquals(2, tables.size());
+        Assert.assertEquals("test.hot", tables.get(0).getName());
+        Assert.assertEquals(2, tables.get(0).getCount());
+        Assert.assertEquals(2000, tables.get(0).getBytes());
+        Assert.assertEquals("test.medium", tables.get(1).getName());
+        Assert.assertEquals(3, profiler.topTables(10).size());
+
+        // 超过上限的新表不再统计, 已有的表继续统计
+        for (int i = 0; i < ParserProfiler.MAX_TABLES; i++) {
+            profiler.recordTable("test", "t" + i, 1, 1L);
+        }
+        Assert.assertEquals(ParserProfiler.MAX_TABLES, profiler.topTables(Integer.MAX_VALUE).size());
+        profiler.recordTable("test", "hot", 1000, 5000L);
+        Assert.assertEquals(3, profiler.topTables(1).get(0).getCount());
+    }
+}
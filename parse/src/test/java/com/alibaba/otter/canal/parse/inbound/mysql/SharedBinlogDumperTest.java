@@ -0,0 +1,278 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.mysql.SharedBinlogDumper.Subscriber;
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+
+/**
+ * 共享dump链接的订阅、退订以及各订阅者独立的位点, 使用内存中的binlog, 不依赖mysql
+ */
+public class SharedBinlogDumperTest {
+
+    private static final String        BINLOG      = "mysql-bin.000001";
+    private static final int           BUFFER_SIZE = 1024;
+    private static final AtomicInteger PORTS       = new AtomicInteger(13306);
+
+    @Test(timeout = 30000)
+    public void testAttachDetach() throws Exception {
+        FakeConnection connection = new FakeConnection();
+        Subscriber first = SharedBinlogDumper.subscribe(connection, BINLOG, 4L, BUFFER_SIZE);
+        connection.append(100L);
+        connection.append(200L);
+        Assert.assertEquals(100L, nextPosition(first));
+        Assert.assertEquals(200L, nextPosition(first));
+
+        // 位点不落后于reader, 直接加入同一个dump, 先收到rotate/format description
+        Subscriber second = SharedBinlogDumper.subscribe(connection, BINLOG, 200L, BUFFER_SIZE);
+        LogBuffer rotate = second.poll();
+        Assert.assertEquals(LogEvent.ROTATE_EVENT, type(rotate));
+        Assert.assertEquals(LogEvent.FORMAT_DESCRIPTION_EVENT, type(second.poll()));
+
+        connection.append(300L);
+        Assert.assertEquals(300L, nextPosition(first));
+        Assert.assertEquals(300L, nextPosition(second));
+        Assert.assertEquals(1, connection.dumps.size());
+
+        // 退订一个订阅者不影响其他订阅者
+        second.close();
+        connection.append(400L);
+        Assert.assertEquals(400L, nextPosition(first));
+        Assert.assertFalse(connection.disconnected);
+
+        // 最后一个订阅者退订时关闭dump链接, 再次订阅重新建立
+        first.close();
+        Assert.assertTrue(connection.disconnected);
+        Subscriber third = SharedBinlogDumper.subscribe(connection, BINLOG, 400L, BUFFER_SIZE);
+        try {
+            connection.append(500L);
+            Assert.assertEquals(500L, nextPosition(third));
+            Assert.assertEquals(2, connection.dumps.size());
+        } finally {
+            third.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testLaggingSubscriber() throws Exception {
+        FakeConnection connection = new FakeConnection();
+        Subscriber first = SharedBinlogDumper.subscribe(connection, BINLOG, 4L, BUFFER_SIZE);
+        Subscriber second = null;
+        try {
+            connection.append(100L);
+            connection.append(200L);
+            connection.append(300L);
+            Assert.assertEquals(100L, nextPosition(first));
+            Assert.assertEquals(200L, nextPosition(first));
+            Assert.assertEquals(300L, nextPosition(first));
+
+            // 新订阅者落后于reader, 从最小的位点重新dump
+            second = SharedBinlogDumper.subscribe(connection, BINLOG, 100L, BUFFER_SIZE);
+            Assert.assertEquals(200L, nextPosition(second));
+            Assert.assertEquals(300L, nextPosition(second));
+            Assert.assertEquals(2, connection.dumps.size());
+            Assert.assertEquals(BINLOG + ":100", connection.dumps.get(1));
+
+            // 已经投递过的事件按各自的位点过滤, 不会重复
+            connection.append(400L);
+            Assert.assertEquals(400L, nextPosition(first));
+            Assert.assertEquals(400L, nextPosition(second));
+        } finally {
+            first.close();
+            if (second != null) {
+                second.close();
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testSequenceOverflow() throws Exception {
+        FakeConnection connection = new FakeConnection();
+        Subscriber first = SharedBinlogDumper.subscribe(connection, "mysql-bin.999999", 4L, BUFFER_SIZE);
+        Subscriber second = null;
+        try {
+            connection.append(100L);
+            Assert.assertEquals(100L, nextPosition(first));
+
+            // 序号超过6位后按数值比较, 新订阅者不落后于reader, 不需要重新dump
+            second = SharedBinlogDumper.subscribe(connection, "mysql-bin.1000000", 4L, BUFFER_SIZE);
+            Assert.assertEquals(LogEvent.ROTATE_EVENT, type(second.poll()));
+            Assert.assertEquals(1, connection.dumps.size());
+        } finally {
+            first.close();
+            if (second != null) {
+                second.close();
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testDumpFailure() throws Exception {
+        FakeConnection connection = new FakeConnection();
+        connection.failure = new IOException("connection reset");
+        Subscriber subscriber = SharedBinlogDumper.subscribe(connection, BINLOG, 4L, BUFFER_SIZE);
+        try {
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (System.currentTimeMillis() < deadline) {
+                subscriber.poll();
+            }
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertSame(connection.failure, e.getCause());
+        } finally {
+            subscriber.close();
+        }
+    }
+
+    /**
+     * 下一个数据事件的位点, 跳过rotate/format description/heartbeat
+     */
+    private static long nextPosition(Subscriber subscriber) throws Exception {
+        while (true) {
+            LogBuffer buffer = subscriber.poll();
+            if (buffer != null && type(buffer) == LogEvent.XID_EVENT) {
+                return buffer.getUint32(LogEvent.LOG_POS_OFFSET);
+            }
+        }
+    }
+
+    private static int type(LogBuffer buffer) {
+        return buffer.getUint8(LogEvent.EVENT_TYPE_OFFSET);
+    }
+
+    /**
+     * 内存中的单个binlog文件, dump时从指定位点之后开始发送, 没有新事件时发送heartbeat
+     */
+    private static class FakeConnection extends MysqlConnection {
+
+        private final List<Long>     events       = new ArrayList<>();
+        private final List<String>   dumps        = new CopyOnWriteArrayList<>();
+        private volatile boolean     disconnected = false;
+        private volatile IOException failure;
+
+        FakeConnection(){
+            super(new InetSocketAddress("127.0.0.1", PORTS.incrementAndGet()), "canal", "canal");
+        }
+
+        synchronized void append(long position) {
+            events.add(position);
+        }
+
+        private synchronized Long next(long position) {
+            for (Long event : events) {
+                if (event > position) {
+                    return event;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public MysqlConnection fork() {
+            return this;
+        }
+
+        @Override
+        public void connect() {
+            disconnected = false;
+        }
+
+        @Override
+        public void reconnect() {
+            disconnected = false;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return !disconnected;
+        }
+
+        @Override
+        int getBinlogChecksum() {
+            return LogEvent.BINLOG_CHECKSUM_ALG_OFF;
+        }
+
+        @Override
+        void dumpRaw(String binlogfilename, Long binlogPosition, Predicate<LogBuffer> sink) throws IOException {
+            dumps.add(binlogfilename + ":" + binlogPosition);
+            if (failure != null) {
+                throw failure;
+            }
+            // 与mysql一致, 先发送rotate和format description
+            if (!sink.test(rotateEvent(binlogfilename, binlogPosition))
+                || !sink.test(event(LogEvent.FORMAT_DESCRIPTION_EVENT, 0L))) {
+                return;
+            }
+            long position = binlogPosition;
+            while (!disconnected) {
+                Long next = next(position);
+                LogBuffer buffer;
+                if (next != null) {
+                    buffer = event(LogEvent.XID_EVENT, next);
+                    position = next;
+                } else {
+                    buffer = event(LogEvent.HEARTBEAT_LOG_EVENT, 0L);
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!sink.test(buffer)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static LogBuffer rotateEvent(String fileName, long position) {
+        byte[] name = fileName.getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header(out, LogEvent.ROTATE_EVENT, 19 + 8 + name.length, 0L);
+        writeInt(out, position, 8);
+        out.write(name, 0, name.length);
+        byte[] bytes = out.toByteArray();
+        return new LogBuffer(bytes, 0, bytes.length);
+    }
+
+    private static LogBuffer event(int type, long logPos) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header(out, type, 19 + 8, logPos);
+        writeInt(out, logPos, 8);
+        byte[] bytes = out.toByteArray();
+        return new LogBuffer(bytes, 0, bytes.length);
+    }
+
+    private static void header(ByteArrayOutputStream out, int type, int eventLen, long logPos) {
+        writeInt(out, 0L, 4); // when
+        out.write(type);
+        writeInt(out, 1L, 4); // server id
+        writeInt(out, eventLen, 4);
+        writeInt(out, logPos, 4);
+        writeInt(out, 0L, 2); // flags
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value, int len) {
+        for (int i = 0; i < len; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
+
+public class TimestampPositionIndexTest {
+
+    private static final String ADDRESS = "127.0.0.1:3306";
+    private File                dataDir;
+
+    @Before
+    public void setUp() throws IOException {
+        dataDir = new File(System.getProperty("java.io.tmpdir", "/tmp"), "canal-timestamp-index");
+        FileUtils.deleteDirectory(dataDir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dataDir);
+    }
+
+    @Test
+    public void testFloorAndSearchFile() throws IOException {
+        TimestampPositionIndex index = new TimestampPositionIndex(dataDir, 1000L, 1000);
+        index.start();
+        index.record(ADDRESS, "mysql-bin.000001", 4L, 10000L);
+        index.record(ADDRESS, "mysql-bin.000001", 100L, 10500L); // 间隔内不记录
+        index.record(ADDRESS, "mysql-bin.000001", 200L, 11000L);
+        index.record(ADDRESS, "mysql-bin.000001", 300L, 11500L);
+        index.record(ADDRESS, "mysql-bin.000002", 4L, 12000L); // 新文件一定记录
+        index.record(ADDRESS, "mysql-bin.000002", 400L, 15000L);
+        Assert.assertEquals(4, index.size());
+
+        Assert.assertNull(index.floor(ADDRESS, 10000L));
+        assertPosition("mysql-bin.000001", 200L, index.floor(ADDRESS, 11400L));
+        assertPosition("mysql-bin.000002", 4L, index.floor(ADDRESS, 14000L));
+        Assert.assertNull(index.floor("127.0.0.2:3306", 14000L));
+
+        // 文件最后的事务晚于时间戳, 只需要扫描该文件
+        Assert.assertEquals("mysql-bin.000001", index.searchFile(ADDRESS, 11400L));
+        // 时间戳在两个文件之间, 从后一个文件开始向前扫描
+        Assert.assertEquals("mysql-bin.000002", index.searchFile(ADDRESS, 11800L));
+        // 超出索引范围
+        Assert.assertNull(index.searchFile(ADDRESS, 20000L));
+        index.stop();
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        TimestampPositionIndex index = new TimestampPositionIndex(dataDir, 1000L, 1000);
+        index.start();
+        index.record(ADDRESS, "mysql-bin.000001", 4L, 10000L);
+        index.record(ADDRESS, "mysql-bin.000001", 300L, 11500L);
+        index.record(ADDRESS, "mysql-bin.000002", 4L, 12000L);
+        index.stop();
+
+        index = new TimestampPositionIndex(dataDir, 1000L, 1000);
+        index.start();
+        Assert.assertEquals(3, index.size());
+        assertPosition("mysql-bin.000001", 300L, index.floor(ADDRESS, 11800L));
+        Assert.assertEquals("mysql-bin.000002", index.searchFile(ADDRESS, 11800L));
+
+        // 数据库地址变化后清空
+        index.record("127.0.0.2:3306", "mysql-bin.000010", 4L, 20000L);
+        Assert.assertEquals(1, index.size());
+        Assert.assertNull(index.floor(ADDRESS, 11800L));
+        index.stop();
+    }
+
+    @Test
+    public void testMaxEntries() throws IOException {
+        TimestampPositionIndex index = new TimestampPositionIndex(dataDir, 1000L, 10);
+        index.start();
+        for (int i = 0; i < 25; i++) {
+            index.record(ADDRESS, "mysql-bin.000001", 4L + i, 10000L + i * 1000L);
+        }
+        Assert.assertTrue(index.size() <= 10);
+        assertPosition("mysql-bin.000001", 28L, index.floor(ADDRESS, 40000L));
+        index.stop();
+
+        index = new TimestampPositionIndex(dataDir, 1000L, 10);
+        index.start();
+        Assert.assertTrue(index.size() <= 10);
+        assertPosition("mysql-bin.000001", 28L, index.floor(ADDRESS, 40000L));
+        index.stop();
+    }
+
+    private void assertPosition(String journalName, long position, EntryPosition entryPosition) {
+        Assert.assertNotNull(entryPosition);
+        Assert.assertEquals(journalName, entryPosition.getJournalName());
+        Assert.assertEquals(Long.valueOf(position), entryPosition.getPosition());
+    }
+}
@@ -0,0 +1,123 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.dbsync;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.TableMeta;
+import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogContext;
+import com.taobao.tddl.dbsync.binlog.LogDecoder;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.event.RowsLogEvent;
+
+/**
+ * json列按文本或二进制输出
+ */
+public class LogEventConvertTest {
+
+    private static final long   TABLE_ID = 100L;
+    // json字符串"ab"的二进制格式: type(0x0c) + 长度 + utf8
+    private static final byte[] JSON_AB  = new byte[] { 0x0c, 2, 'a', 'b' };
+
+    @Test
+    public void testJsonText() throws Exception {
+        CanalEntry.Column column = parseJsonColumn(new LogEventConvert());
+        Assert.assertEquals("\"ab\"", column.getValue());
+        Assert.assertEquals(Types.VARCHAR, column.getSqlType());
+    }
+
+    @Test
+    public void testJsonBinary() throws Exception {
+        LogEventConvert convert = new LogEventConvert();
+        convert.setJsonBinary(true);
+        CanalEntry.Column column = parseJsonColumn(convert);
+        // 与blob一致, 使用iso-8859-1保留原始字节
+        Assert.assertArrayEquals(JSON_AB, column.getValue().getBytes(LogEventConvert.ISO_8859_1));
+        Assert.assertEquals(Types.BLOB, column.getSqlType());
+        Assert.assertEquals("json", column.getMysqlType());
+    }
+
+    private CanalEntry.Column parseJsonColumn(LogEventConvert convert) throws Exception {
+        LogContext context = new LogContext();
+        context.setLogPosition(new LogPosition("mysql-bin.000001", 4L));
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        byte[] tableMap = tableMapEvent();
+        decoder.decode(new LogBuffer(tableMap, 0, tableMap.length), context);
+        byte[] rows = writeRowsEvent();
+        LogEvent event = decoder.decode(new LogBuffer(rows, 0, rows.length), context);
+
+        TableMeta tableMeta = new TableMeta("test",
+            "t",
+            Arrays.asList(new FieldMeta("id", "bigint(20)", false, true, null),
+                new FieldMeta("doc", "json", true, false, null)));
+        CanalEntry.Entry entry = convert.parseRowsEvent((RowsLogEvent) event, tableMeta);
+        CanalEntry.RowChange rowChange = CanalEntry.RowChange.parseFrom(entry.getStoreValue());
+        Assert.assertEquals(1, rowChange.getRowDatasCount());
+        CanalEntry.RowData rowData = rowChange.getRowDatas(0);
+        Assert.assertEquals("1", rowData.getAfterColumns(0).getValue());
+        return rowData.getAfterColumns(1);
+    }
+
+    private static byte[] tableMapEvent() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeInt(body, TABLE_ID, 6);
+        writeInt(body, 1L, 2); // flags
+        writeString(body, "test");
+        writeString(body, "t");
+        body.write(2); // column count
+        body.write(LogEvent.MYSQL_TYPE_LONGLONG);
+        body.write(LogEvent.MYSQL_TYPE_JSON);
+        body.write(1); // metadata length
+        body.write(4); // json pack length
+        body.write(0x02); // null bits
+        return event(LogEvent.TABLE_MAP_EVENT, body);
+    }
+
+    private static byte[] writeRowsEvent() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeInt(body, TABLE_ID, 6);
+        writeInt(body, 1L, 2); // flags
+        writeInt(body, 2L, 2); // extra data length
+        body.write(2); // column count
+        body.write(0x03); // columns present
+        body.write(0x00); // null bits
+        writeInt(body, 1L, 8);
+        writeInt(body, JSON_AB.length, 4);
+        body.write(JSON_AB, 0, JSON_AB.length);
+        return event(LogEvent.WRITE_ROWS_EVENT, body);
+    }
+
+    private static byte[] event(int type, ByteArrayOutputStream body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, 0L, 4); // when
+        out.write(type);
+        writeInt(out, 1L, 4); // server id
+        writeInt(out, 19 + body.size(), 4);
+        writeInt(out, 1000L, 4); // log pos
+        writeInt(out, 0L, 2); // flags
+        byte[] bytes = body.toByteArray();
+        out.write(bytes, 0, bytes.length);
+        return out.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+        out.write(0);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value, int len) {
+        for (int i = 0; i < len; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+}
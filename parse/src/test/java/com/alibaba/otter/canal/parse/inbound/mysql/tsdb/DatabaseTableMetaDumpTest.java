@@ -0,0 +1,330 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.tsdb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.filter.CanalEventFilter;
+import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
+import com.alibaba.otter.canal.parse.driver.mysql.packets.Capability;
+import com.alibaba.otter.canal.parse.inbound.TableMeta;
+import com.alibaba.otter.canal.parse.inbound.mysql.MysqlConnection;
+
+/**
+ * 并发dump表结构与串行dump的结果一致
+ */
+public class DatabaseTableMetaDumpTest {
+
+    private FakeMysqlServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, Map<String, String>> catalog = new LinkedHashMap<>();
+        for (int s = 0; s < 3; s++) {
+            Map<String, String> tables = new LinkedHashMap<>();
+            for (int t = 0; t < 20; t++) {
+                String table = "t" + t;
+                tables.put(table, "CREATE TABLE `" + table + "` (\n  `id` bigint(20) NOT NULL AUTO_INCREMENT,\n"
+                                  + "  `name` varchar(" + (t + 1) + ") DEFAULT NULL,\n"
+                                  + "  `gmt_create` datetime NOT NULL,\n" + "  `gmt_modified` datetime NOT NULL,\n"
+                                  + "  `remark` text,\n" + "  PRIMARY KEY (`id`),\n"
+                                  + "  KEY `idx_name` (`name`)\n"
+                                  + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='table " + s + "." + t + "'");
+            }
+            catalog.put("schema" + s, tables);
+        }
+        catalog.put("empty", Collections.emptyMap());
+        server = new FakeMysqlServer(catalog);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop();
+    }
+
+    @Test
+    public void testParallelEqualsSerial() throws Exception {
+        CanalEventFilter filter = new AviaterRegexFilter("schema.*\\..*");
+        CanalEventFilter blackFilter = new AviaterRegexFilter("schema1\\.t1.*");
+
+        DatabaseTableMeta serial = dump(1, filter, blackFilter);
+        int serialConnections = server.connections.get();
+        DatabaseTableMeta parallel = dump(4, filter, blackFilter);
+        try {
+            // 并发dump使用了多个连接
+            Assert.assertTrue(server.connections.get() - serialConnections > 1);
+
+            Map<String, String> expected = serial.snapshot();
+            Assert.assertEquals(Arrays.asList("`schema0`", "`schema1`", "`schema2`"), sorted(expected.keySet()));
+            Assert.assertEquals(expected, parallel.snapshot());
+
+            for (int t = 0; t < 20; t++) {
+                TableMeta meta = parallel.find("schema0", "t" + t);
+                Assert.assertNotNull(meta);
+                Assert.assertEquals(serial.find("schema0", "t" + t).toString(), meta.toString());
+                Assert.assertTrue(meta.getFieldMetaByName("id").isKey());
+            }
+            // 黑名单中的表不会dump
+            Assert.assertNull(parallel.find("schema1", "t1"));
+            Assert.assertNull(parallel.find("schema1", "t12"));
+            Assert.assertNotNull(parallel.find("schema1", "t2"));
+        } finally {
+            serial.destory();
+            parallel.destory();
+        }
+    }
+
+    private DatabaseTableMeta dump(int threads, CanalEventFilter filter, CanalEventFilter blackFilter)
+                                                                                                     throws Exception {
+        MysqlConnection connection = new MysqlConnection(new InetSocketAddress("127.0.0.1", server.getPort()),
+            "canal",
+            "canal");
+        connection.connect();
+        try {
+            DatabaseTableMeta tableMeta = new DatabaseTableMeta();
+            tableMeta.setSnapshotInterval(0);
+            tableMeta.setDumpThreadSize(threads);
+            tableMeta.setBlackFilter(blackFilter);
+            tableMeta.init("example");
+
+            Method method = DatabaseTableMeta.class.getDeclaredMethod("dumpTableMeta",
+                MysqlConnection.class,
+                CanalEventFilter.class);
+            method.setAccessible(true);
+            Assert.assertTrue((Boolean) method.invoke(tableMeta, connection, filter));
+            return tableMeta;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static List<String> sorted(Collection<String> values) {
+        List<String> list = new ArrayList<>(values);
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * 只支持握手和dump表结构相关查询的mysql服务端, 多条语句时返回多个结果集.
+     * 协议部分参考driver模块的MysqlQueryChannelTest
+     */
+    private static class FakeMysqlServer implements Runnable {
+
+        private static final Pattern             SHOW_TABLES  = Pattern.compile("show full tables from `(.+)` where .*");
+        private static final Pattern             SHOW_CREATE  = Pattern.compile("show create table `(.+)`\\.`(.+)`");
+        private static final int                 MORE_RESULTS = 0x0008;
+
+        private final Map<String, Map<String, String>> catalog;
+        private final ServerSocket               serverSocket;
+        private final AtomicInteger              connections  = new AtomicInteger();
+        private final List<Socket>               sockets      = new ArrayList<>();
+
+        FakeMysqlServer(Map<String, Map<String, String>> catalog) throws IOException{
+            this.catalog = catalog;
+            this.serverSocket = new ServerSocket(0);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void start() {
+            Thread thread = new Thread(this, "fake-mysql-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws IOException {
+            serverSocket.close();
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    socket.close();
+                }
+            }
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    synchronized (sockets) {
+                        sockets.add(socket);
+                    }
+                    connections.incrementAndGet();
+                    Thread thread = new Thread(() -> serve(socket), "fake-mysql-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException e) {
+                // server closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                handshake(out);
+                readPacket(in); // client authentication
+                writePacket(out, 2, new byte[] { 0, 0, 0, 2, 0, 0, 0 });
+
+                while (true) {
+                    byte[] command = readPacket(in);
+                    if (command[0] != 0x03) {
+                        break; // quit
+                    }
+                    String sql = new String(command, 1, command.length - 1, StandardCharsets.UTF_8);
+                    List<String> statements = new ArrayList<>();
+                    for (String statement : sql.split(";")) {
+                        if (!statement.trim().isEmpty()) {
+                            statements.add(statement.trim());
+                        }
+                    }
+
+                    ByteArrayOutputStream response = new ByteArrayOutputStream();
+                    int sequence = 1;
+                    for (int i = 0; i < statements.size(); i++) {
+                        sequence = writeResultSet(response, sequence, statements.get(i), i < statements.size() - 1);
+                    }
+                    out.write(response.toByteArray());
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // connection closed
+            }
+        }
+
+        private int writeResultSet(ByteArrayOutputStream response, int sequence, String sql, boolean more)
+                                                                                                           throws IOException {
+            List<String> columns;
+            List<List<String>> rows = new ArrayList<>();
+            Matcher matcher;
+            if ("show databases".equals(sql)) {
+                columns = Collections.singletonList("Database");
+                for (String schema : catalog.keySet()) {
+                    rows.add(Collections.singletonList(schema));
+                }
+            } else if ((matcher = SHOW_TABLES.matcher(sql)).matches()) {
+                columns = Arrays.asList("Tables_in_" + matcher.group(1), "Table_type");
+                for (String table : catalog.get(matcher.group(1)).keySet()) {
+                    rows.add(Arrays.asList(table, "BASE TABLE"));
+                }
+            } else if ((matcher = SHOW_CREATE.matcher(sql)).matches()) {
+                columns = Arrays.asList("Table", "Create Table");
+                rows.add(Arrays.asList(matcher.group(2), catalog.get(matcher.group(1)).get(matcher.group(2))));
+            } else {
+                columns = Collections.singletonList("sql");
+                rows.add(Collections.singletonList(sql));
+            }
+
+            int status = 2 | (more ? MORE_RESULTS : 0);
+            byte[] eof = new byte[] { (byte) 0xfe, 0, 0, (byte) status, (byte) (status >> 8) };
+            response.write(packet(sequence++, new byte[] { (byte) columns.size() }));
+            for (String column : columns) {
+                response.write(packet(sequence++, field(column)));
+            }
+            response.write(packet(sequence++, eof));
+            for (List<String> row : rows) {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                for (String value : row) {
+                    writeLengthCoded(data, value.getBytes(StandardCharsets.UTF_8));
+                }
+                response.write(packet(sequence++, data.toByteArray()));
+            }
+            response.write(packet(sequence++, eof));
+            return sequence;
+        }
+
+        private void handshake(OutputStream out) throws IOException {
+            ByteArrayOutputStream packet = new ByteArrayOutputStream();
+            packet.write(10);
+            packet.write("5.7.0-fake".getBytes(StandardCharsets.UTF_8));
+            packet.write(0);
+            packet.write(new byte[] { 1, 0, 0, 0 }); // thread id
+            packet.write("12345678".getBytes(StandardCharsets.UTF_8));
+            packet.write(0);
+            int capabilities = Capability.CLIENT_PROTOCOL_41 | Capability.CLIENT_SECURE_CONNECTION;
+            packet.write(capabilities & 0xff);
+            packet.write((capabilities >> 8) & 0xff);
+            packet.write(33); // charset
+            packet.write(new byte[] { 2, 0 }); // status
+            packet.write(new byte[] { 0, 0 }); // capabilities high
+            packet.write(21);
+            packet.write(new byte[10]);
+            packet.write("abcdefghijkl".getBytes(StandardCharsets.UTF_8));
+            packet.write(0);
+            writePacket(out, 0, packet.toByteArray());
+        }
+
+        private byte[] field(String name) throws IOException {
+            ByteArrayOutputStream field = new ByteArrayOutputStream();
+            for (String value : new String[] { "def", "", "", "", name, "" }) {
+                writeLengthCoded(field, value.getBytes(StandardCharsets.UTF_8));
+            }
+            field.write(0x0c);
+            field.write(new byte[] { 33, 0 }); // charset
+            field.write(new byte[] { (byte) 0xff, (byte) 0xff, 0, 0 }); // length
+            field.write(0xfd); // var string
+            field.write(new byte[] { 0, 0, 0, 0, 0 }); // flags, decimals, filler
+            return field.toByteArray();
+        }
+
+        private void writeLengthCoded(ByteArrayOutputStream out, byte[] data) throws IOException {
+            if (data.length < 251) {
+                out.write(data.length);
+            } else {
+                // 建表语句超过251字节, 测试数据都小于65536
+                out.write(0xfc);
+                out.write(data.length & 0xff);
+                out.write((data.length >> 8) & 0xff);
+            }
+            out.write(data);
+        }
+
+        private byte[] readPacket(DataInputStream in) throws IOException {
+            byte[] header = new byte[4];
+            in.readFully(header);
+            int length = (header[0] & 0xff) | ((header[1] & 0xff) << 8) | ((header[2] & 0xff) << 16);
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return body;
+        }
+
+        private void writePacket(OutputStream out, int sequence, byte[] body) throws IOException {
+            out.write(packet(sequence, body));
+            out.flush();
+        }
+
+        private byte[] packet(int sequence, byte[] body) {
+            byte[] packet = new byte[body.length + 4];
+            packet[0] = (byte) body.length;
+            packet[1] = (byte) (body.length >> 8);
+            packet[2] = (byte) (body.length >> 16);
+            packet[3] = (byte) sequence;
+            System.arraycopy(body, 0, packet, 4, body.length);
+            return packet;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.alibaba.otter.canal.prometheus;
 
 import com.alibaba.otter.canal.instance.core.CanalInstance;
+import com.alibaba.otter.canal.prometheus.impl.HotTablesHandler;
 import com.alibaba.otter.canal.prometheus.impl.PrometheusClientInstanceProfiler;
 import com.alibaba.otter.canal.server.netty.ClientInstanceProfiler;
 import com.alibaba.otter.canal.spi.CanalMetricsService;
@@ -44,7 +45,7 @@ public class PrometheusService implements CanalMetricsService {
         try {
             logger.info("Start prometheus HTTPServer on port {}.", port);
             //TODO 2.Https?
-            server = new HTTPServer(port);
+            server = new CanalHTTPServer(port);
         } catch (IOException e) {
             logger.warn("Unable to start prometheus HTTPServer.", e);
             return;
@@ -118,4 +119,15 @@ public class PrometheusService implements CanalMetricsService {
         this.port = port;
     }
 
+    /**
+     * 在/metrics之外增加解析热点表的查询
+     */
+    private static class CanalHTTPServer extends HTTPServer {
+
+        CanalHTTPServer(int port) throws IOException {
+            super(port);
+            server.createContext(HotTablesHandler.PATH, new HotTablesHandler());
+        }
+    }
+
 }
@@ -0,0 +1,58 @@
+package com.alibaba.otter.canal.prometheus.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+import com.alibaba.fastjson.JSON;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * 查询解析最耗时的表, 用于判断哪些表需要过滤或裁剪字段, 需要开启canal.instance.parser.profile.sampleRate
+ *
+ * <pre>
+ * GET /hot_tables?top=20
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public class HotTablesHandler implements HttpHandler {
+
+    public static final String PATH        = "/hot_tables";
+    private static final int   DEFAULT_TOP = 20;
+    private static final int   MAX_TOP     = 1000;
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            int top = Math.min(parseTop(exchange.getRequestURI().getRawQuery()), MAX_TOP);
+            List<Map<String, Object>> tables = ParserCollector.instance().hotTables(top);
+            byte[] body = JSON.toJSONString(tables).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private int parseTop(String query) {
+        if (StringUtils.isNotEmpty(query)) {
+            for (String param : StringUtils.split(query, '&')) {
+                if (param.startsWith("top=")) {
+                    int top = NumberUtils.toInt(param.substring("top=".length()), DEFAULT_TOP);
+                    return top > 0 ? top : DEFAULT_TOP;
+                }
+            }
+        }
+        return DEFAULT_TOP;
+    }
+}
@@ -4,13 +4,16 @@ import static com.alibaba.otter.canal.prometheus.CanalInstanceExports.DEST;
 
 import com.alibaba.otter.canal.parse.inbound.group.GroupEventParser;
 import com.alibaba.otter.canal.parse.inbound.mysql.AbstractMysqlEventParser;
+import com.alibaba.otter.canal.parse.inbound.mysql.ParserProfiler;
 import io.prometheus.client.Collector;
 import io.prometheus.client.CounterMetricFamily;
 import io.prometheus.client.GaugeMetricFamily;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
@@ -30,16 +33,30 @@ public class ParserCollector extends Collector implements InstanceRegistry {
 
     private static final Logger                              logger                = LoggerFactory.getLogger(ParserCollector.class);
     private static final long                                NANO_PER_MILLI        = 1000 * 1000L;
+    private static final double                              NANO_PER_SECOND       = 1000 * 1000 * 1000D;
+    private static final double                              MICRO_PER_SECOND      = 1000 * 1000D;
     private static final String                              PUBLISH_BLOCKING      = "canal_instance_publish_blocking_time";
     private static final String                              RECEIVED_BINLOG       = "canal_instance_received_binlog_bytes";
+    private static final String                              RECEIVED_WIRE         = "canal_instance_received_wire_bytes";
     private static final String                              PARSER_MODE           = "canal_instance_parser_mode";
+    private static final String                              TSDB_DUMP_TIME        = "canal_instance_tsdb_dump_time";
+    private static final String                              STAGE_TIME            = "canal_instance_parser_stage_seconds";
+    private static final String                              EVENT_TIME            = "canal_instance_parser_event_seconds";
     private static final String                              MODE_LABEL            = "parallel";
     private static final String                              PARSER_LABEL          = "parser";
+    private static final String                              STAGE_LABEL           = "stage";
+    private static final String                              EVENT_LABEL           = "event_type";
     private static final String                              PUBLISH_BLOCKING_HELP = "Publish blocking time of dump thread in milliseconds";
     private static final String                              RECEIVED_BINLOG_HELP  = "Received binlog bytes";
+    private static final String                              RECEIVED_WIRE_HELP    = "Received bytes on wire when protocol compression is enabled";
     private static final String                              MODE_HELP             = "Parser mode(parallel/serial) of instance";
+    private static final String                              TSDB_DUMP_TIME_HELP   = "Time of dumping table meta when tsdb initialized in milliseconds";
+    private static final String                              STAGE_TIME_HELP       = "Sampled time of parallel parser stages in seconds";
+    private static final String                              EVENT_TIME_HELP       = "Sampled time of parsing binlog events by event type in seconds";
     private final List<String>                               modeLabels            = Arrays.asList(DEST, MODE_LABEL);
     private final List<String>                               parserLabels          = Arrays.asList(DEST, PARSER_LABEL);
+    private final List<String>                               stageLabels           = Arrays.asList(DEST, PARSER_LABEL, STAGE_LABEL);
+    private final List<String>                               eventLabels           = Arrays.asList(DEST, PARSER_LABEL, EVENT_LABEL);
     private final ConcurrentMap<String, ParserMetricsHolder> instances             = new ConcurrentHashMap<>();
 
     private ParserCollector() {}
@@ -57,35 +74,140 @@ public class ParserCollector extends Collector implements InstanceRegistry {
         List<MetricFamilySamples> mfs = new ArrayList<>();
         CounterMetricFamily bytesCounter = new CounterMetricFamily(RECEIVED_BINLOG,
                 RECEIVED_BINLOG_HELP, parserLabels);
+        CounterMetricFamily wireCounter = new CounterMetricFamily(RECEIVED_WIRE,
+                RECEIVED_WIRE_HELP, parserLabels);
         GaugeMetricFamily modeGauge = new GaugeMetricFamily(PARSER_MODE,
                 MODE_HELP, modeLabels);
         CounterMetricFamily blockingCounter = new CounterMetricFamily(PUBLISH_BLOCKING,
                 PUBLISH_BLOCKING_HELP, parserLabels);
+        GaugeMetricFamily dumpGauge = new GaugeMetricFamily(TSDB_DUMP_TIME,
+                TSDB_DUMP_TIME_HELP, parserLabels);
+        List<MetricFamilySamples.Sample> stageSamples = new ArrayList<>();
+        List<MetricFamilySamples.Sample> eventSamples = new ArrayList<>();
         for (ParserMetricsHolder emh : instances.values()) {
             if (emh instanceof GroupParserMetricsHolder) {
                 GroupParserMetricsHolder group = (GroupParserMetricsHolder) emh;
                 for (ParserMetricsHolder semh :  group.holders) {
-                    singleCollect(bytesCounter, blockingCounter, modeGauge, semh);
+                    singleCollect(bytesCounter, wireCounter, blockingCounter, modeGauge, dumpGauge, semh);
+                    profileCollect(stageSamples, eventSamples, semh);
                 }
             }
             else {
-                singleCollect(bytesCounter, blockingCounter, modeGauge, emh);
+                singleCollect(bytesCounter, wireCounter, blockingCounter, modeGauge, dumpGauge, emh);
+                profileCollect(stageSamples, eventSamples, emh);
             }
         }
         mfs.add(bytesCounter);
         mfs.add(modeGauge);
+        if (!wireCounter.samples.isEmpty()) {
+            mfs.add(wireCounter);
+        }
         if (!blockingCounter.samples.isEmpty()) {
             mfs.add(blockingCounter);
         }
+        if (!dumpGauge.samples.isEmpty()) {
+            mfs.add(dumpGauge);
+        }
+        if (!stageSamples.isEmpty()) {
+            mfs.add(new MetricFamilySamples(STAGE_TIME, Type.HISTOGRAM, STAGE_TIME_HELP, stageSamples));
+        }
+        if (!eventSamples.isEmpty()) {
+            mfs.add(new MetricFamilySamples(EVENT_TIME, Type.HISTOGRAM, EVENT_TIME_HELP, eventSamples));
+        }
         return mfs;
     }
 
-    private void singleCollect(CounterMetricFamily bytesCounter, CounterMetricFamily blockingCounter, GaugeMetricFamily modeGauge, ParserMetricsHolder holder) {
+    private void singleCollect(CounterMetricFamily bytesCounter, CounterMetricFamily wireCounter, CounterMetricFamily blockingCounter, GaugeMetricFamily modeGauge, GaugeMetricFamily dumpGauge, ParserMetricsHolder holder) {
         if (holder.isParallel) {
             blockingCounter.addMetric(holder.parserLabelValues, (holder.eventsPublishBlockingTime.doubleValue() / NANO_PER_MILLI));
         }
         modeGauge.addMetric(holder.modeLabelValues, 1);
         bytesCounter.addMetric(holder.parserLabelValues, holder.receivedBinlogBytes.doubleValue());
+        // 只有开启了协议压缩的链接才会统计
+        if (holder.receivedWireBytes.get() > 0) {
+            wireCounter.addMetric(holder.parserLabelValues, holder.receivedWireBytes.doubleValue());
+        }
+        // 只有tsdb做过全量dump才会统计
+        if (holder.tableMetaDumpTime.get() > 0) {
+            dumpGauge.addMetric(holder.parserLabelValues, holder.tableMetaDumpTime.doubleValue());
+        }
+    }
+
+    private void profileCollect(List<MetricFamilySamples.Sample> stageSamples,
+                                List<MetricFamilySamples.Sample> eventSamples, ParserMetricsHolder holder) {
+        // 只有开启了采样的parser才会统计
+        if (holder.profiler.getSampleRate() <= 0) {
+            return;
+        }
+        for (Map.Entry<String, ParserProfiler.Timer> entry : holder.profiler.getStageTimers().entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                addHistogram(stageSamples, STAGE_TIME, stageLabels, labelValues(holder, entry.getKey()), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, ParserProfiler.Timer> entry : holder.profiler.getEventTimers().entrySet()) {
+            addHistogram(eventSamples, EVENT_TIME, eventLabels, labelValues(holder, entry.getKey()), entry.getValue());
+        }
+    }
+
+    private List<String> labelValues(ParserMetricsHolder holder, String value) {
+        List<String> values = new ArrayList<>(holder.parserLabelValues);
+        values.add(value);
+        return values;
+    }
+
+    private void addHistogram(List<MetricFamilySamples.Sample> samples, String name, List<String> labelNames,
+                              List<String> labelValues, ParserProfiler.Timer timer) {
+        List<String> bucketLabelNames = new ArrayList<>(labelNames);
+        bucketLabelNames.add("le");
+        long[] buckets = timer.getBuckets();
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i];
+            List<String> bucketLabelValues = new ArrayList<>(labelValues);
+            if (i < ParserProfiler.BUCKETS.length) {
+                bucketLabelValues.add(doubleToGoString(ParserProfiler.BUCKETS[i] / MICRO_PER_SECOND));
+            } else {
+                bucketLabelValues.add("+Inf");
+            }
+            samples.add(new MetricFamilySamples.Sample(name + "_bucket", bucketLabelNames, bucketLabelValues, cumulative));
+        }
+        samples.add(new MetricFamilySamples.Sample(name + "_count", labelNames, labelValues, cumulative));
+        double sum = timer.getSum() / NANO_PER_SECOND;
+        samples.add(new MetricFamilySamples.Sample(name + "_sum", labelNames, labelValues, sum));
+    }
+
+    /**
+     * 按采样总耗时倒序返回所有parser中最耗时的n张表
+     */
+    public List<Map<String, Object>> hotTables(int n) {
+        List<Map<String, Object>> tables = new ArrayList<>();
+        for (ParserMetricsHolder emh : instances.values()) {
+            if (emh instanceof GroupParserMetricsHolder) {
+                for (ParserMetricsHolder semh : ((GroupParserMetricsHolder) emh).holders) {
+                    hotTables(tables, semh, n);
+                }
+            } else {
+                hotTables(tables, emh, n);
+            }
+        }
+        tables.sort((t1, t2) -> Double.compare((Double) t2.get("totalMillis"), (Double) t1.get("totalMillis")));
+        return tables.size() > n ? new ArrayList<>(tables.subList(0, n)) : tables;
+    }
+
+    private void hotTables(List<Map<String, Object>> tables, ParserMetricsHolder holder, int n) {
+        int sampleRate = holder.profiler.getSampleRate();
+        for (ParserProfiler.TableTimer timer : holder.profiler.topTables(n)) {
+            Map<String, Object> table = new LinkedHashMap<>();
+            table.put(DEST, holder.parserLabelValues.get(0));
+            table.put(PARSER_LABEL, holder.parserLabelValues.get(1));
+            table.put("table", timer.getName());
+            table.put("sampleRate", sampleRate);
+            table.put("samples", timer.getCount());
+            table.put("sampledBytes", timer.getBytes());
+            table.put("totalMillis", (double) timer.getSum() / NANO_PER_MILLI);
+            table.put("avgMicros", timer.getCount() > 0 ? timer.getSum() / timer.getCount() / 1000 : 0L);
+            tables.add(table);
+        }
     }
 
     @Override
@@ -113,9 +235,15 @@ public class ParserCollector extends Collector implements InstanceRegistry {
         holder.modeLabelValues = Arrays.asList(destination, Boolean.toString(parser.isParallel()));
         holder.eventsPublishBlockingTime = parser.getEventsPublishBlockingTime();
         holder.receivedBinlogBytes = parser.getReceivedBinlogBytes();
+        holder.receivedWireBytes = parser.getReceivedWireBytes();
+        holder.tableMetaDumpTime = parser.getTableMetaDumpTime();
+        holder.profiler = parser.getProfiler();
         holder.isParallel = parser.isParallel();
         Preconditions.checkNotNull(holder.eventsPublishBlockingTime);
         Preconditions.checkNotNull(holder.receivedBinlogBytes);
+        Preconditions.checkNotNull(holder.receivedWireBytes);
+        Preconditions.checkNotNull(holder.tableMetaDumpTime);
+        Preconditions.checkNotNull(holder.profiler);
         return holder;
     }
 
@@ -142,13 +270,17 @@ public class ParserCollector extends Collector implements InstanceRegistry {
     }
 
     private static class ParserMetricsHolder {
-        private List<String> parserLabelValues;
-        private List<String> modeLabelValues;
+        private List<String>   parserLabelValues;
+        private List<String>   modeLabelValues;
         // metrics for single parser
-        private AtomicLong   receivedBinlogBytes;
-        private AtomicLong   eventsPublishBlockingTime;
+        private AtomicLong     receivedBinlogBytes;
+        private AtomicLong     receivedWireBytes;
+        private AtomicLong     eventsPublishBlockingTime;
+        private AtomicLong     tableMetaDumpTime;
+        // sampled parse time
+        private ParserProfiler profiler;
         // parser mode
-        private boolean      isParallel;
+        private boolean        isParallel;
     }
 
     private static class GroupParserMetricsHolder extends ParserMetricsHolder {
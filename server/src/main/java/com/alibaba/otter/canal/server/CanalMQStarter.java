@@ -9,6 +9,8 @@ import com.alibaba.otter.canal.instance.core.CanalMQConfig;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.Message;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
+import com.alibaba.otter.canal.server.embedded.LongPollCallback;
+import com.alibaba.otter.canal.server.exception.CanalServerException;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,10 +18,12 @@ import org.slf4j.MDC;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class CanalMQStarter {
 
@@ -165,7 +169,12 @@ public class CanalMQStarter {
                 Integer getBatchSize = mqProperties.getBatchSize();
                 while (running && destinationRunning.get()) {
                     Message message;
-                    if (getTimeout != null && getTimeout > 0) {
+                    if (canalServer.isLongPoll()) {
+                        // long-poll模式，store有新数据写入时立即返回，替代空转时的固定sleep
+                        message = getWithoutAckLongPoll(clientIdentity,
+                            getBatchSize,
+                            getTimeout != null && getTimeout > 0 ? getTimeout.longValue() : 1000L);
+                    } else if (getTimeout != null && getTimeout > 0) {
                         message = canalServer.getWithoutAck(clientIdentity,
                             getBatchSize,
                             getTimeout.longValue(),
@@ -190,7 +199,7 @@ public class CanalMQStarter {
                                     canalServer.rollback(clientIdentity, batchId);
                                 }
                             }); // 发送message到topic
-                        } else {
+                        } else if (!canalServer.isLongPoll()) {
                             try {
                                 Thread.sleep(100);
                             } catch (InterruptedException e) {
@@ -208,6 +217,36 @@ public class CanalMQStarter {
         }
     }
 
+    private Message getWithoutAckLongPoll(ClientIdentity clientIdentity, int batchSize, long timeout)
+                                                                                                    throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Message> result = new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        canalServer.getWithoutAckAsync(clientIdentity,
+            batchSize,
+            timeout,
+            TimeUnit.MILLISECONDS,
+            new LongPollCallback() {
+
+                @Override
+                public void onCompleted(Message message) {
+                    result.set(message);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailed(Throwable cause) {
+                    error.set(cause);
+                    latch.countDown();
+                }
+            });
+        latch.await();
+        if (error.get() != null) {
+            throw new CanalServerException(error.get());
+        }
+        return result.get();
+    }
+
     private class CanalMQRunnable implements Runnable {
 
         private String destination;
@@ -5,8 +5,16 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -15,6 +23,7 @@ import org.slf4j.MDC;
 import org.springframework.util.CollectionUtils;
 
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
 import com.alibaba.otter.canal.instance.core.CanalInstance;
 import com.alibaba.otter.canal.instance.core.CanalInstanceGenerator;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
@@ -30,6 +39,7 @@ import com.alibaba.otter.canal.spi.CanalMetricsProvider;
 import com.alibaba.otter.canal.spi.CanalMetricsService;
 import com.alibaba.otter.canal.spi.NopCanalMetricsService;
 import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalStoreListener;
 import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
@@ -54,6 +64,11 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
     private CanalMetricsService        metrics = NopCanalMetricsService.NOP;
     private String                     user;
     private String                     passwd;
+    // long-poll模式，get请求挂起在destination的等待队列中，由store的put通知唤醒，不再占用netty worker线程
+    private boolean                    longPoll;
+    private int                        longPollThreads = 2;
+    private ScheduledExecutorService   longPollExecutor;
+    private Map<String, LongPollWaiters> longPollWaiters;
 
     private static class SingletonHolder {
 
@@ -76,6 +91,11 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
             metrics.setServerPort(metricsPort);
             metrics.initialize();
             canalInstances = MigrateMap.makeComputingMap(destination -> canalInstanceGenerator.generate(destination));
+            if (longPoll) {
+                longPollWaiters = new ConcurrentHashMap<>();
+                longPollExecutor = Executors.newScheduledThreadPool(longPollThreads,
+                    new NamedThreadFactory("canal-long-poll"));
+            }
 
             // lastRollbackPostions = new MapMaker().makeMap();
         }
@@ -101,6 +121,13 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
             }
         }
         metrics.terminate();
+        if (longPollExecutor != null) {
+            longPollExecutor.shutdownNow();
+            for (LongPollWaiters waiters : longPollWaiters.values()) {
+                waiters.release(new CanalServerException("canal server is stopped"));
+            }
+            longPollWaiters.clear();
+        }
     }
 
     public boolean auth(String user, String passwd, byte[] seed) {
@@ -141,6 +168,12 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
     }
 
     public void stop(String destination) {
+        if (longPollWaiters != null) {
+            LongPollWaiters waiters = longPollWaiters.remove(destination);
+            if (waiters != null) {
+                waiters.release(new CanalServerException(String.format("destination:%s is stopped", destination)));
+            }
+        }
         CanalInstance canalInstance = canalInstances.remove(destination);
         if (canalInstance != null) {
             if (canalInstance.isStart()) {
@@ -366,6 +399,71 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         }
     }
 
+    /**
+     * 异步获取数据，long-poll模式，语义同getWithoutAck，差异在于等待过程不占用调用线程
+     *
+     * <pre>
+     * 几种case:
+     * a. 如果timeout为null，则采用tryGet方式，即时获取并回调
+     * b. 如果timeout不为null，当前没有数据时挂起到destination的等待队列，store有新数据写入时唤醒
+     *    1. timeout为0，一直等待直到有数据
+     *    2. timeout不为0，有数据时立即返回(不再等待batchSize凑满)，超时还没有数据则返回空包
+     * c. 未开启long-poll或者非memory store，退化为同步的getWithoutAck
+     * </pre>
+     */
+    public void getWithoutAckAsync(ClientIdentity clientIdentity, int batchSize, Long timeout, TimeUnit unit,
+                                   LongPollCallback callback) {
+        CanalEventStore eventStore;
+        Message message;
+        try {
+            checkStart(clientIdentity.getDestination());
+            eventStore = canalInstances.get(clientIdentity.getDestination()).getEventStore();
+            if (timeout != null && (!longPoll || !(eventStore instanceof MemoryEventStoreWithBuffer))) {
+                callback.onCompleted(getWithoutAck(clientIdentity, batchSize, timeout, unit));
+                return;
+            }
+
+            message = getWithoutAck(clientIdentity, batchSize);
+        } catch (Throwable e) {
+            callback.onFailed(e);
+            return;
+        }
+
+        if (message.getId() != -1 || timeout == null) {
+            callback.onCompleted(message);
+            return;
+        }
+
+        LongPollWaiters waiters = getLongPollWaiters(clientIdentity.getDestination(),
+            (MemoryEventStoreWithBuffer) eventStore);
+        LongPollWaiter waiter = new LongPollWaiter(clientIdentity, batchSize, callback);
+        waiters.add(waiter);
+        if (timeout > 0) {
+            try {
+                waiter.timeoutFuture = longPollExecutor.schedule(() -> waiters.expire(waiter), timeout, unit);
+            } catch (RejectedExecutionException e) {
+                waiters.expire(waiter);
+                return;
+            }
+        }
+        // 注册之前的put通知可能已经错过，主动检查一次
+        waiters.onPut();
+    }
+
+    /**
+     * 取消挂起的long-poll请求，客户端连接断开时调用，对应的callback不会再被回调
+     */
+    public void cancelLongPoll(String destination, LongPollCallback callback) {
+        if (longPollWaiters == null) {
+            return;
+        }
+
+        LongPollWaiters waiters = longPollWaiters.get(destination);
+        if (waiters != null) {
+            waiters.cancel(callback);
+        }
+    }
+
     /**
      * 查询当前未被ack的batch列表，batchId会按照从小到大进行返回
      */
@@ -516,6 +614,25 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         }
     }
 
+    /**
+     * 获取destination对应的等待队列，instance重启后store会发生变化，需要重新注册listener
+     */
+    private LongPollWaiters getLongPollWaiters(String destination, MemoryEventStoreWithBuffer eventStore) {
+        return longPollWaiters.compute(destination, (key, waiters) -> {
+            if (waiters != null && waiters.eventStore == eventStore) {
+                return waiters;
+            }
+
+            if (waiters != null) {
+                waiters.eventStore.removeListener(waiters);
+                waiters.release(new CanalServerException(String.format("destination:%s is restarted", destination)));
+            }
+            LongPollWaiters newWaiters = new LongPollWaiters(eventStore);
+            eventStore.addListener(newWaiters);
+            return newWaiters;
+        });
+    }
+
     private void checkSubscribe(ClientIdentity clientIdentity) {
         CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
         boolean hasSubscribe = canalInstance.getMetaManager().hasSubscribe(clientIdentity);
@@ -563,6 +680,126 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         return true;
     }
 
+    /**
+     * 单个destination上挂起的get请求，由store的put通知触发，在long-poll线程池中完成回调
+     */
+    private class LongPollWaiters implements CanalStoreListener {
+
+        private final MemoryEventStoreWithBuffer eventStore;
+        private final Queue<LongPollWaiter>      waiters   = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean              scheduled = new AtomicBoolean(false);
+
+        LongPollWaiters(MemoryEventStoreWithBuffer eventStore){
+            this.eventStore = eventStore;
+        }
+
+        void add(LongPollWaiter waiter) {
+            waiters.add(waiter);
+        }
+
+        @Override
+        public void onPut() {
+            // 合并多次put通知，同一时刻只调度一次drain
+            if (!waiters.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    longPollExecutor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        void expire(LongPollWaiter waiter) {
+            waiter.tryComplete(true);
+            waiters.remove(waiter);
+        }
+
+        void cancel(LongPollCallback callback) {
+            for (LongPollWaiter waiter : waiters) {
+                if (waiter.callback == callback) {
+                    waiter.cancel();
+                    waiters.remove(waiter);
+                }
+            }
+        }
+
+        void release(Throwable cause) {
+            LongPollWaiter waiter;
+            while ((waiter = waiters.poll()) != null) {
+                waiter.fail(cause);
+            }
+        }
+
+        private void drain() {
+            scheduled.set(false);
+            for (LongPollWaiter waiter : waiters) {
+                if (waiter.tryComplete(false)) {
+                    waiters.remove(waiter);
+                }
+            }
+        }
+    }
+
+    private class LongPollWaiter {
+
+        private final ClientIdentity     clientIdentity;
+        private final int                batchSize;
+        private final LongPollCallback   callback;
+        private volatile ScheduledFuture timeoutFuture;
+        private boolean                  done = false;
+
+        LongPollWaiter(ClientIdentity clientIdentity, int batchSize, LongPollCallback callback){
+            this.clientIdentity = clientIdentity;
+            this.batchSize = batchSize;
+            this.callback = callback;
+        }
+
+        /**
+         * 尝试获取数据，获取到数据或者超时则完成回调，返回是否已完成
+         */
+        synchronized boolean tryComplete(boolean expired) {
+            if (done) {
+                return true;
+            }
+
+            Message message;
+            try {
+                message = getWithoutAck(clientIdentity, batchSize);
+            } catch (Throwable e) {
+                complete();
+                callback.onFailed(e);
+                return true;
+            }
+
+            if (message.getId() != -1 || expired) {
+                complete();
+                callback.onCompleted(message);
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void cancel() {
+            if (!done) {
+                complete();
+            }
+        }
+
+        synchronized void fail(Throwable cause) {
+            if (!done) {
+                complete();
+                callback.onFailed(cause);
+            }
+        }
+
+        private void complete() {
+            done = true;
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+            }
+        }
+    }
+
     // ========= setter ==========
 
     public void setCanalInstanceGenerator(CanalInstanceGenerator canalInstanceGenerator) {
@@ -581,4 +818,16 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         this.passwd = passwd;
     }
 
+    public boolean isLongPoll() {
+        return longPoll;
+    }
+
+    public void setLongPoll(boolean longPoll) {
+        this.longPoll = longPoll;
+    }
+
+    public void setLongPollThreads(int longPollThreads) {
+        this.longPollThreads = longPollThreads;
+    }
+
 }
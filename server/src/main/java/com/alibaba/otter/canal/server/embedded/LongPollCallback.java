@@ -0,0 +1,18 @@
+package com.alibaba.otter.canal.server.embedded;
+
+import com.alibaba.otter.canal.protocol.Message;
+
+/**
+ * long-poll模式下get请求的异步回调
+ *
+ * @version 1.1.6
+ */
+public interface LongPollCallback {
+
+    /**
+     * 获取到数据或者等待超时，超时时message为空包(batchId = -1)
+     */
+    void onCompleted(Message message);
+
+    void onFailed(Throwable cause);
+}
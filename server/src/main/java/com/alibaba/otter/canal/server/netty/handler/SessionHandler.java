@@ -1,11 +1,15 @@
 package com.alibaba.otter.canal.server.netty.handler;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
@@ -32,6 +36,7 @@ import com.alibaba.otter.canal.protocol.CanalPacket.Unsub;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.Message;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
+import com.alibaba.otter.canal.server.embedded.LongPollCallback;
 import com.alibaba.otter.canal.server.netty.NettyUtils;
 import com.alibaba.otter.canal.server.netty.listener.ChannelFutureAggregator;
 import com.google.protobuf.ByteString;
@@ -40,8 +45,10 @@ import com.google.protobuf.WireFormat;
 
 public class SessionHandler extends SimpleChannelHandler {
 
-    private static final Logger     logger = LoggerFactory.getLogger(SessionHandler.class);
-    private CanalServerWithEmbedded embeddedServer;
+    private static final Logger                 logger            = LoggerFactory.getLogger(SessionHandler.class);
+    private CanalServerWithEmbedded             embeddedServer;
+    // 当前连接上挂起的long-poll请求 -> destination
+    private final Map<LongPollCallback, String> longPollCallbacks = new ConcurrentHashMap<>();
 
     public SessionHandler(){
     }
@@ -131,6 +138,49 @@ public class SessionHandler extends SimpleChannelHandler {
                     if (StringUtils.isNotEmpty(get.getDestination()) && StringUtils.isNotEmpty(get.getClientId())) {
                         clientIdentity = new ClientIdentity(get.getDestination(), Short.valueOf(get.getClientId()));
                         MDC.put("destination", clientIdentity.getDestination());
+                        if (get.getTimeout() != -1 && embeddedServer.isLongPoll()) {
+                            // long-poll模式，挂起请求，有数据或超时后在回调中输出，不占用当前worker线程
+                            final Get longPollGet = get;
+                            final Packet longPollPacket = packet;
+                            final Channel channel = ctx.getChannel();
+                            final String destination = clientIdentity.getDestination();
+                            LongPollCallback callback = new LongPollCallback() {
+
+                                @Override
+                                public void onCompleted(Message message) {
+                                    longPollCallbacks.remove(this);
+                                    try {
+                                        writeMessage(channel, longPollGet, longPollPacket, message, start);
+                                    } catch (Throwable exception) {
+                                        onFailed(exception);
+                                    }
+                                }
+
+                                @Override
+                                public void onFailed(Throwable exception) {
+                                    longPollCallbacks.remove(this);
+                                    byte[] errorBytes = NettyUtils.errorPacket(400,
+                                        MessageFormatter.format("something goes wrong with channel:{}, exception={}",
+                                            channel,
+                                            ExceptionUtils.getStackTrace(exception)).getMessage());
+                                    NettyUtils.write(channel, errorBytes, new ChannelFutureAggregator(destination,
+                                        longPollGet,
+                                        longPollPacket.getType(),
+                                        errorBytes.length,
+                                        System.nanoTime() - start,
+                                        (short) 400));
+                                }
+                            };
+                            // 连接断开时需要取消挂起的请求，先登记再提交，回调可能在当前线程中完成
+                            longPollCallbacks.put(callback, destination);
+                            embeddedServer.getWithoutAckAsync(clientIdentity,
+                                get.getFetchSize(),
+                                get.getTimeout(),
+                                convertTimeUnit(get.getUnit()),
+                                callback);
+                            break;
+                        }
+
                         Message message = null;
 
                         // if (get.getAutoAck()) {
@@ -154,86 +204,7 @@ public class SessionHandler extends SimpleChannelHandler {
                         }
                         // }
 
-                        if (message.getId() != -1 && message.isRaw()) {
-                            List<ByteString> rowEntries = message.getRawEntries();
-                            // message size
-                            int messageSize = 0;
-                            messageSize += com.google.protobuf.CodedOutputStream.computeInt64Size(1, message.getId());
-
-                            int dataSize = 0;
-                            for (ByteString rowEntry : rowEntries) {
-                                dataSize += CodedOutputStream.computeBytesSizeNoTag(rowEntry);
-                            }
-                            messageSize += dataSize;
-                            messageSize += 1 * rowEntries.size();
-                            // packet size
-                            int size = 0;
-                            size += com.google.protobuf.CodedOutputStream.computeEnumSize(3,
-                                PacketType.MESSAGES.getNumber());
-                            size += com.google.protobuf.CodedOutputStream.computeTagSize(5)
-                                    + com.google.protobuf.CodedOutputStream.computeRawVarint32Size(messageSize)
-                                    + messageSize;
-                            // recyle bytes
-                            // ByteBuffer byteBuffer = (ByteBuffer)
-                            // ctx.getAttachment();
-                            // if (byteBuffer != null && size <=
-                            // byteBuffer.capacity()) {
-                            // byteBuffer.clear();
-                            // } else {
-                            // byteBuffer =
-                            // ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
-                            // ctx.setAttachment(byteBuffer);
-                            // }
-                            // CodedOutputStream output =
-                            // CodedOutputStream.newInstance(byteBuffer);
-                            byte[] body = new byte[size];
-                            CodedOutputStream output = CodedOutputStream.newInstance(body);
-                            output.writeEnum(3, PacketType.MESSAGES.getNumber());
-
-                            output.writeTag(5, WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                            output.writeRawVarint32(messageSize);
-                            // message
-                            output.writeInt64(1, message.getId());
-                            for (ByteString rowEntry : rowEntries) {
-                                output.writeBytes(2, rowEntry);
-                            }
-                            output.checkNoSpaceLeft();
-                            NettyUtils.write(ctx.getChannel(), body, new ChannelFutureAggregator(get.getDestination(),
-                                get,
-                                packet.getType(),
-                                body.length,
-                                System.nanoTime() - start,
-                                message.getId() == -1));
-
-                            // output.flush();
-                            // byteBuffer.flip();
-                            // NettyUtils.write(ctx.getChannel(), byteBuffer,
-                            // null);
-                        } else {
-                            Packet.Builder packetBuilder = CanalPacket.Packet.newBuilder();
-                            packetBuilder.setType(PacketType.MESSAGES).setVersion(NettyUtils.VERSION);
-
-                            Messages.Builder messageBuilder = CanalPacket.Messages.newBuilder();
-                            messageBuilder.setBatchId(message.getId());
-                            if (message.getId() != -1) {
-                                if (message.isRaw() && !CollectionUtils.isEmpty(message.getRawEntries())) {
-                                    messageBuilder.addAllMessages(message.getRawEntries());
-                                } else if (!CollectionUtils.isEmpty(message.getEntries())) {
-                                    for (Entry entry : message.getEntries()) {
-                                        messageBuilder.addMessages(entry.toByteString());
-                                    }
-                                }
-                            }
-                            byte[] body = packetBuilder.setBody(messageBuilder.build().toByteString())
-                                .build()
-                                .toByteArray();
-                            NettyUtils.write(ctx.getChannel(), body, new ChannelFutureAggregator(get.getDestination(),
-                                get,
-                                packet.getType(),
-                                body.length,
-                                System.nanoTime() - start,
-                                message.getId() == -1));// 输出数据
-                        }
+                        writeMessage(ctx.getChannel(), get, packet, message, start);
                     } else {
                         byte[] errorBytes = NettyUtils.errorPacket(401,
                             MessageFormatter.format("destination or clientId is null", get.toString()).getMessage());
@@ -338,15 +309,101 @@ public class SessionHandler extends SimpleChannelHandler {
         }
     }
 
+    private void writeMessage(Channel channel, Get get, Packet packet, Message message, long start)
+                                                                                                   throws IOException {
+        if (message.getId() != -1 && message.isRaw()) {
+            List<ByteString> rowEntries = message.getRawEntries();
+            // message size
+            int messageSize = 0;
+            messageSize += com.google.protobuf.CodedOutputStream.computeInt64Size(1, message.getId());
+
+            int dataSize = 0;
+            for (ByteString rowEntry : rowEntries) {
+                dataSize += CodedOutputStream.computeBytesSizeNoTag(rowEntry);
+            }
+            messageSize += dataSize;
+            messageSize += 1 * rowEntries.size();
+            // packet size
+            int size = 0;
+            size += com.google.protobuf.CodedOutputStream.computeEnumSize(3,
+                PacketType.MESSAGES.getNumber());
+            size += com.google.protobuf.CodedOutputStream.computeTagSize(5)
+                    + com.google.protobuf.CodedOutputStream.computeRawVarint32Size(messageSize)
+                    + messageSize;
+            // recyle bytes
+            // ByteBuffer byteBuffer = (ByteBuffer)
+            // ctx.getAttachment();
+            // if (byteBuffer != null && size <=
+            // byteBuffer.capacity()) {
+            // byteBuffer.clear();
+            // } else {
+            // byteBuffer =
+            // ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+            // ctx.setAttachment(byteBuffer);
+            // }
+            // CodedOutputStream output =
+            // CodedOutputStream.newInstance(byteBuffer);
+            byte[] body = new byte[size];
+            CodedOutputStream output = CodedOutputStream.newInstance(body);
+            output.writeEnum(3, PacketType.MESSAGES.getNumber());
+
+            output.writeTag(5, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeRawVarint32(messageSize);
+            // message
+            output.writeInt64(1, message.getId());
+            for (ByteString rowEntry : rowEntries) {
+                output.writeBytes(2, rowEntry);
+            }
+            output.checkNoSpaceLeft();
+            NettyUtils.write(channel, body, new ChannelFutureAggregator(get.getDestination(),
+                get,
+                packet.getType(),
+                body.length,
+                System.nanoTime() - start,
+                message.getId() == -1));
+
+            // output.flush();
+            // byteBuffer.flip();
+            // NettyUtils.write(channel, byteBuffer,
+            // null);
+        } else {
+            Packet.Builder packetBuilder = CanalPacket.Packet.newBuilder();
+            packetBuilder.setType(PacketType.MESSAGES).setVersion(NettyUtils.VERSION);
+
+            Messages.Builder messageBuilder = CanalPacket.Messages.newBuilder();
+            messageBuilder.setBatchId(message.getId());
+            if (message.getId() != -1) {
+                if (message.isRaw() && !CollectionUtils.isEmpty(message.getRawEntries())) {
+                    messageBuilder.addAllMessages(message.getRawEntries());
+                } else if (!CollectionUtils.isEmpty(message.getEntries())) {
+                    for (Entry entry : message.getEntries()) {
+                        messageBuilder.addMessages(entry.toByteString());
+                    }
+                }
+            }
+            byte[] body = packetBuilder.setBody(messageBuilder.build().toByteString())
+                .build()
+                .toByteArray();
+            NettyUtils.write(channel, body, new ChannelFutureAggregator(get.getDestination(),
+                get,
+                packet.getType(),
+                body.length,
+                System.nanoTime() - start,
+                message.getId() == -1));// 输出数据
+        }
+    }
+
     public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
         logger.error("something goes wrong with channel:{}, exception={}",
             ctx.getChannel(),
             ExceptionUtils.getStackTrace(e.getCause()));
 
+        cancelLongPolls();
         ctx.getChannel().close();
     }
 
     public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        cancelLongPolls();
         // logger.info("remove binding subscription value object if any...");
         // ClientIdentity clientIdentity = (ClientIdentity) ctx.getAttachment();
         // // 如果唯一的订阅者都取消了订阅，直接关闭服务，针对内部版本模式下可以减少资源浪费
@@ -355,6 +412,16 @@ public class SessionHandler extends SimpleChannelHandler {
         // }
     }
 
+    /**
+     * 连接断开后挂起的long-poll请求不再有接收方，从等待队列中移除，避免timeout为0时一直挂起并占用数据
+     */
+    private void cancelLongPolls() {
+        for (Map.Entry<LongPollCallback, String> entry : longPollCallbacks.entrySet()) {
+            embeddedServer.cancelLongPoll(entry.getValue(), entry.getKey());
+            longPollCallbacks.remove(entry.getKey());
+        }
+    }
+
     private void stopCanalInstanceIfNecessary(ClientIdentity clientIdentity) {
         List<ClientIdentity> clientIdentitys = embeddedServer.listAllSubscribe(clientIdentity.getDestination());
         if (clientIdentitys != null && clientIdentitys.size() == 1 && clientIdentitys.contains(clientIdentity)) {
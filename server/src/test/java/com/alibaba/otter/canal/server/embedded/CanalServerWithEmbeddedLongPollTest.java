@@ -0,0 +1,216 @@
+package com.alibaba.otter.canal.server.embedded;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.alarm.CanalAlarmHandler;
+import com.alibaba.otter.canal.instance.core.CanalInstance;
+import com.alibaba.otter.canal.instance.core.CanalMQConfig;
+import com.alibaba.otter.canal.meta.CanalMetaManager;
+import com.alibaba.otter.canal.meta.MemoryMetaManager;
+import com.alibaba.otter.canal.parse.CanalEventParser;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.sink.CanalEventSink;
+import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.model.Event;
+
+/**
+ * long-poll模式下get请求的挂起、唤醒和取消, 使用内存store, 不依赖mysql
+ */
+public class CanalServerWithEmbeddedLongPollTest {
+
+    private static final String        DESTINATION    = "example";
+
+    private final ClientIdentity       clientIdentity = new ClientIdentity(DESTINATION, (short) 1);
+    private CanalServerWithEmbedded    server;
+    private MemoryEventStoreWithBuffer eventStore;
+
+    @Before
+    public void setUp() {
+        eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(1024);
+        server = new CanalServerWithEmbedded();
+        server.setLongPoll(true);
+        server.setCanalInstanceGenerator(destination -> new MemoryCanalInstance(destination, eventStore));
+        server.start();
+        server.start(DESTINATION);
+        server.subscribe(clientIdentity);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testWakeUpOnPut() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Message> result = new AtomicReference<>();
+        server.getWithoutAckAsync(clientIdentity, 10, 0L, TimeUnit.MILLISECONDS, new LongPollCallback() {
+
+            @Override
+            public void onCompleted(Message message) {
+                result.set(message);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailed(Throwable cause) {
+                latch.countDown();
+            }
+        });
+        Assert.assertEquals(1, latch.getCount());
+
+        eventStore.put(Arrays.asList(buildEvent(1L), buildEvent(2L)));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(result.get());
+        Assert.assertEquals(2, size(result.get()));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Message> result = new AtomicReference<>();
+        server.getWithoutAckAsync(clientIdentity, 10, 100L, TimeUnit.MILLISECONDS, new LongPollCallback() {
+
+            @Override
+            public void onCompleted(Message message) {
+                result.set(message);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailed(Throwable cause) {
+                latch.countDown();
+            }
+        });
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(-1, result.get().getId());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        AtomicInteger called = new AtomicInteger();
+        LongPollCallback callback = new LongPollCallback() {
+
+            @Override
+            public void onCompleted(Message message) {
+                called.incrementAndGet();
+            }
+
+            @Override
+            public void onFailed(Throwable cause) {
+                called.incrementAndGet();
+            }
+        };
+        // timeout为0时没有超时任务, 连接断开后必须主动取消
+        server.getWithoutAckAsync(clientIdentity, 10, 0L, TimeUnit.MILLISECONDS, callback);
+        server.cancelLongPoll(DESTINATION, callback);
+
+        eventStore.put(Arrays.asList(buildEvent(1L), buildEvent(2L)));
+        Thread.sleep(200);
+        Assert.assertEquals(0, called.get());
+
+        // 被取消的请求没有占用数据, 新的请求可以拿到
+        Message message = server.getWithoutAck(clientIdentity, 10);
+        Assert.assertEquals(2, size(message));
+    }
+
+    private static int size(Message message) {
+        return message.isRaw() ? message.getRawEntries().size() : message.getEntries().size();
+    }
+
+    private static Event buildEvent(long offset) {
+        CanalEntry.Header.Builder headerBuilder = CanalEntry.Header.newBuilder();
+        headerBuilder.setLogfileName("mysql-bin.000001");
+        headerBuilder.setLogfileOffset(offset);
+        headerBuilder.setExecuteTime(System.currentTimeMillis());
+        headerBuilder.setEventLength(100);
+        CanalEntry.Entry entry = CanalEntry.Entry.newBuilder()
+            .setHeader(headerBuilder.build())
+            .setEntryType(CanalEntry.EntryType.ROWDATA)
+            .build();
+        return new Event(new LogIdentity(new InetSocketAddress("127.0.0.1", 3306), 1234L), entry);
+    }
+
+    private static class MemoryCanalInstance extends AbstractCanalLifeCycle implements CanalInstance {
+
+        private final String                     destination;
+        private final MemoryEventStoreWithBuffer eventStore;
+        private final MemoryMetaManager          metaManager = new MemoryMetaManager();
+
+        MemoryCanalInstance(String destination, MemoryEventStoreWithBuffer eventStore){
+            this.destination = destination;
+            this.eventStore = eventStore;
+        }
+
+        @Override
+        public void start() {
+            super.start();
+            metaManager.start();
+            eventStore.start();
+        }
+
+        @Override
+        public void stop() {
+            super.stop();
+            eventStore.stop();
+            metaManager.stop();
+        }
+
+        @Override
+        public String getDestination() {
+            return destination;
+        }
+
+        @Override
+        public CanalEventParser getEventParser() {
+            return null;
+        }
+
+        @Override
+        public CanalEventSink getEventSink() {
+            return null;
+        }
+
+        @Override
+        public CanalEventStore getEventStore() {
+            return eventStore;
+        }
+
+        @Override
+        public CanalMetaManager getMetaManager() {
+            return metaManager;
+        }
+
+        @Override
+        public CanalAlarmHandler getAlarmHandler() {
+            return null;
+        }
+
+        @Override
+        public boolean subscribeChange(ClientIdentity identity) {
+            return true;
+        }
+
+        @Override
+        public CanalMQConfig getMqConfig() {
+            return null;
+        }
+    }
+}
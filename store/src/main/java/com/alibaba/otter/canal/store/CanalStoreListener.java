@@ -0,0 +1,18 @@
+package com.alibaba.otter.canal.store;
+
+/**
+ * store数据变化的监听器，用于long-poll模式下唤醒等待数据的get请求
+ *
+ * <pre>
+ * 注意：回调发生在put线程(parser sink线程)中，实现需要足够轻量，不允许阻塞
+ * </pre>
+ *
+ * @version 1.1.6
+ */
+public interface CanalStoreListener {
+
+    /**
+     * store中有新的数据写入
+     */
+    void onPut();
+}
@@ -2,6 +2,7 @@ package com.alibaba.otter.canal.store.memory;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
@@ -17,6 +18,7 @@ import com.alibaba.otter.canal.protocol.position.PositionRange;
 import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
 import com.alibaba.otter.canal.store.CanalEventStore;
 import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.CanalStoreListener;
 import com.alibaba.otter.canal.store.CanalStoreScavenge;
 import com.alibaba.otter.canal.store.helper.CanalEventUtils;
 import com.alibaba.otter.canal.store.model.BatchMode;
@@ -71,6 +73,8 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
     private BatchMode         batchMode     = BatchMode.ITEMSIZE;                        // 默认为内存大小模式
     private boolean           ddlIsolation  = false;
     private boolean           raw           = true;                                      // 针对entry是否开启raw模式
+    // put成功后的数据通知，用于long-poll模式唤醒等待中的get请求
+    private List<CanalStoreListener> listeners = new CopyOnWriteArrayList<>();
 
     public MemoryEventStoreWithBuffer(){
 
@@ -119,6 +123,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         } finally {
             lock.unlock();
         }
+        notifyListeners();
     }
 
     public boolean put(List<Event> data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
@@ -133,7 +138,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             for (;;) {
                 if (checkFreeSlotAt(putSequence.get() + data.size())) {
                     doPut(data);
-                    return true;
+                    break;
                 }
                 if (nanos <= 0) {
                     return false;
@@ -149,6 +154,8 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         } finally {
             lock.unlock();
         }
+        notifyListeners();
+        return true;
     }
 
     public boolean tryPut(List<Event> data) throws CanalStoreException {
@@ -163,11 +170,12 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
                 return false;
             } else {
                 doPut(data);
-                return true;
             }
         } finally {
             lock.unlock();
         }
+        notifyListeners();
+        return true;
     }
 
     public void put(Event data) throws InterruptedException, CanalStoreException {
@@ -512,8 +520,25 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         }
     }
 
+    public void addListener(CanalStoreListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CanalStoreListener listener) {
+        listeners.remove(listener);
+    }
+
     // =================== helper method =================
 
+    /**
+     * 在锁外进行通知，避免listener的执行影响put的吞吐
+     */
+    private void notifyListeners() {
+        for (CanalStoreListener listener : listeners) {
+            listener.onPut();
+        }
+    }
+
     private long getMinimumGetOrAck() {
         long get = getSequence.get();
         long ack = ackSequence.get();
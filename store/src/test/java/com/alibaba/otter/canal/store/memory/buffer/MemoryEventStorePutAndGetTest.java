@@ -3,6 +3,7 @@ package com.alibaba.otter.canal.store.memory.buffer;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -47,6 +48,33 @@ public class MemoryEventStorePutAndGetTest extends MemoryEventStoreBase {
         eventStore.stop();
     }
 
+    @Test
+    public void testPutListener() {
+        int bufferSize = 16;
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(bufferSize);
+        eventStore.start();
+
+        final AtomicInteger notified = new AtomicInteger(0);
+        eventStore.addListener(notified::incrementAndGet);
+        try {
+            eventStore.put(buildEvent("1", 1L, 1L));
+            Assert.assertTrue(eventStore.put(buildEvent("1", 1L, 2L), 1000L, TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            Assert.fail(e.getMessage());
+        }
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 3L)));
+        Assert.assertEquals(3, notified.get());
+
+        // 写满之后put失败，不触发通知
+        for (int i = 3; i < bufferSize; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+        Assert.assertEquals(bufferSize, notified.get());
+        eventStore.stop();
+    }
+
     @Test
     public void testFullPut() {
         int bufferSize = 16;